@@ -0,0 +1,66 @@
+package edu.ntnu.rtpcarcontroller;
+
+import edu.ntnu.rtpcarcontroller.controller.DrivingController;
+import edu.ntnu.rtpcarcontroller.controller.connection.ConnController;
+import edu.ntnu.rtpcarcontroller.controller.script.CommandScript;
+import edu.ntnu.rtpcarcontroller.controller.script.ScriptPlayer;
+import edu.ntnu.rtpcarcontroller.controller.script.ScriptReport;
+import edu.ntnu.rtpcarcontroller.exception.NetworkConnectionException;
+import edu.ntnu.rtpcarcontroller.exception.ScriptFormatException;
+import edu.ntnu.rtpcarcontroller.model.Car;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.logging.LogManager;
+
+/**
+ * Drives a car without a GUI by playing a CommandScript, and reports how accurately the commands were timed.
+ */
+public class ScriptRunner {
+    static {
+        InputStream stream = ScriptRunner.class.getClassLoader().getResourceAsStream("logging.properties");
+        try {
+            LogManager.getLogManager().readConfiguration(stream);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Plays a script, either against a server or, if no server is given, against an unconnected Car.
+     * @param args The path of a script file or {@code sweep:<rate>:<millis>} for a generated steering sweep, and
+     *             optionally the address and port of the server to drive.
+     */
+    public static void main(String... args) throws IOException, ScriptFormatException, NetworkConnectionException {
+        if (args.length != 1 && args.length != 3) {
+            System.out.println("Usage: ScriptRunner <script file | sweep:<rate>:<millis>> [address port]");
+            return;
+        }
+
+        CommandScript script;
+        if (args[0].startsWith("sweep:")) {
+            String[] parts = args[0].split(":");
+            script = CommandScript.steeringSweep(Integer.parseInt(parts[1]), Long.parseLong(parts[2]));
+        } else {
+            script = CommandScript.load(Paths.get(args[0]));
+        }
+
+        Car car = new Car();
+        DrivingController drivingController = DrivingController.INSTANCE;
+        drivingController.setCar(car);
+
+        ConnController connController = ConnController.INSTANCE;
+        if (args.length == 3) {
+            connController.setCar(car);
+            connController.connect(args[1], args[2]);
+        }
+
+        ScriptReport report = new ScriptPlayer(drivingController).play(script);
+        System.out.println(report);
+
+        if (connController.isConnectionActive()) {
+            connController.disconnect();
+        }
+    }
+}
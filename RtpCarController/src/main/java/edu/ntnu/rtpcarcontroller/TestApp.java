@@ -1,5 +1,9 @@
 package edu.ntnu.rtpcarcontroller;
 
+import edu.ntnu.rtpcarcontroller.controller.connection.ConnController;
+import edu.ntnu.rtpcarcontroller.controller.connection.transport.DualPathTransport;
+import edu.ntnu.rtpcarcontroller.controller.connection.transport.TransportFactory;
+import edu.ntnu.rtpcarcontroller.controller.connection.transport.TransportType;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
@@ -8,11 +12,16 @@ import javafx.stage.Stage;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.InetSocketAddress;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
 
 public class TestApp extends Application {
     private static final Logger logger = Logger.getLogger(TestApp.class.getName());
+    private static final String OBSERVER_PORT_PROPERTY = "rtpcarcontroller.observer.port";
+    private static final String TRANSPORT_PROPERTY = "rtpcarcontroller.transport";
+    // The transport of a second path to the car, optionally at another address, e.g. "tcp" or "tcp@10.0.1.7:65432"
+    private static final String SECONDARY_TRANSPORT_PROPERTY = "rtpcarcontroller.transport.secondary";
 
     static {
         InputStream stream = TestApp.class.getClassLoader().getResourceAsStream("logging.properties");
@@ -29,6 +38,29 @@ public class TestApp extends Application {
 
     @Override
     public void start(Stage primaryStage) throws Exception {
+        Integer observerPort = Integer.getInteger(OBSERVER_PORT_PROPERTY);
+        if (observerPort != null) {
+            ConnController.INSTANCE.getObserverHub().openServer(observerPort);
+        }
+        String transport = System.getProperty(TRANSPORT_PROPERTY);
+        TransportFactory factory = transport != null ? TransportType.forName(transport)
+                : ConnController.INSTANCE.getTransportFactory();
+        String secondary = System.getProperty(SECONDARY_TRANSPORT_PROPERTY);
+        if (secondary != null) {
+            int at = secondary.indexOf('@');
+            InetSocketAddress address = null;
+            if (at >= 0) {
+                int colon = secondary.lastIndexOf(':');
+                address = new InetSocketAddress(secondary.substring(at + 1, colon),
+                        Integer.parseInt(secondary.substring(colon + 1)));
+                secondary = secondary.substring(0, at);
+            }
+            factory = DualPathTransport.factory(factory, TransportType.forName(secondary), address);
+        }
+        if (transport != null || secondary != null) {
+            ConnController.INSTANCE.setTransportFactory(factory);
+        }
+
         FXMLLoader homeLoader = new FXMLLoader(getClass().getResource("/fxml/home.fxml"));
         Parent homeFXML = homeLoader.load();
         Scene homeScene = new Scene(homeFXML);
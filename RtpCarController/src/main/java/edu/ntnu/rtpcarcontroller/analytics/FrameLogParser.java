@@ -0,0 +1,93 @@
+package edu.ntnu.rtpcarcontroller.analytics;
+
+import edu.ntnu.rtpcarcontroller.model.Throttle;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses a frame log, as recorded by the connection's FrameRecorder: a header line, then one CSV line per state frame
+ * sent and per state acknowledged, "&lt;time_us&gt;,sent,&lt;sequence&gt;,&lt;throttle&gt;,&lt;angle&gt;," or
+ * "&lt;time_us&gt;,ack,,&lt;throttle&gt;,&lt;angle&gt;,&lt;round_trip_ns&gt;". Every sent frame is added to the report
+ * with its time, throttle and angle, and every round trip time as a latency.
+ *
+ * Lines are parsed in place, without creating strings.
+ */
+class FrameLogParser implements LogScanner.LineParser {
+    private static final byte[] SENT = bytes("sent,");
+    private static final byte[] ACK = bytes("ack,");
+    private static final byte[][] THROTTLES;
+
+    static {
+        Throttle[] throttles = Throttle.values();
+        THROTTLES = new byte[throttles.length][];
+        for (int i = 0; i < throttles.length; i++) {
+            THROTTLES[i] = bytes(throttles[i].name() + ",");
+        }
+    }
+
+    private final SessionReport report;
+
+    /**
+     * Creates a new FrameLogParser.
+     * @param report The report to add the frames to.
+     */
+    FrameLogParser(SessionReport report) {
+        this.report = report;
+    }
+
+    @Override
+    public void line(byte[] bytes, int start, int end) {
+        // The header, and any line that is cut off, starts with something else than a time
+        long micros = SessionLogParser.parseDecimal(bytes, start, end);
+        int index = skipField(bytes, start, end);
+        if (micros < 0 || index < 0) {
+            return;
+        }
+        boolean sent = SessionLogParser.startsWith(bytes, index, end, SENT);
+        if (!sent && !SessionLogParser.startsWith(bytes, index, end, ACK)) {
+            report.record(micros);
+            return;
+        }
+        // The sequence number, which only sent frames have
+        index = skipField(bytes, index + (sent ? SENT.length : ACK.length), end);
+        int throttle = -1;
+        for (int i = 0; index >= 0 && i < THROTTLES.length; i++) {
+            if (SessionLogParser.startsWith(bytes, index, end, THROTTLES[i])) {
+                throttle = i;
+                index += THROTTLES[i].length;
+                break;
+            }
+        }
+        long angle = throttle >= 0 ? SessionLogParser.parseDecimal(bytes, index, end) : -1;
+        if (angle < 0) {
+            report.record(micros);
+            return;
+        }
+        if (sent) {
+            report.frame(micros, throttle, (int) angle);
+            return;
+        }
+        report.record(micros);
+        index = skipField(bytes, index, end);
+        long roundTrip = index >= 0 ? SessionLogParser.parseDecimal(bytes, index, end) : -1;
+        if (roundTrip >= 0) {
+            report.latency(roundTrip);
+        }
+    }
+
+    /**
+     * @return The index after the comma ending the field at the index, or -1 if the line ends first.
+     */
+    private static int skipField(byte[] bytes, int index, int end) {
+        for (; index < end; index++) {
+            if (bytes[index] == ',') {
+                return index + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
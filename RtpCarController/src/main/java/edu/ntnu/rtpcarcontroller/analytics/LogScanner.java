@@ -0,0 +1,88 @@
+package edu.ntnu.rtpcarcontroller.analytics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the lines of a log file through a window of memory mapped from the file, so that a file of any size is read
+ * without loading it onto the heap. The window is copied in bulk into a small reusable chunk, in which the lines are
+ * found and parsed; the start of a line that continues in the next chunk is carried over, and a line longer than the
+ * chunk is handed over in pieces.
+ */
+class LogScanner {
+    private static final long WINDOW_SIZE = 64 * 1024 * 1024;
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * Handles the lines of a log file.
+     */
+    interface LineParser {
+        /**
+         * Handles a line.
+         * @param bytes The array holding the line, which is valid during the call only.
+         * @param start The index of the line's first byte.
+         * @param end The index after the line's last byte, its terminator excluded.
+         */
+        void line(byte[] bytes, int start, int end);
+    }
+
+    /**
+     * @param file The file to read.
+     * @return The first byte of the file, or -1 if it is empty.
+     * @throws IOException If the file could not be read.
+     */
+    static int firstByte(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1);
+            return channel.read(buffer) > 0 ? buffer.get(0) : -1;
+        }
+    }
+
+    /**
+     * Hands every line of a file to a parser.
+     * @param file The file to read.
+     * @param parser The parser to hand the lines to.
+     * @return The size of the file in bytes.
+     * @throws IOException If the file could not be read.
+     */
+    static long scan(Path file, LineParser parser) throws IOException {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        int carried = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += WINDOW_SIZE) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(WINDOW_SIZE, size - position));
+                while (window.hasRemaining()) {
+                    int read = Math.min(window.remaining(), chunk.length - carried);
+                    window.get(chunk, carried, read);
+                    int length = carried + read;
+                    int lineStart = 0;
+                    for (int i = carried; i < length; i++) {
+                        if (chunk[i] == '\n') {
+                            int lineEnd = i > lineStart && chunk[i - 1] == '\r' ? i - 1 : i;
+                            parser.line(chunk, lineStart, lineEnd);
+                            lineStart = i + 1;
+                        }
+                    }
+                    if (lineStart == 0 && length == chunk.length) {
+                        // A piece of a line longer than the chunk
+                        parser.line(chunk, 0, length);
+                        carried = 0;
+                    } else {
+                        System.arraycopy(chunk, lineStart, chunk, 0, length - lineStart);
+                        carried = length - lineStart;
+                    }
+                }
+            }
+            if (carried > 0) {
+                parser.line(chunk, 0, carried);
+            }
+            return size;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package edu.ntnu.rtpcarcontroller.analytics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reports on recorded driving sessions: for every log file, and for all of them together, the state frames sent, the
+ * command rate, the time spent in each Throttle state, the steering reversals and the latency distribution.
+ *
+ * Frame logs (CSV files recorded by the connection's FrameRecorder, see rtpcarcontroller.frameLog) and session logs
+ * (JSON lines of AsyncLogHandler) are told apart by their first byte. Frame logs are complete; session logs only hold
+ * what the logging level let through and AsyncLogHandler did not drop. Files are analysed in parallel on a
+ * ForkJoinPool, one file per task, with rtpcarcontroller.analytics.parallelism threads (one per core by default); every
+ * file is read through memory-mapped windows into a SessionReport of its own, and the reports are merged when all files
+ * are done.
+ */
+public class SessionAnalyzer {
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a new SessionAnalyzer with the configured parallelism.
+     */
+    public SessionAnalyzer() {
+        this(Integer.getInteger("rtpcarcontroller.analytics.parallelism", Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Creates a new SessionAnalyzer.
+     * @param parallelism The number of files to analyse at the same time.
+     */
+    public SessionAnalyzer(int parallelism) {
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Analyses the logs in the given files and directories, and in the directories below them.
+     * @param args The files and directories to analyse.
+     */
+    public static void main(String... args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: SessionAnalyzer <log file | directory>...");
+            return;
+        }
+        List<Path> files = new ArrayList<>();
+        for (String arg : args) {
+            files.addAll(listFiles(Paths.get(arg)));
+        }
+
+        SessionAnalyzer analyzer = new SessionAnalyzer();
+        long start = System.nanoTime();
+        List<SessionReport> reports = analyzer.analyze(files);
+        long elapsed = System.nanoTime() - start;
+        analyzer.close();
+
+        SessionReport sessions = merge("all session logs", false, reports);
+        SessionReport frames = merge("all frame logs", true, reports);
+        for (SessionReport report : reports) {
+            System.out.println(report.summary());
+        }
+        System.out.println(sessions.summary());
+        System.out.println(frames.summary());
+        long bytes = sessions.getBytes() + frames.getBytes();
+        System.out.println(String.format("Analysed %d files, %.1f MB in %d ms (%.0f MB/s)", files.size(), bytes / 1e6,
+                TimeUnit.NANOSECONDS.toMillis(elapsed), bytes / 1e6 / Math.max(elapsed / 1e9, 1e-9)));
+    }
+
+    /**
+     * @param path A file or directory.
+     * @return The file, or the regular files in and below the directory, sorted by path.
+     * @throws IOException If the directory could not be listed.
+     */
+    public static List<Path> listFiles(Path path) throws IOException {
+        if (!Files.isDirectory(path)) {
+            return List.of(path);
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            return paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Merges the reports of one kind of logs.
+     * @param name The name of the merged report.
+     * @param frameLogs Whether to merge the reports of frame logs or those of session logs.
+     * @param reports The reports to merge; failed reports and those of the other kind are left out.
+     * @return The merged report.
+     */
+    public static SessionReport merge(String name, boolean frameLogs, List<SessionReport> reports) {
+        SessionReport total = new SessionReport(name, frameLogs);
+        for (SessionReport report : reports) {
+            if (report.getFailure() == null && report.isFrameLog() == frameLogs) {
+                total.merge(report);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Analyses log files in parallel.
+     * @param files The files to analyse.
+     * @return The report of every file, in the order of the files; a file that could not be read has a failed report.
+     */
+    public List<SessionReport> analyze(List<Path> files) {
+        SessionReport[] reports = new SessionReport[files.size()];
+        if (!files.isEmpty()) {
+            pool.invoke(new AnalysisTask(files, reports, 0, files.size()));
+        }
+        return Arrays.asList(reports);
+    }
+
+    /**
+     * Analyses a single log file on the calling thread.
+     * @param file The file to analyse.
+     * @return The report of the file, which is failed if the file could not be read.
+     */
+    public static SessionReport analyze(Path file) {
+        SessionReport report;
+        try {
+            boolean frameLog = LogScanner.firstByte(file) != '{';
+            report = new SessionReport(file.toString(), frameLog);
+            LogScanner.LineParser parser = frameLog ? new FrameLogParser(report) : new SessionLogParser(report);
+            report.finish(LogScanner.scan(file, parser));
+        } catch (IOException e) {
+            report = new SessionReport(file.toString(), false);
+            report.fail(e.toString());
+        }
+        return report;
+    }
+
+    /**
+     * Stops the threads of the analyser.
+     */
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * Analyses a range of files by splitting it in halves down to single files.
+     */
+    private static class AnalysisTask extends RecursiveAction {
+        private final List<Path> files;
+        private final SessionReport[] reports;
+        private final int from;
+        private final int to;
+
+        AnalysisTask(List<Path> files, SessionReport[] reports, int from, int to) {
+            this.files = files;
+            this.reports = reports;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                reports[from] = analyze(files.get(from));
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new AnalysisTask(files, reports, from, middle), new AnalysisTask(files, reports, middle, to));
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package edu.ntnu.rtpcarcontroller.analytics;
+
+import edu.ntnu.rtpcarcontroller.model.Throttle;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses a session log, as written by AsyncLogHandler with the connection's loggers at FINER: one JSON object per
+ * line, with the time of the record and its message. The messages of ConnOutputController about the state frames it
+ * sent, "Sent state frame &lt;sequence&gt;: &lt;throttle&gt; &lt;angle&gt;", and those of CarConnection about the
+ * round trip times of acknowledged states, "State acknowledged after &lt;nanos&gt; ns", are added to the report; of
+ * other records only the time counts. The connection logs these at FINER, and AsyncLogHandler drops records when it
+ * falls behind, so the figures of a session log are only complete if nothing was dropped; the frame log of the
+ * FrameRecorder always is.
+ *
+ * Lines are parsed in place, without creating strings.
+ */
+class SessionLogParser implements LogScanner.LineParser {
+    private static final byte[] TIME = bytes("{\"time\":\"");
+    private static final byte[] MESSAGE = bytes(",\"message\":\"");
+    private static final byte[] SENT = bytes("Sent state frame ");
+    private static final byte[] ACKNOWLEDGED = bytes("State acknowledged after ");
+    private static final byte[][] THROTTLES;
+
+    static {
+        Throttle[] throttles = Throttle.values();
+        THROTTLES = new byte[throttles.length][];
+        for (int i = 0; i < throttles.length; i++) {
+            THROTTLES[i] = bytes(throttles[i].name());
+        }
+    }
+
+    private final SessionReport report;
+
+    /**
+     * Creates a new SessionLogParser.
+     * @param report The report to add the session's figures to.
+     */
+    SessionLogParser(SessionReport report) {
+        this.report = report;
+    }
+
+    @Override
+    public void line(byte[] bytes, int start, int end) {
+        if (!startsWith(bytes, start, end, TIME)) {
+            return;
+        }
+        long micros = parseInstant(bytes, start + TIME.length, end);
+        if (micros == Long.MIN_VALUE) {
+            return;
+        }
+        int message = indexOf(bytes, start + TIME.length, end, MESSAGE);
+        if (message < 0) {
+            report.record(micros);
+            return;
+        }
+        message += MESSAGE.length;
+        if (startsWith(bytes, message, end, SENT)) {
+            sent(bytes, message + SENT.length, end, micros);
+        } else if (startsWith(bytes, message, end, ACKNOWLEDGED)) {
+            report.record(micros);
+            long nanos = parseDecimal(bytes, message + ACKNOWLEDGED.length, end);
+            if (nanos >= 0) {
+                report.latency(nanos);
+            }
+        } else {
+            report.record(micros);
+        }
+    }
+
+    /**
+     * Parses "&lt;sequence&gt;: &lt;throttle&gt; &lt;angle&gt;" after the prefix of a sent state frame.
+     */
+    private void sent(byte[] bytes, int index, int end, long micros) {
+        while (index < end && isDigit(bytes[index])) {
+            index++;
+        }
+        if (index + 2 > end || bytes[index] != ':' || bytes[index + 1] != ' ') {
+            report.record(micros);
+            return;
+        }
+        index += 2;
+        for (int throttle = 0; throttle < THROTTLES.length; throttle++) {
+            byte[] name = THROTTLES[throttle];
+            int angleStart = index + name.length + 1;
+            if (startsWith(bytes, index, end, name) && angleStart <= end && bytes[angleStart - 1] == ' ') {
+                long angle = parseDecimal(bytes, angleStart, end);
+                if (angle >= 0) {
+                    report.frame(micros, throttle, (int) angle);
+                    return;
+                }
+            }
+        }
+        report.record(micros);
+    }
+
+    /**
+     * Parses an ISO-8601 instant in UTC, such as 2019-10-18T22:15:34.901Z, with 0 to 9 digits of fractional seconds.
+     * @return The instant in microseconds since the epoch, or Long.MIN_VALUE if there is none.
+     */
+    static long parseInstant(byte[] bytes, int index, int end) {
+        if (index + 20 > end || bytes[index + 4] != '-' || bytes[index + 7] != '-'
+                || bytes[index + 10] != 'T' || bytes[index + 13] != ':' || bytes[index + 16] != ':') {
+            return Long.MIN_VALUE;
+        }
+        int year = digits(bytes, index, 4);
+        int month = digits(bytes, index + 5, 2);
+        int day = digits(bytes, index + 8, 2);
+        int hour = digits(bytes, index + 11, 2);
+        int minute = digits(bytes, index + 14, 2);
+        int second = digits(bytes, index + 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || hour < 0 || minute < 0 || second < 0) {
+            return Long.MIN_VALUE;
+        }
+        long micros = 0;
+        int i = index + 19;
+        if (bytes[i] == '.') {
+            int scale = 100000;
+            for (i++; i < end && isDigit(bytes[i]); i++) {
+                micros += (bytes[i] - '0') * scale;
+                scale /= 10;
+            }
+        }
+        if (i >= end || bytes[i] != 'Z') {
+            return Long.MIN_VALUE;
+        }
+        long seconds = ((daysFromCivil(year, month, day) * 24 + hour) * 60 + minute) * 60 + second;
+        return seconds * 1000000 + micros;
+    }
+
+    /**
+     * Counts the days from 1970-01-01 to a date of the proleptic Gregorian calendar.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        long era = Math.floorDiv(year, 400);
+        long yearOfEra = year - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int digits(byte[] bytes, int index, int count) {
+        int value = 0;
+        for (int i = index; i < index + count; i++) {
+            byte b = bytes[i];
+            if (!isDigit(b)) {
+                return -1;
+            }
+            value = value * 10 + b - '0';
+        }
+        return value;
+    }
+
+    /**
+     * @return The decimal number at the index, or -1 if there is none.
+     */
+    static long parseDecimal(byte[] bytes, int index, int end) {
+        long value = 0;
+        int start = index;
+        for (; index < end && isDigit(bytes[index]); index++) {
+            value = value * 10 + bytes[index] - '0';
+        }
+        return index > start ? value : -1;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    static boolean startsWith(byte[] bytes, int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[start + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] bytes, int start, int end, byte[] pattern) {
+        for (int i = start; i <= end - pattern.length; i++) {
+            if (bytes[i] == pattern[0] && startsWith(bytes, i, end, pattern)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,245 @@
+package edu.ntnu.rtpcarcontroller.analytics;
+
+import edu.ntnu.rtpcarcontroller.model.Throttle;
+import edu.ntnu.rtpcarcontroller.util.LatencyHistogram;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The figures of one recorded driving session, or of several merged: the state frames sent, the command rate, the
+ * time spent in each Throttle state, the number of steering reversals and the distribution of command latencies.
+ *
+ * Both kinds of logs yield all figures, with the round trip times of the acknowledged states as latencies; a frame
+ * log of the FrameRecorder holds every frame, while a session log holds only the records the logging kept. The
+ * accumulators are primitives and a LatencyHistogram, so analysing a session does not allocate per frame.
+ *
+ * A SessionReport is not thread-safe; every session is analysed by one thread, and the reports are merged afterwards.
+ */
+public class SessionReport {
+    private static final int NO_DIRECTION = 0;
+
+    private final String name;
+    private final boolean frameLog;
+    private final long[] throttleMicros;
+    private final LatencyHistogram latency;
+    private long bytes;
+    private long frames;
+    private long durationMicros;
+    private long reversals;
+    private long sessions;
+    private String failure;
+    // The state of the session being analysed
+    private long firstMicros;
+    private long lastMicros;
+    private long lastFrameMicros;
+    private int lastThrottle;
+    private int lastAngle;
+    private int lastDirection;
+
+    /**
+     * Creates a new, empty SessionReport.
+     * @param name The name of the session, or of the sessions this report merges.
+     * @param frameLog Whether the report is of frame logs rather than session logs.
+     */
+    public SessionReport(String name, boolean frameLog) {
+        this.name = name;
+        this.frameLog = frameLog;
+        throttleMicros = new long[Throttle.values().length];
+        latency = new LatencyHistogram();
+        firstMicros = Long.MIN_VALUE;
+        lastThrottle = -1;
+        lastAngle = -1;
+        lastDirection = NO_DIRECTION;
+    }
+
+    /**
+     * Records a log record of the session.
+     * @param micros The time of the record, in microseconds since the epoch.
+     */
+    void record(long micros) {
+        if (firstMicros == Long.MIN_VALUE) {
+            firstMicros = micros;
+        }
+        lastMicros = Math.max(lastMicros, micros);
+    }
+
+    /**
+     * Records a state frame sent to the car.
+     * @param micros The time the frame was sent, in microseconds since the epoch.
+     * @param throttle The ordinal of the frame's Throttle.
+     * @param angle The frame's steering angle.
+     */
+    void frame(long micros, int throttle, int angle) {
+        record(micros);
+        if (lastThrottle >= 0) {
+            throttleMicros[lastThrottle] += Math.max(0, micros - lastFrameMicros);
+        }
+        if (lastAngle >= 0 && angle != lastAngle) {
+            int direction = angle > lastAngle ? 1 : -1;
+            if (lastDirection != NO_DIRECTION && direction != lastDirection) {
+                reversals++;
+            }
+            lastDirection = direction;
+        }
+        frames++;
+        lastFrameMicros = micros;
+        lastThrottle = throttle;
+        lastAngle = angle;
+    }
+
+    /**
+     * Records the latency of a command.
+     * @param nanos The latency in nanoseconds.
+     */
+    void latency(long nanos) {
+        latency.record(nanos);
+    }
+
+    /**
+     * Ends the analysis of the session: the last state lasts until the last record of the session.
+     * @param bytes The size of the session's log.
+     */
+    void finish(long bytes) {
+        this.bytes = bytes;
+        sessions = 1;
+        if (lastThrottle >= 0) {
+            throttleMicros[lastThrottle] += Math.max(0, lastMicros - lastFrameMicros);
+        }
+        if (firstMicros != Long.MIN_VALUE) {
+            durationMicros = lastMicros - firstMicros;
+        }
+    }
+
+    /**
+     * Ends the analysis of a session whose log could not be read.
+     * @param failure The reason.
+     */
+    void fail(String failure) {
+        this.failure = failure;
+    }
+
+    /**
+     * Adds the figures of another report of the same kind of logs to this one.
+     * @param other The report to add.
+     */
+    public void merge(SessionReport other) {
+        bytes += other.bytes;
+        frames += other.frames;
+        durationMicros += other.durationMicros;
+        reversals += other.reversals;
+        sessions += other.sessions;
+        for (int i = 0; i < throttleMicros.length; i++) {
+            throttleMicros[i] += other.throttleMicros[i];
+        }
+        latency.merge(other.latency);
+    }
+
+    /**
+     *
+     * @return The name of the session, or of the sessions this report merges.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     *
+     * @return Whether the report is of frame logs rather than session logs.
+     */
+    public boolean isFrameLog() {
+        return frameLog;
+    }
+
+    /**
+     *
+     * @return The reason the session's log could not be read, or null if it was read.
+     */
+    public String getFailure() {
+        return failure;
+    }
+
+    /**
+     *
+     * @return The number of sessions in this report.
+     */
+    public long getSessions() {
+        return sessions;
+    }
+
+    /**
+     *
+     * @return The size of the logs analysed, in bytes.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     *
+     * @return The number of state frames sent.
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     *
+     * @return The time from the first to the last record of the sessions, in milliseconds.
+     */
+    public long getDuration() {
+        return TimeUnit.MICROSECONDS.toMillis(durationMicros);
+    }
+
+    /**
+     *
+     * @return The number of state frames sent per second, or 0 if the duration of the sessions is unknown.
+     */
+    public double getCommandRate() {
+        return durationMicros > 0 ? frames * 1e6 / durationMicros : 0;
+    }
+
+    /**
+     * @param throttle A Throttle state.
+     * @return The time spent in the state, in milliseconds.
+     */
+    public long getThrottleTime(Throttle throttle) {
+        return TimeUnit.MICROSECONDS.toMillis(throttleMicros[throttle.ordinal()]);
+    }
+
+    /**
+     *
+     * @return The number of times the steering changed direction.
+     */
+    public long getReversals() {
+        return reversals;
+    }
+
+    /**
+     *
+     * @return The distribution of the command latencies.
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     *
+     * @return A one-line summary of this report.
+     */
+    public String summary() {
+        if (failure != null) {
+            return String.format("%s: failed: %s", name, failure);
+        }
+        StringBuilder builder = new StringBuilder(name).append(':');
+        builder.append(" frames=").append(frames);
+        builder.append(String.format(" rate=%.1f/s duration=%.1fs", getCommandRate(), durationMicros / 1e6));
+        for (Throttle throttle : Throttle.values()) {
+            builder.append(String.format(" %s=%.1fs", throttle.name().toLowerCase(Locale.ROOT),
+                    throttleMicros[throttle.ordinal()] / 1e6));
+        }
+        builder.append(" reversals=").append(reversals);
+        builder.append(" round-trip latency: ").append(latency.summary());
+        return builder.toString();
+    }
+}
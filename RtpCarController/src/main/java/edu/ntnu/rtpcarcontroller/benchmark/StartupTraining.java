@@ -0,0 +1,97 @@
+package edu.ntnu.rtpcarcontroller.benchmark;
+
+import edu.ntnu.rtpcarcontroller.controller.DrivingController;
+import edu.ntnu.rtpcarcontroller.controller.connection.ConnController;
+import edu.ntnu.rtpcarcontroller.controller.script.CommandScript;
+import edu.ntnu.rtpcarcontroller.controller.script.ScriptPlayer;
+import edu.ntnu.rtpcarcontroller.exception.NetworkConnectionException;
+import edu.ntnu.rtpcarcontroller.model.Car;
+import javafx.application.Platform;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The training run of the fast-start build profile, whose loaded classes go into the class-data-sharing archive of
+ * the runtime image.
+ *
+ * It goes through what a launch does before the first frame reaches the car: it connects to an in-process echo car
+ * over TCP, drives a short steering sweep and disconnects. If a display is available, it also starts JavaFX and loads
+ * the connection dialog, so that the FXML and scene graph classes are archived too; on a headless build machine only
+ * the classes of a headless launch are archived.
+ */
+public class StartupTraining {
+
+    /**
+     * Runs the training.
+     * @param args Not used.
+     */
+    public static void main(String... args) throws IOException, NetworkConnectionException, InterruptedException {
+        try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            Thread car = new Thread(() -> echo(serverSocket), "Training car");
+            car.setDaemon(true);
+            car.start();
+
+            Car model = new Car();
+            DrivingController.INSTANCE.setCar(model);
+            ConnController connController = ConnController.INSTANCE;
+            connController.setCar(model);
+            connController.connect(InetAddress.getLoopbackAddress().getHostAddress(),
+                    String.valueOf(serverSocket.getLocalPort()));
+            System.out.println(new ScriptPlayer(DrivingController.INSTANCE).play(CommandScript.steeringSweep(50, 500)));
+            connController.disconnect();
+        }
+        trainGui();
+    }
+
+    /**
+     * Answers the handshake and echoes every frame, like the car does.
+     */
+    private static void echo(ServerSocket serverSocket) {
+        try (Socket socket = serverSocket.accept();
+             BufferedReader reader = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+             PrintWriter writer = new PrintWriter(
+                     new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII), true)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                writer.println(line);
+            }
+        } catch (IOException e) {
+            // The training is over
+        }
+    }
+
+    /**
+     * Starts JavaFX and loads the connection dialog without showing it, if a display is available.
+     */
+    private static void trainGui() throws InterruptedException {
+        CountDownLatch loaded = new CountDownLatch(1);
+        try {
+            Platform.startup(() -> {
+                try {
+                    Parent dialog = FXMLLoader.load(StartupTraining.class.getResource("/fxml/connectionconfig.fxml"));
+                    new Scene(dialog);
+                    System.out.println("Loaded the connection dialog");
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } finally {
+                    loaded.countDown();
+                }
+            });
+        } catch (RuntimeException e) {
+            System.out.println(String.format("No display (%s); archiving the headless launch only", e.getMessage()));
+            return;
+        }
+        loaded.await(30, TimeUnit.SECONDS);
+        Platform.exit();
+    }
+}
@@ -3,6 +3,7 @@ package edu.ntnu.rtpcarcontroller.controller;
 import edu.ntnu.rtpcarcontroller.model.Car;
 import edu.ntnu.rtpcarcontroller.model.Steer;
 import edu.ntnu.rtpcarcontroller.model.Throttle;
+import edu.ntnu.rtpcarcontroller.util.FrameTracer;
 
 import java.util.logging.Logger;
 
@@ -12,6 +13,7 @@ import java.util.logging.Logger;
 public enum DrivingController {
     INSTANCE;
     private static final Logger logger = Logger.getLogger(DrivingController.class.getName());
+    private static final FrameTracer tracer = FrameTracer.INSTANCE;
     private Car car;
 
     /**
@@ -27,6 +29,7 @@ public enum DrivingController {
      * @param dir The direction to throttle the Car in.
      */
     public void throttle(Throttle dir) {
+        tracer.stamp(FrameTracer.DRIVING_CONTROLLER);
         car.throttle(dir);
     }
 
@@ -35,6 +38,17 @@ public enum DrivingController {
      * @param angle The angle (in degrees) to steer the Car to.
      */
     public void steer(Steer angle) {
+        tracer.stamp(FrameTracer.DRIVING_CONTROLLER);
+        car.steer(angle);
+    }
+
+    /**
+     * Steers the Car to the given angle.
+     * @param angle The angle (in degrees) to steer the Car to, between 0 (left) and 180 (right).
+     * @throws IllegalArgumentException If the angle is out of range.
+     */
+    public void steer(int angle) {
+        tracer.stamp(FrameTracer.DRIVING_CONTROLLER);
         car.steer(angle);
     }
 }
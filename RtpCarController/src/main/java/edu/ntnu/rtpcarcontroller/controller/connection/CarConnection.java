@@ -0,0 +1,557 @@
+package edu.ntnu.rtpcarcontroller.controller.connection;
+
+import edu.ntnu.rtpcarcontroller.controller.connection.jfr.ConnectionLostEvent;
+import edu.ntnu.rtpcarcontroller.controller.connection.transport.Transport;
+import edu.ntnu.rtpcarcontroller.controller.connection.transport.TransportFactory;
+import edu.ntnu.rtpcarcontroller.controller.connection.transport.TransportType;
+import edu.ntnu.rtpcarcontroller.controller.observer.ObserverHub;
+import edu.ntnu.rtpcarcontroller.event.ConnectionLossEvent;
+import edu.ntnu.rtpcarcontroller.event.SteerChangeEvent;
+import edu.ntnu.rtpcarcontroller.event.ThrottleChangeEvent;
+import edu.ntnu.rtpcarcontroller.exception.NetworkConnectionException;
+import edu.ntnu.rtpcarcontroller.model.Car;
+import edu.ntnu.rtpcarcontroller.model.Throttle;
+import edu.ntnu.rtpcarcontroller.util.FrameTracer;
+import edu.ntnu.rtpcarcontroller.util.Timeout;
+import edu.ntnu.rtpcarcontroller.util.TimerService;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * One connection to a remote car ('server'), handling all communication with that car. It observes a Car instance
+ * and is responsible for communicating any throttling and steering changes to the remote server.
+ *
+ * CarConnection makes active use of ConnInputController and ConnOutputController for handling the actual input and
+ * output endpoints, which exchange the protocol's frames over a Transport created by the configured TransportFactory.
+ * Any number of connections can exist side by side; they share the TimerService, but every connection sends on a
+ * sender of its own (see ThreadMode).
+ *
+ * The connection state is guarded by a ReentrantLock rather than the object's monitor, so that a virtual thread
+ * waiting for the handshake does not pin its carrier thread.
+ */
+public class CarConnection {
+    private static final int HANDSHAKE_TIMEOUT = 5000;
+    private static final Logger logger = Logger.getLogger(CarConnection.class.getName());
+    private static final FrameTracer tracer = FrameTracer.INSTANCE;
+
+    private final List<ConnectionLossEvent.Handler> connectionLossListeners;
+    private final ReentrantLock lock;
+    private final Condition stateChanged;
+    private final SteerChangeEvent.Handler steerChangeHandler;
+    private final ThrottleChangeEvent.Handler throttleChangeHandler;
+    private volatile ObserverHub observerHub;
+    private volatile Car car;
+    private SocketProfile socketProfile;
+    private TransportFactory transportFactory;
+    private ThreadMode threadMode;
+    private volatile Transport transport;
+    private volatile SocketAddress address;
+    private ConnInputController inputController;
+    private volatile ConnOutputController outputController;
+    private volatile ClockSync clockSync;
+    private volatile FrameRecorder frameRecorder;
+    private volatile int priority;
+    private volatile boolean controlRejected;
+    private boolean active;
+    private boolean validated;
+    private boolean handshakeExpired;
+
+    /**
+     * Creates a new, unconnected CarConnection using the low-latency socket profile over TCP.
+     */
+    public CarConnection() {
+        connectionLossListeners = new ArrayList<>();
+        socketProfile = SocketProfile.LOW_LATENCY;
+        transportFactory = TransportType.TCP;
+        threadMode = ThreadMode.configured();
+        priority = Integer.getInteger("rtpcarcontroller.priority", 0);
+        lock = new ReentrantLock();
+        stateChanged = lock.newCondition();
+        active = false;
+        steerChangeHandler = event -> {
+            tracer.stamp(FrameTracer.CAR_HANDLER);
+            outputController.steer(event.getNewAngle());
+        };
+        throttleChangeHandler = event -> {
+            tracer.stamp(FrameTracer.CAR_HANDLER);
+            outputController.throttle(event.getNewDirection());
+        };
+    }
+
+    /**
+     *
+     * @return Whether this CarConnection currently has an active connection.
+     */
+    public boolean isConnectionActive() {
+        lock.lock();
+        try {
+            return active;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *
+     * @param active Whether this CarConnection currently has an active connection.
+     */
+    private void setConnectionActive(boolean active) {
+        lock.lock();
+        try {
+            this.active = active;
+            stateChanged.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *
+     * @return True if this CarConnection currently has a validated connection (a connection to a server with
+     * which the handshake was successful).
+     */
+    private boolean isConnectionValidated() {
+        lock.lock();
+        try {
+            return validated;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *
+     * @param validated Whether this CarConnection currently has an active connection to a server with which the
+     *                  handshake was successful.
+     */
+    private void setConnectionValidated(boolean validated) {
+        logger.log(Level.FINE, "Setting status of connection validation to {0}", validated);
+        lock.lock();
+        try {
+            this.validated = validated;
+            stateChanged.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *
+     * @return The Car associated with this CarConnection.
+     */
+    public Car getCar() {
+        return car;
+    }
+
+    /**
+     *
+     * @return The hub through which observers receive a live copy of the states sent to the car, or null if the states
+     * of this connection are not observed.
+     */
+    public ObserverHub getObserverHub() {
+        return observerHub;
+    }
+
+    /**
+     * Sets the hub through which observers receive a live copy of the states sent to the car.
+     * @param observerHub The hub to publish the sent states to, or null to publish them nowhere.
+     */
+    public void setObserverHub(ObserverHub observerHub) {
+        this.observerHub = observerHub;
+    }
+
+    /**
+     *
+     * @return The socket options and write deadline used for new connections.
+     */
+    public SocketProfile getSocketProfile() {
+        return socketProfile;
+    }
+
+    /**
+     *
+     * @return The number of writes the current transport handed to the operating system, or 0 if there is none.
+     */
+    public long getWriteCount() {
+        Transport transport = this.transport;
+        return transport == null ? 0 : transport.getWriteCount();
+    }
+
+    /**
+     *
+     * @return The mailbox through which the car's state changes reach the network, with its depth and drop metrics,
+     * or null if this CarConnection was never connected.
+     */
+    public StateMailbox getStateMailbox() {
+        ConnOutputController outputController = this.outputController;
+        return outputController == null ? null : outputController.getMailbox();
+    }
+
+    /**
+     *
+     * @return The estimate of the car's clock for the current connection, which is synchronised after the handshake
+     * if the car answers clock synchronisation requests; or null if this CarConnection was never connected.
+     */
+    public ClockSync getClockSync() {
+        return clockSync;
+    }
+
+    /**
+     * Sets the socket options and write deadline to use for new connections.
+     * @param socketProfile The profile to use from the next call to connect on.
+     */
+    public void setSocketProfile(SocketProfile socketProfile) {
+        this.socketProfile = socketProfile;
+    }
+
+    /**
+     *
+     * @return The factory creating the transport for new connections.
+     */
+    public TransportFactory getTransportFactory() {
+        return transportFactory;
+    }
+
+    /**
+     * Sets the factory creating the transport for new connections, for instance TransportType.LOOPBACK to talk to a
+     * car in the same process.
+     * @param transportFactory The factory to use from the next call to connect on.
+     */
+    public void setTransportFactory(TransportFactory transportFactory) {
+        this.transportFactory = transportFactory;
+    }
+
+    /**
+     *
+     * @return The kind of threads that run the input and the sends of new connections.
+     */
+    public ThreadMode getThreadMode() {
+        return threadMode;
+    }
+
+    /**
+     * Sets the kind of threads that run the input and the sends of new connections.
+     * @param threadMode The mode to use from the next call to connect on.
+     * @throws UnsupportedOperationException If the running Java version does not support the mode.
+     */
+    public void setThreadMode(ThreadMode threadMode) {
+        if (!threadMode.isSupported()) {
+            throw new UnsupportedOperationException(String.format("%s threads need Java 21", threadMode));
+        }
+        this.threadMode = threadMode;
+    }
+
+    /**
+     *
+     * @return The priority with which this connection competes for the car with other controllers connected to it.
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Sets the priority with which this connection competes for the car with other controllers connected to it
+     * (see Protocol.PRIORITY); it is taken from the system property rtpcarcontroller.priority (0) by default. On a
+     * validated connection the new priority is announced at once, together with the current state, so that raising it
+     * above that of the controller driving the car takes the car over with the next frame.
+     * @param priority The priority; not negative.
+     */
+    public void setPriority(int priority) {
+        this.priority = priority;
+        ConnOutputController outputController = this.outputController;
+        if (outputController != null && isConnectionValidated()) {
+            outputController.priority(priority);
+        }
+    }
+
+    /**
+     *
+     * @return Whether the car rejected the last commands of this connection because another controller drives it.
+     */
+    public boolean isControlRejected() {
+        return controlRejected;
+    }
+
+    /**
+     * Registers a Car to this CarConnection so that this controller is informed when the state of the car changes.
+     *
+     * A Car registered before is no longer observed. If the connection is active, the state of the new Car is sent to
+     * the car right away, so that a Car can be handed from one connection to another while it is being driven.
+     * @param car The Car to for this CarConnection to observe.
+     */
+    public void setCar(Car car) {
+        logger.log(Level.FINE, "Registering a Car object to CarConnection");
+        Car previous = this.car;
+        if (previous != null) {
+            previous.removeSteerChangeHandler(steerChangeHandler);
+            previous.removeThrottleChangeHandler(throttleChangeHandler);
+        }
+        this.car = car;
+        car.addSteerChangeHandler(steerChangeHandler);
+        car.addThrottleChangeHandler(throttleChangeHandler);
+        if (isConnectionActive()) {
+            outputController.throttle(car.getThrottle());
+            outputController.steer(car.getSteer());
+        }
+    }
+
+    /**
+     * Connects to the server at the given address and validates whether it is the intended type of server.
+     * @param address The address of the server to connect to.
+     * @throws NetworkConnectionException If something went wrong while trying to connect to the server or the
+     * validation failed.
+     */
+    public void connect(SocketAddress address) throws NetworkConnectionException {
+        logger.log(Level.INFO, String.format("Trying to connect to server at %s", address));
+        lock.lock();
+        try {
+            this.address = address;
+            transport = transportFactory.create(socketProfile);
+            transport.setLossHandler(event -> lostConnection());
+            try {
+                transport.connect(address);
+            } catch (IOException e) {
+                // Release the socket or channel the transport opened before it failed to connect
+                try {
+                    transport.close();
+                } catch (IOException closeFailure) {
+                    logger.log(Level.FINE, closeFailure.getMessage(), closeFailure);
+                }
+                throw e;
+            }
+            logger.log(Level.INFO, String.format("Successfully connected to server at %s", address));
+
+            initialiseIOControllers();
+            setConnectionActive(true);
+
+            logger.log(Level.FINE, "Trying to shake hands with server");
+            sendHandshake();
+
+            // Wait until connection with server is validated through a handshake; disconnect and throw error if it
+            // takes too long or the connection is lost meanwhile
+            handshakeExpired = false;
+            Timeout handshakeTimeout = TimerService.INSTANCE.schedule(this, HANDSHAKE_TIMEOUT, this::expireHandshake);
+            logger.log(Level.INFO, "Waiting for server to validate that it is an RTP Car Server");
+            while (!isConnectionValidated() && !handshakeExpired && isConnectionActive()) {
+                try {
+                    stateChanged.await();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+            handshakeTimeout.cancel();
+
+            if (!isConnectionValidated()) {
+                logger.log(Level.WARNING, "Timeout while waiting for server-part of handshake; disconnecting.");
+                disconnect();
+                throw new NetworkConnectionException("Timeout while waiting for handshake");
+            }
+        } catch (SocketTimeoutException e) {
+            throw new NetworkConnectionException(String.format("Timeout while trying to connect to %s", address));
+        } catch (SocketException e) {
+            throw new NetworkConnectionException("Exception while trying to set the socket timeout duration", e);
+        } catch (IOException e) {
+            throw new NetworkConnectionException("Exception while trying to set up a socket connection and streams", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ends the wait for the server's handshake. Runs on the shared timers when the handshake timeout expires.
+     */
+    private void expireHandshake() {
+        lock.lock();
+        try {
+            handshakeExpired = true;
+            stateChanged.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Initialises the controllers handling the in- and output from/to the car.
+     */
+    private void initialiseIOControllers() {
+        logger.log(Level.FINE, "Initialising input and output controllers");
+        clockSync = new ClockSync();
+        inputController = new ConnInputController(this, transport);
+        outputController = new ConnOutputController(this, transport, threadMode.newSender("Connection sender"));
+        threadMode.start("Connection input controller", inputController);
+    }
+
+    /**
+     * Sets the Car to an active state and starts the heartbeat service.
+     */
+    void validateConnection() {
+        logger.log(Level.INFO, "Server successfully validated itself");
+        lock.lock();
+        try {
+            setConnectionValidated(true);
+            controlRejected = false;
+            car.reset();
+            car.getStatePredictor().reset();
+            frameRecorder = FrameRecorder.open();
+            if (priority != 0) {
+                outputController.priority(priority);
+            }
+            startHeartbeat();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Informs the Car's state predictor, the frame log and the observers that a state message was sent to the server.
+     * @param sequence The sequence number of the state message within this connection.
+     * @param throttle The throttle direction that was sent.
+     * @param steer The steering angle that was sent.
+     */
+    void stateSent(long sequence, Throttle throttle, int steer) {
+        car.getStatePredictor().commandSent(throttle, steer, System.nanoTime());
+        FrameRecorder recorder = frameRecorder;
+        if (recorder != null) {
+            recorder.sent(sequence, throttle, steer);
+        }
+        ObserverHub hub = observerHub;
+        if (hub != null) {
+            hub.publish(throttle, steer);
+        }
+    }
+
+    /**
+     * Informs the Car's state predictor and the frame log that the server acknowledged a state, and logs its round
+     * trip time at FINER.
+     * @param throttle The throttle direction that was acknowledged.
+     * @param steer The steering angle that was acknowledged.
+     */
+    void stateAcknowledged(Throttle throttle, int steer) {
+        if (controlRejected) {
+            controlRejected = false;
+            logger.log(Level.INFO, "The car applies the commands of this connection again");
+        }
+        long roundTrip = car.getStatePredictor().commandAcknowledged(throttle, steer, System.nanoTime());
+        FrameRecorder recorder = frameRecorder;
+        if (recorder != null) {
+            recorder.acknowledged(throttle, steer, roundTrip);
+        }
+        if (roundTrip >= 0 && logger.isLoggable(Level.FINER)) {
+            logger.log(Level.FINER, "State acknowledged after {0,number,#} ns", roundTrip);
+        }
+    }
+
+    /**
+     * Notes that the car rejected a command because another controller drives it; warns once until the car applies
+     * this connection's commands again.
+     */
+    void controlRejected() {
+        if (!controlRejected) {
+            controlRejected = true;
+            logger.log(Level.WARNING, "The car is driven by another controller and rejects the commands of this "
+                    + "connection");
+        }
+    }
+
+    /**
+     * Deactivates the input handler, output handler and socket connection and sends a ConnectionLossEvent to the
+     * respective listeners.
+     */
+    void lostConnection() {
+        logger.log(Level.INFO, "Lost connection to the server");
+        lock.lock();
+        try {
+            if (isConnectionActive()) {
+                ConnectionLostEvent lostEvent = new ConnectionLostEvent();
+                if (lostEvent.shouldCommit()) {
+                    lostEvent.address = String.valueOf(address);
+                    lostEvent.validated = isConnectionValidated();
+                    lostEvent.commit();
+                }
+                ConnectionLossEvent event = new ConnectionLossEvent(this);
+                for (ConnectionLossEvent.Handler listener : connectionLossListeners) {
+                    listener.handle(event);
+                }
+                disconnect();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the Car to an inactive state, stops the heartbeat service and closes the transport if not yet closed.
+     */
+    public void disconnect() {
+        logger.log(Level.INFO, "Handling server disconnect");
+        if (isConnectionActive()) {
+            setConnectionActive(false);
+            // A new connection has to shake hands again before it counts as validated
+            setConnectionValidated(false);
+
+            // Stop the controllers before closing the transport, so that the failing reads and writes of the closed
+            // transport are not reported as a lost connection
+            outputController.close();
+            inputController.close();
+            try {
+                transport.close();
+            } catch (IOException ex) {
+                logger.log(Level.FINE, ex.getMessage(), ex);
+            }
+            FrameRecorder recorder = frameRecorder;
+            if (recorder != null) {
+                frameRecorder = null;
+                recorder.close();
+            }
+        }
+    }
+
+    /**
+     * Queues a frame to go out with the next state sent to the car, in the same write. The frame may be shared with
+     * other connections; this connection reads it through its own view.
+     * @param frame The frame to send, encoded by Protocol.encodeFrame.
+     * @return False if the connection is not active, so the frame was not queued.
+     */
+    public boolean send(ByteBuffer frame) {
+        if (!isConnectionActive()) {
+            return false;
+        }
+        outputController.queue(frame.duplicate());
+        return true;
+    }
+
+    /**
+     * Sends a handshake message to the server to establish whether a connection with the right type of server was set
+     * up.
+     */
+    private void sendHandshake() throws NetworkConnectionException {
+        logger.log(Level.FINE, "Sending handshake to server");
+        outputController.handshake();
+    }
+
+    /**
+     * Starts the heartbeat-part of the protocol (timed messages are sent to the RC Car).
+     */
+    private void startHeartbeat() {
+        logger.log(Level.INFO, "Starting heartbeat-part of client–server protocol");
+        outputController.start();
+    }
+
+    /**
+     * Adds a handler to use when this client has lost the connection to the server, creating a ConnectionLossEvent.
+     * @param listener The handler to add.
+     */
+    public void addConnectionLossHandler(ConnectionLossEvent.Handler listener) {
+        connectionLossListeners.add(listener);
+    }
+}
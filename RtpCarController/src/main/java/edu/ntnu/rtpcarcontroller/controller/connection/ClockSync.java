@@ -0,0 +1,211 @@
+package edu.ntnu.rtpcarcontroller.controller.connection;
+
+import edu.ntnu.rtpcarcontroller.util.LatencyHistogram;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An estimate of the car's clock relative to the client's, from NTP-style exchanges over the connection.
+ *
+ * Every exchange yields four times: the client's send time t1, the car's receive time t2, the car's send time t3 and
+ * the client's receive time t4. If the link is symmetric, the car's clock is ahead by ((t2 - t1) + (t3 - t4)) / 2,
+ * and the error of that offset is at most half the round trip (t4 - t1) - (t3 - t2). Exchanges delayed by queueing
+ * are therefore the least accurate, so the estimate is fitted through the exchanges with the shortest round trips
+ * among the most recent ones: the offset at the latest of them, and the drift of the car's clock as the slope of a
+ * least-squares line through them. Drift is only estimated once those exchanges span at least 20 seconds, and is
+ * bounded by what real clocks drift (500 ppm).
+ *
+ * Times are in microseconds; the client's clock is System.nanoTime(). Exchanges are recorded by the connection's
+ * input thread; the estimate may be read from any thread.
+ */
+public final class ClockSync {
+    private static final int WINDOW = 32;
+    // Exchanges whose round trip is within this factor of the shortest one take part in the estimate
+    private static final double ROUND_TRIP_TOLERANCE = 1.5;
+    // Over shorter spans, the jitter of the offsets swamps any drift a real clock has
+    private static final long MIN_DRIFT_SPAN = TimeUnit.SECONDS.toMicros(20);
+    private static final double MAX_DRIFT = 500e-6;
+
+    private final long[] localTimes;
+    private final long[] offsets;
+    private final long[] roundTrips;
+    private final LatencyHistogram uplink;
+    private final LatencyHistogram downlink;
+    private int count;
+    private volatile Estimate estimate;
+
+    /**
+     * Creates a new ClockSync without any exchanges.
+     */
+    ClockSync() {
+        localTimes = new long[WINDOW];
+        offsets = new long[WINDOW];
+        roundTrips = new long[WINDOW];
+        uplink = new LatencyHistogram();
+        downlink = new LatencyHistogram();
+    }
+
+    /**
+     *
+     * @return The current time of the client's clock, in microseconds.
+     */
+    public static long localMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime());
+    }
+
+    /**
+     * Records an exchange and updates the estimate.
+     * @param t1 The time the client sent the request, on the client's clock.
+     * @param t2 The time the car received the request, on the car's clock.
+     * @param t3 The time the car sent the answer, on the car's clock.
+     * @param t4 The time the client received the answer, on the client's clock.
+     */
+    synchronized void sample(long t1, long t2, long t3, long t4) {
+        long roundTrip = (t4 - t1) - (t3 - t2);
+        if (roundTrip < 0) {
+            // The car's answer does not belong to this client's clock
+            return;
+        }
+        long offset = ((t2 - t1) + (t3 - t4)) / 2;
+        int slot = count % WINDOW;
+        // The offset is measured halfway through the exchange
+        localTimes[slot] = t1 + (t4 - t1) / 2;
+        offsets[slot] = offset;
+        roundTrips[slot] = roundTrip;
+        count++;
+
+        estimate = fit();
+        // One-way latencies of this exchange, on the estimated common time base
+        uplink.record(TimeUnit.MICROSECONDS.toNanos(t2 - estimate.toCarTime(t1)));
+        downlink.record(TimeUnit.MICROSECONDS.toNanos(estimate.toCarTime(t4) - t3));
+    }
+
+    private Estimate fit() {
+        int size = Math.min(count, WINDOW);
+        long shortest = Long.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            shortest = Math.min(shortest, roundTrips[i]);
+        }
+        long limit = (long) (shortest * ROUND_TRIP_TOLERANCE) + 1;
+
+        // Least squares through the accurate exchanges, relative to the latest of them to keep the sums small
+        int latest = -1;
+        for (int i = 0; i < size; i++) {
+            if (roundTrips[i] <= limit && (latest < 0 || localTimes[i] > localTimes[latest])) {
+                latest = i;
+            }
+        }
+        int n = 0;
+        long earliest = localTimes[latest];
+        double sumX = 0;
+        double sumY = 0;
+        double sumXX = 0;
+        double sumXY = 0;
+        for (int i = 0; i < size; i++) {
+            if (roundTrips[i] > limit) {
+                continue;
+            }
+            double x = localTimes[i] - localTimes[latest];
+            double y = offsets[i] - offsets[latest];
+            n++;
+            earliest = Math.min(earliest, localTimes[i]);
+            sumX += x;
+            sumY += y;
+            sumXX += x * x;
+            sumXY += x * y;
+        }
+        double denominator = n * sumXX - sumX * sumX;
+        double drift = 0;
+        if (localTimes[latest] - earliest >= MIN_DRIFT_SPAN && denominator != 0) {
+            drift = Math.max(-MAX_DRIFT, Math.min(MAX_DRIFT, (n * sumXY - sumX * sumY) / denominator));
+        }
+        double intercept = (sumY - drift * sumX) / n;
+        return new Estimate(localTimes[latest], offsets[latest] + Math.round(intercept), drift, shortest);
+    }
+
+    /**
+     *
+     * @return Whether at least one exchange was answered, so that times can be converted to the car's clock.
+     */
+    public boolean isSynchronised() {
+        return estimate != null;
+    }
+
+    /**
+     * Converts a time of the client's clock to the car's clock.
+     * @param localMicros The time on the client's clock, in microseconds.
+     * @return The same moment on the car's clock, or localMicros if no exchange was answered yet.
+     */
+    public long toCarTime(long localMicros) {
+        Estimate estimate = this.estimate;
+        return estimate == null ? localMicros : estimate.toCarTime(localMicros);
+    }
+
+    /**
+     *
+     * @return How far the car's clock is ahead of the client's now, in microseconds, or 0 if not synchronised.
+     */
+    public long getOffset() {
+        long now = localMicros();
+        return toCarTime(now) - now;
+    }
+
+    /**
+     *
+     * @return How fast the car's clock runs relative to the client's, in parts per million, or 0 if unknown.
+     */
+    public double getDrift() {
+        Estimate estimate = this.estimate;
+        return estimate == null ? 0 : estimate.drift * 1e6;
+    }
+
+    /**
+     *
+     * @return The shortest recent round trip, in microseconds, which bounds the error of the offset at half of it; or
+     * -1 if not synchronised.
+     */
+    public long getRoundTrip() {
+        Estimate estimate = this.estimate;
+        return estimate == null ? -1 : estimate.roundTrip;
+    }
+
+    /**
+     *
+     * @return The number of exchanges recorded.
+     */
+    public synchronized int getSampleCount() {
+        return count;
+    }
+
+    /**
+     *
+     * @return The offset, drift and round trip, and the distributions of the one-way latencies of the exchanges from
+     * the client to the car and back.
+     */
+    public synchronized String summary() {
+        return String.format("offset %d us, drift %.1f ppm, round trip %d us over %d exchanges%n"
+                + "uplink:   %s%ndownlink: %s", getOffset(), getDrift(), getRoundTrip(), count, uplink.summary(),
+                downlink.summary());
+    }
+
+    /**
+     * A fitted line of the car's clock against the client's.
+     */
+    private static class Estimate {
+        private final long localTime;
+        private final long offset;
+        private final double drift;
+        private final long roundTrip;
+
+        Estimate(long localTime, long offset, double drift, long roundTrip) {
+            this.localTime = localTime;
+            this.offset = offset;
+            this.drift = drift;
+            this.roundTrip = roundTrip;
+        }
+
+        long toCarTime(long localMicros) {
+            return localMicros + offset + Math.round(drift * (localMicros - localTime));
+        }
+    }
+}
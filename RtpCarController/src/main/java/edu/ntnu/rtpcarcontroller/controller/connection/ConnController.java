@@ -1,27 +1,36 @@
 package edu.ntnu.rtpcarcontroller.controller.connection;
 
+import edu.ntnu.rtpcarcontroller.controller.connection.jfr.ConnectEvent;
+import edu.ntnu.rtpcarcontroller.controller.connection.transport.TransportFactory;
+import edu.ntnu.rtpcarcontroller.controller.observer.ObserverHub;
 import edu.ntnu.rtpcarcontroller.event.ConnectionLossEvent;
 import edu.ntnu.rtpcarcontroller.exception.NetworkConnectionException;
 import edu.ntnu.rtpcarcontroller.model.Car;
 
-import java.io.*;
-import java.net.*;
-import java.util.ArrayList;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * A controller that represents one connection to a remote car ('server') and handles all communication with that car.
- * It observes a Car instance and is responsible for communicating any throttling and steering changes to the remote
- * server.
+ * The application's connection to its remote car ('server'). It observes the Car instance driven by the user
+ * interface and is responsible for communicating any throttling and steering changes to the remote server.
  *
- * ConnController makes active use of ConnInputController and ConnOutputController for handling the actual input and
- * output endpoints.
+ * ConnController is a facade over the CarConnection to the car being driven, which handles the actual communication,
+ * and owns the ObserverHub through which the states sent to the car are shared with observers.
+ *
+ * Connecting to a car that the StandbyPool has a standby connection to hands the Car over to that connection instead
+ * of connecting anew; the connection to the car driven before becomes a standby connection in turn. If
+ * rtpcarcontroller.standby.failover is set, losing the connection to the driven car hands the Car over to a standby
+ * connection too, and the connection loss handlers are only informed if there is none.
  */
 public enum ConnController {
     INSTANCE;
-    private static final int HANDSHAKE_TIMEOUT = 5000;
     private static final Logger logger = Logger.getLogger(ConnController.class.getName());
 
     /**
@@ -37,7 +46,7 @@ public enum ConnController {
         } catch (UnknownHostException e) {
             result = false;
         }
-        logger.log(Level.FINE, String.format("Validity of server address %s was considered %b", value, result));
+        logger.log(Level.FINE, "Validity of server address {0} was considered {1}", new Object[] { value, result });
         return result;
     }
 
@@ -52,55 +61,60 @@ public enum ConnController {
         );
     }
 
-
     private final List<ConnectionLossEvent.Handler> connectionLossListeners;
-    private Car car;
-    private Socket socket;
-    private ConnInputController inputController;
-    private ConnOutputController outputController;
-    private boolean active;
-    private boolean validated;
+    private final ObserverHub observerHub;
+    private final StandbyPool standbyPool;
+    private final ReentrantLock lock;
+    private final boolean failover;
+    private volatile CarConnection connection;
+    private volatile InetSocketAddress address;
 
     ConnController() {
-        connectionLossListeners = new ArrayList<>();
-        active = false;
+        connectionLossListeners = new CopyOnWriteArrayList<>();
+        observerHub = new ObserverHub();
+        lock = new ReentrantLock();
+        failover = Boolean.getBoolean("rtpcarcontroller.standby.failover");
+        connection = new CarConnection();
+        connection.addConnectionLossHandler(this::lostConnection);
+        connection.setObserverHub(observerHub);
+        standbyPool = new StandbyPool(this::newConnection);
     }
 
     /**
-     *
-     * @return Whether this ConnController currently has an active connection.
+     * Creates a connection with the settings of the current one.
      */
-    public synchronized boolean isConnectionActive() {
-        return active;
+    private CarConnection newConnection() {
+        CarConnection current = connection;
+        CarConnection connection = new CarConnection();
+        connection.setSocketProfile(current.getSocketProfile());
+        connection.setTransportFactory(current.getTransportFactory());
+        connection.setThreadMode(current.getThreadMode());
+        connection.addConnectionLossHandler(this::lostConnection);
+        return connection;
     }
 
     /**
      *
-     * @param active Whether this ConController currently has an active connection.
+     * @return The connection this ConnController is a facade for, which changes when another car is driven.
      */
-    private synchronized void setConnectionActive(boolean active) {
-        this.active = active;
-        notifyAll();
+    public CarConnection getConnection() {
+        return connection;
     }
 
     /**
      *
-     * @return True if this ConController currently has a validated connection (a connection to a server with
-     * which the handshake was successful).
+     * @return The pool of standby connections to recently used cars.
      */
-    private synchronized boolean isConnectionValidated() {
-        return validated;
+    public StandbyPool getStandbyPool() {
+        return standbyPool;
     }
 
     /**
      *
-     * @param validated Whether this ConController currently has an active connection to a server with which the
-     *                  handshake was successful.
+     * @return Whether this ConnController currently has an active connection.
      */
-    private synchronized void setConnectionValidated(boolean validated) {
-        logger.log(Level.FINE, String.format("Setting status of connection validation to %b", validated));
-        this.validated = validated;
-        notifyAll();
+    public boolean isConnectionActive() {
+        return connection.isConnectionActive();
     }
 
     /**
@@ -108,142 +122,196 @@ public enum ConnController {
      * @return The Car associated with this ConnController.
      */
     public Car getCar() {
-        return car;
+        return connection.getCar();
     }
 
     /**
-     * Registers a Car to this ConnController so that this controller is informed when the state of the car changes.
-     * @param car The Car to for this ConController to observe.
+     *
+     * @return The hub through which observers receive a live copy of the states sent to the car.
      */
-    public void setCar(Car car) {
-        logger.log(Level.FINE, "Registering a Car object to ConnController");
-        this.car = car;
-        car.addSteerChangeHandler(event -> outputController.steer(event.getNewAngle()));
-        car.addThrottleChangeHandler(event -> outputController.throttle(event.getNewDirection()));
+    public ObserverHub getObserverHub() {
+        return observerHub;
     }
 
     /**
-     * Connects to the server at the given address and port and validates whether it is the intended type of server.
-     * @param ipAddress The IP address of the server to connect to.
-     * @param port The port of the server to connect to.
-     * @throws NetworkConnectionException If something went wrong while trying to connect to the server or the
-     * validation failed.
+     *
+     * @return The socket options and write deadline used for new connections.
      */
-    public synchronized void connect(String ipAddress, String port) throws NetworkConnectionException {
-        logger.log(Level.INFO, String.format("Trying to connect to server at %s:%s", ipAddress, port));
-        try {
-            InetAddress serverAddress = InetAddress.getByName(ipAddress);
-            SocketAddress socketAddress = new InetSocketAddress(serverAddress, Integer.parseInt(port));
-            socket = new Socket();
-            socket.connect(socketAddress);
-            logger.log(Level.INFO, String.format("Successfully connected to server at %s:%s", ipAddress, port));
+    public SocketProfile getSocketProfile() {
+        return connection.getSocketProfile();
+    }
 
-            initialiseIOControllers();
-            setConnectionActive(true);
+    /**
+     * Sets the socket options and write deadline to use for new connections.
+     * @param socketProfile The profile to use from the next call to connect on.
+     */
+    public void setSocketProfile(SocketProfile socketProfile) {
+        connection.setSocketProfile(socketProfile);
+    }
 
-            logger.log(Level.FINE, "Trying to shake hands with server");
-            sendHandshake();
+    /**
+     *
+     * @return The priority with which the connection competes for the car with other controllers connected to it.
+     */
+    public int getPriority() {
+        return connection.getPriority();
+    }
 
-            // Wait until connection with server is validated through a handshake; disconnect and throw error if it
-            // takes too long
-            while (!isConnectionValidated()) {
-                try {
-                    logger.log(Level.INFO, "Waiting for server to validate that it is an RTP Car Server");
-                    wait(HANDSHAKE_TIMEOUT);
+    /**
+     * Sets the priority with which the connection competes for the car with other controllers connected to it, such
+     * as an instructor's, and announces it at once if connected.
+     * @param priority The priority; not negative.
+     * @see CarConnection#setPriority(int)
+     */
+    public void setPriority(int priority) {
+        connection.setPriority(priority);
+    }
 
-                    if (!isConnectionValidated()) {
-                        logger.log(Level.WARNING, "Timeout while waiting for server-part of handshake; disconnecting.");
-                        disconnect();
-                        throw new NetworkConnectionException("Timeout while waiting for handshake");
-                    }
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
-        } catch (SocketTimeoutException e) {
-            throw new NetworkConnectionException(String.format("Timeout while trying to connect to %s:%s", ipAddress, port));
-        } catch (UnknownHostException e) {
-            throw new NetworkConnectionException("Exception while trying to get host", e);
-        } catch (SocketException e) {
-            throw new NetworkConnectionException("Exception while trying to set the socket timeout duration", e);
-        } catch (IOException e) {
-            throw new NetworkConnectionException("Exception while trying to set up a socket connection and streams", e);
-        }
+    /**
+     *
+     * @return The factory creating the transport for new connections.
+     */
+    public TransportFactory getTransportFactory() {
+        return connection.getTransportFactory();
     }
 
     /**
-     * Initialises the controllers handling the in- and output streams from/to the car.
-     * @throws IOException If something went wrong while trying to set up the in- and output controllers.
+     * Sets the factory creating the transport for new connections, for instance TransportType.LOOPBACK to talk to a
+     * car in the same process.
+     * @param transportFactory The factory to use from the next call to connect on.
      */
-    private void initialiseIOControllers() throws IOException {
-        logger.log(Level.FINE, "Initialising input and output stream controllers");
-        inputController = new ConnInputController(this,
-                new BufferedReader(new InputStreamReader(socket.getInputStream())));
-        outputController = new ConnOutputController(this,
-                new BufferedWriter(new OutputStreamWriter(socket.getOutputStream())));
+    public void setTransportFactory(TransportFactory transportFactory) {
+        connection.setTransportFactory(transportFactory);
     }
 
     /**
-     * Sets the Car to an active state and starts the heartbeat service.
+     * Registers a Car to this ConnController so that this controller is informed when the state of the car changes.
+     * @param car The Car to for this ConController to observe.
      */
-    synchronized void validateConnection() {
-        logger.log(Level.INFO, "Server successfully validated itself");
-        setConnectionValidated(true);
-        car.reset();
-        startHeartbeat();
+    public void setCar(Car car) {
+        connection.setCar(car);
     }
 
     /**
-     * Deactivates the input handler, output handler and socket connection and sends a ConnectionLossEvent to the
-     * respective listeners.
+     * Connects to the server at the given address and port and validates whether it is the intended type of server.
+     * If the StandbyPool has a standby connection to the server, the Car is handed over to it instead. The call is
+     * recorded as a JFR ConnectEvent.
+     * @param ipAddress The IP address of the server to connect to.
+     * @param port The port of the server to connect to.
+     * @throws NetworkConnectionException If something went wrong while trying to connect to the server or the
+     * validation failed.
      */
-    synchronized void lostConnection() {
-        logger.log(Level.INFO, "Lost connection to the server");
-        if (isConnectionActive()) {
-            ConnectionLossEvent event = new ConnectionLossEvent(this);
-            for (ConnectionLossEvent.Handler listener : connectionLossListeners) {
-                listener.handle(event);
+    public void connect(String ipAddress, String port) throws NetworkConnectionException {
+        ConnectEvent event = new ConnectEvent();
+        event.begin();
+        try {
+            connect(ipAddress, port, event);
+            event.succeeded = true;
+        } catch (NetworkConnectionException e) {
+            event.failure = e.getMessage();
+            throw e;
+        } finally {
+            if (event.shouldCommit()) {
+                event.address = ipAddress + ":" + port;
+                event.commit();
+            }
+        }
+    }
+
+    private void connect(String ipAddress, String port, ConnectEvent event) throws NetworkConnectionException {
+        InetSocketAddress address;
+        try {
+            address = new InetSocketAddress(InetAddress.getByName(ipAddress), Integer.parseInt(port));
+        } catch (UnknownHostException e) {
+            throw new NetworkConnectionException("Exception while trying to get host", e);
+        }
+
+        if (address.equals(this.address) && connection.isConnectionActive()) {
+            logger.log(Level.FINE, "Already connected to {0}", address);
+            return;
+        }
+        CarConnection next = standbyPool.take(address);
+        if (next != null) {
+            logger.log(Level.INFO, "Handing the car over to the standby connection to {0}", address);
+            event.handoff = true;
+        } else {
+            // Connect with an idle Car, so that the car driven until now is driven until the handshake succeeded
+            next = connection.isConnectionActive() ? newConnection() : connection;
+            if (next != connection || next.getCar() == null) {
+                next.setCar(new Car());
             }
-            disconnect();
+            next.connect(address);
         }
+        handOver(next, address);
     }
 
     /**
-     * Sets the Car to an inactive state, stops the heartbeat service and closes the socket connection if not yet closed.
+     * Makes a connection the one driving the Car. The connection driven before is offered to the StandbyPool with an
+     * idle Car, which sets its car to neutral. The priority moves with the Car, so that a standby connection never
+     * competes for its car with the priority of the user.
      */
-    public void disconnect() {
-        logger.log(Level.INFO, "Handling server disconnect");
-        if (isConnectionActive()) {
-            setConnectionActive(false);
-
-            if (!socket.isClosed()) {
-                try {
-                    // Close the output and input controller (and associated streams), which will also close the socket
-                    outputController.close();
-                    inputController.close();
-                } catch (IOException ex) {
-                    // TODO: Implement edu.ntnu.rtpcarcontroller.exception handling for ConnController disconnect mechanism.
-                    ex.printStackTrace();
+    private void handOver(CarConnection next, InetSocketAddress address) {
+        lock.lock();
+        try {
+            CarConnection previous = connection;
+            InetSocketAddress previousAddress = this.address;
+            Car car = previous.getCar();
+            if (previous != next) {
+                previous.setObserverHub(null);
+                if (car != null) {
+                    previous.setCar(new Car());
                 }
+                next.setPriority(previous.getPriority());
+                previous.setPriority(0);
             }
+            next.setObserverHub(observerHub);
+            if (car != null && next.getCar() != car) {
+                next.setCar(car);
+                car.reset();
+                car.getStatePredictor().reset();
+            }
+            connection = next;
+            this.address = address;
+            if (previous != next && previousAddress != null && previous.isConnectionActive()) {
+                standbyPool.offer(previousAddress, previous);
+            }
+        } finally {
+            lock.unlock();
         }
+        standbyPool.used(address);
     }
 
     /**
-     * Sends a handshake message to the server to establish whether a connection with the right type of server was set
-     * up.
+     * Handles the loss of a connection: a lost standby connection leaves the pool, and a lost driven connection is
+     * replaced by a standby connection if failover is enabled, or reported to the connection loss handlers.
+     *
+     * Runs while the lost connection holds its lock, so the handover itself runs on a thread of its own.
      */
-    private void sendHandshake() throws NetworkConnectionException {
-        logger.log(Level.FINE, "Sending handshake to server");
-        outputController.handshake();
+    private void lostConnection(ConnectionLossEvent event) {
+        CarConnection lost = (CarConnection) event.getSource();
+        if (lost != connection) {
+            standbyPool.remove(lost);
+            return;
+        }
+        if (failover) {
+            Map.Entry<InetSocketAddress, CarConnection> standby = standbyPool.takeAny();
+            if (standby != null) {
+                logger.log(Level.WARNING, "Lost connection to the car; failing over to {0}", standby.getKey());
+                ThreadMode.PLATFORM.start("Failover", () -> handOver(standby.getValue(), standby.getKey()));
+                return;
+            }
+        }
+        for (ConnectionLossEvent.Handler listener : connectionLossListeners) {
+            listener.handle(event);
+        }
     }
 
     /**
-     * Starts the heartbeat-part of the protocol (timed messages are sent to the RC Car).
+     * Sets the Car to an inactive state, stops the heartbeat service and closes the transport if not yet closed.
+     * Standby connections stay open; see StandbyPool.close.
      */
-    private void startHeartbeat() {
-        logger.log(Level.INFO, "Starting heartbeat-part of client–server protocol");
-        new Thread(outputController).start();
+    public void disconnect() {
+        connection.disconnect();
     }
 
     /**
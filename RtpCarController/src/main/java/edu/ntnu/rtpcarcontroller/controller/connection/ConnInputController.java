@@ -1,33 +1,46 @@
 package edu.ntnu.rtpcarcontroller.controller.connection;
 
+import edu.ntnu.rtpcarcontroller.controller.connection.jfr.InputParseEvent;
+import edu.ntnu.rtpcarcontroller.controller.connection.transport.Transport;
 import edu.ntnu.rtpcarcontroller.util.Protocol;
+import edu.ntnu.rtpcarcontroller.util.Timeout;
+import edu.ntnu.rtpcarcontroller.util.TimerService;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * A controller used by ConnController that acts as the first entry point for all input from the remote server.
+ *
+ * The controller runs on a thread of the connection's ThreadMode, started by the connection.
+ *
+ * The car echoes every frame and the client sends at least one frame per heartbeat period, so a car that stays
+ * silent for several periods is gone even if the connection itself looks fine. With the system property
+ * rtpcarcontroller.silenceTimeout set to a number of milliseconds (0, no deadline, by default), a watchdog on the
+ * shared timers closes the transport once nothing was received for that long, and the connection is lost.
  */
-class ConnInputController extends Thread {
+class ConnInputController implements Runnable {
     private static final Logger logger = Logger.getLogger(ConnInputController.class.getName());
 
-    private final ConnController connection;
-    private final BufferedReader reader;
-    private boolean active;
+    private final CarConnection connection;
+    private final Transport transport;
+    private final long silenceNanos;
+    private volatile boolean active;
+    private volatile long lastReceived;
+    private volatile Timeout watchdog;
 
     /**
-     * Creates a new ConnInputController that controls the input for the given ConController using the given reader.
+     * Creates a new ConnInputController that controls the input for the given ConController using the given transport.
      * @param connection The main controller for which this ConnInputController handles the input.
-     * @param reader The reader this controller should handle input with.
+     * @param transport The transport this controller should receive input from.
      */
-    ConnInputController(ConnController connection, BufferedReader reader) {
-        setName("Connection input controller");
+    ConnInputController(CarConnection connection, Transport transport) {
         this.connection = connection;
-        this.reader = reader;
+        this.transport = transport;
+        silenceNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong("rtpcarcontroller.silenceTimeout", 0));
         active = true;
-        start();
     }
 
     /**
@@ -35,10 +48,6 @@ class ConnInputController extends Thread {
      * @param input The input string to parse.
      */
     private void parseInput(String input) {
-        if (input == null || input.split(" ").length > 2) {
-            return;
-        }
-
         switch (input) {
             case Protocol.HANDSHAKE:
                 connection.validateConnection();
@@ -47,33 +56,126 @@ class ConnInputController extends Thread {
                 active = false;
                 connection.disconnect();
                 break;
+            case Protocol.REJECTED:
+                connection.controlRejected();
+                break;
             default:
+                if (input.startsWith(Protocol.SYNC)) {
+                    syncReceived(input);
+                } else if (Protocol.isStateMessage(input)) {
+                    // The server echoes every state message it applied, which acknowledges that state
+                    connection.stateAcknowledged(Protocol.parseThrottle(input), Protocol.parseSteer(input));
+                }
                 break;
         }
     }
 
     /**
-     * Closes this ConnInputController's associated reader (and thus input stream).
+     * @param input A received message.
+     * @return The type of the message, as recorded by InputParseEvent.
+     */
+    private static String messageType(String input) {
+        switch (input) {
+            case Protocol.HANDSHAKE:
+                return "HANDSHAKE";
+            case Protocol.CLOSE_CONNECTION:
+                return "CLOSE";
+            case Protocol.REJECTED:
+                return "REJECTED";
+            default:
+                if (input.startsWith(Protocol.SYNC)) {
+                    return "SYNC";
+                }
+                return Protocol.isStateMessage(input) ? "STATE" : "OTHER";
+        }
+    }
+
+    /**
+     * Adds the car's answer to a clock synchronisation request to the connection's clock estimate. A car that echoes
+     * the request instead of answering it does not synchronise clocks, and the echo is ignored.
+     * @param input The received message, starting with Protocol.SYNC.
+     */
+    private void syncReceived(String input) {
+        long receiveTime = ClockSync.localMicros();
+        long[] times = Protocol.parseSyncReply(input);
+        if (times != null) {
+            connection.getClockSync().sample(times[0], times[1], times[2], receiveTime);
+        }
+    }
+
+    /**
+     * Stops handling input; a receive that is in progress ends when the transport is closed.
      */
     void close() {
-        logger.log(Level.FINE, "Closing input stream reader");
+        logger.log(Level.FINE, "Closing input controller");
+        active = false;
+        Timeout watchdog = this.watchdog;
+        if (watchdog != null) {
+            watchdog.cancel();
+        }
+    }
+
+    private void watch(long delayNanos) {
+        watchdog = TimerService.INSTANCE.schedule(connection, Math.max(1, TimeUnit.NANOSECONDS.toMillis(delayNanos)),
+                this::checkSilence);
+    }
+
+    /**
+     * Closes the transport if nothing was received for longer than the silence timeout, so that the pending receive
+     * fails and the connection is lost; otherwise looks again when the timeout would run out. Runs on the shared
+     * timers.
+     */
+    private void checkSilence() {
+        if (!active) {
+            return;
+        }
+        long silence = System.nanoTime() - lastReceived;
+        if (silence < silenceNanos) {
+            watch(silenceNanos - silence);
+            return;
+        }
+        logger.log(Level.WARNING, "Nothing received from the server for {0} ms; closing the connection",
+                TimeUnit.NANOSECONDS.toMillis(silence));
         try {
-            reader.close();
+            transport.close();
         } catch (IOException e) {
-            logger.log(Level.SEVERE, e.getMessage(), e);
+            logger.log(Level.FINE, e.getMessage(), e);
         }
     }
 
     @Override
     public void run() {
         String input;
+        lastReceived = System.nanoTime();
+        if (silenceNanos > 0) {
+            watch(silenceNanos);
+        }
         while (active) {
             try {
-                input = reader.readLine();
+                input = transport.receive();
+                if (silenceNanos > 0) {
+                    lastReceived = System.nanoTime();
+                }
+                if (input == null) {
+                    // The server closed the connection
+                    if (active) {
+                        connection.lostConnection();
+                    }
+                    break;
+                }
+                InputParseEvent event = new InputParseEvent();
+                event.begin();
                 parseInput(input);
+                if (event.shouldCommit()) {
+                    event.messageType = messageType(input);
+                    event.bytes = input.length();
+                    event.commit();
+                }
             } catch (IOException e) {
-                logger.log(Level.WARNING, e.getMessage(), e);
-                connection.lostConnection();
+                if (active) {
+                    logger.log(Level.WARNING, e.getMessage(), e);
+                    connection.lostConnection();
+                }
                 break;
             }
         }
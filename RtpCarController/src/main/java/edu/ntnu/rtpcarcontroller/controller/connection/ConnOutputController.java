@@ -1,39 +1,97 @@
 package edu.ntnu.rtpcarcontroller.controller.connection;
 
+import edu.ntnu.rtpcarcontroller.controller.connection.jfr.HeartbeatEvent;
+import edu.ntnu.rtpcarcontroller.controller.connection.jfr.StateFrameEvent;
+import edu.ntnu.rtpcarcontroller.controller.connection.transport.Transport;
 import edu.ntnu.rtpcarcontroller.exception.NetworkConnectionException;
 import edu.ntnu.rtpcarcontroller.model.Throttle;
+import edu.ntnu.rtpcarcontroller.util.FrameTracer;
 import edu.ntnu.rtpcarcontroller.util.Protocol;
+import edu.ntnu.rtpcarcontroller.util.Timeout;
+import edu.ntnu.rtpcarcontroller.util.TimerService;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * A controller used by ConnController that acts as the final exit point for all output to the remote server.
+ *
+ * The controller has no thread of its own. A state change, or a heartbeat that finds no state sent for a heartbeat
+ * period, schedules a send on the connection's sender executor; at most one send is scheduled at a time, and it sends
+ * the latest state. Heartbeats are timers on the shared TimerService.
+ *
+ * State changes are handed over through a StateMailbox, so the thread changing the car's state never waits for the
+ * send lock, which a send holds while the transport is congested. The send lock is a ReentrantLock rather than a
+ * monitor, so that a virtual thread blocked in a send does not pin its carrier thread.
+ *
+ * Other frames, such as broadcasts to a fleet, are queued and go out with the next send: every send hands all queued
+ * frames and the latest state to the transport at once, which stream transports write with a single system call.
+ *
+ * After the handshake, the controller sends a burst of clock synchronisation requests, and one request every
+ * SYNC_PERIOD from then on if the car answered. Once the connection's ClockSync is synchronised, every state frame is
+ * tagged with its send time on the car's clock, so that the car can measure the one-way latency of each command and
+ * reject commands that arrive too late.
+ *
+ * Every send of a state frame and every heartbeat wakeup is recorded as a JFR event when a recording enables them;
+ * the events are filled in only if they are committed.
  */
-class ConnOutputController extends Thread {
+class ConnOutputController {
     private static final Logger logger = Logger.getLogger(ConnOutputController.class.getName());
+    private static final FrameTracer tracer = FrameTracer.INSTANCE;
+    // Bounds the frames gathered into one write; the rest follow in the next send
+    private static final int MAX_BATCH = 64;
+    private static final int SYNC_BURST = 8;
+    private static final long SYNC_BURST_INTERVAL = 25;
+    private static final long SYNC_PERIOD = 10000;
 
-    private final ConnController connection;
-    private final BufferedWriter writer;
-    private Throttle throttle;
-    private int steer;
-    private boolean stateChanged;
-    private boolean heartbeat;
+    private final CarConnection connection;
+    private final Transport transport;
+    private final Executor sender;
+    private final AtomicBoolean sendScheduled;
+    private final ReentrantLock sendLock;
+    private final Queue<ByteBuffer> queuedFrames;
+    private final ByteBuffer[] batch;
+    private final StateMailbox mailbox;
+    private final ClockSync clockSync;
+    // Holds the tagged state frame of the current send; only used under the send lock
+    private final ByteBuffer timedState;
+    private volatile boolean heartbeat;
+    private volatile boolean heartbeatDue;
+    private volatile long lastSent;
+    private volatile long heartbeatDeadline;
+    private volatile Timeout heartbeatTimeout;
+    private volatile Timeout syncTimeout;
+    private int syncRequests;
+    // Only used under the send lock
+    private long stateSequence;
 
     /**
      * Creates a new ConnOutputController that handles the outgoing data to the car.
      * @param connection The controller handling the general connection to the car.
-     * @param writer The output stream writer to the car.
+     * @param transport The transport to the car.
+     * @param sender The executor that runs the sends, which may block while the transport is congested.
      */
-    ConnOutputController(ConnController connection, BufferedWriter writer) {
+    ConnOutputController(CarConnection connection, Transport transport, Executor sender) {
         this.connection = connection;
-        this.writer = writer;
-        stateChanged = false;
+        this.transport = transport;
+        this.sender = sender;
+        sendScheduled = new AtomicBoolean();
+        sendLock = new ReentrantLock();
+        queuedFrames = new ConcurrentLinkedQueue<>();
+        batch = new ByteBuffer[MAX_BATCH];
+        mailbox = new StateMailbox(Throttle.NEUTRAL, 90);
+        clockSync = connection.getClockSync();
+        timedState = ByteBuffer.allocate(48);
         heartbeat = false;
-        throttle(Throttle.NEUTRAL);
-        steer(90);
     }
 
     /**
@@ -42,14 +100,12 @@ class ConnOutputController extends Thread {
      * @throws NetworkConnectionException If sending the message resulted in an error.
      */
     private void write(String message) throws NetworkConnectionException {
-        logger.log(Level.FINER, "Sending message to server: " + message);
+        logger.log(Level.FINER, "Sending message to server: {0}", message);
         try {
-            writer.write(message);
-            writer.newLine();
-            writer.flush();
+            transport.send(message);
         } catch (IOException e) {
             logger.log(Level.WARNING, e.getMessage(), e);
-            throw new NetworkConnectionException("Error while trying to write to the output stream", e);
+            throw new NetworkConnectionException("Error while trying to write to the transport", e);
         }
     }
 
@@ -57,70 +113,248 @@ class ConnOutputController extends Thread {
      * Sends a handshake command to the remote car to establish whether the connection is valid.
      * @throws NetworkConnectionException If sending the command resulted in an error.
      */
-    synchronized void handshake() throws NetworkConnectionException {
+    void handshake() throws NetworkConnectionException {
         logger.log(Level.FINE, "Handshaking server");
-        write(Protocol.HANDSHAKE);
+        sendLock.lock();
+        try {
+            write(Protocol.HANDSHAKE);
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /**
+     * Announces the connection's priority to the car, followed in the same write by the current state, so that a
+     * priority that outranks the controller driving the car takes it over with this very frame. Before the heartbeat
+     * service starts, the announcement waits for the first send.
+     * @param priority The priority to announce; not negative.
+     */
+    void priority(int priority) {
+        heartbeatDue = true;
+        queue(Protocol.encodeFrame(Protocol.getPriorityMessage(priority)));
+    }
+
+    /**
+     * Starts the heartbeat service and the clock synchronisation, and sends the current state right away.
+     */
+    void start() {
+        heartbeat = true;
+        heartbeatDue = true;
+        scheduleSend();
+        scheduleHeartbeat(Protocol.HEARTBEAT_PERIOD);
+        scheduleSync(0);
     }
 
     /**
-     * Closes this controller's associated OutputStream.
-     * @throws IOException If something went wrong while closing the OutputStream.
+     * Stops the heartbeat service; a write that is in progress ends when the transport is closed.
      */
-    void close() throws IOException {
-        logger.log(Level.FINE, "Closing output stream writer");
+    void close() {
+        logger.log(Level.FINE, "Closing output controller");
         heartbeat = false;
-        writer.close();
+        Timeout timeout = heartbeatTimeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        timeout = syncTimeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    private void scheduleHeartbeat(long delayMillis) {
+        heartbeatDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        heartbeatTimeout = TimerService.INSTANCE.schedule(connection, delayMillis, this::heartbeat);
     }
 
     /**
-     * Informs the remote car to throttle in the given direction.
-     * @param dir The direction to throttle in, either neutral, forward, or backward.
+     * Runs on the timer shard, so it must not take the send lock, which a blocked write may hold. It schedules a send
+     * if no state was sent for a heartbeat period, and sets the next heartbeat a period after the last send.
      */
-    synchronized void throttle(Throttle dir) {
-        throttle = dir;
-        stateChanged = true;
-        notifyAll();
+    private void heartbeat() {
+        if (!heartbeat) {
+            return;
+        }
+        long now = System.nanoTime();
+        HeartbeatEvent event = new HeartbeatEvent();
+        long sinceLastSent = TimeUnit.NANOSECONDS.toMillis(now - lastSent);
+        boolean due = sinceLastSent >= Protocol.HEARTBEAT_PERIOD;
+        if (event.shouldCommit()) {
+            event.lateness = now - heartbeatDeadline;
+            // A send finishing meanwhile may have set lastSent after now
+            event.sinceLastSent = Math.max(0, now - lastSent);
+            event.sendScheduled = due;
+            event.commit();
+        }
+        if (due) {
+            heartbeatDue = true;
+            scheduleSend();
+            scheduleHeartbeat(Protocol.HEARTBEAT_PERIOD);
+        } else {
+            scheduleHeartbeat(Protocol.HEARTBEAT_PERIOD - sinceLastSent);
+        }
+    }
+
+    private void scheduleSync(long delayMillis) {
+        syncTimeout = TimerService.INSTANCE.schedule(connection, delayMillis, this::sync);
     }
 
     /**
-     * Informs the remote car to put the wheels at the given angle.
-     * @param angle The angle to put the wheels in, which must be between 0 and 180.
+     * Runs on the timer shard. Queues a clock synchronisation request stamped with the current time; the request goes
+     * out with the next send, which is scheduled at once. Stops after the initial burst if the car never answered.
      */
-    synchronized void steer(int angle) {
-        steer = angle;
-        stateChanged = true;
-        notifyAll();
+    private void sync() {
+        if (!heartbeat) {
+            return;
+        }
+        queue(Protocol.encodeFrame(Protocol.getSyncRequest(ClockSync.localMicros())));
+        syncRequests++;
+        if (syncRequests < SYNC_BURST) {
+            scheduleSync(SYNC_BURST_INTERVAL);
+        } else if (clockSync.isSynchronised()) {
+            scheduleSync(SYNC_PERIOD);
+        }
     }
 
     /**
-     * Sends a message to the remote car with the desired throttle and steering direction states.
+     * Hands a send to the sender executor, unless one is scheduled already; that one will send the latest state.
      */
-    private synchronized void sendStateUpdate() {
-        try {
-            String message = Protocol.getStateMessage(throttle, steer);
-            write(message);
-            stateChanged = false;
-        } catch (NetworkConnectionException e) {
-            connection.lostConnection();
+    private void scheduleSend() {
+        if (heartbeat && sendScheduled.compareAndSet(false, true)) {
+            sender.execute(this::flush);
         }
     }
 
-    @Override
-    public synchronized void run() {
-        heartbeat = true;
+    /**
+     * Queues a frame to go out with the next send, after the frames queued before it.
+     * @param frame The frame to send, encoded by Protocol.encodeFrame; its remaining bytes are consumed.
+     */
+    void queue(ByteBuffer frame) {
+        queuedFrames.add(frame);
+        scheduleSend();
+    }
 
-        while (heartbeat) {
-            // If the state has not changed, wait until change to send update, or until timeout expired
-            if (!stateChanged) {
-                try {
-                    wait(Protocol.HEARTBEAT_PERIOD);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
+    /**
+     * Sends the queued frames, followed by the latest state if it changed or a heartbeat is due, in a single write.
+     * Runs on the sender executor.
+     */
+    private void flush() {
+        sendScheduled.set(false);
+        if (!heartbeat) {
+            return;
+        }
+        sendLock.lock();
+        try {
+            int length = 0;
+            ByteBuffer frame;
+            while (length < MAX_BATCH - 1 && (frame = queuedFrames.poll()) != null) {
+                batch[length++] = frame;
+            }
+            long state = mailbox.take();
+            if (state == StateMailbox.EMPTY && heartbeatDue) {
+                state = mailbox.peek();
+            }
+            if (state != StateMailbox.EMPTY) {
+                Throttle throttle = StateMailbox.throttleOf(state);
+                int steer = StateMailbox.steerOf(state);
+                batch[length++] = clockSync.isSynchronised()
+                        ? Protocol.encodeTimedStateFrame(timedState, throttle, steer,
+                                clockSync.toCarTime(ClockSync.localMicros()))
+                        : Protocol.getStateFrame(throttle, steer);
+            }
+            if (length > 0) {
+                sendBatch(length, state);
+            }
+        } finally {
+            sendLock.unlock();
+        }
+        if (!queuedFrames.isEmpty()) {
+            scheduleSend();
+        }
+    }
+
+    /**
+     * Hands the gathered frames to the transport, and finishes the state frame among them, if any.
+     * @param length The number of gathered frames.
+     * @param state The state taken from the mailbox that is the last frame, or StateMailbox.EMPTY if no state is sent.
+     */
+    private void sendBatch(int length, long state) {
+        boolean sendState = state != StateMailbox.EMPTY;
+        int frame = sendState ? StateMailbox.frameOf(state) : FrameTracer.NO_FRAME;
+        tracer.stamp(frame, FrameTracer.DEQUEUED);
+        StateFrameEvent event = new StateFrameEvent();
+        int bytes = 0;
+        if (sendState && event.isEnabled()) {
+            // The transport consumes the frames, so count their bytes before the send
+            for (int i = 0; i < length; i++) {
+                bytes += batch[i].remaining();
             }
+            event.begin();
+        }
+        try {
+            transport.send(batch, 0, length);
+        } catch (IOException e) {
             if (heartbeat) {
-                sendStateUpdate();
+                logger.log(Level.WARNING, e.getMessage(), e);
+                connection.lostConnection();
+            } else {
+                // The connection was closed while the send was blocked
+                logger.log(Level.FINE, e.getMessage(), e);
             }
+            return;
+        } finally {
+            // Do not keep shared frames reachable from the batch
+            Arrays.fill(batch, 0, length, null);
         }
+        if (sendState) {
+            tracer.stamp(frame, FrameTracer.WRITTEN);
+            tracer.complete(frame);
+            lastSent = System.nanoTime();
+            boolean heartbeatFrame = heartbeatDue;
+            heartbeatDue = false;
+            long sequence = stateSequence++;
+            Throttle throttle = StateMailbox.throttleOf(state);
+            int steer = StateMailbox.steerOf(state);
+            if (event.shouldCommit()) {
+                event.sequence = sequence;
+                event.throttle = throttle.name();
+                event.angle = steer;
+                event.bytes = bytes;
+                event.frames = length;
+                event.timed = clockSync.isSynchronised();
+                event.heartbeat = heartbeatFrame;
+                event.commit();
+            }
+            if (logger.isLoggable(Level.FINER)) {
+                logger.log(Level.FINER, "Sent state frame {0,number,#}: {1} {2,number,#}",
+                        new Object[] { sequence, throttle, steer });
+            }
+            connection.stateSent(sequence, throttle, steer);
+        }
+    }
+
+    /**
+     * Informs the remote car to throttle in the given direction. Never blocks.
+     * @param dir The direction to throttle in, either neutral, forward, or backward.
+     */
+    void throttle(Throttle dir) {
+        mailbox.offerThrottle(dir);
+        scheduleSend();
+    }
+
+    /**
+     * Informs the remote car to put the wheels at the given angle. Never blocks.
+     * @param angle The angle to put the wheels in, which must be between 0 and 180.
+     */
+    void steer(int angle) {
+        mailbox.offerSteer(angle);
+        scheduleSend();
+    }
+
+    /**
+     *
+     * @return The mailbox through which state changes reach this controller.
+     */
+    StateMailbox getMailbox() {
+        return mailbox;
     }
 }
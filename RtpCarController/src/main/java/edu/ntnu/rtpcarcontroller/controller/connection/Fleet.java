@@ -0,0 +1,123 @@
+package edu.ntnu.rtpcarcontroller.controller.connection;
+
+import edu.ntnu.rtpcarcontroller.controller.connection.transport.TransportFactory;
+import edu.ntnu.rtpcarcontroller.exception.NetworkConnectionException;
+import edu.ntnu.rtpcarcontroller.model.Car;
+import edu.ntnu.rtpcarcontroller.model.Throttle;
+import edu.ntnu.rtpcarcontroller.util.Protocol;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A group of cars driven together, each over its own CarConnection with its own Car.
+ *
+ * A broadcast is encoded once: the states of all cars share the frames pre-encoded by Protocol, and a broadcast frame
+ * is handed to every connection as a read-only view of the same buffer. Each connection sends the frames queued for
+ * it together with its latest state in a single write.
+ */
+public class Fleet {
+    private static final Logger logger = Logger.getLogger(Fleet.class.getName());
+
+    private final List<CarConnection> connections;
+    private final SocketProfile socketProfile;
+    private final TransportFactory transportFactory;
+
+    /**
+     * Creates a new, empty Fleet.
+     * @param socketProfile The socket options and write deadline to use for the connections to the cars.
+     * @param transportFactory The factory creating the transports to the cars.
+     */
+    public Fleet(SocketProfile socketProfile, TransportFactory transportFactory) {
+        connections = new CopyOnWriteArrayList<>();
+        this.socketProfile = socketProfile;
+        this.transportFactory = transportFactory;
+    }
+
+    /**
+     * Connects to a car and adds it to this fleet.
+     * @param address The address of the car.
+     * @return The connection to the car.
+     * @throws NetworkConnectionException If the connection could not be set up or the car did not validate itself.
+     */
+    public CarConnection add(SocketAddress address) throws NetworkConnectionException {
+        CarConnection connection = new CarConnection();
+        connection.setSocketProfile(socketProfile);
+        connection.setTransportFactory(transportFactory);
+        connection.setCar(new Car());
+        connection.connect(address);
+        connection.addConnectionLossHandler(event -> connections.remove(connection));
+        connections.add(connection);
+        return connection;
+    }
+
+    /**
+     *
+     * @return The connections of this fleet that are still active.
+     */
+    public List<CarConnection> getConnections() {
+        return connections;
+    }
+
+    /**
+     *
+     * @return The number of cars in this fleet.
+     */
+    public int size() {
+        return connections.size();
+    }
+
+    /**
+     * Sets the state of every car in this fleet.
+     * @param throttle The direction to throttle in.
+     * @param steer The angle to steer to, between 0 and 180.
+     * @throws IllegalArgumentException If the angle is out of range, in which case no car is changed.
+     */
+    public void broadcast(Throttle throttle, int steer) {
+        Car.requireValidAngle(steer);
+        for (CarConnection connection : connections) {
+            Car car = connection.getCar();
+            car.throttle(throttle);
+            car.steer(steer);
+        }
+    }
+
+    /**
+     * Sends a frame to every car in this fleet, encoded once and shared by all connections.
+     * @param frame The frame to send, encoded by Protocol.encodeFrame.
+     * @return The number of connections the frame was queued on.
+     */
+    public int broadcast(ByteBuffer frame) {
+        int queued = 0;
+        for (CarConnection connection : connections) {
+            if (connection.send(frame)) {
+                queued++;
+            }
+        }
+        return queued;
+    }
+
+    /**
+     * Sends a message to every car in this fleet.
+     * @param message The message to send, without line terminator.
+     * @return The number of connections the message was queued on.
+     */
+    public int broadcast(String message) {
+        return broadcast(Protocol.encodeFrame(message));
+    }
+
+    /**
+     * Disconnects all cars and empties this fleet.
+     */
+    public void close() {
+        logger.log(Level.INFO, String.format("Disconnecting a fleet of %d cars", connections.size()));
+        for (CarConnection connection : connections) {
+            connection.disconnect();
+        }
+        connections.clear();
+    }
+}
@@ -0,0 +1,226 @@
+package edu.ntnu.rtpcarcontroller.controller.connection;
+
+import edu.ntnu.rtpcarcontroller.model.Throttle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records every state frame a connection sends and every state the car acknowledges to a frame log, a CSV file of
+ * its own per validated connection, for the session analytics (see SessionAnalyzer).
+ *
+ * Recording is enabled by naming a directory with the system property rtpcarcontroller.frameLog. Unlike the log
+ * records of the connection, the frame log is complete: no record is dropped, whatever the logging level. The lines
+ * are formatted without creating objects into a buffer, which is written to the file when it is full and when the
+ * connection ends, so that the sender thread only waits for the disk once per few hundred frames.
+ *
+ * The file starts with the header "time_us,event,sequence,throttle,angle,round_trip_ns"; every line after it holds
+ * the time in microseconds since the epoch, "sent" or "ack", the sequence number of a sent frame, its throttle and
+ * angle, and the round trip time of an acknowledged state if it matched a frame in flight.
+ */
+class FrameRecorder {
+    private static final Logger logger = Logger.getLogger(FrameRecorder.class.getName());
+    private static final String DIRECTORY_PROPERTY = "rtpcarcontroller.frameLog";
+    private static final String HEADER = "time_us,event,sequence,throttle,angle,round_trip_ns\n";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Longer than any line: three longs, the longest event and throttle names and an angle
+    private static final int MAX_LINE = 96;
+    private static final byte[] SENT = bytes(",sent,");
+    private static final byte[] ACK = bytes(",ack,");
+    private static final byte[][] THROTTLES;
+    private static final AtomicInteger files = new AtomicInteger();
+
+    static {
+        Throttle[] throttles = Throttle.values();
+        THROTTLES = new byte[throttles.length][];
+        for (int i = 0; i < throttles.length; i++) {
+            THROTTLES[i] = bytes(throttles[i].name());
+        }
+    }
+
+    private final Path file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final ReentrantLock lock;
+    private final long epochMicros;
+    private final long nanoBase;
+    private boolean closed;
+
+    private FrameRecorder(Path file) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        lock = new ReentrantLock();
+        Instant now = Instant.now();
+        nanoBase = System.nanoTime();
+        epochMicros = TimeUnit.SECONDS.toMicros(now.getEpochSecond()) + TimeUnit.NANOSECONDS.toMicros(now.getNano());
+        buffer.put(bytes(HEADER));
+    }
+
+    /**
+     * Starts a frame log in the directory named by rtpcarcontroller.frameLog, if it is set.
+     * @return The recorder writing the new frame log, or null if recording is disabled or the file could not be
+     * created.
+     */
+    static FrameRecorder open() {
+        String directory = System.getProperty(DIRECTORY_PROPERTY);
+        if (directory == null) {
+            return null;
+        }
+        Path file = Paths.get(directory, String.format("frames-%d-%d.csv", System.currentTimeMillis(),
+                files.incrementAndGet()));
+        try {
+            Files.createDirectories(file.getParent());
+            FrameRecorder recorder = new FrameRecorder(file);
+            logger.log(Level.INFO, "Recording the frames of the connection to {0}", file);
+            return recorder;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, String.format("Could not create the frame log %s", file), e);
+            return null;
+        }
+    }
+
+    /**
+     * Records a state frame that was handed to the transport.
+     * @param sequence The sequence number of the frame within the connection.
+     * @param throttle The frame's throttle direction.
+     * @param angle The frame's steering angle.
+     */
+    void sent(long sequence, Throttle throttle, int angle) {
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            if (!reserve()) {
+                return;
+            }
+            putDecimal(toEpochMicros(now));
+            buffer.put(SENT);
+            putDecimal(sequence);
+            buffer.put((byte) ',');
+            buffer.put(THROTTLES[throttle.ordinal()]);
+            buffer.put((byte) ',');
+            putDecimal(angle);
+            buffer.put((byte) ',');
+            buffer.put((byte) '\n');
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records a state the car acknowledged.
+     * @param throttle The acknowledged throttle direction.
+     * @param angle The acknowledged steering angle.
+     * @param roundTrip The round trip time of the acknowledged frame in nanoseconds, or -1 if no frame in flight
+     *                  matched.
+     */
+    void acknowledged(Throttle throttle, int angle, long roundTrip) {
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            if (!reserve()) {
+                return;
+            }
+            putDecimal(toEpochMicros(now));
+            buffer.put(ACK);
+            buffer.put((byte) ',');
+            buffer.put(THROTTLES[throttle.ordinal()]);
+            buffer.put((byte) ',');
+            putDecimal(angle);
+            buffer.put((byte) ',');
+            if (roundTrip >= 0) {
+                putDecimal(roundTrip);
+            }
+            buffer.put((byte) '\n');
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes what is left in the buffer and closes the file. Records made afterwards are ignored.
+     */
+    void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                writeBuffer();
+            } finally {
+                channel.close();
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, String.format("Could not finish the frame log %s", file), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Makes room for a line, writing the buffer to the file if it is almost full. Called under the lock.
+     * @return False if the recorder is closed or failed, so the line is not to be recorded.
+     */
+    private boolean reserve() {
+        if (closed) {
+            return false;
+        }
+        if (buffer.remaining() < MAX_LINE) {
+            try {
+                writeBuffer();
+            } catch (IOException e) {
+                // The log can no longer be complete, so stop rather than leave a gap in it
+                logger.log(Level.WARNING, String.format("Could not write the frame log %s; recording stopped", file),
+                        e);
+                closed = true;
+                try {
+                    channel.close();
+                } catch (IOException closeFailure) {
+                    logger.log(Level.FINE, closeFailure.getMessage(), closeFailure);
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private long toEpochMicros(long nanos) {
+        return epochMicros + TimeUnit.NANOSECONDS.toMicros(nanos - nanoBase);
+    }
+
+    private void putDecimal(long value) {
+        long divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            buffer.put((byte) ('0' + value / divisor % 10));
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,131 @@
+package edu.ntnu.rtpcarcontroller.controller.connection;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * An immutable set of socket options and a write deadline that ConnController applies to its connection to the car.
+ */
+public class SocketProfile {
+    /**
+     * Differentiated Services code point "Expedited Forwarding" (46), shifted into the traffic class byte.
+     */
+    public static final int DSCP_EXPEDITED_FORWARDING = 46 << 2;
+
+    /**
+     * The operating system's defaults: Nagle's algorithm enabled, default buffer sizes, no traffic class, no
+     * keepalive and no write deadline.
+     */
+    public static final SocketProfile SYSTEM_DEFAULT = new SocketProfile(false, 0, 0, -1, false, 0);
+
+    /**
+     * A profile for interactive control: Nagle's algorithm disabled, small buffers so that a congested link makes
+     * writes block (letting newer states replace older ones) instead of queueing stale states, expedited forwarding,
+     * keepalive, and a write deadline of half a heartbeat period.
+     */
+    public static final SocketProfile LOW_LATENCY =
+            new SocketProfile(true, 4096, 4096, DSCP_EXPEDITED_FORWARDING, true, 500);
+
+    private final boolean tcpNoDelay;
+    private final int sendBufferSize;
+    private final int receiveBufferSize;
+    private final int trafficClass;
+    private final boolean keepAlive;
+    private final int writeTimeout;
+
+    /**
+     * Creates a new SocketProfile.
+     * @param tcpNoDelay Whether to disable Nagle's algorithm.
+     * @param sendBufferSize The size of the socket's send buffer in bytes, or 0 for the system default.
+     * @param receiveBufferSize The size of the socket's receive buffer in bytes, or 0 for the system default.
+     * @param trafficClass The traffic class (including DSCP) byte for outgoing packets, or -1 for the system default.
+     * @param keepAlive Whether to enable TCP keepalive probes.
+     * @param writeTimeout The time in milliseconds a single write may take before the connection is considered
+     *                     lost, or 0 for no deadline.
+     */
+    public SocketProfile(boolean tcpNoDelay, int sendBufferSize, int receiveBufferSize, int trafficClass,
+                         boolean keepAlive, int writeTimeout) {
+        this.tcpNoDelay = tcpNoDelay;
+        this.sendBufferSize = sendBufferSize;
+        this.receiveBufferSize = receiveBufferSize;
+        this.trafficClass = trafficClass;
+        this.keepAlive = keepAlive;
+        this.writeTimeout = writeTimeout;
+    }
+
+    /**
+     * Applies the socket options of this profile to a socket. Must be called before the socket is connected, since
+     * buffer sizes influence the TCP window negotiated while connecting.
+     * @param socket The socket to configure.
+     * @throws SocketException If an option could not be set.
+     */
+    public void apply(Socket socket) throws SocketException {
+        socket.setTcpNoDelay(tcpNoDelay);
+        if (sendBufferSize > 0) {
+            socket.setSendBufferSize(sendBufferSize);
+        }
+        if (receiveBufferSize > 0) {
+            socket.setReceiveBufferSize(receiveBufferSize);
+        }
+        if (trafficClass >= 0) {
+            socket.setTrafficClass(trafficClass);
+        }
+        socket.setKeepAlive(keepAlive);
+    }
+
+    /**
+     * Applies the buffer sizes and traffic class of this profile to a datagram channel; the other options only
+     * concern TCP.
+     * @param channel The channel to configure.
+     * @throws IOException If an option could not be set.
+     */
+    public void apply(DatagramChannel channel) throws IOException {
+        if (sendBufferSize > 0) {
+            channel.setOption(StandardSocketOptions.SO_SNDBUF, sendBufferSize);
+        }
+        if (receiveBufferSize > 0) {
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+        }
+        if (trafficClass >= 0) {
+            channel.setOption(StandardSocketOptions.IP_TOS, trafficClass);
+        }
+    }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    public int getTrafficClass() {
+        return trafficClass;
+    }
+
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     *
+     * @return The time in milliseconds a single write may take before the connection is considered lost, or 0 if
+     * writes have no deadline.
+     */
+    public int getWriteTimeout() {
+        return writeTimeout;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("nodelay=%b sndbuf=%d rcvbuf=%d tclass=%d keepalive=%b writeTimeout=%dms",
+                tcpNoDelay, sendBufferSize, receiveBufferSize, trafficClass, keepAlive, writeTimeout);
+    }
+}
@@ -0,0 +1,461 @@
+package edu.ntnu.rtpcarcontroller.controller.connection;
+
+import edu.ntnu.rtpcarcontroller.exception.NetworkConnectionException;
+import edu.ntnu.rtpcarcontroller.model.Car;
+import edu.ntnu.rtpcarcontroller.util.Timeout;
+import edu.ntnu.rtpcarcontroller.util.TimerService;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps connections to recently used cars open and handshaken, so that switching to one of those cars, or failing
+ * over to one, is a handoff of the Car instead of a connect and a handshake.
+ *
+ * The addresses of the recently used cars, the most recent first, are kept in a file so that they survive restarts.
+ * Whenever a car is used, standby connections are set up in the background to the most recent other cars, up to the
+ * pool's capacity. The file is read when first needed, and the addresses in it are resolved on the pool's thread, so
+ * that neither delays startup. While the capacity is 0, using a car neither writes the file nor starts the thread. A
+ * standby connection drives an idle Car of its own, so its heartbeat keeps the link alive and the car in neutral. A
+ * standby connection that is not taken within the idle timeout is closed, which frees its car for other clients.
+ *
+ * The pool is configured by system properties: rtpcarcontroller.standby.size is the number of standby connections
+ * (0, the default, disables the pool), rtpcarcontroller.standby.idleTimeout the idle timeout in milliseconds (0
+ * keeps standby connections open indefinitely) and rtpcarcontroller.standby.file the file of recently used cars.
+ *
+ * Connections are set up and closed on a thread of the pool, never while holding the pool's lock, so that a
+ * connection reporting its loss to the pool cannot deadlock with the pool closing it.
+ */
+public class StandbyPool {
+    private static final Logger logger = Logger.getLogger(StandbyPool.class.getName());
+    private static final int RECENT_CARS = 8;
+
+    private final Supplier<CarConnection> connectionFactory;
+    // Unresolved, and read from the file when first needed
+    private List<InetSocketAddress> recent;
+    // Insertion ordered, so that the first standby is the one that waited longest
+    private final Map<InetSocketAddress, Standby> standby;
+    private final ReentrantLock lock;
+    private ExecutorService connector;
+    private final Path recentFile;
+    private volatile int capacity;
+    private volatile long idleTimeoutMillis;
+    private InetSocketAddress active;
+    private boolean closed;
+
+    /**
+     * Creates a new StandbyPool configured by the system properties.
+     * @param connectionFactory Creates the unconnected connections to use as standby connections.
+     */
+    public StandbyPool(Supplier<CarConnection> connectionFactory) {
+        this(connectionFactory, Integer.getInteger("rtpcarcontroller.standby.size", 0),
+                Long.getLong("rtpcarcontroller.standby.idleTimeout", 300000),
+                Paths.get(System.getProperty("rtpcarcontroller.standby.file",
+                        Paths.get(System.getProperty("user.home"), ".rtpcarcontroller", "recent-cars").toString())));
+    }
+
+    /**
+     * Creates a new StandbyPool.
+     * @param connectionFactory Creates the unconnected connections to use as standby connections.
+     * @param capacity The number of standby connections to keep, or 0 to keep none.
+     * @param idleTimeoutMillis The time after which an untaken standby connection is closed, or 0 to keep it open.
+     * @param recentFile The file the addresses of the recently used cars are kept in.
+     */
+    public StandbyPool(Supplier<CarConnection> connectionFactory, int capacity, long idleTimeoutMillis,
+                       Path recentFile) {
+        this.connectionFactory = connectionFactory;
+        this.capacity = capacity;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.recentFile = recentFile;
+        standby = new LinkedHashMap<>();
+        lock = new ReentrantLock();
+    }
+
+    /**
+     *
+     * @return The number of standby connections the pool keeps.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Sets the number of standby connections the pool keeps; surplus standby connections are closed.
+     * @param capacity The number of standby connections, or 0 to keep none.
+     */
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+        List<CarConnection> evicted = new ArrayList<>();
+        lock.lock();
+        try {
+            Iterator<Standby> iterator = standby.values().iterator();
+            while (standby.size() > capacity && iterator.hasNext()) {
+                Standby entry = iterator.next();
+                iterator.remove();
+                entry.cancelIdleTimeout();
+                evicted.add(entry.connection);
+            }
+        } finally {
+            lock.unlock();
+        }
+        evicted.forEach(this::closeLater);
+    }
+
+    /**
+     *
+     * @return The time after which an untaken standby connection is closed, in milliseconds, or 0 if it is kept open.
+     */
+    public long getIdleTimeout() {
+        return idleTimeoutMillis;
+    }
+
+    /**
+     * Sets the time after which standby connections that enter the pool from now on are closed if not taken.
+     * @param idleTimeoutMillis The idle timeout in milliseconds, or 0 to keep standby connections open.
+     */
+    public void setIdleTimeout(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    /**
+     *
+     * @return The unresolved addresses of the recently used cars, the most recent first.
+     */
+    public List<InetSocketAddress> getRecent() {
+        lock.lock();
+        try {
+            return new ArrayList<>(recent());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *
+     * @return The addresses of the cars the pool has a standby connection to.
+     */
+    public List<InetSocketAddress> getStandby() {
+        lock.lock();
+        try {
+            return new ArrayList<>(standby.keySet());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records that a car is now driven, moving it to the front of the recently used cars, and sets up standby
+     * connections to the most recent other cars in the background. Does neither while the capacity is 0.
+     * @param address The address of the car that is driven.
+     */
+    public void used(InetSocketAddress address) {
+        List<InetSocketAddress> snapshot;
+        lock.lock();
+        try {
+            active = address;
+            if (closed || capacity == 0) {
+                return;
+            }
+            List<InetSocketAddress> recent = recent();
+            InetSocketAddress entry = InetSocketAddress.createUnresolved(address.getHostString(), address.getPort());
+            recent.remove(entry);
+            recent.add(0, entry);
+            while (recent.size() > Math.max(RECENT_CARS, capacity + 1)) {
+                recent.remove(recent.size() - 1);
+            }
+            snapshot = new ArrayList<>(recent);
+        } finally {
+            lock.unlock();
+        }
+        connector().execute(() -> {
+            writeRecent(snapshot);
+            warm();
+        });
+    }
+
+    /**
+     * Takes the standby connection to a car out of the pool.
+     * @param address The address of the car.
+     * @return The connection, active and handshaken and driving an idle Car, or null if the pool has none to the car.
+     */
+    public CarConnection take(InetSocketAddress address) {
+        lock.lock();
+        try {
+            Standby entry = standby.remove(address);
+            if (entry == null) {
+                return null;
+            }
+            entry.cancelIdleTimeout();
+            return entry.connection;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the standby connection that entered the pool last out of the pool.
+     * @return The address of the car and its connection, or null if the pool is empty.
+     */
+    public Map.Entry<InetSocketAddress, CarConnection> takeAny() {
+        lock.lock();
+        try {
+            Map.Entry<InetSocketAddress, CarConnection> last = null;
+            for (Map.Entry<InetSocketAddress, Standby> entry : standby.entrySet()) {
+                last = Map.entry(entry.getKey(), entry.getValue().connection);
+            }
+            if (last != null) {
+                standby.remove(last.getKey()).cancelIdleTimeout();
+            }
+            return last;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Offers a connection that is no longer driven to the pool, which keeps it as a standby connection if it has
+     * room and closes it otherwise.
+     * @param address The address of the car.
+     * @param connection The connection, driving an idle Car.
+     */
+    public void offer(InetSocketAddress address, CarConnection connection) {
+        if (!add(address, connection)) {
+            closeLater(connection);
+        }
+    }
+
+    /**
+     * Forgets a standby connection that was lost.
+     * @param connection The connection.
+     */
+    public void remove(CarConnection connection) {
+        lock.lock();
+        try {
+            Iterator<Standby> iterator = standby.values().iterator();
+            while (iterator.hasNext()) {
+                Standby entry = iterator.next();
+                if (entry.connection == connection) {
+                    iterator.remove();
+                    entry.cancelIdleTimeout();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes all standby connections and stops setting up new ones.
+     */
+    public void close() {
+        List<CarConnection> evicted;
+        ExecutorService connector;
+        lock.lock();
+        try {
+            closed = true;
+            connector = this.connector;
+            evicted = new ArrayList<>();
+            for (Standby entry : standby.values()) {
+                entry.cancelIdleTimeout();
+                evicted.add(entry.connection);
+            }
+            standby.clear();
+        } finally {
+            lock.unlock();
+        }
+        evicted.forEach(CarConnection::disconnect);
+        if (connector != null) {
+            connector.shutdown();
+        }
+    }
+
+    /**
+     * Sets up standby connections to the most recently used cars that have none, until the pool is full. Runs on the
+     * pool's thread, which resolves the addresses.
+     */
+    private void warm() {
+        for (InetSocketAddress entry : getRecent()) {
+            InetSocketAddress address = new InetSocketAddress(entry.getHostString(), entry.getPort());
+            if (address.isUnresolved()) {
+                logger.log(Level.FINE, "No standby connection to {0}: the host is unknown", entry);
+                continue;
+            }
+            lock.lock();
+            try {
+                if (closed || standby.size() >= capacity) {
+                    return;
+                }
+                if (address.equals(active) || standby.containsKey(address)) {
+                    continue;
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            CarConnection connection = connectionFactory.get();
+            connection.setCar(new Car());
+            try {
+                connection.connect(address);
+            } catch (NetworkConnectionException e) {
+                logger.log(Level.FINE, "No standby connection to {0}: {1}", new Object[] { address, e.getMessage() });
+                continue;
+            }
+            if (add(address, connection)) {
+                logger.log(Level.INFO, "Standby connection to {0} is ready", address);
+            } else {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Adds a connection to the pool if it has room and the car is not driven meanwhile.
+     * @return Whether the connection was added.
+     */
+    private boolean add(InetSocketAddress address, CarConnection connection) {
+        lock.lock();
+        try {
+            if (closed || standby.size() >= capacity || address.equals(active) || standby.containsKey(address)
+                    || !connection.isConnectionActive()) {
+                return false;
+            }
+            long idleTimeoutMillis = this.idleTimeoutMillis;
+            Timeout idleTimeout = idleTimeoutMillis > 0
+                    ? TimerService.INSTANCE.schedule(this, idleTimeoutMillis, () -> evict(address, connection))
+                    : null;
+            standby.put(address, new Standby(connection, idleTimeout));
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes a standby connection whose idle timeout expired, if it is still in the pool. Runs on the shared timers.
+     */
+    private void evict(InetSocketAddress address, CarConnection connection) {
+        lock.lock();
+        try {
+            Standby entry = standby.get(address);
+            if (entry == null || entry.connection != connection) {
+                return;
+            }
+            standby.remove(address);
+        } finally {
+            lock.unlock();
+        }
+        logger.log(Level.INFO, "Closing idle standby connection to {0}", address);
+        closeLater(connection);
+    }
+
+    private void closeLater(CarConnection connection) {
+        try {
+            connector().execute(connection::disconnect);
+        } catch (RejectedExecutionException e) {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Starts the pool's thread the first time it is needed.
+     * @return The executor of the pool's thread.
+     * @throws RejectedExecutionException If the pool is closed.
+     */
+    private ExecutorService connector() {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new RejectedExecutionException("The standby pool is closed");
+            }
+            if (connector == null) {
+                connector = Executors.newSingleThreadExecutor(
+                        ThreadMode.PLATFORM.newThreadFactory("Standby connector"));
+            }
+            return connector;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads the recently used cars from the file the first time they are needed. Called under the lock.
+     */
+    private List<InetSocketAddress> recent() {
+        if (recent == null) {
+            recent = readRecent(recentFile);
+        }
+        return recent;
+    }
+
+    private static List<InetSocketAddress> readRecent(Path file) {
+        List<InetSocketAddress> recent = new ArrayList<>();
+        if (!Files.isRegularFile(file)) {
+            return recent;
+        }
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                int separator = line.lastIndexOf(':');
+                if (separator > 0) {
+                    recent.add(InetSocketAddress.createUnresolved(line.substring(0, separator).trim(),
+                            Integer.parseInt(line.substring(separator + 1).trim())));
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            logger.log(Level.WARNING, String.format("Could not read the recently used cars from %s: %s", file,
+                    e.getMessage()));
+        }
+        return recent;
+    }
+
+    private void writeRecent(List<InetSocketAddress> recent) {
+        List<String> lines = new ArrayList<>();
+        for (InetSocketAddress address : recent) {
+            lines.add(address.getHostString() + ":" + address.getPort());
+        }
+        try {
+            Path parent = recentFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Files.write(recentFile, lines, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, String.format("Could not write the recently used cars to %s: %s", recentFile,
+                    e.getMessage()));
+        }
+    }
+
+    /**
+     * A standby connection and the timeout that closes it when it stays untaken, if it has one.
+     */
+    private static class Standby {
+        private final CarConnection connection;
+        private final Timeout idleTimeout;
+
+        Standby(CarConnection connection, Timeout idleTimeout) {
+            this.connection = connection;
+            this.idleTimeout = idleTimeout;
+        }
+
+        void cancelIdleTimeout() {
+            if (idleTimeout != null) {
+                idleTimeout.cancel();
+            }
+        }
+    }
+}
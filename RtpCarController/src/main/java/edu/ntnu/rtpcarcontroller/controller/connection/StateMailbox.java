@@ -0,0 +1,185 @@
+package edu.ntnu.rtpcarcontroller.controller.connection;
+
+import edu.ntnu.rtpcarcontroller.model.Throttle;
+import edu.ntnu.rtpcarcontroller.util.FrameTracer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The hand-over of the car's state from the model to the network: a lock-free mailbox with room for one state, whose
+ * overflow policy is to keep the latest state.
+ *
+ * The state lives in a single atomic word holding the throttle direction, the steering angle, the frame traced for
+ * the latest change and the number of changes offered so far. Offering a change never blocks, however long the
+ * network takes to send, so the thread driving the car (the JavaFX thread) is never held up by a stalled link. A
+ * change that is replaced before the network takes it is dropped; only the latest state matters to the car.
+ *
+ * Changes may be offered from any thread; the taking side must be serialised by the caller.
+ */
+public final class StateMailbox {
+    /**
+     * Returned by take when no state was offered since the previous take.
+     */
+    public static final long EMPTY = -1;
+
+    private static final Throttle[] THROTTLES = Throttle.values();
+    private static final int THROTTLE_SHIFT = 8;
+    private static final int FRAME_SHIFT = 10;
+    private static final int SEQUENCE_SHIFT = 23;
+    private static final long STEER_MASK = 0xFF;
+    private static final long THROTTLE_MASK = 0x3L << THROTTLE_SHIFT;
+    private static final long FRAME_MASK = 0x1FFFL << FRAME_SHIFT;
+    private static final FrameTracer tracer = FrameTracer.INSTANCE;
+
+    private final AtomicLong state;
+    private volatile long takenSequence;
+    private volatile long takenCount;
+    private volatile long maxDepth;
+
+    /**
+     * Creates a new StateMailbox holding an initial state, which counts as offered but not yet taken.
+     * @param throttle The initial throttle direction.
+     * @param steer The initial steering angle, between 0 and 180.
+     */
+    StateMailbox(Throttle throttle, int steer) {
+        state = new AtomicLong(pack(1, FrameTracer.NO_FRAME, throttle.ordinal(), steer));
+    }
+
+    private static long pack(long sequence, int frame, int throttle, int steer) {
+        return sequence << SEQUENCE_SHIFT | (long) (frame + 1) << FRAME_SHIFT | (long) throttle << THROTTLE_SHIFT
+                | steer;
+    }
+
+    private static long sequenceOf(long word) {
+        return word >>> SEQUENCE_SHIFT;
+    }
+
+    /**
+     * @param word A state returned by take or peek.
+     * @return The throttle direction of the state.
+     */
+    static Throttle throttleOf(long word) {
+        return THROTTLES[(int) ((word & THROTTLE_MASK) >>> THROTTLE_SHIFT)];
+    }
+
+    /**
+     * @param word A state returned by take or peek.
+     * @return The steering angle of the state.
+     */
+    static int steerOf(long word) {
+        return (int) (word & STEER_MASK);
+    }
+
+    /**
+     * @param word A state returned by take.
+     * @return The frame traced for the change that led to the state, or FrameTracer.NO_FRAME.
+     */
+    static int frameOf(long word) {
+        return (int) ((word & FRAME_MASK) >>> FRAME_SHIFT) - 1;
+    }
+
+    /**
+     * Offers a new throttle direction, keeping the steering angle. Never blocks.
+     * @param throttle The new throttle direction.
+     */
+    void offerThrottle(Throttle throttle) {
+        offer(THROTTLE_MASK, (long) throttle.ordinal() << THROTTLE_SHIFT);
+    }
+
+    /**
+     * Offers a new steering angle, keeping the throttle direction. Never blocks.
+     * @param steer The new steering angle, between 0 and 180.
+     */
+    void offerSteer(int steer) {
+        offer(STEER_MASK, steer);
+    }
+
+    /**
+     * Replaces one field of the state, takes over the frame traced for the change, and counts the frame of a change
+     * that is replaced before it was taken as coalesced.
+     */
+    private void offer(long mask, long value) {
+        int frame = tracer.take();
+        tracer.stamp(frame, FrameTracer.QUEUED);
+        long frameBits = (long) (frame + 1) << FRAME_SHIFT;
+        long previous;
+        long next;
+        do {
+            previous = state.get();
+            long sequence = sequenceOf(previous) + 1;
+            next = sequence << SEQUENCE_SHIFT | frameBits | previous & (THROTTLE_MASK | STEER_MASK) & ~mask | value;
+        } while (!state.compareAndSet(previous, next));
+        tracer.coalesce(frameOf(previous));
+
+        long depth = sequenceOf(next) - takenSequence;
+        if (depth > maxDepth) {
+            // A racy maximum is good enough for a metric
+            maxDepth = depth;
+        }
+    }
+
+    /**
+     * Takes the latest state, if a state was offered since the previous take.
+     * @return The latest state, to be read with throttleOf, steerOf and frameOf, or EMPTY.
+     */
+    long take() {
+        // Clearing the frame marks it as taken, so that a later offer does not count it as coalesced
+        long word = state.getAndUpdate(current -> current & ~FRAME_MASK);
+        long sequence = sequenceOf(word);
+        if (sequence == takenSequence) {
+            return EMPTY;
+        }
+        takenSequence = sequence;
+        takenCount++;
+        return word;
+    }
+
+    /**
+     * Reads the latest state without taking it, for instance to repeat it as a heartbeat.
+     * @return The latest state, to be read with throttleOf and steerOf.
+     */
+    long peek() {
+        return state.get() & ~FRAME_MASK;
+    }
+
+    /**
+     *
+     * @return The number of states offered so far, including the initial state.
+     */
+    public long getOfferedCount() {
+        return sequenceOf(state.get());
+    }
+
+    /**
+     *
+     * @return The number of states taken by the network so far.
+     */
+    public long getTakenCount() {
+        return takenCount;
+    }
+
+    /**
+     *
+     * @return The number of states that were replaced by a newer state before the network took them.
+     */
+    public long getDroppedCount() {
+        return takenSequence - takenCount;
+    }
+
+    /**
+     *
+     * @return The number of states offered since the network last took one; all but the latest of them will be
+     * dropped.
+     */
+    public long getDepth() {
+        return sequenceOf(state.get()) - takenSequence;
+    }
+
+    /**
+     *
+     * @return The largest depth seen so far.
+     */
+    public long getMaxDepth() {
+        return maxDepth;
+    }
+}
@@ -0,0 +1,180 @@
+package edu.ntnu.rtpcarcontroller.controller.connection;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The kind of threads that run the input and the sends of connections.
+ *
+ * PLATFORM runs every connection's input and sends on platform threads of its own, so that a send blocked on a
+ * congested car never holds up the sends of another connection. VIRTUAL runs both on virtual threads, one per
+ * connection input and one per send, so that thousands of connections do not need thousands of platform threads.
+ * Virtual threads need Java 21; the project is built for Java 11, so they are looked up when the mode is first used,
+ * and VIRTUAL is not supported on older runtimes.
+ *
+ * The default mode is taken from the system property rtpcarcontroller.threads (platform or virtual), falling back to
+ * PLATFORM if virtual threads are not available.
+ */
+public enum ThreadMode {
+    PLATFORM,
+    VIRTUAL;
+
+    private static final Logger logger = Logger.getLogger(ThreadMode.class.getName());
+    // How long the sender thread of an idle PLATFORM connection lingers; a connection sends at least every heartbeat
+    private static final long SENDER_KEEP_ALIVE = 5;
+
+    private volatile ExecutorService virtualSenders;
+
+    /**
+     * Returns the mode named by the system property rtpcarcontroller.threads, or PLATFORM if the property is not set
+     * or the named mode is not supported by the running Java version.
+     * @return The configured mode.
+     */
+    public static ThreadMode configured() {
+        ThreadMode mode = forName(System.getProperty("rtpcarcontroller.threads", PLATFORM.name()));
+        if (!mode.isSupported()) {
+            logger.log(Level.WARNING, String.format("%s threads need Java 21; using platform threads", mode));
+            return PLATFORM;
+        }
+        return mode;
+    }
+
+    /**
+     * Returns the mode with the given name, ignoring case.
+     * @param name The name of the mode, e.g. "virtual".
+     * @return The mode with the given name.
+     */
+    public static ThreadMode forName(String name) {
+        return valueOf(name.toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     *
+     * @return Whether the running Java version supports this mode.
+     */
+    public boolean isSupported() {
+        return this == PLATFORM || VirtualThreads.OF_VIRTUAL != null;
+    }
+
+    /**
+     * Creates a factory of threads of this mode; platform threads are daemon threads, like virtual threads always are.
+     * @param name The name of the threads.
+     * @return The factory.
+     */
+    public ThreadFactory newThreadFactory(String name) {
+        if (this == PLATFORM) {
+            return task -> {
+                Thread thread = new Thread(task, name);
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+        return VirtualThreads.newFactory(name);
+    }
+
+    /**
+     * Starts a thread of this mode.
+     * @param name The name of the thread.
+     * @param task The task the thread runs.
+     * @return The started thread.
+     */
+    public Thread start(String name, Runnable task) {
+        Thread thread = newThreadFactory(name).newThread(task);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Creates the executor running the sends of one connection.
+     *
+     * A send may block while its transport is congested, for as long as the write deadline of its SocketProfile
+     * allows, so unlike timer tasks sends do not run on the TimerService, and no two connections share a thread.
+     * @param name The name of the sender threads.
+     * @return A single platform thread, which ends when the connection has been idle for a while, or an executor
+     * starting a virtual thread per send, which is shared by all connections.
+     */
+    public Executor newSender(String name) {
+        if (this == PLATFORM) {
+            ThreadPoolExecutor sender = new ThreadPoolExecutor(1, 1, SENDER_KEEP_ALIVE, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), newThreadFactory(name));
+            sender.allowCoreThreadTimeOut(true);
+            return sender;
+        }
+        ExecutorService senders = virtualSenders;
+        if (senders == null) {
+            synchronized (this) {
+                senders = virtualSenders;
+                if (senders == null) {
+                    senders = VirtualThreads.newThreadPerTaskExecutor(newThreadFactory(name));
+                    virtualSenders = senders;
+                }
+            }
+        }
+        return senders;
+    }
+
+    /**
+     * The virtual thread API of Java 21, looked up by reflection.
+     */
+    private static class VirtualThreads {
+        private static final Method OF_VIRTUAL;
+        private static final Method NAME;
+        private static final Method FACTORY;
+        private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+        static {
+            Method ofVirtual = null;
+            Method name = null;
+            Method factory = null;
+            Method newThreadPerTaskExecutor = null;
+            try {
+                Class<?> builder = Class.forName("java.lang.Thread$Builder");
+                ofVirtual = Thread.class.getMethod("ofVirtual");
+                name = builder.getMethod("name", String.class);
+                factory = builder.getMethod("factory");
+                newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            } catch (ClassNotFoundException | NoSuchMethodException e) {
+                ofVirtual = null;
+            }
+            OF_VIRTUAL = ofVirtual;
+            NAME = name;
+            FACTORY = factory;
+            NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+        }
+
+        private static void requireSupport() {
+            if (OF_VIRTUAL == null) {
+                throw new UnsupportedOperationException("Virtual threads need Java 21");
+            }
+        }
+
+        static ThreadFactory newFactory(String name) {
+            requireSupport();
+            try {
+                Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), name);
+                return (ThreadFactory) FACTORY.invoke(builder);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new IllegalStateException("Could not create a virtual thread factory", e);
+            }
+        }
+
+        static ExecutorService newThreadPerTaskExecutor(ThreadFactory factory) {
+            requireSupport();
+            try {
+                return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new IllegalStateException("Could not create a virtual thread executor", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package edu.ntnu.rtpcarcontroller.controller.connection.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A call to ConnController.connect, from resolving the address until the Car drives the car: either a connect and a
+ * handshake, or a handoff to a standby connection.
+ */
+@Name("edu.ntnu.rtpcarcontroller.Connect")
+@Label("Connect")
+@Category({ "RTP Car Controller", "Connection" })
+@Description("Connecting to a car and shaking hands with it, or handing the car over to a standby connection")
+public final class ConnectEvent extends Event {
+    @Label("Address")
+    public String address;
+
+    @Label("Handoff")
+    @Description("Whether a standby connection to the car was taken instead of connecting")
+    public boolean handoff;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+
+    @Label("Failure")
+    public String failure;
+}
@@ -0,0 +1,23 @@
+package edu.ntnu.rtpcarcontroller.controller.connection.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The loss of an active connection to a car.
+ */
+@Name("edu.ntnu.rtpcarcontroller.ConnectionLost")
+@Label("Connection Lost")
+@Category({ "RTP Car Controller", "Connection" })
+@Description("An active connection to a car was lost")
+public final class ConnectionLostEvent extends Event {
+    @Label("Address")
+    public String address;
+
+    @Label("Validated")
+    @Description("Whether the car had answered the handshake")
+    public boolean validated;
+}
@@ -0,0 +1,33 @@
+package edu.ntnu.rtpcarcontroller.controller.connection.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A wakeup of a connection's heartbeat timer, and how late it woke up.
+ */
+@Name("edu.ntnu.rtpcarcontroller.Heartbeat")
+@Label("Heartbeat")
+@Category({ "RTP Car Controller", "Connection" })
+@Description("A wakeup of the heartbeat timer of a connection")
+@StackTrace(false)
+public final class HeartbeatEvent extends Event {
+    @Label("Lateness")
+    @Description("The time between the deadline of the timer and its wakeup")
+    @Timespan(Timespan.NANOSECONDS)
+    public long lateness;
+
+    @Label("Since Last Sent")
+    @Description("The time since the connection last sent a state frame")
+    @Timespan(Timespan.NANOSECONDS)
+    public long sinceLastSent;
+
+    @Label("Send Scheduled")
+    @Description("Whether the wakeup scheduled a send, because no state frame was sent for a heartbeat period")
+    public boolean sendScheduled;
+}
@@ -0,0 +1,27 @@
+package edu.ntnu.rtpcarcontroller.controller.connection.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The parsing and handling of one message received from a car, on the connection's input thread.
+ */
+@Name("edu.ntnu.rtpcarcontroller.InputParse")
+@Label("Input Parse")
+@Category({ "RTP Car Controller", "Connection" })
+@Description("Parsing and handling a message received from a car")
+@StackTrace(false)
+public final class InputParseEvent extends Event {
+    @Label("Message Type")
+    @Description("HANDSHAKE, CLOSE, REJECTED, SYNC, STATE or OTHER")
+    public String messageType;
+
+    @Label("Bytes")
+    @DataAmount
+    public int bytes;
+}
@@ -0,0 +1,47 @@
+package edu.ntnu.rtpcarcontroller.controller.connection.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A send of a state frame, together with the frames queued before it, from handing the batch to the transport until
+ * the transport returned.
+ */
+@Name("edu.ntnu.rtpcarcontroller.StateFrame")
+@Label("State Frame")
+@Category({ "RTP Car Controller", "Connection" })
+@Description("A state frame handed to the transport, with the frames queued before it")
+@StackTrace(false)
+public final class StateFrameEvent extends Event {
+    @Label("Sequence")
+    @Description("The number of state frames the connection sent before this one")
+    public long sequence;
+
+    @Label("Throttle")
+    public String throttle;
+
+    @Label("Angle")
+    public int angle;
+
+    @Label("Bytes")
+    @Description("The bytes of all frames of the send")
+    @DataAmount
+    public int bytes;
+
+    @Label("Frames")
+    @Description("The number of frames of the send, the state frame included")
+    public int frames;
+
+    @Label("Timed")
+    @Description("Whether the frame was tagged with its send time on the car's clock")
+    public boolean timed;
+
+    @Label("Heartbeat")
+    @Description("Whether the frame repeats the state because a heartbeat was due")
+    public boolean heartbeat;
+}
@@ -0,0 +1,47 @@
+package edu.ntnu.rtpcarcontroller.controller.connection.transport;
+
+import edu.ntnu.rtpcarcontroller.event.ConnectionLossEvent;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The loss handling and write counting shared by all transports.
+ */
+abstract class AbstractTransport implements Transport {
+    private final AtomicBoolean lost;
+    private final AtomicLong writeCount;
+    private volatile ConnectionLossEvent.Handler lossHandler;
+
+    AbstractTransport() {
+        lost = new AtomicBoolean();
+        writeCount = new AtomicLong();
+    }
+
+    @Override
+    public long getWriteCount() {
+        return writeCount.get();
+    }
+
+    /**
+     * Counts one write handed to the operating system.
+     */
+    void countWrite() {
+        writeCount.incrementAndGet();
+    }
+
+    @Override
+    public void setLossHandler(ConnectionLossEvent.Handler handler) {
+        lossHandler = handler;
+    }
+
+    /**
+     * Calls the loss handler, unless it was called before.
+     */
+    void connectionLost() {
+        ConnectionLossEvent.Handler handler = lossHandler;
+        if (handler != null && lost.compareAndSet(false, true)) {
+            handler.handle(new ConnectionLossEvent(this));
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package edu.ntnu.rtpcarcontroller.controller.connection.transport;
+
+import edu.ntnu.rtpcarcontroller.util.Protocol;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A Transport that sends every frame over two independent paths to the same car, such as two network interfaces or
+ * a TCP and a UDP connection, so that a frame is as late as the faster of its two copies.
+ *
+ * After the handshake, every frame is tagged with a sequence number, e.g. "T:FORWARD S:90 @1234567 #42", and both
+ * paths announce that they carry the same frames with "PATH &lt;group&gt;" (see Protocol.PATH). The car applies the
+ * first copy of every frame to arrive and drops the other one.
+ *
+ * Every path has a sender thread of its own and a bounded backlog, so that a path that stalls does not hold up the
+ * other: when its backlog is full, its oldest frames are dropped, as the other path has carried them already. The
+ * frames received on either path are delivered in the order they arrive, except for the car's answers to the
+ * handshake, which are delivered once, from the primary path. The connection is only lost when both paths are.
+ */
+public class DualPathTransport extends AbstractTransport {
+    private static final Logger logger = Logger.getLogger(DualPathTransport.class.getName());
+    private static final int MAX_BACKLOG = 64;
+    private static final int MAX_BATCH = 16;
+    // The longest tag, " #" and a long
+    private static final int MAX_TAG_SIZE = 21;
+    // Queued by the readers once both paths ended
+    private static final String END = new String("END");
+
+    private final Path[] paths;
+    private final SocketAddress secondaryAddress;
+    private final long group;
+    private final AtomicLong sequence;
+    private final AtomicInteger openPaths;
+    private final BlockingQueue<String> received;
+    private volatile IOException failure;
+    private volatile boolean closed;
+
+    /**
+     * Creates a factory of DualPathTransports.
+     * @param primary The factory of the primary path.
+     * @param secondary The factory of the secondary path.
+     * @param secondaryAddress The address of the car on the secondary path, or null if it is the address connected to.
+     * @return The factory.
+     */
+    public static TransportFactory factory(TransportFactory primary, TransportFactory secondary,
+                                           SocketAddress secondaryAddress) {
+        return profile -> new DualPathTransport(primary.create(profile), secondary.create(profile), secondaryAddress);
+    }
+
+    /**
+     * Creates a new DualPathTransport.
+     * @param primary The unconnected transport of the primary path.
+     * @param secondary The unconnected transport of the secondary path.
+     * @param secondaryAddress The address of the car on the secondary path, or null if it is the address connected to.
+     */
+    public DualPathTransport(Transport primary, Transport secondary, SocketAddress secondaryAddress) {
+        paths = new Path[] { new Path(0, primary), new Path(1, secondary) };
+        this.secondaryAddress = secondaryAddress;
+        group = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+        sequence = new AtomicLong();
+        openPaths = new AtomicInteger(paths.length);
+        received = new LinkedBlockingQueue<>();
+    }
+
+    @Override
+    public void connect(SocketAddress address) throws IOException {
+        paths[0].transport.connect(address);
+        try {
+            paths[1].transport.connect(secondaryAddress != null ? secondaryAddress : address);
+        } catch (IOException e) {
+            paths[0].transport.close();
+            throw e;
+        }
+        for (Path path : paths) {
+            path.start();
+        }
+    }
+
+    /**
+     * Sends a frame over both paths. The handshake is sent as it is, and followed by the announcement of the path
+     * group; any other frame is tagged with the next sequence number.
+     * @param frame The frame to send.
+     */
+    @Override
+    public void send(String frame) throws IOException {
+        if (Protocol.HANDSHAKE.equals(frame)) {
+            enqueue(Protocol.encodeFrame(frame));
+            enqueue(Protocol.encodeFrame(Protocol.getPathMessage(group)));
+        } else {
+            enqueue(tag(Protocol.encodeFrame(frame)));
+        }
+    }
+
+    /**
+     * Tags the frames with the next sequence numbers and queues them on both paths, without blocking.
+     */
+    @Override
+    public void send(ByteBuffer[] frames, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            enqueue(tag(frames[i]));
+        }
+    }
+
+    /**
+     * Copies an encoded frame, consuming it, with " #&lt;sequence&gt;" inserted before its line terminator.
+     */
+    private ByteBuffer tag(ByteBuffer frame) {
+        ByteBuffer tagged = ByteBuffer.allocate(frame.remaining() + MAX_TAG_SIZE);
+        ByteBuffer message = frame.duplicate();
+        message.limit(frame.limit() - 1);
+        tagged.put(message);
+        frame.position(frame.limit());
+        Protocol.putSequence(tagged, sequence.getAndIncrement());
+        tagged.put((byte) '\n');
+        tagged.flip();
+        return tagged.asReadOnlyBuffer();
+    }
+
+    private void enqueue(ByteBuffer frame) throws IOException {
+        if (closed) {
+            throw new IOException("Transport closed");
+        }
+        for (Path path : paths) {
+            path.enqueue(frame.duplicate());
+        }
+    }
+
+    @Override
+    public String receive() throws IOException {
+        String frame;
+        try {
+            frame = received.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while receiving", e);
+        }
+        if (frame != END) {
+            return frame;
+        }
+        // Let later calls end as well
+        received.add(END);
+        if (closed) {
+            throw new IOException("Transport closed");
+        }
+        IOException failure = this.failure;
+        if (failure != null) {
+            throw failure;
+        }
+        return null;
+    }
+
+    /**
+     *
+     * @return The writes of both paths.
+     */
+    @Override
+    public long getWriteCount() {
+        return paths[0].transport.getWriteCount() + paths[1].transport.getWriteCount();
+    }
+
+    /**
+     * @param path 0 for the primary path, 1 for the secondary path.
+     * @return The number of frames the path dropped from its backlog because it could not keep up.
+     */
+    public long getDropCount(int path) {
+        return paths[path].dropCount.get();
+    }
+
+    /**
+     * @param path 0 for the primary path, 1 for the secondary path.
+     * @return Whether the path still carries frames.
+     */
+    public boolean isPathOpen(int path) {
+        return !paths[path].ended.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        IOException failure = null;
+        for (Path path : paths) {
+            try {
+                path.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        received.add(END);
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * One of the two paths: a transport with a sender thread draining its backlog and a reader thread.
+     */
+    private class Path {
+        private final int index;
+        private final String name;
+        private final Transport transport;
+        private final LinkedBlockingDeque<ByteBuffer> backlog;
+        private final AtomicLong dropCount;
+        private final Thread sender;
+        private final Thread reader;
+        private final AtomicBoolean ended;
+
+        Path(int index, Transport transport) {
+            this.index = index;
+            this.transport = transport;
+            backlog = new LinkedBlockingDeque<>(MAX_BACKLOG);
+            dropCount = new AtomicLong();
+            ended = new AtomicBoolean();
+            name = index == 0 ? "Primary path" : "Secondary path";
+            sender = new Thread(this::sendFrames, name + " sender");
+            reader = new Thread(this::readFrames, name + " reader");
+            sender.setDaemon(true);
+            reader.setDaemon(true);
+            transport.setLossHandler(event -> end(null));
+        }
+
+        void start() {
+            sender.start();
+            reader.start();
+        }
+
+        void enqueue(ByteBuffer frame) {
+            if (ended.get()) {
+                return;
+            }
+            while (!backlog.offerLast(frame)) {
+                if (backlog.pollFirst() != null) {
+                    dropCount.incrementAndGet();
+                }
+            }
+        }
+
+        private void sendFrames() {
+            ByteBuffer[] batch = new ByteBuffer[MAX_BATCH];
+            try {
+                while (!ended.get()) {
+                    batch[0] = backlog.takeFirst();
+                    int length = 1;
+                    ByteBuffer next;
+                    while (length < batch.length && (next = backlog.pollFirst()) != null) {
+                        batch[length++] = next;
+                    }
+                    transport.send(batch, 0, length);
+                    for (int i = 0; i < length; i++) {
+                        batch[i] = null;
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Closed
+            } catch (IOException e) {
+                end(e);
+            }
+        }
+
+        private void readFrames() {
+            try {
+                String frame;
+                while ((frame = transport.receive()) != null) {
+                    // Both paths shake hands, but the connection does so once
+                    if (index == 0 || !frame.equals(Protocol.HANDSHAKE)) {
+                        received.add(frame);
+                    }
+                }
+                end(null);
+            } catch (IOException e) {
+                end(e);
+            }
+        }
+
+        /**
+         * Takes the path out of service; the connection is lost when both paths are.
+         */
+        private void end(IOException e) {
+            if (!ended.compareAndSet(false, true)) {
+                return;
+            }
+            backlog.clear();
+            sender.interrupt();
+            if (closed) {
+                return;
+            }
+            try {
+                transport.close();
+            } catch (IOException closeFailure) {
+                logger.log(Level.FINE, closeFailure.getMessage(), closeFailure);
+            }
+            if (e != null) {
+                failure = e;
+            }
+            if (openPaths.decrementAndGet() > 0) {
+                logger.log(Level.WARNING, "{0} lost, continuing on the other path", name);
+                return;
+            }
+            received.add(END);
+            connectionLost();
+        }
+
+        void close() throws IOException {
+            ended.set(true);
+            backlog.clear();
+            sender.interrupt();
+            transport.close();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package edu.ntnu.rtpcarcontroller.controller.connection.transport;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Decodes the datagrams of a FecEncoder back into frames, delivering every frame once and in order.
+ *
+ * The decoder remembers the sequence number of the last frame it delivered. A datagram delivers the frames it carries
+ * that come after that one; those among them that are not its own new frame were lost or are late, and count as
+ * recovered. Frames older than everything a datagram carries are lost for good, and a datagram that arrives after a
+ * newer one delivers nothing.
+ *
+ * Decoding is not thread-safe; the transport serialises its receives.
+ */
+class FecDecoder {
+    private final Queue<String> frames;
+    private boolean started;
+    private long delivered;
+    // Written by the receiving thread only, and read by any thread
+    private volatile long recoveredCount;
+    private volatile long lostCount;
+
+    FecDecoder() {
+        frames = new ArrayDeque<>();
+    }
+
+    /**
+     * @param datagram The received datagram.
+     * @return Whether the datagram was encoded by a FecEncoder.
+     */
+    static boolean isEncoded(ByteBuffer datagram) {
+        if (datagram.remaining() < FecEncoder.HEADER.length) {
+            return false;
+        }
+        for (int i = 0; i < FecEncoder.HEADER.length; i++) {
+            if (datagram.get(datagram.position() + i) != FecEncoder.HEADER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes a datagram and queues the frames it delivers.
+     * @param datagram The received datagram, encoded by a FecEncoder and backed by an array; its remaining bytes are
+     *                 consumed.
+     */
+    void decode(ByteBuffer datagram) {
+        int index = datagram.position() + FecEncoder.HEADER.length;
+        int end = datagram.limit();
+        long sequence = 0;
+        while (index < end && datagram.get(index) != '\n') {
+            sequence = sequence * 10 + datagram.get(index) - '0';
+            index++;
+        }
+        index++;
+
+        // Every line is a frame, the oldest first
+        int count = 1;
+        for (int i = index; i < end - 1; i++) {
+            if (datagram.get(i) == '\n') {
+                count++;
+            }
+        }
+        datagram.position(end);
+        long first = sequence - count + 1;
+        if (!started) {
+            started = true;
+            delivered = first - 1;
+        }
+        if (sequence <= delivered) {
+            return;
+        }
+        if (first > delivered + 1) {
+            lostCount += first - delivered - 1;
+        }
+        long frameSequence = first;
+        int lineStart = index;
+        for (int i = index; i <= end && lineStart < end; i++) {
+            if (i < end && datagram.get(i) != '\n') {
+                continue;
+            }
+            if (frameSequence > delivered) {
+                int lineEnd = i > lineStart && datagram.get(i - 1) == '\r' ? i - 1 : i;
+                frames.add(new String(datagram.array(), datagram.arrayOffset() + lineStart, lineEnd - lineStart,
+                        StandardCharsets.US_ASCII));
+                if (frameSequence < sequence) {
+                    recoveredCount++;
+                }
+            }
+            frameSequence++;
+            lineStart = i + 1;
+        }
+        delivered = sequence;
+    }
+
+    /**
+     * @return The next decoded frame, or null if there is none.
+     */
+    String poll() {
+        return frames.poll();
+    }
+
+    /**
+     * @return The number of frames delivered from a later datagram than their own.
+     */
+    long getRecoveredCount() {
+        return recoveredCount;
+    }
+
+    /**
+     * @return The number of frames that no received datagram carried.
+     */
+    long getLostCount() {
+        return lostCount;
+    }
+}
@@ -0,0 +1,100 @@
+package edu.ntnu.rtpcarcontroller.controller.connection.transport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes frames into datagrams that each repeat the frames sent before them, so that the receiver recovers lost
+ * datagrams from the ones that follow without asking for a retransmission.
+ *
+ * A datagram starts with the header line "FEC &lt;sequence&gt;", followed by the repeated frames from oldest to newest and
+ * the new frame, one per line; the sequence number is that of the new frame. With a redundancy of K, a datagram
+ * repeats the K frames before it, so that up to K consecutive lost datagrams are recovered, at the cost of sending
+ * every frame K + 1 times. Frames are only repeated as long as the datagram stays within the size limit; a new frame
+ * that does not fit by itself is refused rather than cut off.
+ *
+ * Not thread-safe; the transport serialises its sends.
+ */
+class FecEncoder {
+    static final byte[] HEADER = "FEC ".getBytes(StandardCharsets.US_ASCII);
+
+    private final byte[][] history;
+    private final int[] lengths;
+    private final ByteBuffer datagram;
+    private long sequence;
+
+    /**
+     * Creates a new FecEncoder.
+     * @param redundancy The number of earlier frames every datagram repeats.
+     * @param maxDatagramSize The largest datagram the receiver accepts.
+     */
+    FecEncoder(int redundancy, int maxDatagramSize) {
+        history = new byte[redundancy][];
+        lengths = new int[redundancy];
+        datagram = ByteBuffer.allocate(maxDatagramSize);
+    }
+
+    /**
+     * Encodes a frame together with the frames before it.
+     * @param frame The frame, without line terminator.
+     * @return A buffer holding the datagram, which is valid until the next call.
+     * @throws IOException If the frame does not fit in a datagram next to the header; the frame is not sent, and the
+     * next frame takes its sequence number.
+     */
+    ByteBuffer encode(byte[] frame) throws IOException {
+        datagram.clear();
+        datagram.put(HEADER);
+        putDecimal(sequence);
+        datagram.put((byte) '\n');
+        if (frame.length > datagram.remaining()) {
+            throw new IOException(String.format("Frame of %d bytes does not fit in a datagram of %d bytes",
+                    frame.length, datagram.capacity()));
+        }
+
+        // Repeat as many of the most recent frames as fit next to the new one
+        int room = datagram.remaining() - frame.length;
+        int repeated = 0;
+        long available = Math.min(sequence, history.length);
+        while (repeated < available) {
+            int length = lengths[slotOf(sequence - repeated - 1)];
+            if (length + 1 > room) {
+                break;
+            }
+            room -= length + 1;
+            repeated++;
+        }
+        for (long i = sequence - repeated; i < sequence; i++) {
+            int slot = slotOf(i);
+            datagram.put(history[slot], 0, lengths[slot]);
+            datagram.put((byte) '\n');
+        }
+        datagram.put(frame);
+
+        if (history.length > 0) {
+            int slot = slotOf(sequence);
+            if (history[slot] == null || history[slot].length < frame.length) {
+                history[slot] = new byte[Math.max(frame.length, 32)];
+            }
+            System.arraycopy(frame, 0, history[slot], 0, frame.length);
+            lengths[slot] = frame.length;
+        }
+        sequence++;
+        datagram.flip();
+        return datagram;
+    }
+
+    private int slotOf(long sequence) {
+        return (int) (sequence % history.length);
+    }
+
+    private void putDecimal(long value) {
+        long divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            datagram.put((byte) ('0' + value / divisor % 10));
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package edu.ntnu.rtpcarcontroller.controller.connection.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-memory Transport between two ends in the same process, without sockets or system calls. It lets the complete
+ * client be driven by an in-process car, so that the cost of the protocol can be measured apart from the cost of the
+ * network.
+ *
+ * A frame sent by one end is handed to the other end as is. The ends are unbounded, so a send never blocks; the write
+ * deadline does not apply. A client connects to an Acceptor listening on the port of the address it connects to; the
+ * host part of the address is ignored.
+ */
+public class LoopbackTransport extends AbstractTransport {
+    // Compared by identity, so that it cannot be confused with a frame
+    private static final String END_OF_STREAM = new String("end of stream");
+    private static final Map<Integer, Acceptor> acceptors = new ConcurrentHashMap<>();
+    private static final AtomicInteger nextFreePort = new AtomicInteger(50000);
+
+    /**
+     * Starts listening for in-memory connections on the given port.
+     * @param port The port to listen on, or 0 to pick a free port.
+     * @return The acceptor handing out the server ends of the connections.
+     * @throws IOException If another acceptor listens on the port already.
+     */
+    public static Acceptor listen(int port) throws IOException {
+        if (port == 0) {
+            Acceptor acceptor;
+            do {
+                acceptor = new Acceptor(nextFreePort.getAndIncrement());
+            } while (acceptors.putIfAbsent(acceptor.port, acceptor) != null);
+            return acceptor;
+        }
+        Acceptor acceptor = new Acceptor(port);
+        if (acceptors.putIfAbsent(port, acceptor) != null) {
+            throw new IOException(String.format("Loopback port %d is in use", port));
+        }
+        return acceptor;
+    }
+
+    /**
+     * Creates two transports that are connected to each other.
+     * @return The two ends.
+     */
+    public static LoopbackTransport[] pair() {
+        LoopbackTransport first = new LoopbackTransport();
+        LoopbackTransport second = new LoopbackTransport();
+        first.peer = second;
+        second.peer = first;
+        return new LoopbackTransport[] { first, second };
+    }
+
+    private final BlockingQueue<String> inbox;
+    private volatile LoopbackTransport peer;
+    private volatile boolean closed;
+
+    /**
+     * Creates a new, unconnected LoopbackTransport.
+     */
+    public LoopbackTransport() {
+        inbox = new LinkedBlockingQueue<>();
+    }
+
+    @Override
+    public void connect(SocketAddress address) throws IOException {
+        int port = ((InetSocketAddress) address).getPort();
+        Acceptor acceptor = acceptors.get(port);
+        if (acceptor == null) {
+            throw new ConnectException(String.format("Nothing listens on loopback port %d", port));
+        }
+        LoopbackTransport serverEnd = new LoopbackTransport();
+        serverEnd.peer = this;
+        peer = serverEnd;
+        acceptor.pending.add(serverEnd);
+    }
+
+    @Override
+    public void send(String frame) throws IOException {
+        LoopbackTransport peer = this.peer;
+        if (closed || peer == null || peer.closed) {
+            throw new IOException("Loopback connection is closed");
+        }
+        peer.inbox.add(frame);
+        countWrite();
+    }
+
+    @Override
+    public String receive() throws IOException {
+        String frame;
+        try {
+            frame = inbox.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        if (frame == END_OF_STREAM) {
+            // Leave the marker for later calls, like a socket keeps reporting the end of its stream
+            inbox.add(END_OF_STREAM);
+            if (closed) {
+                throw new IOException("Loopback connection is closed");
+            }
+            return null;
+        }
+        return frame;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            inbox.add(END_OF_STREAM);
+            LoopbackTransport peer = this.peer;
+            if (peer != null) {
+                peer.inbox.add(END_OF_STREAM);
+            }
+        }
+    }
+
+    /**
+     * Hands out the server ends of the in-memory connections made to one port.
+     */
+    public static class Acceptor implements Closeable {
+        private final int port;
+        private final BlockingQueue<LoopbackTransport> pending;
+
+        private Acceptor(int port) {
+            this.port = port;
+            pending = new LinkedBlockingQueue<>();
+        }
+
+        /**
+         *
+         * @return The port this acceptor listens on.
+         */
+        public int getPort() {
+            return port;
+        }
+
+        /**
+         * Waits for a client to connect.
+         * @return The server end of the new connection.
+         * @throws IOException If the thread was interrupted while waiting.
+         */
+        public LoopbackTransport accept() throws IOException {
+            try {
+                return pending.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+
+        /**
+         * Stops listening; connections that were accepted already stay open.
+         */
+        @Override
+        public void close() {
+            acceptors.remove(port, this);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package edu.ntnu.rtpcarcontroller.controller.connection.transport;
+
+import edu.ntnu.rtpcarcontroller.controller.connection.SocketProfile;
+import edu.ntnu.rtpcarcontroller.util.Protocol;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A Transport over a non-blocking TCP socket channel, carrying one frame per line.
+ *
+ * Sending and receiving each wait on their own selector, under their own ReentrantLock so that a virtual thread
+ * waiting in a selector does not pin its carrier thread. Several frames sent together go out in a single gathering
+ * write. The write deadline of the profile bounds the time spent waiting for the channel to become writable, so no
+ * watchdog thread is needed.
+ */
+public class NioTcpTransport extends AbstractTransport {
+    private static final Logger logger = Logger.getLogger(NioTcpTransport.class.getName());
+
+    private final SocketProfile profile;
+    private final ByteBuffer readBuffer;
+    private final StringBuilder line;
+    private final ReentrantLock readLock;
+    private final ReentrantLock writeLock;
+    private SocketChannel channel;
+    private Selector readSelector;
+    private Selector writeSelector;
+
+    /**
+     * Creates a new, unconnected NioTcpTransport.
+     * @param profile The socket options and write deadline to use.
+     */
+    public NioTcpTransport(SocketProfile profile) {
+        this.profile = profile;
+        readBuffer = ByteBuffer.allocateDirect(4096);
+        readBuffer.flip();
+        line = new StringBuilder();
+        readLock = new ReentrantLock();
+        writeLock = new ReentrantLock();
+    }
+
+    @Override
+    public void connect(SocketAddress address) throws IOException {
+        channel = SocketChannel.open();
+        profile.apply(channel.socket());
+        channel.connect(address);
+        channel.configureBlocking(false);
+        readSelector = Selector.open();
+        writeSelector = Selector.open();
+        channel.register(readSelector, SelectionKey.OP_READ);
+        channel.register(writeSelector, SelectionKey.OP_WRITE);
+    }
+
+    @Override
+    public void send(String frame) throws IOException {
+        send(new ByteBuffer[] { Protocol.encodeFrame(frame) }, 0, 1);
+    }
+
+    /**
+     * Writes all frames with one gathering write, unless the send buffer fills up halfway.
+     */
+    @Override
+    public void send(ByteBuffer[] frames, int offset, int length) throws IOException {
+        ByteBuffer last = frames[offset + length - 1];
+        int writeTimeout = profile.getWriteTimeout();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(writeTimeout);
+        writeLock.lock();
+        try {
+            channel.write(frames, offset, length);
+            countWrite();
+            while (last.hasRemaining()) {
+                // The send buffer is full; wait until it drains, but no longer than the write deadline
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (writeTimeout > 0 && remaining <= 0) {
+                    logger.log(Level.WARNING, "Write deadline exceeded; aborting connection");
+                    close();
+                    connectionLost();
+                    throw new IOException("Write deadline exceeded");
+                }
+                writeSelector.select(writeTimeout > 0 ? remaining : 0);
+                writeSelector.selectedKeys().clear();
+                if (!channel.isOpen()) {
+                    throw new ClosedChannelException();
+                }
+                channel.write(frames, offset, length);
+                countWrite();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public String receive() throws IOException {
+        readLock.lock();
+        try {
+            while (true) {
+                while (readBuffer.hasRemaining()) {
+                    char c = (char) readBuffer.get();
+                    if (c == '\n') {
+                        String frame = line.toString();
+                        line.setLength(0);
+                        return frame;
+                    } else if (c != '\r') {
+                        line.append(c);
+                    }
+                }
+
+                readBuffer.clear();
+                int read;
+                while ((read = channel.read(readBuffer)) == 0) {
+                    readSelector.select();
+                    readSelector.selectedKeys().clear();
+                    if (!channel.isOpen()) {
+                        throw new ClosedChannelException();
+                    }
+                }
+                readBuffer.flip();
+                if (read < 0) {
+                    return null;
+                }
+            }
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Closes the channel, and then the selectors once the threads waiting in them found the channel closed. Safe to
+     * call when connecting failed halfway.
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+        closeSelector(readSelector, readLock);
+        closeSelector(writeSelector, writeLock);
+    }
+
+    /**
+     * Wakes up the thread waiting in a selector, if any, and closes the selector once that thread released its lock.
+     */
+    private static void closeSelector(Selector selector, ReentrantLock lock) throws IOException {
+        if (selector == null) {
+            return;
+        }
+        selector.wakeup();
+        lock.lock();
+        try {
+            selector.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package edu.ntnu.rtpcarcontroller.controller.connection.transport;
+
+import edu.ntnu.rtpcarcontroller.controller.connection.SocketProfile;
+import edu.ntnu.rtpcarcontroller.util.Timeout;
+import edu.ntnu.rtpcarcontroller.util.TimerService;
+
+import java.io.*;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A Transport over a blocking TCP socket, carrying one frame per line.
+ *
+ * Several frames sent together are collected in the output buffer and written with a single flush. A write blocks
+ * while the socket's send buffer is full. If it takes longer than the profile's write deadline, a timer on the
+ * TimerService closes the socket, which makes the write fail, and reports the connection as lost. Writes are
+ * serialised by a ReentrantLock rather than a monitor, so that a virtual thread blocked in a write does not pin its
+ * carrier thread.
+ */
+public class TcpTransport extends AbstractTransport {
+    private static final Logger logger = Logger.getLogger(TcpTransport.class.getName());
+    private static final int OUTPUT_BUFFER_SIZE = 8192;
+
+    private final SocketProfile profile;
+    private final ReentrantLock writeLock;
+    private Socket socket;
+    private BufferedReader reader;
+    private BufferedOutputStream output;
+    private byte[] copyBuffer;
+
+    /**
+     * Creates a new, unconnected TcpTransport.
+     * @param profile The socket options and write deadline to use.
+     */
+    public TcpTransport(SocketProfile profile) {
+        this.profile = profile;
+        writeLock = new ReentrantLock();
+    }
+
+    /**
+     * Creates a TcpTransport over a socket that is connected already, such as one accepted by a server.
+     * @param socket The connected socket.
+     * @throws IOException If the streams of the socket could not be opened.
+     */
+    public TcpTransport(Socket socket) throws IOException {
+        this.profile = SocketProfile.SYSTEM_DEFAULT;
+        writeLock = new ReentrantLock();
+        open(socket);
+    }
+
+    private void open(Socket socket) throws IOException {
+        this.socket = socket;
+        reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+        output = new BufferedOutputStream(socket.getOutputStream(), OUTPUT_BUFFER_SIZE);
+        copyBuffer = new byte[OUTPUT_BUFFER_SIZE];
+    }
+
+    @Override
+    public void connect(SocketAddress address) throws IOException {
+        Socket socket = new Socket();
+        try {
+            profile.apply(socket);
+            socket.connect(address);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        open(socket);
+    }
+
+    @Override
+    public void send(String frame) throws IOException {
+        writeLock.lock();
+        Timeout deadline = startDeadline();
+        try {
+            output.write(frame.getBytes(StandardCharsets.US_ASCII));
+            output.write('\n');
+            output.flush();
+            countWrite();
+        } finally {
+            cancel(deadline);
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Collects all frames in the output buffer and writes them to the socket with a single flush.
+     */
+    @Override
+    public void send(ByteBuffer[] frames, int offset, int length) throws IOException {
+        writeLock.lock();
+        Timeout deadline = startDeadline();
+        try {
+            for (int i = offset; i < offset + length; i++) {
+                // Frames may be read-only views of shared buffers, which expose no array to write from
+                ByteBuffer frame = frames[i];
+                while (frame.hasRemaining()) {
+                    int count = Math.min(frame.remaining(), copyBuffer.length);
+                    frame.get(copyBuffer, 0, count);
+                    output.write(copyBuffer, 0, count);
+                }
+            }
+            output.flush();
+            countWrite();
+        } finally {
+            cancel(deadline);
+            writeLock.unlock();
+        }
+    }
+
+    private Timeout startDeadline() {
+        int writeTimeout = profile.getWriteTimeout();
+        return writeTimeout > 0 ? TimerService.INSTANCE.schedule(this, writeTimeout, this::abort) : null;
+    }
+
+    private static void cancel(Timeout deadline) {
+        if (deadline != null) {
+            deadline.cancel();
+        }
+    }
+
+    @Override
+    public String receive() throws IOException {
+        return reader.readLine();
+    }
+
+    /**
+     * Closes the socket without taking the write lock, which is held by the write that exceeded its
+     * deadline.
+     */
+    private void abort() {
+        logger.log(Level.WARNING, "Write deadline exceeded; aborting connection");
+        try {
+            close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, e.getMessage(), e);
+        }
+        connectionLost();
+    }
+
+    /**
+     * Closes the socket directly; closing the reader or output stream instead would block on a thread that is reading
+     * or writing.
+     */
+    @Override
+    public void close() throws IOException {
+        if (socket != null) {
+            socket.close();
+        }
+    }
+}
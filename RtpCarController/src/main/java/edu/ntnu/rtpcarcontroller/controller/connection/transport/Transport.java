@@ -0,0 +1,74 @@
+package edu.ntnu.rtpcarcontroller.controller.connection.transport;
+
+import edu.ntnu.rtpcarcontroller.event.ConnectionLossEvent;
+import edu.ntnu.rtpcarcontroller.util.Protocol;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * A bidirectional channel carrying the frames (protocol lines, without line terminator) between the client and a
+ * car. ConnController speaks the protocol over a Transport, so that it is not tied to one kind of socket.
+ *
+ * One thread may send while another receives. Closing a transport from any thread makes blocked calls to send and
+ * receive fail.
+ */
+public interface Transport extends Closeable {
+    /**
+     * Connects to the car at the given address.
+     * @param address The address of the car.
+     * @throws IOException If the connection could not be set up.
+     */
+    void connect(SocketAddress address) throws IOException;
+
+    /**
+     * Sends one frame to the car, blocking while the transport cannot accept it.
+     * @param frame The frame to send.
+     * @throws IOException If the frame could not be sent.
+     */
+    void send(String frame) throws IOException;
+
+    /**
+     * Sends several frames encoded by Protocol.encodeFrame to the car, blocking while the transport cannot accept
+     * them. Stream transports write all frames at once; by default every frame is sent on its own.
+     * @param frames The buffers holding the frames; their remaining bytes are consumed.
+     * @param offset The index of the first frame to send.
+     * @param length The number of frames to send.
+     * @throws IOException If the frames could not be sent.
+     */
+    default void send(ByteBuffer[] frames, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            send(Protocol.decodeFrame(frames[i]));
+        }
+    }
+
+    /**
+     * Receives the next frame from the car, blocking until one arrives.
+     * @return The received frame, or null if the car closed the connection.
+     * @throws IOException If the transport failed or was closed.
+     */
+    String receive() throws IOException;
+
+    /**
+     *
+     * @return The number of writes this transport handed to the operating system (or, for the loopback transport, to
+     * the other end) so far.
+     */
+    long getWriteCount();
+
+    /**
+     * Sets the handler to call when the transport itself finds out that the connection is lost, for instance
+     * because a write exceeded its deadline. The handler is called at most once.
+     * @param handler The handler to call.
+     */
+    void setLossHandler(ConnectionLossEvent.Handler handler);
+
+    /**
+     * Closes the transport. Closing a closed transport has no effect.
+     * @throws IOException If the underlying channel could not be closed.
+     */
+    @Override
+    void close() throws IOException;
+}
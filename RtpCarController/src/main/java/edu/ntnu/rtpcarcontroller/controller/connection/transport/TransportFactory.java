@@ -0,0 +1,16 @@
+package edu.ntnu.rtpcarcontroller.controller.connection.transport;
+
+import edu.ntnu.rtpcarcontroller.controller.connection.SocketProfile;
+
+/**
+ * Creates the Transport for a new connection.
+ */
+@FunctionalInterface
+public interface TransportFactory {
+    /**
+     * Creates a new, unconnected Transport.
+     * @param profile The socket options and write deadline to apply, as far as the transport supports them.
+     * @return The new transport.
+     */
+    Transport create(SocketProfile profile);
+}
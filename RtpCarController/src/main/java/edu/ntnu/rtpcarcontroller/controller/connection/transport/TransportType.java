@@ -0,0 +1,55 @@
+package edu.ntnu.rtpcarcontroller.controller.connection.transport;
+
+import edu.ntnu.rtpcarcontroller.controller.connection.SocketProfile;
+
+/**
+ * The transports that come with the client.
+ */
+public enum TransportType implements TransportFactory {
+    /**
+     * A blocking TCP socket, one line per frame.
+     */
+    TCP {
+        @Override
+        public Transport create(SocketProfile profile) {
+            return new TcpTransport(profile);
+        }
+    },
+    /**
+     * A non-blocking TCP socket channel, one line per frame.
+     */
+    NIO_TCP {
+        @Override
+        public Transport create(SocketProfile profile) {
+            return new NioTcpTransport(profile);
+        }
+    },
+    /**
+     * A connected UDP socket, one datagram per frame.
+     */
+    UDP {
+        @Override
+        public Transport create(SocketProfile profile) {
+            return new UdpTransport(profile);
+        }
+    },
+    /**
+     * An in-memory transport to a LoopbackTransport.Acceptor in the same process.
+     */
+    LOOPBACK {
+        @Override
+        public Transport create(SocketProfile profile) {
+            return new LoopbackTransport();
+        }
+    };
+
+    /**
+     * Finds a transport type by name, ignoring case.
+     * @param name The name of the transport type.
+     * @return The transport type with the given name.
+     * @throws IllegalArgumentException If there is no transport type with the given name.
+     */
+    public static TransportType forName(String name) {
+        return valueOf(name.toUpperCase());
+    }
+}
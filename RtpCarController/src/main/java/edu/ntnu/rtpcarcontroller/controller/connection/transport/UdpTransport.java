@@ -0,0 +1,162 @@
+package edu.ntnu.rtpcarcontroller.controller.connection.transport;
+
+import edu.ntnu.rtpcarcontroller.controller.connection.SocketProfile;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A Transport over a connected UDP socket, carrying one frame per datagram.
+ *
+ * Datagrams may be lost, duplicated or reordered; the protocol copes with that since every state message carries
+ * the complete state and is repeated at least every heartbeat period. A send never blocks on a congested link, so the
+ * write deadline of the profile does not apply. A car that is not listening is only noticed when the operating
+ * system reports its port unreachable, which makes receive fail.
+ *
+ * Optionally, every datagram also repeats the frames sent before it (see FecEncoder), so that a lost state is
+ * recovered from the next datagram rather than left in place until the next heartbeat. The redundancy is taken from
+ * the system property rtpcarcontroller.udp.redundancy (0, no repetition, by default). Such datagrams are always
+ * decoded on receipt, whatever the redundancy of the receiving side, and delivered once and in order.
+ */
+public class UdpTransport extends AbstractTransport {
+    private static final int MAX_FRAME_SIZE = 512;
+
+    private final SocketProfile profile;
+    private final ByteBuffer receiveBuffer;
+    private final ReentrantLock receiveLock;
+    private final ReentrantLock sendLock;
+    private final FecEncoder encoder;
+    private final FecDecoder decoder;
+    private final AtomicLong bytesSent;
+    private DatagramChannel channel;
+
+    /**
+     * Creates a new, unconnected UdpTransport with the configured redundancy.
+     * @param profile The buffer sizes and traffic class to use.
+     */
+    public UdpTransport(SocketProfile profile) {
+        this(profile, Integer.getInteger("rtpcarcontroller.udp.redundancy", 0));
+    }
+
+    /**
+     * Creates a new, unconnected UdpTransport.
+     * @param profile The buffer sizes and traffic class to use.
+     * @param redundancy The number of earlier frames every datagram repeats, or 0 to send every frame once.
+     */
+    public UdpTransport(SocketProfile profile, int redundancy) {
+        this.profile = profile;
+        receiveBuffer = ByteBuffer.allocate(MAX_FRAME_SIZE);
+        receiveLock = new ReentrantLock();
+        sendLock = new ReentrantLock();
+        encoder = redundancy > 0 ? new FecEncoder(redundancy, MAX_FRAME_SIZE) : null;
+        decoder = new FecDecoder();
+        bytesSent = new AtomicLong();
+    }
+
+    /**
+     * Creates a UdpTransport over a channel that is connected already, such as one opened by a server for a client.
+     * @param channel The connected channel.
+     */
+    public UdpTransport(DatagramChannel channel) {
+        this(channel, 0);
+    }
+
+    /**
+     * Creates a UdpTransport over a channel that is connected already, such as one opened by a server for a client.
+     * @param channel The connected channel.
+     * @param redundancy The number of earlier frames every datagram repeats, or 0 to send every frame once.
+     */
+    public UdpTransport(DatagramChannel channel, int redundancy) {
+        this(SocketProfile.SYSTEM_DEFAULT, redundancy);
+        this.channel = channel;
+    }
+
+    @Override
+    public void connect(SocketAddress address) throws IOException {
+        channel = DatagramChannel.open();
+        profile.apply(channel);
+        channel.connect(address);
+    }
+
+    @Override
+    public void send(String frame) throws IOException {
+        byte[] bytes = frame.getBytes(StandardCharsets.US_ASCII);
+        if (encoder == null) {
+            bytesSent.addAndGet(channel.write(ByteBuffer.wrap(bytes)));
+        } else {
+            sendLock.lock();
+            try {
+                bytesSent.addAndGet(channel.write(encoder.encode(bytes)));
+            } finally {
+                sendLock.unlock();
+            }
+        }
+        countWrite();
+    }
+
+    @Override
+    public String receive() throws IOException {
+        receiveLock.lock();
+        try {
+            while (true) {
+                String frame = decoder.poll();
+                if (frame != null) {
+                    return frame;
+                }
+                receiveBuffer.clear();
+                channel.read(receiveBuffer);
+                receiveBuffer.flip();
+                if (FecDecoder.isEncoded(receiveBuffer)) {
+                    decoder.decode(receiveBuffer);
+                    continue;
+                }
+                int length = receiveBuffer.limit();
+                // Tolerate peers that terminate their datagrams like lines
+                while (length > 0
+                        && (receiveBuffer.get(length - 1) == '\n' || receiveBuffer.get(length - 1) == '\r')) {
+                    length--;
+                }
+                return new String(receiveBuffer.array(), 0, length, StandardCharsets.US_ASCII);
+            }
+        } finally {
+            receiveLock.unlock();
+        }
+    }
+
+    /**
+     *
+     * @return The number of bytes sent in datagrams, repetitions and headers included.
+     */
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    /**
+     *
+     * @return The number of received frames that were lost or late in their own datagram, and were delivered from a
+     * later datagram repeating them.
+     */
+    public long getRecoveredCount() {
+        return decoder.getRecoveredCount();
+    }
+
+    /**
+     *
+     * @return The number of frames lost because no received datagram carried them.
+     */
+    public long getLostCount() {
+        return decoder.getLostCount();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
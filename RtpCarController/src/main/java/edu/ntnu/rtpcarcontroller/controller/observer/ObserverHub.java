@@ -0,0 +1,136 @@
+package edu.ntnu.rtpcarcontroller.controller.observer;
+
+import edu.ntnu.rtpcarcontroller.model.Throttle;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Distributes a live copy of the state stream sent to the car to any number of StateObservers.
+ *
+ * Publishing only stores the newest state in a single atomic word and wakes the hub's dispatcher thread, so the
+ * connection publishing the states is never held up by its observers. The dispatcher hands the newest state to every
+ * observer in turn; states published while it is busy are coalesced into the newest one.
+ */
+public class ObserverHub {
+    private static final Logger logger = Logger.getLogger(ObserverHub.class.getName());
+    private static final Throttle[] THROTTLES = Throttle.values();
+
+    private final List<StateObserver> observers;
+    private final AtomicLong latest;
+    private final AtomicLong published;
+    private final Thread dispatcher;
+    private volatile long dispatched;
+
+    /**
+     * Creates a new ObserverHub and starts its dispatcher thread.
+     */
+    public ObserverHub() {
+        observers = new CopyOnWriteArrayList<>();
+        latest = new AtomicLong();
+        published = new AtomicLong();
+        dispatcher = new Thread(this::dispatch, "State observer dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Packs a sequence number and a state into a single long.
+     */
+    private static long pack(long sequence, Throttle throttle, int steer) {
+        return sequence << 16 | (long) throttle.ordinal() << 8 | steer;
+    }
+
+    /**
+     * Publishes a state sent to the car. Never blocks.
+     * @param throttle The throttle direction that was sent.
+     * @param steer The steering angle (in degrees) that was sent.
+     */
+    public void publish(Throttle throttle, int steer) {
+        long state = pack(published.incrementAndGet(), throttle, steer);
+        // Concurrent publishers must not replace a newer state with an older one
+        latest.accumulateAndGet(state, (current, next) -> next >>> 16 > current >>> 16 ? next : current);
+        LockSupport.unpark(dispatcher);
+    }
+
+    /**
+     * Hands the newest published state to every observer, and waits for a new state once all observers are up to
+     * date.
+     */
+    private void dispatch() {
+        long handled = 0;
+        while (true) {
+            long state = latest.get();
+            long sequence = state >>> 16;
+            if (sequence == handled) {
+                LockSupport.park(this);
+                continue;
+            }
+            handled = sequence;
+
+            Throttle throttle = THROTTLES[(int) (state >>> 8 & 0xFF)];
+            int steer = (int) (state & 0xFF);
+            for (StateObserver observer : observers) {
+                try {
+                    observer.stateSent(throttle, steer);
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "State observer failed", e);
+                }
+            }
+            dispatched++;
+        }
+    }
+
+    /**
+     * Adds a local observer of the state stream.
+     * @param observer The observer to add.
+     */
+    public void addObserver(StateObserver observer) {
+        observers.add(observer);
+    }
+
+    /**
+     * Removes a local observer of the state stream.
+     * @param observer The observer to remove.
+     */
+    public void removeObserver(StateObserver observer) {
+        observers.remove(observer);
+    }
+
+    /**
+     * Opens a server on the given port that streams the states to read-only clients, and registers it as an
+     * observer.
+     * @param port The port to listen on, or 0 to pick a free port.
+     * @return The started server.
+     * @throws IOException If the server could not be opened.
+     */
+    public ObserverServer openServer(int port) throws IOException {
+        ObserverServer server = new ObserverServer(port);
+        server.start();
+        addObserver(server);
+        logger.log(Level.INFO, String.format("Streaming car state to observers on port %d", server.getLocalPort()));
+        return server;
+    }
+
+    /**
+     *
+     * @return The number of states published so far.
+     */
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+    /**
+     *
+     * @return The number of states handed to the observers so far; the difference with the published count is the
+     * number of states that were coalesced.
+     */
+    public long getDispatchedCount() {
+        return dispatched;
+    }
+}
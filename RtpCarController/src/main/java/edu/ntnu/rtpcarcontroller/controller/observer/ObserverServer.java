@@ -0,0 +1,265 @@
+package edu.ntnu.rtpcarcontroller.controller.observer;
+
+import edu.ntnu.rtpcarcontroller.model.Throttle;
+import edu.ntnu.rtpcarcontroller.util.Protocol;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A server that streams the states sent to the car to read-only clients.
+ *
+ * A client receives a HANDSHAKE line followed by one state message per state sent to the car; anything it sends is
+ * ignored. All clients are served by a single non-blocking thread. Every state is encoded once and shared by all
+ * clients; a client that cannot keep up skips intermediate states and always receives the latest one next, so a slow
+ * client never holds up the other clients or the connection to the car.
+ */
+public class ObserverServer implements StateObserver, Closeable {
+    private static final Logger logger = Logger.getLogger(ObserverServer.class.getName());
+    private static final ByteBuffer HANDSHAKE_FRAME = Protocol.encodeFrame(Protocol.HANDSHAKE);
+
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final Thread thread;
+    private final AtomicReference<ByteBuffer> pendingFrame;
+    private final List<Observer> observers;
+    private final ByteBuffer discard;
+    private ByteBuffer latestFrame;
+    private volatile boolean active;
+
+    /**
+     * Creates a new ObserverServer.
+     * @param port The port to listen on, or 0 to pick a free port.
+     * @throws IOException If the server socket or selector could not be opened.
+     */
+    public ObserverServer(int port) throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        selector = Selector.open();
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        thread = new Thread(this::run, "Observer server");
+        thread.setDaemon(true);
+        pendingFrame = new AtomicReference<>();
+        observers = new ArrayList<>();
+        discard = ByteBuffer.allocate(256);
+    }
+
+    /**
+     *
+     * @return The port this server listens on.
+     */
+    public int getLocalPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Starts serving observers.
+     */
+    public void start() {
+        active = true;
+        thread.start();
+    }
+
+    /**
+     * Hands the shared encoding of the state to the server thread, replacing a state that was not picked up yet.
+     */
+    @Override
+    public void stateSent(Throttle throttle, int steer) {
+        pendingFrame.set(Protocol.getStateFrame(throttle, steer));
+        selector.wakeup();
+    }
+
+    /**
+     *
+     * @return The number of connected observers.
+     */
+    public synchronized int getObserverCount() {
+        return observers.size();
+    }
+
+    /**
+     *
+     * @return The total number of states skipped for observers that could not keep up.
+     */
+    public synchronized long getDroppedCount() {
+        long dropped = 0;
+        for (Observer observer : observers) {
+            dropped += observer.dropped;
+        }
+        return dropped;
+    }
+
+    private void run() {
+        while (active) {
+            try {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Observer observer = (Observer) key.attachment();
+                        if (key.isReadable()) {
+                            observer.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            observer.write();
+                        }
+                    }
+                }
+
+                ByteBuffer frame = pendingFrame.getAndSet(null);
+                if (frame != null) {
+                    latestFrame = frame;
+                    synchronized (this) {
+                        for (Observer observer : new ArrayList<>(observers)) {
+                            observer.offer(frame.duplicate());
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                logger.log(Level.WARNING, e.getMessage(), e);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Observer observer = new Observer(channel);
+            observer.key = channel.register(selector, SelectionKey.OP_READ, observer);
+            synchronized (this) {
+                observers.add(observer);
+            }
+            logger.log(Level.FINE, "Observer connected from {0}", channel.getRemoteAddress());
+
+            observer.offer(HANDSHAKE_FRAME.duplicate());
+            if (latestFrame != null) {
+                observer.offer(latestFrame.duplicate());
+            }
+        }
+    }
+
+    /**
+     * Stops serving observers and disconnects all of them. Waits for the server thread to stop before closing the
+     * channels and the selector it uses.
+     * @throws IOException If the server socket or selector could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        active = false;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            for (Observer observer : observers) {
+                observer.channel.close();
+            }
+            observers.clear();
+        }
+        serverChannel.close();
+        selector.close();
+    }
+
+    /**
+     * One connected read-only client, holding at most the frame being written and the newest frame after it.
+     */
+    private class Observer {
+        private final SocketChannel channel;
+        private final ByteBuffer[] pending;
+        private SelectionKey key;
+        private long dropped;
+
+        Observer(SocketChannel channel) {
+            this.channel = channel;
+            pending = new ByteBuffer[2];
+        }
+
+        /**
+         * Queues a frame after the one being written, replacing a queued frame that was not started yet.
+         * @param frame The frame to send.
+         */
+        void offer(ByteBuffer frame) {
+            if (pending[0] == null) {
+                pending[0] = frame;
+            } else {
+                if (pending[1] != null) {
+                    dropped++;
+                }
+                pending[1] = frame;
+            }
+            write();
+        }
+
+        /**
+         * Writes the pending frames in one gathering write, and waits for writability if the client is behind.
+         */
+        void write() {
+            try {
+                if (pending[0] != null) {
+                    channel.write(pending, 0, pending[1] == null ? 1 : 2);
+                }
+                if (pending[0] != null && !pending[0].hasRemaining()) {
+                    pending[0] = pending[1];
+                    pending[1] = null;
+                    if (pending[0] != null && !pending[0].hasRemaining()) {
+                        pending[0] = null;
+                    }
+                }
+                key.interestOps(pending[0] == null ? SelectionKey.OP_READ
+                        : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            } catch (IOException e) {
+                disconnect();
+            }
+        }
+
+        /**
+         * Discards anything the client sends, and disconnects it once it closes the connection.
+         */
+        void read() {
+            try {
+                discard.clear();
+                if (channel.read(discard) < 0) {
+                    disconnect();
+                }
+            } catch (IOException e) {
+                disconnect();
+            }
+        }
+
+        private void disconnect() {
+            synchronized (ObserverServer.this) {
+                observers.remove(this);
+            }
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.log(Level.FINE, e.getMessage(), e);
+            }
+        }
+    }
+}
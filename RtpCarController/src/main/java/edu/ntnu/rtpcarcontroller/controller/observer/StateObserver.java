@@ -0,0 +1,16 @@
+package edu.ntnu.rtpcarcontroller.controller.observer;
+
+import edu.ntnu.rtpcarcontroller.model.Throttle;
+
+/**
+ * A local subscriber to the stream of states sent to the car.
+ */
+public interface StateObserver {
+    /**
+     * Called with the newest state sent to the car. States sent while an observer is still handling a previous one
+     * are skipped, so an observer always catches up to the latest state.
+     * @param throttle The throttle direction that was sent.
+     * @param steer The steering angle (in degrees) that was sent.
+     */
+    void stateSent(Throttle throttle, int steer);
+}
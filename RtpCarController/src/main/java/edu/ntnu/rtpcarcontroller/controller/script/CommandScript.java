@@ -0,0 +1,179 @@
+package edu.ntnu.rtpcarcontroller.controller.script;
+
+import edu.ntnu.rtpcarcontroller.exception.ScriptFormatException;
+import edu.ntnu.rtpcarcontroller.model.Steer;
+import edu.ntnu.rtpcarcontroller.model.Throttle;
+import edu.ntnu.rtpcarcontroller.util.Protocol;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An immutable, timed sequence of driving commands.
+ *
+ * Scripts are plain text files with one command per line, in the form {@code <time> <command> <value>}, where the
+ * time is given in (possibly fractional) milliseconds since the start of the script, the command is either
+ * {@code throttle} or {@code steer}, and the value is a Throttle name, a Steer name or a steering angle in degrees.
+ * Empty lines and lines starting with {@code #} are ignored. Commands must be ordered by time.
+ *
+ * The commands are stored in primitive arrays, so that playing a script does not allocate.
+ */
+public class CommandScript {
+    static final int THROTTLE = 0;
+    static final int STEER = 1;
+    private static final Throttle[] THROTTLES = Throttle.values();
+
+    /**
+     * Loads a script from a file.
+     * @param path The path of the script file.
+     * @return The loaded script.
+     * @throws IOException If the file could not be read.
+     * @throws ScriptFormatException If the file is not a valid script.
+     */
+    public static CommandScript load(Path path) throws IOException, ScriptFormatException {
+        return parse(Files.readAllLines(path));
+    }
+
+    /**
+     * Parses a script from its lines.
+     * @param lines The lines of the script.
+     * @return The parsed script.
+     * @throws ScriptFormatException If the lines do not form a valid script.
+     */
+    public static CommandScript parse(List<String> lines) throws ScriptFormatException {
+        long[] times = new long[lines.size()];
+        int[] types = new int[lines.size()];
+        int[] values = new int[lines.size()];
+        int size = 0;
+
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("\\s+");
+            if (parts.length != 3) {
+                throw new ScriptFormatException(String.format("Line %d: expected <time> <command> <value>", i + 1));
+            }
+
+            try {
+                times[size] = (long) (Double.parseDouble(parts[0]) * TimeUnit.MILLISECONDS.toNanos(1));
+            } catch (NumberFormatException e) {
+                throw new ScriptFormatException(String.format("Line %d: invalid time %s", i + 1, parts[0]), e);
+            }
+            if (times[size] < 0 || (size > 0 && times[size] < times[size - 1])) {
+                throw new ScriptFormatException(String.format("Line %d: commands must be ordered by time", i + 1));
+            }
+
+            switch (parts[1].toLowerCase()) {
+                case "throttle":
+                    types[size] = THROTTLE;
+                    values[size] = parseThrottle(parts[2], i + 1);
+                    break;
+                case "steer":
+                    types[size] = STEER;
+                    values[size] = parseSteer(parts[2], i + 1);
+                    break;
+                default:
+                    throw new ScriptFormatException(String.format("Line %d: unknown command %s", i + 1, parts[1]));
+            }
+            size++;
+        }
+        return new CommandScript(times, types, values, size);
+    }
+
+    private static int parseThrottle(String value, int line) throws ScriptFormatException {
+        try {
+            return Throttle.valueOf(value.toUpperCase()).ordinal();
+        } catch (IllegalArgumentException e) {
+            throw new ScriptFormatException(String.format("Line %d: invalid throttle %s", line, value), e);
+        }
+    }
+
+    private static int parseSteer(String value, int line) throws ScriptFormatException {
+        try {
+            int angle = value.matches("[0-9]+")
+                    ? Integer.parseInt(value)
+                    : Protocol.getDegreesFromSteer(Steer.valueOf(value.toUpperCase()));
+            if (angle > 180) {
+                throw new ScriptFormatException(String.format("Line %d: angle %s out of range", line, value));
+            }
+            return angle;
+        } catch (IllegalArgumentException e) {
+            throw new ScriptFormatException(String.format("Line %d: invalid steering value %s", line, value), e);
+        }
+    }
+
+    /**
+     * Creates a script that sweeps the steering angle back and forth from 0 to 180 degrees at a fixed command rate,
+     * with the throttle set to forward, which is useful for measuring timing accuracy at high command rates.
+     * @param rate The number of commands per second.
+     * @param durationMillis The duration of the script, in milliseconds.
+     * @return The created script.
+     */
+    public static CommandScript steeringSweep(int rate, long durationMillis) {
+        int size = (int) (rate * durationMillis / 1000) + 1;
+        long[] times = new long[size];
+        int[] types = new int[size];
+        int[] values = new int[size];
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+
+        types[0] = THROTTLE;
+        values[0] = Throttle.FORWARD.ordinal();
+        for (int i = 1; i < size; i++) {
+            times[i] = i * interval;
+            types[i] = STEER;
+            // Move one degree per command, bouncing between the outer angles
+            int position = i % 360;
+            values[i] = position <= 180 ? position : 360 - position;
+        }
+        return new CommandScript(times, types, values, size);
+    }
+
+    private final long[] times;
+    private final int[] types;
+    private final int[] values;
+    private final int size;
+
+    private CommandScript(long[] times, int[] types, int[] values, int size) {
+        this.times = times;
+        this.types = types;
+        this.values = values;
+        this.size = size;
+    }
+
+    /**
+     *
+     * @return The number of commands in this script.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     *
+     * @return The time of the last command, in nanoseconds since the start of the script.
+     */
+    public long getDuration() {
+        return size == 0 ? 0 : times[size - 1];
+    }
+
+    long getTime(int index) {
+        return times[index];
+    }
+
+    int getType(int index) {
+        return types[index];
+    }
+
+    Throttle getThrottle(int index) {
+        return THROTTLES[values[index]];
+    }
+
+    int getAngle(int index) {
+        return values[index];
+    }
+}
@@ -0,0 +1,114 @@
+package edu.ntnu.rtpcarcontroller.controller.script;
+
+import edu.ntnu.rtpcarcontroller.controller.DrivingController;
+import edu.ntnu.rtpcarcontroller.util.LatencyHistogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Plays a CommandScript through the DrivingController, executing every command as close as possible to its
+ * scheduled time.
+ *
+ * Every command is scheduled relative to the start of the script rather than to the previous command, so that
+ * lateness never accumulates into drift. The player parks the thread until shortly before a command is due and
+ * spins for the remainder, which keeps the timing error well below a millisecond at rates of 1 kHz and more. How long
+ * before the deadline parking stops adapts to how much the operating system oversleeps parks on this machine. The
+ * timing error of every command is recorded in a LatencyHistogram.
+ */
+public class ScriptPlayer {
+    private static final Logger logger = Logger.getLogger(ScriptPlayer.class.getName());
+    private static final long MIN_SPIN_THRESHOLD = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long MAX_SPIN_THRESHOLD = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final DrivingController drivingController;
+    private final LatencyHistogram timingError;
+    private long parkOvershoot;
+    private volatile boolean stopped;
+
+    /**
+     * Creates a new ScriptPlayer that drives through the given DrivingController.
+     * @param drivingController The DrivingController to execute the commands with.
+     */
+    public ScriptPlayer(DrivingController drivingController) {
+        this.drivingController = drivingController;
+        timingError = new LatencyHistogram();
+    }
+
+    /**
+     * Plays the given script on the calling thread and returns once all commands are executed or the player is
+     * stopped.
+     * @param script The script to play.
+     * @return A report on the timing accuracy with which the script was played.
+     */
+    public ScriptReport play(CommandScript script) {
+        logger.log(Level.INFO, String.format("Playing script of %d commands over %d ms",
+                script.size(), TimeUnit.NANOSECONDS.toMillis(script.getDuration())));
+        stopped = false;
+        timingError.reset();
+
+        long start = System.nanoTime();
+        long drift = 0;
+        int executed = 0;
+        for (int i = 0; i < script.size() && !stopped; i++) {
+            long due = start + script.getTime(i);
+            waitUntil(due);
+
+            long lateness = System.nanoTime() - due;
+            timingError.record(lateness);
+            execute(script, i);
+            drift = lateness;
+            executed++;
+        }
+
+        ScriptReport report = new ScriptReport(executed, timingError, drift);
+        logger.log(Level.INFO, "Finished script: " + report);
+        return report;
+    }
+
+    /**
+     * Stops a script that is being played, after the command that is currently being executed.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Blocks the calling thread until the given moment, by parking it until just before the moment and spinning for
+     * the remainder. The margin left for spinning is twice the average amount by which parks overslept so far.
+     * @param deadline The moment (in System.nanoTime() terms) to wait for.
+     */
+    private void waitUntil(long deadline) {
+        long threshold = Math.max(MIN_SPIN_THRESHOLD, Math.min(MAX_SPIN_THRESHOLD, 2 * parkOvershoot));
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > threshold && !stopped) {
+            long parkStart = System.nanoTime();
+            LockSupport.parkNanos(remaining - threshold);
+            long overshoot = System.nanoTime() - parkStart - (remaining - threshold);
+            parkOvershoot += (Math.max(0, overshoot) - parkOvershoot) / 8;
+        }
+        while (deadline - System.nanoTime() > 0 && !stopped) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Executes a single command of the script.
+     * @param script The script the command belongs to.
+     * @param index The index of the command in the script.
+     */
+    private void execute(CommandScript script, int index) {
+        switch (script.getType(index)) {
+            case CommandScript.THROTTLE:
+                drivingController.throttle(script.getThrottle(index));
+                break;
+            case CommandScript.STEER:
+                drivingController.steer(script.getAngle(index));
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package edu.ntnu.rtpcarcontroller.controller.script;
+
+import edu.ntnu.rtpcarcontroller.util.LatencyHistogram;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The timing statistics of one played CommandScript.
+ */
+public class ScriptReport {
+    private final int commands;
+    private final long meanError;
+    private final long medianError;
+    private final long p99Error;
+    private final long maxError;
+    private final long drift;
+
+    /**
+     * Creates a new ScriptReport.
+     * @param commands The number of commands that were executed.
+     * @param timingError The histogram of the timing errors of the executed commands.
+     * @param drift The timing error of the last executed command, in nanoseconds.
+     */
+    ScriptReport(int commands, LatencyHistogram timingError, long drift) {
+        this.commands = commands;
+        this.meanError = (long) timingError.getMean();
+        this.medianError = timingError.getPercentile(50);
+        this.p99Error = timingError.getPercentile(99);
+        this.maxError = timingError.getMax();
+        this.drift = drift;
+    }
+
+    public int getCommands() {
+        return commands;
+    }
+
+    /**
+     *
+     * @return The mean timing error, in nanoseconds.
+     */
+    public long getMeanError() {
+        return meanError;
+    }
+
+    /**
+     *
+     * @return The median timing error, in nanoseconds.
+     */
+    public long getMedianError() {
+        return medianError;
+    }
+
+    /**
+     *
+     * @return The 99th percentile of the timing error, in nanoseconds.
+     */
+    public long getP99Error() {
+        return p99Error;
+    }
+
+    /**
+     *
+     * @return The largest timing error, in nanoseconds.
+     */
+    public long getMaxError() {
+        return maxError;
+    }
+
+    /**
+     *
+     * @return How far (in nanoseconds) the last command lagged behind its scheduled time.
+     */
+    public long getDrift() {
+        return drift;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d commands, timing error mean %.1f us, p50 %.1f us, p99 %.1f us, max %.1f us, "
+                        + "drift %.1f us", commands, toMicros(meanError), toMicros(medianError), toMicros(p99Error),
+                toMicros(maxError), toMicros(drift));
+    }
+
+    private static double toMicros(long nanos) {
+        return (double) nanos / TimeUnit.MICROSECONDS.toNanos(1);
+    }
+}
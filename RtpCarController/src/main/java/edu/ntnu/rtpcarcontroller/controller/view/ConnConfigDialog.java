@@ -0,0 +1,59 @@
+package edu.ntnu.rtpcarcontroller.controller.view;
+
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.stage.Modality;
+import javafx.stage.Stage;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The window in which the user configures the server address and port to connect to.
+ *
+ * Loading the dialog parses connectionconfig.fxml and injects its controller through reflection, which is by far the
+ * most expensive part of opening it. The dialog is therefore loaded once and shown again whenever the connection has
+ * to be configured, for instance after every lost connection; the entered address and port are kept in between.
+ */
+public class ConnConfigDialog {
+    private static final Logger logger = Logger.getLogger(ConnConfigDialog.class.getName());
+
+    private final Stage stage;
+
+    private ConnConfigDialog(Stage stage) {
+        this.stage = stage;
+    }
+
+    /**
+     * Loads the dialog from its FXML file. Must be called on the JavaFX application thread.
+     * @return The loaded dialog, which is not shown yet.
+     * @throws IOException If the FXML file could not be loaded.
+     */
+    public static ConnConfigDialog load() throws IOException {
+        logger.log(Level.FINE, "Setting up connection configuration window");
+        FXMLLoader connConfigLoader = new FXMLLoader(ConnConfigDialog.class.getResource("/fxml/connectionconfig.fxml"));
+        Parent connConfigFXML = connConfigLoader.load();
+        Scene connConfigScene = new Scene(connConfigFXML);
+        Stage connConfigStage = new Stage();
+        connConfigStage.setScene(connConfigScene);
+        connConfigStage.initModality(Modality.APPLICATION_MODAL);
+        return new ConnConfigDialog(connConfigStage);
+    }
+
+    /**
+     * Shows the dialog and waits until the user confirmed or cancelled it.
+     */
+    public void showAndWait() {
+        stage.showAndWait();
+    }
+
+    /**
+     *
+     * @return The window of the dialog.
+     */
+    public Stage getStage() {
+        return stage;
+    }
+}
@@ -2,22 +2,24 @@ package edu.ntnu.rtpcarcontroller.controller.view;
 
 import edu.ntnu.rtpcarcontroller.controller.DrivingController;
 import edu.ntnu.rtpcarcontroller.controller.connection.ConnController;
+import edu.ntnu.rtpcarcontroller.exception.NetworkConnectionException;
 import edu.ntnu.rtpcarcontroller.model.Car;
+import edu.ntnu.rtpcarcontroller.model.CarStatePredictor;
 import edu.ntnu.rtpcarcontroller.model.Steer;
 import edu.ntnu.rtpcarcontroller.model.Throttle;
+import edu.ntnu.rtpcarcontroller.util.FrameTracer;
+import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
-import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
+import javafx.scene.control.Label;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.VBox;
-import javafx.stage.Modality;
 import javafx.stage.Stage;
 
 import java.io.IOException;
@@ -30,16 +32,22 @@ import java.util.logging.Logger;
 @SuppressWarnings("WeakerAccess")
 public class HomeController implements Initializable {
     private static final Logger logger = Logger.getLogger(HomeController.class.getName());
+    private static final FrameTracer tracer = FrameTracer.INSTANCE;
+    // Connects to <address>:<port> at startup without asking, e.g. for kiosk setups and startup measurements
+    private static final String CONNECT_PROPERTY = "rtpcarcontroller.connect";
 
     @FXML private VBox rootPane;
     @FXML private Button disconnectButton;
+    @FXML private Label carStateLabel;
     private Scene homeScene;
     private Stage homeStage;
+    private ConnConfigDialog connConfigDialog;
     private ConnController connController;
     private DrivingController drivingController;
     private HashMap<KeyCode, Boolean> keyPressed;
     private EventHandler<KeyEvent> keyPressedEventHandler;
     private EventHandler<KeyEvent> keyReleasedEventHandler;
+    private AnimationTimer carStateTimer;
 
     @Override
     public void initialize(URL location, ResourceBundle resources) {
@@ -57,6 +65,8 @@ public class HomeController implements Initializable {
         drivingController = DrivingController.INSTANCE;
         drivingController.setCar(car);
 
+        showEstimatedCarState(car.getStatePredictor());
+
         keyPressed = new HashMap<>();
         keyPressed.put(KeyCode.UP, false);
         keyPressed.put(KeyCode.DOWN, false);
@@ -70,32 +80,84 @@ public class HomeController implements Initializable {
             homeStage = (Stage) homeScene.getWindow();
 
             homeStage.setOnCloseRequest(e -> {
+                carStateTimer.stop();
                 if (connController.isConnectionActive()) {
                     connController.disconnect();
                 }
+                connController.getStandbyPool().close();
                 homeStage.close();
             });
 
-            configureConnection();
+            if (!connectFromProperty()) {
+                configureConnection();
+            }
         });
     }
 
     /**
-     * Creates a new Stage in which the user can configure the server address and port to connect to.
+     * Shows the state the car is estimated to be in, rather than the state last commanded, so that the driver sees
+     * how far the car lags behind the keys. The estimate is read every frame, and the label is only updated when it
+     * changes.
+     * @param predictor The predictor of the car.
+     */
+    private void showEstimatedCarState(CarStatePredictor predictor) {
+        carStateTimer = new AnimationTimer() {
+            private int shownState = -1;
+
+            @Override
+            public void handle(long now) {
+                // The frame's timestamp is not guaranteed to be in System.nanoTime() terms
+                int state = predictor.getEstimatedState(System.nanoTime());
+                if (state != shownState) {
+                    shownState = state;
+                    carStateLabel.setText(String.format("Car: %s, steering %d°",
+                            CarStatePredictor.throttleOf(state), CarStatePredictor.steerOf(state)));
+                }
+            }
+        };
+        carStateTimer.start();
+    }
+
+    /**
+     * Connects to the server named by the rtpcarcontroller.connect property, if it is set.
+     * @return True if the property is set and the connection was set up; false if the user has to configure the
+     * connection.
+     */
+    private boolean connectFromProperty() {
+        String server = System.getProperty(CONNECT_PROPERTY);
+        if (server == null) {
+            return false;
+        }
+        int separator = server.lastIndexOf(':');
+        if (separator < 0) {
+            logger.log(Level.WARNING, String.format("Ignoring %s=%s; expected <address>:<port>", CONNECT_PROPERTY,
+                    server));
+            return false;
+        }
+        try {
+            connController.connect(server.substring(0, separator), server.substring(separator + 1));
+        } catch (NetworkConnectionException e) {
+            logger.log(Level.WARNING, String.format("Could not connect to %s: %s", server, e.getMessage()));
+            return false;
+        }
+        enableKeyboardHandlers();
+        return true;
+    }
+
+    /**
+     * Shows the window in which the user can configure the server address and port to connect to. The window is
+     * loaded the first time and reused afterwards, so that reconnecting after a lost connection does not parse the
+     * FXML again.
      */
     private void configureConnection() {
         logger.log(Level.INFO, "Requesting connection configuration info from user");
         try {
-            logger.log(Level.FINE, "Setting up connection configuration window");
-            FXMLLoader connConfigLoader = new FXMLLoader(getClass().getResource("/fxml/connectionconfig.fxml"));
-            Parent connConfigFXML = connConfigLoader.load();
-            Scene connConfigScene = new Scene(connConfigFXML);
-            Stage connConfigStage = new Stage();
-            connConfigStage.setScene(connConfigScene);
-            connConfigStage.initModality(Modality.APPLICATION_MODAL);
+            if (connConfigDialog == null) {
+                connConfigDialog = ConnConfigDialog.load();
+            }
 
             logger.log(Level.FINE, "Waiting for user to confirm or cancel connection configuration");
-            connConfigStage.showAndWait();
+            connConfigDialog.showAndWait();
 
             logger.log(Level.FINE, "User confirmed or canceled connection configuration");
             // Returning inactive from showAndWait() indicates user cancelled connection config, so close application
@@ -213,6 +275,7 @@ public class HomeController implements Initializable {
             keyPressedEventHandler = event -> {
                 KeyCode key = event.getCode();
                 if (keyPressed.containsKey(key)) {
+                    tracer.open();
                     keyPressed.put(key, true);
                     if (isThrottleKey(key)) {
                         throttle(getThrottleFromKey(key));
@@ -228,6 +291,7 @@ public class HomeController implements Initializable {
             keyReleasedEventHandler = event -> {
                 KeyCode key = event.getCode();
                 if (keyPressed.containsKey(key)) {
+                    tracer.open();
                     keyPressed.put(key, false);
                     KeyCode opposite = getOppositeKey(key);
                     boolean oppositePressed = keyPressed.get(opposite);
@@ -0,0 +1,11 @@
+package edu.ntnu.rtpcarcontroller.exception;
+
+public class ScriptFormatException extends Exception {
+    public ScriptFormatException(String s) {
+        super(s);
+    }
+
+    public ScriptFormatException(String s, Throwable e) {
+        super(s, e);
+    }
+}
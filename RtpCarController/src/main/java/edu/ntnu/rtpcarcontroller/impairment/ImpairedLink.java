@@ -0,0 +1,163 @@
+package edu.ntnu.rtpcarcontroller.impairment;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Forwards the frames (lines) of one direction of a connection from a source to a sink, delaying, dropping and
+ * reordering them as decided by an ImpairmentModel.
+ *
+ * A link runs two threads: one reading and scheduling frames as soon as they arrive, and one writing each frame at
+ * the moment it is due.
+ */
+class ImpairedLink implements Closeable {
+    private static final Logger logger = Logger.getLogger(ImpairedLink.class.getName());
+
+    private final ImpairmentModel model;
+    private final Source source;
+    private final Sink sink;
+    private final Runnable endOfStreamHandler;
+    private final DelayQueue<ScheduledFrame> queue;
+    private final Thread readThread;
+    private final Thread writeThread;
+    private long sequence;
+    private volatile boolean active;
+
+    /**
+     * Creates a new ImpairedLink.
+     * @param name The name of the link, used for its threads.
+     * @param model The model deciding the fate of every frame.
+     * @param source The source frames are taken from.
+     * @param sink The sink frames are delivered to.
+     * @param endOfStreamHandler The function to call once the source has ended and all pending frames are delivered.
+     */
+    ImpairedLink(String name, ImpairmentModel model, Source source, Sink sink, Runnable endOfStreamHandler) {
+        this.model = model;
+        this.source = source;
+        this.sink = sink;
+        this.endOfStreamHandler = endOfStreamHandler;
+        queue = new DelayQueue<>();
+        readThread = new Thread(this::readFrames, name + " reader");
+        writeThread = new Thread(this::writeFrames, name + " writer");
+        readThread.setDaemon(true);
+        writeThread.setDaemon(true);
+    }
+
+    /**
+     * Starts forwarding frames.
+     */
+    void start() {
+        active = true;
+        readThread.start();
+        writeThread.start();
+    }
+
+    /**
+     * Reads frames until the end of the stream and schedules them for delivery.
+     */
+    private void readFrames() {
+        long lastDelivery = System.nanoTime();
+        try {
+            String frame;
+            while (active && (frame = source.read()) != null) {
+                long delivery = model.schedule(System.nanoTime(), frame.length() + 1);
+                if (delivery == ImpairmentModel.DROPPED) {
+                    logger.log(Level.FINER, "Dropping frame {0}", frame);
+                } else {
+                    queue.put(new ScheduledFrame(frame, delivery, sequence++));
+                    lastDelivery = Math.max(lastDelivery, delivery);
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.FINE, e.getMessage(), e);
+        }
+        // Deliver the end of the stream after the last frame, so that a closing connection is impaired too
+        queue.put(new ScheduledFrame(null, lastDelivery, sequence++));
+    }
+
+    /**
+     * Writes every frame to the sink as soon as it is due.
+     */
+    private void writeFrames() {
+        try {
+            while (active) {
+                ScheduledFrame scheduled = queue.take();
+                if (scheduled.frame == null) {
+                    break;
+                }
+                sink.write(scheduled.frame);
+            }
+        } catch (IOException e) {
+            logger.log(Level.FINE, e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        endOfStreamHandler.run();
+    }
+
+    /**
+     * Stops forwarding frames; frames that are still pending are discarded.
+     */
+    @Override
+    public void close() {
+        active = false;
+        writeThread.interrupt();
+    }
+
+    /**
+     * Where a link takes its frames from.
+     */
+    interface Source {
+        /**
+         * Reads the next frame, blocking until one is available.
+         * @return The frame, or null at the end of the stream.
+         * @throws IOException If reading failed.
+         */
+        String read() throws IOException;
+    }
+
+    /**
+     * Where a link delivers its frames to.
+     */
+    interface Sink {
+        /**
+         * Writes a frame.
+         * @param frame The frame to write.
+         * @throws IOException If writing failed.
+         */
+        void write(String frame) throws IOException;
+    }
+
+    /**
+     * A frame together with the moment at which it must be delivered.
+     */
+    private static class ScheduledFrame implements Delayed {
+        private final String frame;
+        private final long delivery;
+        private final long sequence;
+
+        ScheduledFrame(String frame, long delivery, long sequence) {
+            this.frame = frame;
+            this.delivery = delivery;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(delivery - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            ScheduledFrame that = (ScheduledFrame) other;
+            // Frames due at the same moment keep the order in which they were read
+            int result = Long.compare(delivery, that.delivery);
+            return result != 0 ? result : Long.compare(sequence, that.sequence);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package edu.ntnu.rtpcarcontroller.impairment;
+
+import edu.ntnu.rtpcarcontroller.controller.connection.transport.LoopbackTransport;
+import edu.ntnu.rtpcarcontroller.controller.connection.transport.Transport;
+import edu.ntnu.rtpcarcontroller.event.ConnectionLossEvent;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A Transport that impairs the frames travelling over another transport, in process and without a proxy. It applies
+ * the same models as ImpairmentProxy, so that for instance
+ * {@code ConnController.INSTANCE.setTransportFactory(profile -> new ImpairedTransport(TransportType.LOOPBACK
+ * .create(profile), ImpairmentProfile.WIFI_EDGE, ImpairmentProfile.WIFI_EDGE, seed))} reproduces a poor Wi-Fi link
+ * without any sockets.
+ *
+ * The application talks to one end of an in-memory pair; a pair of ImpairedLinks forwards the frames between the
+ * other end and the wrapped transport.
+ */
+public class ImpairedTransport implements Transport {
+    private static final Logger logger = Logger.getLogger(ImpairedTransport.class.getName());
+
+    private final Transport inner;
+    private final LoopbackTransport application;
+    private final ImpairedLink uplink;
+    private final ImpairedLink downlink;
+
+    /**
+     * Creates a new ImpairedTransport.
+     * @param inner The transport to impair; it is connected when this transport is connected.
+     * @param uplinkProfile The impairments of frames sent to the car.
+     * @param downlinkProfile The impairments of frames received from the car.
+     * @param seed The seed of the uplink model; the downlink model uses the next seed.
+     */
+    public ImpairedTransport(Transport inner, ImpairmentProfile uplinkProfile, ImpairmentProfile downlinkProfile,
+                             long seed) {
+        this.inner = inner;
+        LoopbackTransport[] pair = LoopbackTransport.pair();
+        application = pair[0];
+        LoopbackTransport link = pair[1];
+        uplink = new ImpairedLink("Impaired transport uplink", new ImpairmentModel(uplinkProfile, seed),
+                link::receive, inner::send, this::closeInner);
+        downlink = new ImpairedLink("Impaired transport downlink", new ImpairmentModel(downlinkProfile, seed + 1),
+                inner::receive, link::send, link::close);
+    }
+
+    @Override
+    public void connect(SocketAddress address) throws IOException {
+        inner.connect(address);
+        uplink.start();
+        downlink.start();
+    }
+
+    @Override
+    public void send(String frame) throws IOException {
+        application.send(frame);
+    }
+
+    @Override
+    public String receive() throws IOException {
+        return application.receive();
+    }
+
+    /**
+     *
+     * @return The number of writes of the inner transport, which the uplink makes one frame at a time.
+     */
+    @Override
+    public long getWriteCount() {
+        return inner.getWriteCount();
+    }
+
+    @Override
+    public void setLossHandler(ConnectionLossEvent.Handler handler) {
+        inner.setLossHandler(handler);
+    }
+
+    private void closeInner() {
+        try {
+            inner.close();
+        } catch (IOException e) {
+            logger.log(Level.FINE, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Closes the transport at once, discarding the frames that are still delayed in either direction.
+     */
+    @Override
+    public void close() {
+        application.close();
+        uplink.close();
+        downlink.close();
+        closeInner();
+    }
+}
@@ -0,0 +1,110 @@
+package edu.ntnu.rtpcarcontroller.impairment;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides, for one direction of a link, when each frame offered to the link is delivered, or whether it is lost.
+ *
+ * All random decisions come from a generator seeded at construction, so the same profile, seed and sequence of
+ * frames always results in the same drops, delays and reorderings. The model does not perform any I/O itself; it is
+ * shared by the ImpairmentProxy and by in-process users such as benchmarks.
+ */
+public class ImpairmentModel {
+    /**
+     * The value returned by {@link #schedule(long, int)} for a frame that is lost.
+     */
+    public static final long DROPPED = -1;
+
+    private final ImpairmentProfile profile;
+    private final Random random;
+    private final long latencyNanos;
+    private final long jitterNanos;
+    private long linkFreeAt;
+    private long lastDelivery;
+    private long offered;
+    private long dropped;
+    private long reordered;
+
+    /**
+     * Creates a new ImpairmentModel.
+     * @param profile The conditions of the link.
+     * @param seed The seed for all random decisions of this model.
+     */
+    public ImpairmentModel(ImpairmentProfile profile, long seed) {
+        this.profile = profile;
+        this.random = new Random(seed);
+        this.latencyNanos = TimeUnit.MILLISECONDS.toNanos(profile.getLatencyMillis());
+        this.jitterNanos = TimeUnit.MILLISECONDS.toNanos(profile.getJitterMillis());
+    }
+
+    /**
+     * Offers a frame to the link and returns the moment at which it arrives at the other end.
+     *
+     * Frames are serialised onto the link one after another at the profile's bandwidth, then delayed by the base
+     * latency plus a random jitter. Unless a frame is picked for reordering, it never arrives before a frame offered
+     * earlier, like on a TCP connection; a frame picked for reordering is held back by an extra latency period
+     * without holding back later frames.
+     * @param now The moment (in System.nanoTime() terms) at which the frame is offered.
+     * @param bytes The size of the frame in bytes.
+     * @return The moment (in System.nanoTime() terms) at which the frame is delivered, or DROPPED if it is lost.
+     */
+    public synchronized long schedule(long now, int bytes) {
+        offered++;
+
+        // The frame occupies the link even if it gets lost further on
+        long start = Math.max(now, linkFreeAt);
+        if (profile.getBandwidth() > 0) {
+            linkFreeAt = start + bytes * TimeUnit.SECONDS.toNanos(1) / profile.getBandwidth();
+        } else {
+            linkFreeAt = start;
+        }
+
+        if (random.nextDouble() < profile.getLossRate()) {
+            dropped++;
+            return DROPPED;
+        }
+
+        long delivery = linkFreeAt + latencyNanos;
+        if (jitterNanos > 0) {
+            delivery += (long) (random.nextDouble() * jitterNanos);
+        }
+
+        if (random.nextDouble() < profile.getReorderRate()) {
+            reordered++;
+            return delivery + latencyNanos + jitterNanos;
+        }
+
+        delivery = Math.max(delivery, lastDelivery);
+        lastDelivery = delivery;
+        return delivery;
+    }
+
+    public ImpairmentProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     *
+     * @return The number of frames offered to this link so far.
+     */
+    public synchronized long getOfferedCount() {
+        return offered;
+    }
+
+    /**
+     *
+     * @return The number of frames this link has dropped so far.
+     */
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+
+    /**
+     *
+     * @return The number of frames this link has held back for reordering so far.
+     */
+    public synchronized long getReorderedCount() {
+        return reordered;
+    }
+}
@@ -0,0 +1,111 @@
+package edu.ntnu.rtpcarcontroller.impairment;
+
+/**
+ * An immutable description of the conditions of one direction of a network link: base latency, jitter, frame loss,
+ * reordering and a bandwidth cap. Profiles are interpreted by an ImpairmentModel.
+ */
+public class ImpairmentProfile {
+    /**
+     * A perfect link: no added latency, no loss and unlimited bandwidth.
+     */
+    public static final ImpairmentProfile NONE = new ImpairmentProfile("none", 0, 0, 0, 0, 0);
+
+    /**
+     * A good home Wi-Fi link with little contention.
+     */
+    public static final ImpairmentProfile WIFI_GOOD = new ImpairmentProfile("wifi-good", 3, 2, 0.001, 0.001, 2_500_000);
+
+    /**
+     * A Wi-Fi link shared with other traffic, showing occasional retransmission spikes and some loss.
+     */
+    public static final ImpairmentProfile WIFI_CONGESTED =
+            new ImpairmentProfile("wifi-congested", 15, 25, 0.02, 0.01, 250_000);
+
+    /**
+     * A Wi-Fi link at the edge of its range, with heavy jitter, loss and a very low throughput.
+     */
+    public static final ImpairmentProfile WIFI_EDGE = new ImpairmentProfile("wifi-edge", 40, 80, 0.08, 0.03, 25_000);
+
+    private static final ImpairmentProfile[] PRESETS = { NONE, WIFI_GOOD, WIFI_CONGESTED, WIFI_EDGE };
+
+    /**
+     * Returns the preset profile with the given name.
+     * @param name The name of the preset, e.g. "wifi-congested".
+     * @return The preset profile with the given name.
+     * @throws IllegalArgumentException If no preset with the given name exists.
+     */
+    public static ImpairmentProfile forName(String name) {
+        for (ImpairmentProfile preset : PRESETS) {
+            if (preset.name.equalsIgnoreCase(name)) {
+                return preset;
+            }
+        }
+        throw new IllegalArgumentException("Unknown impairment profile: " + name);
+    }
+
+    private final String name;
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final double lossRate;
+    private final double reorderRate;
+    private final long bandwidth;
+
+    /**
+     * Creates a new ImpairmentProfile.
+     * @param name A descriptive name for the profile.
+     * @param latencyMillis The base one-way latency added to every frame, in milliseconds.
+     * @param jitterMillis The maximum random extra latency added to a frame, in milliseconds.
+     * @param lossRate The probability (0 to 1) that a frame is dropped.
+     * @param reorderRate The probability (0 to 1) that a frame is held back long enough for later frames to pass it.
+     * @param bandwidth The link capacity in bytes per second, or 0 for an unlimited link.
+     */
+    public ImpairmentProfile(String name, long latencyMillis, long jitterMillis, double lossRate, double reorderRate,
+                             long bandwidth) {
+        if (latencyMillis < 0 || jitterMillis < 0 || bandwidth < 0) {
+            throw new IllegalArgumentException("Latency, jitter and bandwidth must not be negative");
+        }
+        if (lossRate < 0 || lossRate > 1 || reorderRate < 0 || reorderRate > 1) {
+            throw new IllegalArgumentException("Loss and reorder rates must be between 0 and 1");
+        }
+        this.name = name;
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.lossRate = lossRate;
+        this.reorderRate = reorderRate;
+        this.bandwidth = bandwidth;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public long getJitterMillis() {
+        return jitterMillis;
+    }
+
+    public double getLossRate() {
+        return lossRate;
+    }
+
+    public double getReorderRate() {
+        return reorderRate;
+    }
+
+    /**
+     *
+     * @return The link capacity in bytes per second, or 0 if the link is unlimited.
+     */
+    public long getBandwidth() {
+        return bandwidth;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (latency %d ms, jitter %d ms, loss %.3f, reorder %.3f, bandwidth %d B/s)",
+                name, latencyMillis, jitterMillis, lossRate, reorderRate, bandwidth);
+    }
+}
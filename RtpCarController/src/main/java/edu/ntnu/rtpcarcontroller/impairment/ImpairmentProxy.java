@@ -0,0 +1,202 @@
+package edu.ntnu.rtpcarcontroller.impairment;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A local TCP proxy that sits between a client (such as ConnController) and a car server (such as TestServer) and
+ * impairs the frames travelling in both directions according to an ImpairmentProfile per direction.
+ *
+ * Every accepted connection gets its own pair of ImpairmentModels, seeded from the proxy's seed and the index of the
+ * connection, so that a run with the same seed and the same traffic reproduces the same network conditions.
+ */
+public class ImpairmentProxy implements Closeable {
+    private static final Logger logger = Logger.getLogger(ImpairmentProxy.class.getName());
+
+    /**
+     * Starts a proxy from the command line.
+     * @param args The port to listen on, the upstream host, the upstream port and optionally the name of a preset
+     *             ImpairmentProfile (applied in both directions) and a seed.
+     * @throws IOException If the proxy could not be started.
+     */
+    public static void main(String... args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("Usage: ImpairmentProxy <listen port> <upstream host> <upstream port> [profile] [seed]");
+            return;
+        }
+        int listenPort = Integer.parseInt(args[0]);
+        SocketAddress upstream = new InetSocketAddress(args[1], Integer.parseInt(args[2]));
+        ImpairmentProfile profile = args.length > 3 ? ImpairmentProfile.forName(args[3]) : ImpairmentProfile.WIFI_GOOD;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 0;
+
+        ImpairmentProxy proxy = new ImpairmentProxy(listenPort, upstream, profile, profile, seed);
+        System.out.println(String.format("Impairing 127.0.0.1:%d -> %s with profile %s and seed %d",
+                proxy.getLocalPort(), upstream, profile, seed));
+
+        // Keep accepting on the main thread, since the proxy's own acceptor thread is a daemon
+        proxy.active = true;
+        proxy.acceptConnections();
+    }
+
+    private final ServerSocket serverSocket;
+    private final SocketAddress upstream;
+    private final ImpairmentProfile uplinkProfile;
+    private final ImpairmentProfile downlinkProfile;
+    private final long seed;
+    private final AtomicInteger connectionCount;
+    private final Thread acceptThread;
+    private volatile boolean active;
+
+    /**
+     * Creates a new ImpairmentProxy that listens on the loopback interface.
+     * @param listenPort The port to listen on, or 0 to pick a free port.
+     * @param upstream The address of the server to forward connections to.
+     * @param uplinkProfile The conditions for frames travelling from the client to the server.
+     * @param downlinkProfile The conditions for frames travelling from the server to the client.
+     * @param seed The seed from which all random decisions of the proxy are derived.
+     * @throws IOException If the listening socket could not be created.
+     */
+    public ImpairmentProxy(int listenPort, SocketAddress upstream, ImpairmentProfile uplinkProfile,
+                           ImpairmentProfile downlinkProfile, long seed) throws IOException {
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.bind(new InetSocketAddress("127.0.0.1", listenPort));
+        this.upstream = upstream;
+        this.uplinkProfile = uplinkProfile;
+        this.downlinkProfile = downlinkProfile;
+        this.seed = seed;
+        connectionCount = new AtomicInteger();
+        acceptThread = new Thread(this::acceptConnections, "Impairment proxy acceptor");
+        acceptThread.setDaemon(true);
+    }
+
+    /**
+     *
+     * @return The port this proxy listens on.
+     */
+    public int getLocalPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Starts accepting connections.
+     */
+    public void start() {
+        active = true;
+        acceptThread.start();
+    }
+
+    /**
+     * Accepts client connections and connects each of them to the upstream server through a pair of ImpairedLinks.
+     */
+    private void acceptConnections() {
+        while (active) {
+            Socket client = null;
+            Socket server = null;
+            try {
+                client = serverSocket.accept();
+                server = new Socket();
+                server.connect(upstream);
+                client.setTcpNoDelay(true);
+                server.setTcpNoDelay(true);
+
+                int index = connectionCount.getAndIncrement();
+                logger.log(Level.INFO, String.format("Proxying connection %d from %s to %s",
+                        index, client.getRemoteSocketAddress(), upstream));
+                link(index, client, server);
+            } catch (IOException e) {
+                // The links were not started, so nothing else closes the sockets
+                if (client != null) {
+                    closeQuietly(client);
+                }
+                if (server != null) {
+                    closeQuietly(server);
+                }
+                if (active) {
+                    logger.log(Level.WARNING, e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts impairing the traffic between a client and the server.
+     * @param index The index of the connection, used to derive the seeds of its models.
+     * @param client The socket connected to the client.
+     * @param server The socket connected to the server.
+     * @throws IOException If the streams of either socket could not be opened.
+     */
+    private void link(int index, Socket client, Socket server) throws IOException {
+        AtomicInteger openLinks = new AtomicInteger(2);
+        Runnable closeWhenDone = () -> {
+            if (openLinks.decrementAndGet() == 0) {
+                closeQuietly(client);
+                closeQuietly(server);
+            }
+        };
+
+        ImpairedLink uplink = new ImpairedLink("Impaired uplink " + index,
+                new ImpairmentModel(uplinkProfile, seed + 2L * index),
+                new BufferedReader(new InputStreamReader(client.getInputStream()))::readLine,
+                lineSink(server),
+                () -> {
+                    shutdownOutputQuietly(server);
+                    closeWhenDone.run();
+                });
+        ImpairedLink downlink = new ImpairedLink("Impaired downlink " + index,
+                new ImpairmentModel(downlinkProfile, seed + 2L * index + 1),
+                new BufferedReader(new InputStreamReader(server.getInputStream()))::readLine,
+                lineSink(client),
+                () -> {
+                    shutdownOutputQuietly(client);
+                    closeWhenDone.run();
+                });
+        uplink.start();
+        downlink.start();
+    }
+
+    /**
+     * Creates a sink writing every frame to a socket as a line.
+     */
+    private static ImpairedLink.Sink lineSink(Socket socket) throws IOException {
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+        return frame -> {
+            writer.write(frame);
+            writer.newLine();
+            writer.flush();
+        };
+    }
+
+    private static void shutdownOutputQuietly(Socket socket) {
+        try {
+            if (!socket.isClosed()) {
+                socket.shutdownOutput();
+            }
+        } catch (IOException e) {
+            logger.log(Level.FINE, e.getMessage(), e);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            logger.log(Level.FINE, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Stops accepting connections. Connections that are already proxied end when either side closes them.
+     * @throws IOException If the listening socket could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        active = false;
+        serverSocket.close();
+    }
+}
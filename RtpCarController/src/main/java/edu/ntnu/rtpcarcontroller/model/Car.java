@@ -4,15 +4,24 @@ import edu.ntnu.rtpcarcontroller.event.SteerChangeEvent;
 import edu.ntnu.rtpcarcontroller.event.ThrottleChangeEvent;
 import edu.ntnu.rtpcarcontroller.util.Protocol;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class Car {
+    /**
+     * The steering angle furthest to the left, in degrees.
+     */
+    public static final int MIN_ANGLE = 0;
+    /**
+     * The steering angle furthest to the right, in degrees.
+     */
+    public static final int MAX_ANGLE = 180;
     private static final Logger logger = Logger.getLogger(Car.class.getName());
     private final List<SteerChangeEvent.Handler> steerChangeHandlers;
     private final List<ThrottleChangeEvent.Handler> throttleChangeHandlers;
+    private final CarStatePredictor statePredictor;
     private Throttle throttle;
     private int steer;
 
@@ -21,8 +30,10 @@ public class Car {
      */
     public Car() {
         logger.log(Level.FINE, "Initialising new Car");
-        steerChangeHandlers = new ArrayList<>();
-        throttleChangeHandlers = new ArrayList<>();
+        // A connection handing the car over to another one changes the handlers while the car is being driven
+        steerChangeHandlers = new CopyOnWriteArrayList<>();
+        throttleChangeHandlers = new CopyOnWriteArrayList<>();
+        statePredictor = new CarStatePredictor();
         throttle = Throttle.NEUTRAL;
         steer = 90;
     }
@@ -59,9 +70,11 @@ public class Car {
 
     /**
      * Steers the car into the given direction.
-     * @param angle The direction to steer towards, given as an angle in degrees.
+     * @param angle The direction to steer towards, given as an angle in degrees between MIN_ANGLE and MAX_ANGLE.
+     * @throws IllegalArgumentException If the angle is out of range.
      */
-    private void steer(int angle) {
+    public void steer(int angle) {
+        requireValidAngle(angle);
         if (steer != angle) {
             steer = angle;
             SteerChangeEvent event = new SteerChangeEvent(this, angle);
@@ -79,6 +92,27 @@ public class Car {
         steer(Protocol.getDegreesFromSteer(dir));
     }
 
+    /**
+     * Checks that a steering angle is one the protocol can carry.
+     * @param angle The angle to check, in degrees.
+     * @throws IllegalArgumentException If the angle is not between MIN_ANGLE and MAX_ANGLE.
+     */
+    public static void requireValidAngle(int angle) {
+        if (angle < MIN_ANGLE || angle > MAX_ANGLE) {
+            throw new IllegalArgumentException(String.format("Steering angle %d out of range [%d, %d]", angle,
+                    MIN_ANGLE, MAX_ANGLE));
+        }
+    }
+
+    /**
+     *
+     * @return The predictor estimating the state the remote car is actually in, which may lag behind the state of
+     * this Car due to network latency.
+     */
+    public CarStatePredictor getStatePredictor() {
+        return statePredictor;
+    }
+
     /**
      * Resets both the throttle and steering direction of the car to the neutral state.
      */
@@ -102,4 +136,20 @@ public class Car {
     public void addThrottleChangeHandler(ThrottleChangeEvent.Handler handler) {
         throttleChangeHandlers.add(handler);
     }
+
+    /**
+     * Removes a handler added by addSteerChangeHandler.
+     * @param handler The handler to remove.
+     */
+    public void removeSteerChangeHandler(SteerChangeEvent.Handler handler) {
+        steerChangeHandlers.remove(handler);
+    }
+
+    /**
+     * Removes a handler added by addThrottleChangeHandler.
+     * @param handler The handler to remove.
+     */
+    public void removeThrottleChangeHandler(ThrottleChangeEvent.Handler handler) {
+        throttleChangeHandlers.remove(handler);
+    }
 }
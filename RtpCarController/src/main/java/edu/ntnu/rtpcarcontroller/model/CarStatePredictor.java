@@ -0,0 +1,252 @@
+package edu.ntnu.rtpcarcontroller.model;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Estimates the state the remote car is actually in, by dead reckoning from the last state the car acknowledged, the
+ * commands that are still in flight and the measured round trip time.
+ *
+ * A command is assumed to take effect half a round trip after it was sent. The newest command that has been under way
+ * for at least that long is taken as the car's current state; if none has, the last acknowledged state is used. The
+ * estimate is worked out whenever it is asked for, so that it is as fresh as the moment of the call, e.g. every frame
+ * of the UI. All bookkeeping is done in preallocated primitive arrays, so that neither updates nor estimates cause
+ * any allocation.
+ */
+public class CarStatePredictor {
+    private static final int CAPACITY = 64;
+    private static final long INITIAL_ROUND_TRIP_TIME = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final Throttle[] THROTTLES = Throttle.values();
+
+    private final long[] sentAt;
+    private final int[] sentThrottle;
+    private final int[] sentSteer;
+    private int head;
+    private int size;
+    private long roundTripTime;
+    private long roundTripVariation;
+    private boolean roundTripMeasured;
+    private Throttle acknowledgedThrottle;
+    private int acknowledgedSteer;
+    private long acknowledgedAt;
+
+    /**
+     * Creates a new CarStatePredictor for a car in the neutral state.
+     */
+    public CarStatePredictor() {
+        sentAt = new long[CAPACITY];
+        sentThrottle = new int[CAPACITY];
+        sentSteer = new int[CAPACITY];
+        reset();
+    }
+
+    /**
+     * Forgets all commands in flight and round trip measurements and assumes the car is in the neutral state, as it
+     * is after a new connection has been validated.
+     */
+    public synchronized void reset() {
+        head = 0;
+        size = 0;
+        roundTripTime = INITIAL_ROUND_TRIP_TIME;
+        roundTripVariation = INITIAL_ROUND_TRIP_TIME / 2;
+        roundTripMeasured = false;
+        acknowledgedThrottle = Throttle.NEUTRAL;
+        acknowledgedSteer = 90;
+        acknowledgedAt = System.nanoTime();
+    }
+
+    /**
+     * Registers a state command that was sent to the car. If too many commands are in flight, the oldest one is
+     * forgotten.
+     * @param throttle The commanded throttle direction.
+     * @param steer The commanded steering angle, in degrees.
+     * @param now The moment (in System.nanoTime() terms) at which the command was sent.
+     */
+    public synchronized void commandSent(Throttle throttle, int steer, long now) {
+        if (size == CAPACITY) {
+            head = (head + 1) % CAPACITY;
+            size--;
+        }
+        int index = (head + size) % CAPACITY;
+        sentAt[index] = now;
+        sentThrottle[index] = throttle.ordinal();
+        sentSteer[index] = steer;
+        size++;
+    }
+
+    /**
+     * Registers that the car acknowledged a state. The oldest matching command in flight, and every command sent
+     * before it, is removed, and the time it took to be acknowledged is used as a round trip time sample.
+     * @param throttle The acknowledged throttle direction.
+     * @param steer The acknowledged steering angle, in degrees.
+     * @param now The moment (in System.nanoTime() terms) at which the acknowledgement arrived.
+     * @return The round trip time of the acknowledged command in nanoseconds, or -1 if no command in flight matches.
+     */
+    public synchronized long commandAcknowledged(Throttle throttle, int steer, long now) {
+        acknowledgedThrottle = throttle;
+        acknowledgedSteer = steer;
+        acknowledgedAt = now;
+
+        for (int i = 0; i < size; i++) {
+            int index = (head + i) % CAPACITY;
+            if (sentThrottle[index] == throttle.ordinal() && sentSteer[index] == steer) {
+                long sample = now - sentAt[index];
+                updateRoundTripTime(sample);
+                head = (index + 1) % CAPACITY;
+                size -= i + 1;
+                return sample;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Updates the smoothed round trip time and its variation with a new sample, in the same way as TCP does.
+     * @param sample The measured round trip time, in nanoseconds.
+     */
+    private void updateRoundTripTime(long sample) {
+        if (!roundTripMeasured) {
+            roundTripTime = sample;
+            roundTripVariation = sample / 2;
+            roundTripMeasured = true;
+        } else {
+            roundTripVariation += (Math.abs(roundTripTime - sample) - roundTripVariation) / 4;
+            roundTripTime += (sample - roundTripTime) / 8;
+        }
+    }
+
+    /**
+     * Finds the command the car is estimated to be executing at the given moment.
+     * @param now The moment (in System.nanoTime() terms) to estimate the state of the car for.
+     * @return The index of the newest command in flight that has taken effect by then, or -1 if none has and the car
+     * is still in the state it acknowledged last.
+     */
+    private int estimate(long now) {
+        long appliedBefore = now - roundTripTime / 2;
+        for (int i = size - 1; i >= 0; i--) {
+            int index = (head + i) % CAPACITY;
+            if (sentAt[index] <= appliedBefore) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     *
+     * @param now The moment (in System.nanoTime() terms) to estimate the state of the car for.
+     * @return The estimated throttle direction of the car at that moment.
+     */
+    public synchronized Throttle getEstimatedThrottle(long now) {
+        int index = estimate(now);
+        return index < 0 ? acknowledgedThrottle : THROTTLES[sentThrottle[index]];
+    }
+
+    /**
+     *
+     * @param now The moment (in System.nanoTime() terms) to estimate the state of the car for.
+     * @return The estimated steering angle (in degrees) of the car at that moment.
+     */
+    public synchronized int getEstimatedSteer(long now) {
+        int index = estimate(now);
+        return index < 0 ? acknowledgedSteer : sentSteer[index];
+    }
+
+    /**
+     * Estimates the throttle direction and the steering angle of the car at once, so that both belong to the same
+     * state even if an acknowledgement arrives meanwhile. The state is packed into an int, which throttleOf and
+     * steerOf unpack, so that the estimate does not allocate.
+     * @param now The moment (in System.nanoTime() terms) to estimate the state of the car for.
+     * @return The estimated state of the car at that moment, packed.
+     */
+    public synchronized int getEstimatedState(long now) {
+        int index = estimate(now);
+        return index < 0 ? pack(acknowledgedThrottle.ordinal(), acknowledgedSteer)
+                : pack(sentThrottle[index], sentSteer[index]);
+    }
+
+    private static int pack(int throttle, int steer) {
+        return throttle << 16 | steer & 0xFFFF;
+    }
+
+    /**
+     *
+     * @param state A state packed by getEstimatedState.
+     * @return The throttle direction of the state.
+     */
+    public static Throttle throttleOf(int state) {
+        return THROTTLES[state >>> 16];
+    }
+
+    /**
+     *
+     * @param state A state packed by getEstimatedState.
+     * @return The steering angle (in degrees) of the state.
+     */
+    public static int steerOf(int state) {
+        return (short) state;
+    }
+
+    /**
+     *
+     * @return The estimated current throttle direction of the car.
+     */
+    public Throttle getEstimatedThrottle() {
+        return getEstimatedThrottle(System.nanoTime());
+    }
+
+    /**
+     *
+     * @return The estimated current steering angle (in degrees) of the car.
+     */
+    public int getEstimatedSteer() {
+        return getEstimatedSteer(System.nanoTime());
+    }
+
+    /**
+     *
+     * @return The throttle direction the car acknowledged last.
+     */
+    public synchronized Throttle getAcknowledgedThrottle() {
+        return acknowledgedThrottle;
+    }
+
+    /**
+     *
+     * @return The steering angle (in degrees) the car acknowledged last.
+     */
+    public synchronized int getAcknowledgedSteer() {
+        return acknowledgedSteer;
+    }
+
+    /**
+     *
+     * @return The moment (in System.nanoTime() terms) at which the car acknowledged a state last.
+     */
+    public synchronized long getAcknowledgedAt() {
+        return acknowledgedAt;
+    }
+
+    /**
+     *
+     * @return The number of commands sent that have not been acknowledged yet.
+     */
+    public synchronized int getCommandsInFlight() {
+        return size;
+    }
+
+    /**
+     *
+     * @return The smoothed round trip time, in nanoseconds.
+     */
+    public synchronized long getRoundTripTime() {
+        return roundTripTime;
+    }
+
+    /**
+     *
+     * @return The smoothed variation of the round trip time, in nanoseconds.
+     */
+    public synchronized long getRoundTripVariation() {
+        return roundTripVariation;
+    }
+}
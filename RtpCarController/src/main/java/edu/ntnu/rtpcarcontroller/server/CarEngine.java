@@ -0,0 +1,414 @@
+package edu.ntnu.rtpcarcontroller.server;
+
+import edu.ntnu.rtpcarcontroller.model.Throttle;
+import edu.ntnu.rtpcarcontroller.util.LatencyHistogram;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The car side of a connection, as run by the reference server: it takes the state commanded by the client and
+ * drives a simulated car towards it, the way the real car's actuators would.
+ *
+ * State frames are parsed straight from the received bytes, without creating any objects, and the latest commanded
+ * state is kept in a single volatile word together with the time it arrived. A loop on a thread of its own ticks at
+ * a fixed rate and moves the applied state towards the commanded one at a limited rate: the steering angle turns at
+ * most maxSteerRate degrees per second and the throttle power ramps by at most throttleRate per second, from -1 (full
+ * reverse) to 1 (full forward).
+ *
+ * If no frame arrives for longer than the failsafe deadline, which is derived from the heartbeat period the client
+ * sends at, the engine cuts the throttle at once and keeps it cut until frames arrive again.
+ *
+ * For every change of the commanded state, the engine records how long the applied state took to reach it. This
+ * applied-versus-commanded lag is what the driver of the car feels, actuators included, and is reported by summary.
+ *
+ * The engine also keeps the car's clock, which clients synchronise with. A state frame tagged with its send time on
+ * that clock has its one-way latency recorded, and is rejected if it is older than the maximum command age; a
+ * rejected frame does not count as proof that the client is still there.
+ */
+public class CarEngine {
+    /**
+     * Returned by parseState if the line is not a state frame.
+     */
+    public static final int NO_STATE = -1;
+
+    private static final byte[] THROTTLE_PREFIX = "T:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] STEER_PREFIX = " S:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TIME_PREFIX = " @".getBytes(StandardCharsets.US_ASCII);
+    private static final Throttle[] THROTTLES = Throttle.values();
+    private static final byte[][] THROTTLE_NAMES = new byte[THROTTLES.length][];
+    private static final int THROTTLE_SHIFT = 8;
+    private static final int TIME_SHIFT = 10;
+    private static final long STATE_MASK = (1L << TIME_SHIFT) - 1;
+    private static final int NEUTRAL_STATE = Throttle.NEUTRAL.ordinal() << THROTTLE_SHIFT | 90;
+    // The applied state counts as having reached the commanded state within this margin
+    private static final double SETTLED_DEGREES = 0.5;
+    private static final double SETTLED_POWER = 0.01;
+
+    static {
+        for (Throttle throttle : THROTTLES) {
+            THROTTLE_NAMES[throttle.ordinal()] = throttle.name().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private final long tickNanos;
+    private final long failsafeNanos;
+    private final double maxSteerStep;
+    private final double throttleStep;
+    private final long start;
+    private final LatencyHistogram lag;
+    // Recorded by the threads reading the connections, under its own monitor, as is the stale count
+    private final LatencyHistogram oneWay;
+    private volatile long maxAgeNanos;
+    private volatile long staleCount;
+    private volatile long commanded;
+    private volatile boolean running;
+    private Thread thread;
+
+    // Owned by the tick loop
+    private int target;
+    private long targetNanos;
+    private boolean settled;
+    private double appliedSteer;
+    private double appliedPower;
+    private boolean failsafe;
+    private long tickCount;
+    private long changeCount;
+    private long supersededCount;
+    private long failsafeCount;
+
+    /**
+     * Creates a new CarEngine with the actuator rates of the reference car: a full turn of the steering (180 degrees)
+     * takes half a second, and so does ramping the throttle from neutral to full power. The engine ticks every 10 ms.
+     * @param heartbeatMillis The period at which the client repeats its state, from which the failsafe deadline is
+     *                        derived.
+     */
+    public CarEngine(long heartbeatMillis) {
+        this(heartbeatMillis, 10, 360, 2);
+    }
+
+    /**
+     * Creates a new CarEngine.
+     * @param heartbeatMillis The period at which the client repeats its state. The failsafe deadline is 10% longer,
+     *                        as the read timeout of the reference server always was.
+     * @param tickMillis The period of the tick loop.
+     * @param maxSteerRate The highest rate at which the steering turns, in degrees per second.
+     * @param throttleRate The highest rate at which the throttle power changes, in units per second.
+     */
+    public CarEngine(long heartbeatMillis, long tickMillis, double maxSteerRate, double throttleRate) {
+        tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        failsafeNanos = TimeUnit.MILLISECONDS.toNanos(heartbeatMillis + heartbeatMillis / 10);
+        double tickSeconds = tickMillis / 1000.0;
+        maxSteerStep = maxSteerRate * tickSeconds;
+        throttleStep = throttleRate * tickSeconds;
+        start = System.nanoTime();
+        lag = new LatencyHistogram();
+        oneWay = new LatencyHistogram();
+        commanded = NEUTRAL_STATE;
+        target = NEUTRAL_STATE;
+        settled = true;
+        appliedSteer = 90;
+    }
+
+    /**
+     * Parses a state frame, such as "T:FORWARD S:90", without creating any objects.
+     * @param line The buffer holding the line, without its terminator.
+     * @param offset The index of the first byte of the line.
+     * @param length The length of the line.
+     * @return The throttle ordinal shifted left by 8 bits, combined with the steering angle, or NO_STATE if the line
+     * is not a state frame.
+     */
+    public static int parseState(byte[] line, int offset, int length) {
+        int end = offset + length;
+        if (!matches(line, offset, end, THROTTLE_PREFIX)) {
+            return NO_STATE;
+        }
+        int index = offset + THROTTLE_PREFIX.length;
+        int throttle = -1;
+        for (int i = 0; i < THROTTLE_NAMES.length; i++) {
+            if (matches(line, index, end, THROTTLE_NAMES[i])) {
+                throttle = i;
+                index += THROTTLE_NAMES[i].length;
+                break;
+            }
+        }
+        if (throttle < 0 || !matches(line, index, end, STEER_PREFIX)) {
+            return NO_STATE;
+        }
+        index += STEER_PREFIX.length;
+        int digits = index;
+        int angle = 0;
+        while (index < end && line[index] >= '0' && line[index] <= '9' && angle <= 180) {
+            angle = angle * 10 + line[index] - '0';
+            index++;
+        }
+        // Further fields may follow the angle, separated by a space
+        if (index == digits || angle > 180 || (index < end && line[index] != ' ')) {
+            return NO_STATE;
+        }
+        return throttle << THROTTLE_SHIFT | angle;
+    }
+
+    /**
+     * Parses the send time a state frame is tagged with, such as the 1234567 of "T:FORWARD S:90 @1234567", without
+     * creating any objects.
+     * @param line The buffer holding the line, without its terminator.
+     * @param offset The index of the first byte of the line.
+     * @param length The length of the line.
+     * @return The send time in microseconds of the car's clock, or -1 if the line is not tagged with a time.
+     */
+    public static long parseTime(byte[] line, int offset, int length) {
+        int end = offset + length;
+        for (int index = offset; index < end; index++) {
+            if (!matches(line, index, end, TIME_PREFIX)) {
+                continue;
+            }
+            index += TIME_PREFIX.length;
+            int digits = index;
+            long time = 0;
+            while (index < end && line[index] >= '0' && line[index] <= '9') {
+                time = time * 10 + line[index] - '0';
+                index++;
+            }
+            return index == digits || (index < end && line[index] != ' ') ? -1 : time;
+        }
+        return -1;
+    }
+
+    private static boolean matches(byte[] line, int index, int end, byte[] expected) {
+        if (end - index < expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (line[index + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Takes a frame received from the client: a state frame commands a new state, and any frame proves that the
+     * client is still there. Called by the threads reading the connections.
+     * @param line The buffer holding the line, without its terminator.
+     * @param offset The index of the first byte of the line.
+     * @param length The length of the line.
+     * @return Whether the line was a state frame.
+     */
+    public boolean receive(byte[] line, int offset, int length) {
+        int state = parseState(line, offset, length);
+        long now = System.nanoTime();
+        long word = commanded;
+        if (state != NO_STATE) {
+            long sent = parseTime(line, offset, length);
+            if (sent >= 0) {
+                long age = now - start - TimeUnit.MICROSECONDS.toNanos(sent);
+                long maxAge = maxAgeNanos;
+                boolean stale = maxAge > 0 && age > maxAge;
+                synchronized (oneWay) {
+                    oneWay.record(age);
+                    if (stale) {
+                        staleCount++;
+                    }
+                }
+                if (stale) {
+                    return false;
+                }
+            }
+            word = state;
+        }
+        commanded = (now - start) << TIME_SHIFT | (word & STATE_MASK);
+        return state != NO_STATE;
+    }
+
+    /**
+     *
+     * @return The current time of the car's clock, in microseconds since the engine was created.
+     */
+    public long clockMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+    }
+
+    /**
+     * Sets the maximum age of a command: a state frame tagged with a send time longer ago than this is rejected.
+     * Frames that are not tagged are always accepted.
+     * @param maxAgeMillis The maximum age in milliseconds, or 0 to accept commands of any age.
+     */
+    public void setMaxCommandAge(long maxAgeMillis) {
+        maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMillis);
+    }
+
+    /**
+     * Starts the tick loop. The failsafe deadline starts counting now.
+     */
+    public void start() {
+        commanded = (System.nanoTime() - start) << TIME_SHIFT | (commanded & STATE_MASK);
+        running = true;
+        thread = new Thread(this::run, "Car engine");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the tick loop and cuts the throttle, as when the connection to the client is closed.
+     */
+    public void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            appliedPower = 0;
+        }
+    }
+
+    private void run() {
+        long next = System.nanoTime();
+        while (running) {
+            tick(next);
+            next += tickNanos;
+            long now = System.nanoTime();
+            if (next < now) {
+                // Skip the ticks missed while descheduled, rather than catching up in a burst
+                next = now;
+            }
+            LockSupport.parkNanos(this, next - now);
+        }
+    }
+
+    /**
+     * Moves the applied state one tick towards the commanded state.
+     * @param now The time of the tick, as given by System.nanoTime().
+     */
+    synchronized void tick(long now) {
+        long word = commanded;
+        long received = start + (word >>> TIME_SHIFT);
+        int state = (int) (word & STATE_MASK);
+        tickCount++;
+
+        if (now - received > failsafeNanos) {
+            if (!failsafe) {
+                failsafe = true;
+                failsafeCount++;
+            }
+            appliedPower = 0;
+            return;
+        }
+        failsafe = false;
+
+        if (state != target) {
+            if (!settled) {
+                supersededCount++;
+            }
+            target = state;
+            targetNanos = received;
+            settled = false;
+            changeCount++;
+        }
+
+        double steer = state & 0xFF;
+        double power = powerOf(THROTTLES[state >>> THROTTLE_SHIFT]);
+        appliedSteer = approach(appliedSteer, steer, maxSteerStep);
+        appliedPower = approach(appliedPower, power, throttleStep);
+        if (!settled && Math.abs(appliedSteer - steer) < SETTLED_DEGREES
+                && Math.abs(appliedPower - power) < SETTLED_POWER) {
+            settled = true;
+            lag.record(now - targetNanos);
+        }
+    }
+
+    private static double powerOf(Throttle throttle) {
+        switch (throttle) {
+            case FORWARD: return 1;
+            case REVERSE: return -1;
+            default: return 0;
+        }
+    }
+
+    private static double approach(double value, double goal, double step) {
+        if (value < goal) {
+            return Math.min(goal, value + step);
+        }
+        return Math.max(goal, value - step);
+    }
+
+    /**
+     *
+     * @return The steering angle the car is at, in degrees.
+     */
+    public synchronized double getAppliedSteer() {
+        return appliedSteer;
+    }
+
+    /**
+     *
+     * @return The throttle power the car runs at, from -1 (full reverse) to 1 (full forward).
+     */
+    public synchronized double getAppliedPower() {
+        return appliedPower;
+    }
+
+    /**
+     *
+     * @return Whether the throttle is cut because no frame arrived within the failsafe deadline.
+     */
+    public synchronized boolean isFailsafe() {
+        return failsafe;
+    }
+
+    /**
+     *
+     * @return The number of times the failsafe cut the throttle.
+     */
+    public synchronized long getFailsafeCount() {
+        return failsafeCount;
+    }
+
+    /**
+     *
+     * @return A copy of the distribution of the time from a change of the commanded state arriving to the applied
+     * state reaching it.
+     */
+    public synchronized LatencyHistogram getLag() {
+        LatencyHistogram copy = new LatencyHistogram();
+        copy.merge(lag);
+        return copy;
+    }
+
+    /**
+     *
+     * @return A copy of the distribution of the one-way latency of the state frames tagged with their send time.
+     */
+    public LatencyHistogram getOneWayLatency() {
+        LatencyHistogram copy = new LatencyHistogram();
+        synchronized (oneWay) {
+            copy.merge(oneWay);
+        }
+        return copy;
+    }
+
+    /**
+     *
+     * @return The number of state frames rejected for being older than the maximum command age.
+     */
+    public long getStaleCount() {
+        return staleCount;
+    }
+
+    /**
+     *
+     * @return The number of commanded changes, how many of them were superseded before the car reached them, the
+     * failsafe stops and the rejected stale commands, and the distributions of the applied-versus-commanded lag and
+     * of the one-way command latency.
+     */
+    public synchronized String summary() {
+        return String.format("%d ticks, %d commanded changes (%d superseded before reached), %d failsafe stops, "
+                + "%d stale commands rejected%napplied-versus-commanded lag: %s%none-way command latency: %s",
+                tickCount, changeCount, supersededCount, failsafeCount, staleCount, lag.summary(),
+                getOneWayLatency().summary());
+    }
+}
@@ -0,0 +1,476 @@
+package edu.ntnu.rtpcarcontroller.server;
+
+import edu.ntnu.rtpcarcontroller.util.Protocol;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The reference car server: it accepts clients, expects a handshake from each, echoes every line back to the client,
+ * and drives a CarEngine with the state frames it receives. Clients connected at the same time control the same car;
+ * the engine runs from the moment the first client connects until the last one disconnects.
+ *
+ * One controller drives the car at a time, the owner, which is held in an AtomicReference. A frame of the owner is
+ * applied after a single volatile read. A frame of another controller takes the car over with a single
+ * compare-and-set if its priority (see Protocol.PRIORITY) exceeds the owner's, or if the car is free, and is applied at
+ * once; otherwise it is answered with REJECTED and the engine never sees it. The car is free once its owner has
+ * disconnected.
+ *
+ * Lines are read into a fixed buffer and handed to the engine in place, so that a session does not create objects
+ * per frame. Clock synchronisation requests are answered rather than echoed, with the time on the engine's clock at
+ * which the read returned and the time the answer is written.
+ *
+ * Connections that announce the same path group (see Protocol.PATH) carry copies of the same frames, tagged with
+ * sequence numbers. The first copy of a frame to arrive on any of them is applied, answered or echoed, without its
+ * tag, on the connection it arrived on; later copies are dropped. A frame tagged on a connection that is in no group
+ * is deduplicated on that connection alone.
+ *
+ * A client that sends no frame for longer than the failsafe deadline has its car stopped by the engine; a client that
+ * stays silent for several heartbeat periods is considered lost, and its connection is closed.
+ */
+public class CarServer implements AutoCloseable {
+    private static final byte[] HANDSHAKE = Protocol.HANDSHAKE.getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CLOSE_CONNECTION = (Protocol.CLOSE_CONNECTION + "\n").getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SYNC = (Protocol.SYNC + " ").getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PATH = (Protocol.PATH + " ").getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PRIORITY = (Protocol.PRIORITY + " ").getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] REJECTED = (Protocol.REJECTED + "\n").getBytes(StandardCharsets.US_ASCII);
+    // Lines longer than this are cut; no message of the protocol comes close
+    private static final int BUFFER_SIZE = 4096;
+    private static final int LOST_HEARTBEATS = 5;
+
+    private final ServerSocket serverSocket;
+    private final long heartbeatMillis;
+    private final ReentrantLock lock;
+    // Guarded by the lock
+    private final Map<Long, Controller> groups;
+    private final Set<Thread> clientThreads;
+    private final AtomicReference<Controller> owner;
+    private final AtomicLong takeoverCount;
+    private int clientCount;
+    private volatile long lastTakeover;
+    private volatile long maxCommandAge;
+    private volatile CarEngine engine;
+
+    /**
+     * Creates a new CarServer listening on the given port, for clients sending at the protocol's heartbeat period.
+     * @param port The port to listen on, or 0 for any free port.
+     * @throws IOException If the server socket could not be created.
+     */
+    public CarServer(int port) throws IOException {
+        this(port, Protocol.HEARTBEAT_PERIOD);
+    }
+
+    /**
+     * Creates a new CarServer listening on the given port.
+     * @param port The port to listen on, or 0 for any free port.
+     * @param heartbeatMillis The period at which clients repeat their state.
+     * @throws IOException If the server socket could not be created.
+     */
+    public CarServer(int port, long heartbeatMillis) throws IOException {
+        serverSocket = new ServerSocket(port);
+        this.heartbeatMillis = heartbeatMillis;
+        lock = new ReentrantLock();
+        groups = new HashMap<>();
+        clientThreads = new HashSet<>();
+        owner = new AtomicReference<>();
+        takeoverCount = new AtomicLong();
+    }
+
+    /**
+     * Sets the maximum age of the commands the engines of later sessions accept.
+     * @param maxAgeMillis The maximum age in milliseconds, or 0 to accept commands of any age.
+     * @see CarEngine#setMaxCommandAge(long)
+     */
+    public void setMaxCommandAge(long maxAgeMillis) {
+        maxCommandAge = maxAgeMillis;
+    }
+
+    /**
+     *
+     * @return The port the server listens on.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     *
+     * @return The engine of the current session, or of the last one if no client is connected, or null if no client
+     * ever connected.
+     */
+    public CarEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     *
+     * @return The number of times a controller took the car over, whether it was free or driven by another one.
+     */
+    public long getTakeoverCount() {
+        return takeoverCount.get();
+    }
+
+    /**
+     *
+     * @return The time of the last takeover, in System.nanoTime() terms, or 0 if there was none.
+     */
+    public long getLastTakeover() {
+        return lastTakeover;
+    }
+
+    /**
+     * Serves clients, each on a thread of its own, until the server is closed and the clients connected by then have
+     * disconnected.
+     * @throws IOException If accepting a client failed for another reason than the server being closed.
+     */
+    public void serve() throws IOException {
+        try {
+            while (!serverSocket.isClosed()) {
+                Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (IOException e) {
+                    if (serverSocket.isClosed()) {
+                        return;
+                    }
+                    throw e;
+                }
+                Thread thread = new Thread(() -> serveClient(socket), "Car server client");
+                lock.lock();
+                try {
+                    clientThreads.add(thread);
+                } finally {
+                    lock.unlock();
+                }
+                thread.start();
+            }
+        } finally {
+            awaitClients();
+        }
+    }
+
+    private void awaitClients() {
+        while (true) {
+            Thread thread;
+            lock.lock();
+            try {
+                if (clientThreads.isEmpty()) {
+                    return;
+                }
+                thread = clientThreads.iterator().next();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void serveClient(Socket socket) {
+        try (socket) {
+            CarEngine engine = joinSession();
+            try {
+                serve(socket, engine);
+            } finally {
+                leaveSession(engine);
+            }
+        } catch (IOException e) {
+            System.out.println("Connection to client failed: " + e.getMessage());
+        } finally {
+            lock.lock();
+            try {
+                clientThreads.remove(Thread.currentThread());
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Counts a client in, and starts the engine of a new session if it is the first one.
+     */
+    private CarEngine joinSession() {
+        lock.lock();
+        try {
+            if (clientCount++ == 0) {
+                CarEngine engine = new CarEngine(heartbeatMillis);
+                engine.setMaxCommandAge(maxCommandAge);
+                engine.start();
+                this.engine = engine;
+            }
+            return engine;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Counts a client out, and ends the session if it was the last one.
+     */
+    private void leaveSession(CarEngine engine) {
+        lock.lock();
+        try {
+            if (--clientCount > 0) {
+                return;
+            }
+            groups.clear();
+        } finally {
+            lock.unlock();
+        }
+        engine.stop();
+        System.out.println(engine.summary());
+    }
+
+    /**
+     * Adds a connection to the controller of a path group, which is created by its first connection.
+     */
+    private Controller joinGroup(long group) {
+        lock.lock();
+        try {
+            Controller controller = groups.computeIfAbsent(group, key -> new Controller());
+            controller.connections++;
+            return controller;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes a connection from its controller, which gives up the car once its last connection is gone.
+     */
+    private void leave(Controller controller) {
+        lock.lock();
+        try {
+            if (--controller.connections > 0) {
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        owner.compareAndSet(controller, null);
+    }
+
+    /**
+     * Lets a controller drive the car if it owns it, or takes the car over if it is free or the controller outranks
+     * its owner.
+     * @return Whether the controller drives the car now.
+     */
+    private boolean claim(Controller controller) {
+        Controller current = owner.get();
+        while (current != controller) {
+            if (current != null && current.priority >= controller.priority) {
+                return false;
+            }
+            if (owner.compareAndSet(current, controller)) {
+                lastTakeover = System.nanoTime();
+                takeoverCount.incrementAndGet();
+                System.out.println(String.format("Controller of priority %d took the car over", controller.priority));
+                return true;
+            }
+            current = owner.get();
+        }
+        return true;
+    }
+
+    private void serve(Socket socket, CarEngine engine) throws IOException {
+        System.out.println("Client connected from " + socket.getRemoteSocketAddress());
+        socket.setSoTimeout((int) (heartbeatMillis * LOST_HEARTBEATS));
+        InputStream input = socket.getInputStream();
+        OutputStream output = new BufferedOutputStream(socket.getOutputStream());
+        byte[] buffer = new byte[BUFFER_SIZE];
+        byte[] digits = new byte[20];
+        int length = 0;
+        boolean handShaken = false;
+        Controller controller = new Controller();
+        controller.connections = 1;
+        long duplicateCount = 0;
+        long rejectedCount = 0;
+        try {
+            while (true) {
+                int read;
+                try {
+                    read = input.read(buffer, length, buffer.length - length);
+                } catch (SocketTimeoutException e) {
+                    System.out.println("Connection to client lost");
+                    return;
+                }
+                if (read < 0) {
+                    System.out.println("Connection to client closed");
+                    return;
+                }
+                long receiveTime = engine.clockMicros();
+                length += read;
+
+                int lineStart = 0;
+                for (int i = lineStart; i < length; i++) {
+                    if (buffer[i] != '\n') {
+                        continue;
+                    }
+                    int lineEnd = i > lineStart && buffer[i - 1] == '\r' ? i - 1 : i;
+                    if (!handShaken) {
+                        if (!equals(buffer, lineStart, lineEnd, HANDSHAKE)) {
+                            System.out.println("Received invalid command before handshake. Closing connection.");
+                            output.write(CLOSE_CONNECTION);
+                            output.flush();
+                            return;
+                        }
+                        handShaken = true;
+                        System.out.println("Sending handshake command");
+                    } else {
+                        int tag = sequenceTag(buffer, lineStart, lineEnd);
+                        if (tag >= 0) {
+                            boolean first = controller.window.accept(parseDecimal(buffer, tag + 2, lineEnd));
+                            lineEnd = tag;
+                            if (!first) {
+                                duplicateCount++;
+                                lineStart = i + 1;
+                                continue;
+                            }
+                        }
+                        if (startsWith(buffer, lineStart, lineEnd, PATH)) {
+                            Controller group = joinGroup(parseDecimal(buffer, lineStart + PATH.length, lineEnd));
+                            leave(controller);
+                            controller = group;
+                            lineStart = i + 1;
+                            continue;
+                        }
+                        if (startsWith(buffer, lineStart, lineEnd, PRIORITY)) {
+                            controller.priority = (int) parseDecimal(buffer, lineStart + PRIORITY.length, lineEnd);
+                            lineStart = i + 1;
+                            continue;
+                        }
+                        if (startsWith(buffer, lineStart, lineEnd, SYNC)) {
+                            answerSync(output, buffer, lineStart, lineEnd, receiveTime, engine, digits);
+                            lineStart = i + 1;
+                            continue;
+                        }
+                        if (!claim(controller)) {
+                            rejectedCount++;
+                            output.write(REJECTED);
+                            lineStart = i + 1;
+                            continue;
+                        }
+                        engine.receive(buffer, lineStart, lineEnd - lineStart);
+                    }
+                    output.write(buffer, lineStart, lineEnd - lineStart);
+                    output.write('\n');
+                    lineStart = i + 1;
+                }
+                // Echo the lines of this read at once, and keep the start of an incomplete line
+                output.flush();
+                if (lineStart == 0 && length == buffer.length) {
+                    length = 0;
+                } else {
+                    System.arraycopy(buffer, lineStart, buffer, 0, length - lineStart);
+                    length -= lineStart;
+                }
+            }
+        } finally {
+            leave(controller);
+            if (duplicateCount > 0) {
+                System.out.println("Dropped " + duplicateCount + " frames that arrived first on another path");
+            }
+            if (rejectedCount > 0) {
+                System.out.println("Rejected " + rejectedCount + " frames while another controller drove the car");
+            }
+        }
+    }
+
+    /**
+     * Answers a clock synchronisation request "SYNC t1" with "SYNC t1 t2 t3".
+     */
+    private static void answerSync(OutputStream output, byte[] buffer, int start, int end, long receiveTime,
+                                   CarEngine engine, byte[] digits) throws IOException {
+        output.write(buffer, start, end - start);
+        output.write(' ');
+        writeDecimal(output, receiveTime, digits);
+        output.write(' ');
+        writeDecimal(output, engine.clockMicros(), digits);
+        output.write('\n');
+    }
+
+    private static void writeDecimal(OutputStream output, long value, byte[] digits) throws IOException {
+        int index = digits.length;
+        do {
+            digits[--index] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        output.write(digits, index, digits.length - index);
+    }
+
+    /**
+     * @return The index of the sequence tag, " #&lt;sequence&gt;", at the end of the line, or -1 if it has none.
+     */
+    private static int sequenceTag(byte[] buffer, int start, int end) {
+        int index = end;
+        while (index > start && buffer[index - 1] >= '0' && buffer[index - 1] <= '9') {
+            index--;
+        }
+        if (index == end || index - start < 2 || buffer[index - 1] != '#' || buffer[index - 2] != ' ') {
+            return -1;
+        }
+        return index - 2;
+    }
+
+    private static long parseDecimal(byte[] buffer, int start, int end) {
+        long value = 0;
+        for (int index = start; index < end && buffer[index] >= '0' && buffer[index] <= '9'; index++) {
+            value = value * 10 + buffer[index] - '0';
+        }
+        return value;
+    }
+
+    private static boolean startsWith(byte[] buffer, int start, int end, byte[] expected) {
+        return end - start >= expected.length && equals(buffer, start, start + expected.length, expected);
+    }
+
+    private static boolean equals(byte[] buffer, int start, int end, byte[] expected) {
+        if (end - start != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (buffer[start + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A client controlling the car: a single connection, or the connections of a path group.
+     */
+    private static final class Controller {
+        // Drops the later copies of the frames of a path group
+        final SequenceWindow window = new SequenceWindow();
+        volatile int priority;
+        // Guarded by the lock of the server
+        int connections;
+    }
+
+    /**
+     * Stops accepting clients; a session in progress ends when its clients disconnect.
+     * @throws IOException If the server socket could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+}
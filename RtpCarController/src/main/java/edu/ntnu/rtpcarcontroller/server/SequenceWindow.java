@@ -0,0 +1,60 @@
+package edu.ntnu.rtpcarcontroller.server;
+
+import java.util.Arrays;
+
+/**
+ * Tells the first copy of a sequenced frame from its duplicates, in constant time and space: a bitmap of the
+ * sequence numbers seen within a window below the highest one seen so far. A frame further below than the window is
+ * taken for a duplicate, since the copy on the faster path arrived long ago.
+ *
+ * Shared by the connections of a path group, so every call holds the window's monitor briefly.
+ */
+class SequenceWindow {
+    private static final int SIZE = 1024;
+    private static final int MASK = SIZE - 1;
+
+    private final long[] seen;
+    private long highest;
+
+    SequenceWindow() {
+        seen = new long[SIZE / Long.SIZE];
+        highest = -1;
+    }
+
+    /**
+     * Takes note of a frame.
+     * @param sequence The sequence number of the frame; not negative.
+     * @return Whether this is the first copy of the frame, which is to be applied.
+     */
+    synchronized boolean accept(long sequence) {
+        if (sequence > highest) {
+            if (sequence - highest >= SIZE) {
+                Arrays.fill(seen, 0);
+            } else {
+                // Forget the numbers the window slides past, each of them once
+                for (long cleared = highest + 1; cleared < sequence; cleared++) {
+                    clear(cleared);
+                }
+            }
+            highest = sequence;
+            set(sequence);
+            return true;
+        }
+        int bit = (int) (sequence & MASK);
+        if (highest - sequence >= SIZE || (seen[bit >>> 6] & 1L << bit) != 0) {
+            return false;
+        }
+        set(sequence);
+        return true;
+    }
+
+    private void set(long sequence) {
+        int bit = (int) (sequence & MASK);
+        seen[bit >>> 6] |= 1L << bit;
+    }
+
+    private void clear(long sequence) {
+        int bit = (int) (sequence & MASK);
+        seen[bit >>> 6] &= ~(1L << bit);
+    }
+}
@@ -0,0 +1,272 @@
+package edu.ntnu.rtpcarcontroller.util;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * A logging handler that takes records off the logging thread and writes them as structured lines on a thread of its
+ * own, so that logging never waits for the console or a file.
+ *
+ * Records are handed over through a bounded, lock-free ring: publishing a record claims a slot with a single
+ * compare-and-set and stores the record, without formatting it or waking the writer. The writer polls the ring every
+ * few milliseconds, formats the records and writes them as JSON lines with the time, level, logger, thread, message
+ * and stack trace. When the ring is full, records are dropped rather than holding up the logging thread; the number
+ * of dropped records is written as a record of its own once there is room again.
+ *
+ * Records keep the logger's name rather than the calling class and method, which would have to be looked up from the
+ * stack of the logging thread. Loggers in this project are named after their class.
+ *
+ * The handler is configured through logging.properties:
+ * <ul>
+ *     <li>edu.ntnu.rtpcarcontroller.util.AsyncLogHandler.level: the lowest level written (INFO by default).</li>
+ *     <li>edu.ntnu.rtpcarcontroller.util.AsyncLogHandler.capacity: the number of slots of the ring (4096 by default,
+ *     rounded up to a power of two).</li>
+ *     <li>edu.ntnu.rtpcarcontroller.util.AsyncLogHandler.file: the file to append to (standard error by default).</li>
+ * </ul>
+ */
+public class AsyncLogHandler extends Handler {
+    private static final int DEFAULT_CAPACITY = 4096;
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ISO_INSTANT;
+
+    private final AtomicReferenceArray<LogRecord> slots;
+    private final int mask;
+    private final AtomicLong tail;
+    private final LongAdder dropped;
+    private final Writer writer;
+    private final boolean closeOutput;
+    private final Thread thread;
+    private volatile long head;
+    private volatile boolean closed;
+
+    /**
+     * Creates a new AsyncLogHandler configured by the LogManager's properties, and starts its writer.
+     */
+    public AsyncLogHandler() {
+        this(openOutput(property("file", null)), Integer.parseInt(property("capacity", String.valueOf(DEFAULT_CAPACITY))),
+                property("file", null) != null);
+        setLevel(Level.parse(property("level", Level.INFO.getName())));
+    }
+
+    /**
+     * Creates a new AsyncLogHandler writing to the given stream, and starts its writer. The handler writes records of
+     * all levels until its level is set; closing it does not close the stream.
+     * @param output The stream to write to.
+     * @param capacity The number of records the ring holds, rounded up to a power of two.
+     */
+    public AsyncLogHandler(OutputStream output, int capacity) {
+        this(output, capacity, false);
+    }
+
+    private AsyncLogHandler(OutputStream output, int capacity, boolean closeOutput) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        slots = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+        tail = new AtomicLong();
+        dropped = new LongAdder();
+        writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        this.closeOutput = closeOutput;
+        setFormatter(new SimpleFormatter());
+        thread = new Thread(this::run, "Log writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static String property(String name, String defaultValue) {
+        String value = LogManager.getLogManager().getProperty(AsyncLogHandler.class.getName() + "." + name);
+        return value == null ? defaultValue : value.trim();
+    }
+
+    private static OutputStream openOutput(String file) {
+        if (file == null) {
+            return System.err;
+        }
+        try {
+            return new FileOutputStream(file, true);
+        } catch (IOException e) {
+            new ErrorManager().error("Could not open the log file " + file, e, ErrorManager.OPEN_FAILURE);
+            return System.err;
+        }
+    }
+
+    /**
+     * Hands a record to the writer without blocking, or drops it if the ring is full.
+     * @param record The record to write.
+     */
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+        long claimed;
+        do {
+            claimed = tail.get();
+            if (claimed - head > mask) {
+                dropped.increment();
+                return;
+            }
+        } while (!tail.compareAndSet(claimed, claimed + 1));
+        slots.set((int) (claimed & mask), record);
+    }
+
+    /**
+     * Does nothing: the writer flushes whenever it has written every record in the ring.
+     */
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Writes the records still in the ring, stops the writer and flushes the output.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (closeOutput) {
+                writer.close();
+            } else {
+                writer.flush();
+            }
+        } catch (IOException e) {
+            reportError("Could not close the log output", e, ErrorManager.CLOSE_FAILURE);
+        }
+    }
+
+    /**
+     *
+     * @return The number of records dropped because the ring was full.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    private void run() {
+        long reportedDrops = 0;
+        while (true) {
+            long next = head;
+            int slot = (int) (next & mask);
+            LogRecord record = slots.get(slot);
+            if (record == null) {
+                long drops = dropped.sum();
+                if (drops != reportedDrops) {
+                    LogRecord report = new LogRecord(Level.WARNING,
+                            String.format("Dropped %d log records; the log ring was full", drops - reportedDrops));
+                    report.setLoggerName(AsyncLogHandler.class.getName());
+                    write(report);
+                    reportedDrops = drops;
+                }
+                try {
+                    writer.flush();
+                } catch (IOException e) {
+                    reportError("Could not flush the log output", e, ErrorManager.FLUSH_FAILURE);
+                }
+                // A claimed slot may still be empty for a moment; stop only when nothing was claimed
+                if (closed && tail.get() == next) {
+                    return;
+                }
+                LockSupport.parkNanos(this, POLL_NANOS);
+                continue;
+            }
+            slots.set(slot, null);
+            head = next + 1;
+            write(record);
+        }
+    }
+
+    private void write(LogRecord record) {
+        StringBuilder line = new StringBuilder(128);
+        line.append("{\"time\":\"").append(TIME_FORMAT.format(record.getInstant()));
+        line.append("\",\"level\":\"").append(record.getLevel().getName());
+        line.append("\",\"logger\":");
+        appendString(line, record.getLoggerName());
+        line.append(",\"thread\":").append(record.getThreadID());
+        line.append(",\"message\":");
+        String message;
+        try {
+            message = getFormatter().formatMessage(record);
+        } catch (RuntimeException e) {
+            message = record.getMessage();
+        }
+        appendString(line, message);
+        Throwable thrown = record.getThrown();
+        if (thrown != null) {
+            StringWriter trace = new StringWriter();
+            thrown.printStackTrace(new PrintWriter(trace));
+            line.append(",\"thrown\":");
+            appendString(line, trace.toString());
+        }
+        line.append('}').append(System.lineSeparator());
+        try {
+            writer.write(line.toString());
+        } catch (IOException e) {
+            reportError("Could not write a log record", e, ErrorManager.WRITE_FAILURE);
+        }
+    }
+
+    /**
+     * Appends a JSON string, or null.
+     */
+    private static void appendString(StringBuilder line, String value) {
+        if (value == null) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    line.append("\\\"");
+                    break;
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+            }
+        }
+        line.append('"');
+    }
+}
@@ -0,0 +1,274 @@
+package edu.ntnu.rtpcarcontroller.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Optional tracing of every state frame on its way from the key press to the transport. Each stage the frame passes
+ * stamps System.nanoTime() into the frame's record; once the frame is written, the time spent between consecutive
+ * stages is added to a histogram per stage.
+ *
+ * Tracing is enabled with the system property rtpcarcontroller.trace=true. The records form a preallocated ring, so
+ * tracing does not allocate; only the most recent records are kept for dumping. When tracing is enabled, the records
+ * and the histograms are dumped when the application exits, to the file named by rtpcarcontroller.trace.file
+ * (frame-trace.csv by default).
+ *
+ * A frame is opened by the thread handling the input, and handed over to the thread sending it through the
+ * connection's StateMailbox, whose atomic word orders the stamps of both threads. Commands that are coalesced into a newer
+ * frame before being sent are counted, but not traced further.
+ */
+public enum FrameTracer {
+    INSTANCE;
+
+    /**
+     * The key event was received by the user interface.
+     */
+    public static final int INPUT = 0;
+    /**
+     * DrivingController was asked to change the car's state.
+     */
+    public static final int DRIVING_CONTROLLER = 1;
+    /**
+     * The Car notified ConnController of the change.
+     */
+    public static final int CAR_HANDLER = 2;
+    /**
+     * The new state was stored in the connection's StateMailbox.
+     */
+    public static final int QUEUED = 3;
+    /**
+     * The sending thread picked the new state up.
+     */
+    public static final int DEQUEUED = 4;
+    /**
+     * The state message was handed to the transport.
+     */
+    public static final int WRITTEN = 5;
+    /**
+     * The value returned instead of a frame when tracing is disabled or there is no frame to trace.
+     */
+    public static final int NO_FRAME = -1;
+
+    private static final String[] STAGE_NAMES =
+            { "input", "driving_controller", "car_handler", "queued", "dequeued", "written" };
+    private static final int STAGES = 6;
+    private static final int CAPACITY = 4096;
+    private static final Logger logger = Logger.getLogger(FrameTracer.class.getName());
+
+    private final boolean enabled;
+    private final long[] stamps;
+    private final boolean[] completed;
+    private final LatencyHistogram[] stageLatencies;
+    private final LatencyHistogram totalLatency;
+    private int nextFrame;
+    private long coalesced;
+    private volatile int openFrame;
+
+    FrameTracer() {
+        enabled = Boolean.getBoolean("rtpcarcontroller.trace");
+        stamps = new long[enabled ? CAPACITY * STAGES : 0];
+        completed = new boolean[enabled ? CAPACITY : 0];
+        stageLatencies = new LatencyHistogram[STAGES];
+        for (int stage = 1; stage < STAGES; stage++) {
+            stageLatencies[stage] = new LatencyHistogram();
+        }
+        totalLatency = new LatencyHistogram();
+        openFrame = NO_FRAME;
+    }
+
+    static {
+        if (INSTANCE.enabled) {
+            Path file = Paths.get(System.getProperty("rtpcarcontroller.trace.file", "frame-trace.csv"));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    INSTANCE.dump(file);
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Could not dump the frame trace", e);
+                }
+            }, "Frame trace dump"));
+        }
+    }
+
+    /**
+     *
+     * @return Whether tracing is enabled.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Opens a new frame for an input event and stamps its INPUT stage. Any frame that was opened but never handed to
+     * the sender is abandoned.
+     */
+    public void open() {
+        if (enabled) {
+            openFrame = allocate();
+            stamps[openFrame * STAGES + INPUT] = System.nanoTime();
+        }
+    }
+
+    /**
+     * Stamps a stage of the frame opened by the input thread. If no frame is open, for instance because the state is
+     * changed by a script rather than a key, a frame is opened without an INPUT stamp.
+     * @param stage The stage to stamp.
+     */
+    public void stamp(int stage) {
+        if (enabled) {
+            if (openFrame == NO_FRAME) {
+                openFrame = allocate();
+            }
+            stamps[openFrame * STAGES + stage] = System.nanoTime();
+        }
+    }
+
+    /**
+     * Hands the open frame over to the sender; the input thread opens a new frame for the next change.
+     * @return The frame, or NO_FRAME if no frame is open.
+     */
+    public int take() {
+        int frame = openFrame;
+        openFrame = NO_FRAME;
+        return frame;
+    }
+
+    /**
+     * Stamps a stage of a frame that was handed over to the sender.
+     * @param frame The frame, as returned by take.
+     * @param stage The stage to stamp.
+     */
+    public void stamp(int frame, int stage) {
+        if (frame != NO_FRAME) {
+            stamps[frame * STAGES + stage] = System.nanoTime();
+        }
+    }
+
+    /**
+     * Counts a frame that was replaced by a newer one before it was sent.
+     * @param frame The replaced frame.
+     */
+    public void coalesce(int frame) {
+        if (frame != NO_FRAME) {
+            synchronized (this) {
+                coalesced++;
+            }
+        }
+    }
+
+    /**
+     * Completes a frame that was written, adding the latency of each of its stages to the histograms.
+     * @param frame The written frame.
+     */
+    public void complete(int frame) {
+        if (frame != NO_FRAME) {
+            record(frame);
+        }
+    }
+
+    /**
+     * Adds the stage latencies of a completed frame to the histograms.
+     * @param frame The completed frame.
+     */
+    private synchronized void record(int frame) {
+        int base = frame * STAGES;
+        long previous = 0;
+        long first = 0;
+        for (int stage = 0; stage < STAGES; stage++) {
+            long stamp = stamps[base + stage];
+            if (stamp == 0) {
+                continue;
+            }
+            if (previous != 0) {
+                stageLatencies[stage].record(stamp - previous);
+            } else {
+                first = stamp;
+            }
+            previous = stamp;
+        }
+        totalLatency.record(previous - first);
+        completed[frame] = true;
+    }
+
+    /**
+     * Claims the next record of the ring and clears it.
+     * @return The index of the record.
+     */
+    private synchronized int allocate() {
+        int frame = nextFrame;
+        nextFrame = (nextFrame + 1) % CAPACITY;
+        for (int stage = 0; stage < STAGES; stage++) {
+            stamps[frame * STAGES + stage] = 0;
+        }
+        completed[frame] = false;
+        return frame;
+    }
+
+    /**
+     * Clears the histograms and the records, for instance between two benchmark runs.
+     */
+    public synchronized void reset() {
+        for (int stage = 1; stage < STAGES; stage++) {
+            stageLatencies[stage].reset();
+        }
+        totalLatency.reset();
+        coalesced = 0;
+        for (int frame = 0; frame < completed.length; frame++) {
+            completed[frame] = false;
+        }
+    }
+
+    /**
+     *
+     * @return One line per stage with the distribution of the time spent reaching it from the previous stage, and
+     * one line with the distribution of the total time.
+     */
+    public synchronized String summary() {
+        StringBuilder builder = new StringBuilder();
+        for (int stage = 1; stage < STAGES; stage++) {
+            builder.append(String.format("%-20s %s%n", STAGE_NAMES[stage], stageLatencies[stage].summary()));
+        }
+        builder.append(String.format("%-20s %s%n", "total", totalLatency.summary()));
+        builder.append(String.format("%-20s %d", "coalesced", coalesced));
+        return builder.toString();
+    }
+
+    /**
+     * Writes the completed records that are still in the ring to a CSV file, one frame per line with one column of
+     * nanoseconds since the first stamp per stage (empty if the frame skipped the stage), and logs the summary.
+     * @param file The file to write to.
+     * @throws IOException If the file could not be written.
+     */
+    public synchronized void dump(Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            writer.write(String.join(",", STAGE_NAMES));
+            writer.newLine();
+            for (int i = 0; i < CAPACITY; i++) {
+                // Oldest records first
+                int frame = (nextFrame + i) % CAPACITY;
+                if (!completed[frame]) {
+                    continue;
+                }
+                long first = 0;
+                for (int stage = 0; stage < STAGES; stage++) {
+                    long stamp = stamps[frame * STAGES + stage];
+                    if (first == 0) {
+                        first = stamp;
+                    }
+                    if (stage > 0) {
+                        writer.write(',');
+                    }
+                    if (stamp != 0) {
+                        writer.write(Long.toString(stamp - first));
+                    }
+                }
+                writer.newLine();
+            }
+        }
+        logger.log(Level.INFO, String.format("Frame trace written to %s%n%s", file, summary()));
+    }
+}
@@ -0,0 +1,164 @@
+package edu.ntnu.rtpcarcontroller.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A histogram of durations (in nanoseconds) with a fixed, preallocated set of log-linear buckets, so that recording a
+ * value never allocates. Every power-of-two range is split into 16 buckets, which bounds the relative error of the
+ * reported percentiles at about 6%.
+ *
+ * A LatencyHistogram is not thread-safe; every thread recording values should use its own histogram, and histograms
+ * can be merged afterwards.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final long[] counts;
+    private long count;
+    private long sum;
+    private long min;
+    private long max;
+
+    /**
+     * Creates a new, empty LatencyHistogram.
+     */
+    public LatencyHistogram() {
+        counts = new long[BUCKETS];
+        reset();
+    }
+
+    /**
+     * Returns the index of the bucket the given value belongs to.
+     * @param value The (non-negative) value.
+     * @return The index of the bucket.
+     */
+    private static int bucketOf(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /**
+     * Returns the highest value that belongs to the bucket with the given index.
+     * @param bucket The index of the bucket.
+     * @return The highest value of the bucket.
+     */
+    private static long highestValueOf(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket - (long) shift * SUB_BUCKETS;
+        return (subBucket << shift) + (1L << shift) - 1;
+    }
+
+    /**
+     * Records a duration. Negative durations are recorded as zero.
+     * @param nanos The duration in nanoseconds.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts[bucketOf(value)]++;
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Adds all values recorded by another histogram to this histogram.
+     * @param other The histogram to add the values of.
+     */
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Removes all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = 0;
+        }
+        count = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    /**
+     *
+     * @return The number of recorded values.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     *
+     * @return The smallest recorded value, or 0 if no value was recorded.
+     */
+    public long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    /**
+     *
+     * @return The largest recorded value.
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     *
+     * @return The mean of the recorded values, or 0 if no value was recorded.
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Returns the value below or at which the given percentage of the recorded values lie.
+     * @param percentile The percentage, between 0 and 100.
+     * @return The (approximate) value at the given percentile, or 0 if no value was recorded.
+     */
+    public long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Returns a one-line summary of the recorded values, in microseconds.
+     * @return A summary with the count, mean, median, 99th, 99.9th percentile and maximum.
+     */
+    public String summary() {
+        return String.format("n=%d mean=%.1fus p50=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+                count, getMean() / 1000, toMicros(getPercentile(50)), toMicros(getPercentile(99)),
+                toMicros(getPercentile(99.9)), toMicros(max));
+    }
+
+    private static double toMicros(long nanos) {
+        return (double) nanos / TimeUnit.MICROSECONDS.toNanos(1);
+    }
+}
@@ -3,11 +3,63 @@ package edu.ntnu.rtpcarcontroller.util;
 import edu.ntnu.rtpcarcontroller.model.Steer;
 import edu.ntnu.rtpcarcontroller.model.Throttle;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 public class Protocol {
     public static final String HANDSHAKE = "HANDSHAKE";
     public static final String CLOSE_CONNECTION = "CLOSE";
     public static final int HEARTBEAT_PERIOD = 1000;
 
+    /**
+     * The clock synchronisation exchange that follows the handshake: the client sends "SYNC t1" with its send time,
+     * and the car answers "SYNC t1 t2 t3" with its receive and send times, all in microseconds of the sender's clock.
+     * A car that does not synchronise clocks echoes the request unchanged.
+     */
+    public static final String SYNC = "SYNC";
+
+    /**
+     * Greetings with which a session to a relay announces its role, followed by the identifier of the car, e.g.
+     * "CAR garage-1". A session that starts with a plain HANDSHAKE controls the car with identifier DEFAULT_CAR.
+     */
+    public static final String CAR_GREETING = "CAR";
+    public static final String CONTROL_GREETING = "CONTROL";
+    public static final String OBSERVE_GREETING = "OBSERVE";
+    public static final String DEFAULT_CAR = "default";
+
+    /**
+     * The announcement with which a connection that carries the same frames as another one to the same car, e.g.
+     * "PATH 8812345", joins their group, right after its handshake. The frames of such connections are tagged with
+     * a sequence number, e.g. "T:FORWARD S:90 @1234567 #42", and the car applies the first copy of every frame to
+     * arrive on any connection of the group.
+     */
+    public static final String PATH = "PATH";
+
+    /**
+     * The announcement of a controller's priority, e.g. "PRIORITY 10", which a controller may send at any time after
+     * its handshake; it is 0 until announced. Of the controllers connected to one car, one drives it at a time: a
+     * controller takes the car over with its first frame after it outranks the one driving, and one of equal priority
+     * only once the car is free. Frames that are not applied are answered with REJECTED rather than echoed.
+     */
+    public static final String PRIORITY = "PRIORITY";
+    public static final String REJECTED = "REJECTED";
+    private static final String SEQUENCE_PREFIX = "#";
+    private static final String THROTTLE_PREFIX = "T:";
+    private static final String STEER_PREFIX = "S:";
+    private static final String TIME_PREFIX = "@";
+    private static final Throttle[] THROTTLES = Throttle.values();
+    private static final int ANGLES = 181;
+    // Every possible state message, encoded once and shared by all connections and observers
+    private static final ByteBuffer[] STATE_FRAMES = new ByteBuffer[THROTTLES.length * ANGLES];
+
+    static {
+        for (Throttle throttle : THROTTLES) {
+            for (int angle = 0; angle < ANGLES; angle++) {
+                STATE_FRAMES[throttle.ordinal() * ANGLES + angle] = encodeFrame(getStateMessage(throttle, angle));
+            }
+        }
+    }
+
     /**
      * Returns the steering angle transformed from a direction to degrees.
      * @param dir The steering direction
@@ -41,4 +93,211 @@ public class Protocol {
     public static String getStateMessage(Throttle dir, int angle) {
         return String.format("T:%s S:%d", dir.toString(), angle);
     }
+
+    /**
+     * Encodes a message as it goes over a stream transport: ASCII, terminated by a newline.
+     * @param message The message to encode.
+     * @return A read-only buffer holding the encoded message, which may be shared between connections.
+     */
+    public static ByteBuffer encodeFrame(String message) {
+        return ByteBuffer.wrap((message + "\n").getBytes(StandardCharsets.US_ASCII)).asReadOnlyBuffer();
+    }
+
+    /**
+     * Decodes a frame encoded by encodeFrame, consuming the remaining bytes of the buffer.
+     * @param frame The buffer holding the encoded message.
+     * @return The message, without its line terminator.
+     */
+    public static String decodeFrame(ByteBuffer frame) {
+        int end = frame.limit();
+        while (end > frame.position() && (frame.get(end - 1) == '\n' || frame.get(end - 1) == '\r')) {
+            end--;
+        }
+        ByteBuffer message = frame.duplicate();
+        message.limit(end);
+        frame.position(frame.limit());
+        return StandardCharsets.US_ASCII.decode(message).toString();
+    }
+
+    /**
+     * Returns the encoded state message with the given throttle direction and steering angle, without encoding it
+     * again; the frames of all states are encoded once.
+     * @param dir The direction to throttle in.
+     * @param angle The angle to steer to, between 0 and 180.
+     * @return A read-only view of the shared frame, with its own position.
+     */
+    public static ByteBuffer getStateFrame(Throttle dir, int angle) {
+        return STATE_FRAMES[dir.ordinal() * ANGLES + angle].duplicate();
+    }
+
+    /**
+     * Encodes a state message tagged with the time it was sent, e.g. "T:FORWARD S:90 @1234567", into the given buffer,
+     * without creating any objects. The time is in microseconds of the car's clock, so that the car can tell the age
+     * of the command.
+     * @param target The buffer to encode into, which is cleared first and flipped afterwards; it must hold at least
+     *               48 bytes.
+     * @param dir The direction to throttle in.
+     * @param angle The angle to steer to, between 0 and 180.
+     * @param time The time the message is sent, in microseconds of the car's clock; not negative.
+     * @return The target buffer, holding the encoded message.
+     */
+    public static ByteBuffer encodeTimedStateFrame(ByteBuffer target, Throttle dir, int angle, long time) {
+        ByteBuffer state = STATE_FRAMES[dir.ordinal() * ANGLES + angle].duplicate();
+        // Replace the line terminator of the shared frame by the time field
+        state.limit(state.limit() - 1);
+        target.clear();
+        target.put(state);
+        target.put((byte) ' ');
+        target.put((byte) TIME_PREFIX.charAt(0));
+        putDecimal(target, time);
+        target.put((byte) '\n');
+        target.flip();
+        return target;
+    }
+
+    /**
+     * Returns the announcement of a path group.
+     * @param group The identifier of the group, the same on all its connections.
+     * @return The announcement, "PATH &lt;group&gt;".
+     */
+    public static String getPathMessage(long group) {
+        return PATH + ' ' + group;
+    }
+
+    /**
+     * Returns the announcement of a controller's priority.
+     * @param priority The priority; not negative.
+     * @return The announcement, "PRIORITY &lt;priority&gt;".
+     */
+    public static String getPriorityMessage(int priority) {
+        return PRIORITY + ' ' + priority;
+    }
+
+    /**
+     * Puts the sequence tag of a frame, e.g. " #42", into the given buffer, without creating any objects.
+     * @param target The buffer to put the tag into, at its position; it must have at least 21 bytes remaining.
+     * @param sequence The sequence number of the frame; not negative.
+     */
+    public static void putSequence(ByteBuffer target, long sequence) {
+        target.put((byte) ' ');
+        target.put((byte) SEQUENCE_PREFIX.charAt(0));
+        putDecimal(target, sequence);
+    }
+
+    private static void putDecimal(ByteBuffer target, long value) {
+        long divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            target.put((byte) ('0' + value / divisor % 10));
+        }
+    }
+
+    /**
+     * Returns the time a message was tagged with by encodeTimedStateFrame.
+     * @param message The message to read the time from.
+     * @return The time in microseconds of the car's clock, or -1 if the message is not tagged with a time.
+     */
+    public static long parseTime(String message) {
+        int start = message.lastIndexOf(' ' + TIME_PREFIX);
+        if (start < 0) {
+            return -1;
+        }
+        start += TIME_PREFIX.length() + 1;
+        long time = 0;
+        for (int index = start; index < message.length(); index++) {
+            char c = message.charAt(index);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            time = time * 10 + (c - '0');
+        }
+        return start == message.length() ? -1 : time;
+    }
+
+    /**
+     * Returns a clock synchronisation request.
+     * @param sendTime The time the request is sent, in microseconds of the client's clock.
+     * @return The request, "SYNC t1".
+     */
+    public static String getSyncRequest(long sendTime) {
+        return SYNC + ' ' + sendTime;
+    }
+
+    /**
+     * Parses the car's answer to a clock synchronisation request.
+     * @param message The received message.
+     * @return The client's send time and the car's receive and send times, or null if the message is not a complete
+     * answer, as when the car merely echoed the request.
+     */
+    public static long[] parseSyncReply(String message) {
+        if (!message.startsWith(SYNC + ' ')) {
+            return null;
+        }
+        String[] fields = message.split(" ");
+        if (fields.length != 4) {
+            return null;
+        }
+        try {
+            return new long[] { Long.parseLong(fields[1]), Long.parseLong(fields[2]), Long.parseLong(fields[3]) };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns whether the given message is a state message, as created by getStateMessage.
+     * @param message The message to check.
+     * @return True if the given message has the form of a state message.
+     */
+    public static boolean isStateMessage(String message) {
+        return message != null && parseThrottle(message) != null && parseSteer(message) >= 0;
+    }
+
+    /**
+     * Returns the throttle direction of a state message without creating any intermediate objects.
+     * @param message The state message to read the throttle direction from.
+     * @return The throttle direction of the given state message, or null if the message has no valid throttle part.
+     */
+    public static Throttle parseThrottle(String message) {
+        if (!message.startsWith(THROTTLE_PREFIX)) {
+            return null;
+        }
+        for (Throttle throttle : THROTTLES) {
+            String name = throttle.name();
+            int end = THROTTLE_PREFIX.length() + name.length();
+            if (message.regionMatches(THROTTLE_PREFIX.length(), name, 0, name.length())
+                    && message.length() > end && message.charAt(end) == ' ') {
+                return throttle;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the steering angle of a state message without creating any intermediate objects.
+     * @param message The state message to read the steering angle from.
+     * @return The steering angle (in degrees) of the given state message, or -1 if the message has no valid steering
+     * part.
+     */
+    public static int parseSteer(String message) {
+        int start = message.indexOf(' ' + STEER_PREFIX);
+        if (start < 0) {
+            return -1;
+        }
+        start += STEER_PREFIX.length() + 1;
+
+        int angle = 0;
+        int index = start;
+        while (index < message.length() && Character.isDigit(message.charAt(index)) && angle <= 180) {
+            angle = angle * 10 + (message.charAt(index) - '0');
+            index++;
+        }
+        // The angle must be present, must be followed by the end of the message or another field, and lie in range
+        if (index == start || (index < message.length() && message.charAt(index) != ' ') || angle > 180) {
+            return -1;
+        }
+        return angle;
+    }
 }
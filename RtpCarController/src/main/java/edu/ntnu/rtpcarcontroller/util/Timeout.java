@@ -0,0 +1,59 @@
+package edu.ntnu.rtpcarcontroller.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A task scheduled on the TimerService, which can be cancelled until it has run.
+ */
+public final class Timeout {
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    final Runnable task;
+    final long deadline;
+    // Owned by the shard's thread once the timeout is placed in the wheel
+    long rounds;
+    Timeout previous;
+    Timeout next;
+    private final AtomicInteger state;
+
+    Timeout(Runnable task, long deadline) {
+        this.task = task;
+        this.deadline = deadline;
+        state = new AtomicInteger(PENDING);
+    }
+
+    /**
+     * Cancels the task, unless it has run or is running already. Cancelling takes constant time; the shard discards
+     * the timeout when its slot of the wheel comes around.
+     * @return True if the task will not run because of this call.
+     */
+    public boolean cancel() {
+        return state.compareAndSet(PENDING, CANCELLED);
+    }
+
+    /**
+     *
+     * @return Whether the timeout was cancelled before it expired.
+     */
+    public boolean isCancelled() {
+        return state.get() == CANCELLED;
+    }
+
+    /**
+     *
+     * @return Whether the task has been started.
+     */
+    public boolean isExpired() {
+        return state.get() == EXPIRED;
+    }
+
+    /**
+     * Marks the timeout as expired.
+     * @return True if the task should run, false if it was cancelled.
+     */
+    boolean expire() {
+        return state.compareAndSet(PENDING, EXPIRED);
+    }
+}
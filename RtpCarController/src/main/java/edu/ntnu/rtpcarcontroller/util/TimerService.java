@@ -0,0 +1,75 @@
+package edu.ntnu.rtpcarcontroller.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The timers shared by all connections: heartbeats, handshake timeouts and write deadlines.
+ *
+ * Timeouts are kept in hashed timing wheels, each owned by one of a fixed number of shard threads (one per core by
+ * default, or rtpcarcontroller.timer.shards). Every timeout of an owner, such as a connection, lands on the same
+ * shard, so its tasks run in deadline order on one thread. Timers have a resolution of one tick (5 ms).
+ *
+ * Tasks run on the shard's thread and must not block: a task that waits holds up every other timer of its shard.
+ * Work that may block, such as writing to a socket, should be handed to another executor.
+ */
+public enum TimerService {
+    INSTANCE;
+
+    private final TimerShard[] shards;
+
+    TimerService() {
+        int count = Integer.getInteger("rtpcarcontroller.timer.shards", Runtime.getRuntime().availableProcessors());
+        shards = new TimerShard[Math.max(1, count)];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new TimerShard("Timer shard " + i);
+        }
+    }
+
+    /**
+     * Schedules a task to run once after a delay.
+     * @param owner The object the timer belongs to, which decides its shard.
+     * @param delayMillis The delay in milliseconds.
+     * @param task The task to run; it must not block.
+     * @return The handle through which the task can be cancelled.
+     */
+    public Timeout schedule(Object owner, long delayMillis, Runnable task) {
+        Timeout timeout = new Timeout(task, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis));
+        shardOf(owner).schedule(timeout);
+        return timeout;
+    }
+
+    private TimerShard shardOf(Object owner) {
+        int hash = owner.hashCode();
+        // Spread the bits of hash codes that differ in their high bits only
+        hash ^= hash >>> 16;
+        return shards[Math.floorMod(hash, shards.length)];
+    }
+
+    /**
+     *
+     * @return The number of shard threads.
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     *
+     * @return The resolution of the timers in milliseconds.
+     */
+    public long getTickMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(TimerShard.TICK_NANOS);
+    }
+
+    /**
+     *
+     * @return The number of tasks that have run so far.
+     */
+    public long getExpiredCount() {
+        long expired = 0;
+        for (TimerShard shard : shards) {
+            expired += shard.getExpiredCount();
+        }
+        return expired;
+    }
+}
@@ -0,0 +1,176 @@
+package edu.ntnu.rtpcarcontroller.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * One worker thread of the TimerService, owning a hashed timing wheel.
+ *
+ * The wheel has a fixed number of slots, each one tick wide; a timeout is placed in the slot its deadline falls in,
+ * together with the number of full rotations left before it is due. Other threads never touch the wheel: they add new
+ * timeouts to a lock-free queue that the shard moves into the wheel once per tick, so both scheduling and cancelling
+ * take constant time. A shard without timeouts sleeps until a timeout is scheduled, instead of ticking.
+ */
+class TimerShard {
+    private static final Logger logger = Logger.getLogger(TimerShard.class.getName());
+    static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final int WHEEL_SIZE = 512;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    private final Bucket[] wheel;
+    private final Queue<Timeout> scheduled;
+    private final Thread thread;
+    private final AtomicLong expiredCount;
+    private final long start;
+    private long tick;
+    private int size;
+    private volatile boolean idle;
+
+    /**
+     * Creates a new TimerShard and starts its thread.
+     * @param name The name of the shard's thread.
+     */
+    TimerShard(String name) {
+        wheel = new Bucket[WHEEL_SIZE];
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new Bucket();
+        }
+        scheduled = new ConcurrentLinkedQueue<>();
+        expiredCount = new AtomicLong();
+        start = System.nanoTime();
+        thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Schedules a timeout on this shard. May be called from any thread.
+     * @param timeout The timeout to schedule.
+     */
+    void schedule(Timeout timeout) {
+        scheduled.add(timeout);
+        if (idle) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     *
+     * @return The number of tasks this shard has run.
+     */
+    long getExpiredCount() {
+        return expiredCount.get();
+    }
+
+    private void run() {
+        while (true) {
+            if (size == 0) {
+                idle = true;
+                // Check again after announcing that the shard is idle, so that a timeout scheduled meanwhile is seen
+                if (scheduled.isEmpty()) {
+                    LockSupport.park(this);
+                }
+                idle = false;
+                // Skip the ticks that passed while sleeping; the wheel was empty
+                tick = Math.max(tick, (System.nanoTime() - start) / TICK_NANOS);
+                if (scheduled.isEmpty()) {
+                    continue;
+                }
+            }
+
+            long deadline = start + (tick + 1) * TICK_NANOS;
+            long remaining;
+            while ((remaining = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, remaining);
+            }
+            transferScheduled();
+            expire(wheel[(int) (tick & WHEEL_MASK)]);
+            tick++;
+        }
+    }
+
+    /**
+     * Moves the timeouts scheduled since the previous tick into the wheel.
+     */
+    private void transferScheduled() {
+        Timeout timeout;
+        while ((timeout = scheduled.poll()) != null) {
+            if (timeout.isCancelled()) {
+                continue;
+            }
+            // A deadline that has passed already expires in the current tick
+            long due = Math.max((timeout.deadline - start) / TICK_NANOS, tick);
+            timeout.rounds = (due - tick) / WHEEL_SIZE;
+            wheel[(int) (due & WHEEL_MASK)].add(timeout);
+            size++;
+        }
+    }
+
+    /**
+     * Runs the timeouts in a bucket that are due in the current rotation, and discards cancelled ones.
+     * @param bucket The bucket of the current tick.
+     */
+    private void expire(Bucket bucket) {
+        Timeout timeout = bucket.head;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.isCancelled()) {
+                bucket.remove(timeout);
+                size--;
+            } else if (timeout.rounds <= 0) {
+                bucket.remove(timeout);
+                size--;
+                if (timeout.expire()) {
+                    expiredCount.incrementAndGet();
+                    try {
+                        timeout.task.run();
+                    } catch (RuntimeException e) {
+                        logger.log(Level.WARNING, "Timer task failed", e);
+                    }
+                }
+            } else {
+                timeout.rounds--;
+            }
+            timeout = next;
+        }
+    }
+
+    /**
+     * The doubly linked list of timeouts in one slot of the wheel.
+     */
+    static class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.previous = tail;
+            timeout.next = null;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.previous == null) {
+                head = timeout.next;
+            } else {
+                timeout.previous.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.previous;
+            } else {
+                timeout.next.previous = timeout.previous;
+            }
+            timeout.previous = null;
+            timeout.next = null;
+        }
+    }
+}
@@ -2,7 +2,10 @@ module rtpcarcontroller {
     requires javafx.controls;
     requires javafx.fxml;
     requires java.logging;
+    requires jdk.jfr;
 
     opens edu.ntnu.rtpcarcontroller.controller.view to javafx.fxml;
     exports edu.ntnu.rtpcarcontroller;
+    exports edu.ntnu.rtpcarcontroller.model;
+    exports edu.ntnu.rtpcarcontroller.util;
 }
\ No newline at end of file
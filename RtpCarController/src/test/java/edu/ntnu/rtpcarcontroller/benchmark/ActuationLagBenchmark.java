@@ -0,0 +1,69 @@
+package edu.ntnu.rtpcarcontroller.benchmark;
+
+import edu.ntnu.rtpcarcontroller.controller.DrivingController;
+import edu.ntnu.rtpcarcontroller.controller.connection.ConnController;
+import edu.ntnu.rtpcarcontroller.exception.NetworkConnectionException;
+import edu.ntnu.rtpcarcontroller.model.Car;
+import edu.ntnu.rtpcarcontroller.model.Throttle;
+import edu.ntnu.rtpcarcontroller.server.CarServer;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures what the car actually does: the client drives the reference CarServer with random changes of throttle
+ * and steering, and the server's CarEngine reports how long the simulated car took to reach each commanded state,
+ * actuators included. Throttle and steering are changed one after the other, so the first of the two frames of a
+ * change is usually superseded by the second.
+ */
+public class ActuationLagBenchmark {
+
+    /**
+     * Runs the benchmark.
+     * @param args Optionally the number of changes per second and the duration of the run in seconds.
+     */
+    public static void main(String... args) throws IOException, InterruptedException {
+        int changeRate = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        System.out.println(String.format("%d changes/s for %d s", changeRate, seconds));
+        CarServer server = new CarServer(0);
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "Car server");
+        serverThread.start();
+
+        Car car = new Car();
+        ConnController connController = ConnController.INSTANCE;
+        connController.setCar(car);
+        DrivingController.INSTANCE.setCar(car);
+        try {
+            connController.connect("127.0.0.1", String.valueOf(server.getPort()));
+        } catch (NetworkConnectionException e) {
+            throw new IOException(e);
+        }
+
+        Random random = new Random(1);
+        long interval = TimeUnit.SECONDS.toNanos(1) / changeRate;
+        long start = System.nanoTime();
+        for (int i = 0; i < changeRate * seconds; i++) {
+            long due = start + i * interval;
+            while (System.nanoTime() < due) {
+                LockSupport.parkNanos(due - System.nanoTime());
+            }
+            DrivingController.INSTANCE.throttle(Throttle.values()[random.nextInt(Throttle.values().length)]);
+            DrivingController.INSTANCE.steer(random.nextInt(181));
+        }
+
+        // The server prints the summary of the engine when the session ends
+        connController.disconnect();
+        server.close();
+        serverThread.join();
+    }
+}
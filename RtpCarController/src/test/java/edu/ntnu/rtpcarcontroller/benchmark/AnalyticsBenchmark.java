@@ -0,0 +1,87 @@
+package edu.ntnu.rtpcarcontroller.benchmark;
+
+import edu.ntnu.rtpcarcontroller.analytics.SessionAnalyzer;
+import edu.ntnu.rtpcarcontroller.analytics.SessionReport;
+import edu.ntnu.rtpcarcontroller.model.Throttle;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how fast SessionAnalyzer reads frame logs. Synthetic frame logs of 50 state frames per second, every one
+ * acknowledged, are written to a temporary directory and analysed with one thread and with one thread per core.
+ */
+public class AnalyticsBenchmark {
+
+    /**
+     * Runs the benchmark.
+     * @param args Optionally the number of frame logs and the size of each in megabytes.
+     */
+    public static void main(String... args) throws IOException {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int megabytes = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+
+        Path directory = Files.createTempDirectory("sessions");
+        try {
+            for (int i = 0; i < sessions; i++) {
+                writeSession(directory.resolve(String.format("frames-%04d.csv", i)), megabytes * 1000000L, i);
+            }
+            List<Path> files = SessionAnalyzer.listFiles(directory);
+            System.out.println(String.format("%d frame logs of %d MB", sessions, megabytes));
+            int cores = Runtime.getRuntime().availableProcessors();
+            for (int parallelism : new int[] { 1, cores }) {
+                SessionAnalyzer analyzer = new SessionAnalyzer(parallelism);
+                // The first run warms up the parsers and the page cache
+                analyzer.analyze(files);
+                long start = System.nanoTime();
+                SessionReport total = SessionAnalyzer.merge("total", true, analyzer.analyze(files));
+                long elapsed = System.nanoTime() - start;
+                analyzer.close();
+                System.out.println(String.format("%2d threads: %d ms, %.0f MB/s, %d frames", parallelism,
+                        TimeUnit.NANOSECONDS.toMillis(elapsed), total.getBytes() / 1e6 / (elapsed / 1e9),
+                        total.getFrames()));
+            }
+        } finally {
+            for (Path file : SessionAnalyzer.listFiles(directory)) {
+                Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    private static void writeSession(Path file, long size, int seed) throws IOException {
+        Random random = new Random(seed);
+        long micros = TimeUnit.MILLISECONDS.toMicros(Instant.parse("2019-10-01T12:00:00Z").toEpochMilli());
+        long written = 0;
+        Throttle throttle = Throttle.NEUTRAL;
+        int angle = 90;
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            written += writeLine(writer, "time_us,event,sequence,throttle,angle,round_trip_ns");
+            for (long sequence = 0; written < size; sequence++) {
+                micros += 20000;
+                if (random.nextInt(25) == 0) {
+                    throttle = Throttle.values()[random.nextInt(Throttle.values().length)];
+                }
+                angle = Math.max(0, Math.min(180, angle + random.nextInt(21) - 10));
+                written += writeLine(writer, String.format(Locale.ROOT, "%d,sent,%d,%s,%d,", micros, sequence,
+                        throttle, angle));
+                written += writeLine(writer, String.format(Locale.ROOT, "%d,ack,,%s,%d,%d",
+                        micros + 5000 + random.nextInt(5000), throttle, angle, 5000000 + random.nextInt(5000000)));
+            }
+        }
+    }
+
+    private static int writeLine(BufferedWriter writer, String line) throws IOException {
+        writer.write(line);
+        writer.write('\n');
+        return line.length() + 1;
+    }
+}
@@ -0,0 +1,218 @@
+package edu.ntnu.rtpcarcontroller.benchmark;
+
+import edu.ntnu.rtpcarcontroller.controller.connection.CarConnection;
+import edu.ntnu.rtpcarcontroller.controller.connection.Fleet;
+import edu.ntnu.rtpcarcontroller.controller.connection.SocketProfile;
+import edu.ntnu.rtpcarcontroller.controller.connection.transport.NioTcpTransport;
+import edu.ntnu.rtpcarcontroller.controller.connection.transport.TransportFactory;
+import edu.ntnu.rtpcarcontroller.controller.connection.transport.TransportType;
+import edu.ntnu.rtpcarcontroller.exception.NetworkConnectionException;
+import edu.ntnu.rtpcarcontroller.model.Throttle;
+import edu.ntnu.rtpcarcontroller.util.Protocol;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures the throughput and the number of writes per frame when a fleet of 1, 10 and 100 cars is driven together,
+ * once with the frames of a send gathered into a single write and once with one write per frame.
+ *
+ * Every round, the fleet broadcasts a new state and one extra frame (an emergency stop frame, shared by all cars) to
+ * every car. The cars are simulated by an in-process sink that answers the handshake and counts the frames arriving.
+ */
+public class BroadcastBenchmark {
+    private static final int[] FLEET_SIZES = { 1, 10, 100 };
+
+    /**
+     * Runs the benchmark.
+     * @param args Optionally the number of broadcast rounds per second and the duration of each run in seconds.
+     */
+    public static void main(String... args) throws IOException, InterruptedException {
+        int roundRate = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        // One write per frame, as before frames were gathered
+        TransportFactory perFrame = profile -> new NioTcpTransport(profile) {
+            @Override
+            public void send(ByteBuffer[] frames, int offset, int length) throws IOException {
+                for (int i = offset; i < offset + length; i++) {
+                    super.send(frames, i, 1);
+                }
+            }
+        };
+
+        System.out.println(String.format("%d rounds/s of one state and one broadcast frame, %d s per run",
+                roundRate, seconds));
+        for (int cars : FLEET_SIZES) {
+            run("per frame", perFrame, cars, roundRate, seconds);
+            run("gathered", TransportType.NIO_TCP, cars, roundRate, seconds);
+        }
+    }
+
+    private static void run(String name, TransportFactory factory, int cars, int roundRate, int seconds)
+            throws IOException, InterruptedException {
+        try (Sink sink = new Sink()) {
+            sink.start();
+            Fleet fleet = new Fleet(SocketProfile.LOW_LATENCY, factory);
+            try {
+                for (int i = 0; i < cars; i++) {
+                    fleet.add(new InetSocketAddress("127.0.0.1", sink.getPort()));
+                }
+            } catch (NetworkConnectionException e) {
+                throw new IOException(e);
+            }
+            ByteBuffer stop = Protocol.getStateFrame(Throttle.NEUTRAL, 90);
+
+            long interval = TimeUnit.SECONDS.toNanos(1) / roundRate;
+            int rounds = roundRate * seconds;
+            long start = System.nanoTime();
+            long firstFrame = sink.getFrameCount();
+            for (int i = 0; i < rounds; i++) {
+                long due = start + i * interval;
+                while (System.nanoTime() < due) {
+                    LockSupport.parkNanos(due - System.nanoTime());
+                }
+                // Alternate between two angles so that every round changes the state
+                fleet.broadcast(Throttle.FORWARD, i % 2 == 0 ? 80 : 100);
+                fleet.broadcast(stop);
+            }
+            long elapsed = System.nanoTime() - start;
+            // Let the senders and the sink catch up before counting
+            Thread.sleep(200);
+
+            long writes = 0;
+            for (CarConnection connection : fleet.getConnections()) {
+                writes += connection.getWriteCount();
+            }
+            long frames = sink.getFrameCount() - firstFrame;
+            fleet.close();
+
+            double perSecond = frames / (elapsed / 1e9);
+            System.out.println(String.format("%3d cars %-10s %9.0f frames/s, %6.3f writes/frame (%d frames, %d writes)",
+                    cars, name, perSecond, (double) writes / frames, frames, writes));
+        }
+    }
+
+    /**
+     * Simulated cars on a single non-blocking thread: each connection is answered with a handshake once it sends
+     * one, after which its frames are only counted.
+     */
+    private static class Sink implements Closeable {
+        private static final ByteBuffer HANDSHAKE_FRAME = Protocol.encodeFrame(Protocol.HANDSHAKE);
+
+        private final ServerSocketChannel serverChannel;
+        private final Selector selector;
+        private final Thread thread;
+        private final ByteBuffer readBuffer;
+        private final AtomicLong frames;
+        private volatile boolean active;
+
+        Sink() throws IOException {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress("127.0.0.1", 0));
+            serverChannel.configureBlocking(false);
+            selector = Selector.open();
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            thread = new Thread(this::run, "Broadcast sink");
+            thread.setDaemon(true);
+            readBuffer = ByteBuffer.allocateDirect(65536);
+            frames = new AtomicLong();
+        }
+
+        int getPort() {
+            return serverChannel.socket().getLocalPort();
+        }
+
+        long getFrameCount() {
+            return frames.get();
+        }
+
+        void start() {
+            active = true;
+            thread.start();
+        }
+
+        private void run() {
+            while (active) {
+                try {
+                    selector.select();
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            SocketChannel channel = serverChannel.accept();
+                            channel.configureBlocking(false);
+                            // The attachment records whether the handshake was answered
+                            channel.register(selector, SelectionKey.OP_READ, Boolean.FALSE);
+                        } else if (key.isReadable()) {
+                            read(key);
+                        }
+                    }
+                } catch (IOException e) {
+                    if (active) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+
+        private void read(SelectionKey key) throws IOException {
+            SocketChannel channel = (SocketChannel) key.channel();
+            readBuffer.clear();
+            int read;
+            try {
+                read = channel.read(readBuffer);
+            } catch (IOException e) {
+                read = -1;
+            }
+            if (read < 0) {
+                key.cancel();
+                channel.close();
+                return;
+            }
+            readBuffer.flip();
+            int lines = 0;
+            while (readBuffer.hasRemaining()) {
+                if (readBuffer.get() == '\n') {
+                    lines++;
+                }
+            }
+            if (key.attachment() == Boolean.FALSE) {
+                // The first line of a connection is its handshake
+                key.attach(Boolean.TRUE);
+                channel.write(HANDSHAKE_FRAME.duplicate());
+                lines--;
+            }
+            frames.addAndGet(lines);
+        }
+
+        @Override
+        public void close() throws IOException {
+            active = false;
+            selector.wakeup();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+        }
+    }
+}
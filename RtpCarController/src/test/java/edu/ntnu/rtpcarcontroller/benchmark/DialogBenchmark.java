@@ -0,0 +1,77 @@
+package edu.ntnu.rtpcarcontroller.benchmark;
+
+import edu.ntnu.rtpcarcontroller.controller.view.ConnConfigDialog;
+import edu.ntnu.rtpcarcontroller.util.LatencyHistogram;
+import javafx.application.Platform;
+import javafx.stage.Stage;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures how long it takes to open the connection dialog, which sits on the reconnect path: once loading the dialog
+ * from its FXML file every time, as before the dialog was cached, and once showing the cached dialog again.
+ *
+ * Opening is measured on the JavaFX application thread, from the request up to the dialog being showing; the dialog
+ * is hidden again after every measurement. Needs a display.
+ */
+public class DialogBenchmark {
+
+    /**
+     * Runs the benchmark.
+     * @param args Optionally the number of times to open the dialog per variant.
+     */
+    public static void main(String... args) throws InterruptedException {
+        int opens = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+
+        CountDownLatch done = new CountDownLatch(1);
+        try {
+            Platform.startup(() -> {
+                try {
+                    run(opens);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } finally {
+                    done.countDown();
+                }
+            });
+        } catch (RuntimeException e) {
+            System.out.println(String.format("The dialog benchmark needs a display: %s", e.getMessage()));
+            return;
+        }
+        done.await();
+        Platform.exit();
+    }
+
+    private static void run(int opens) throws IOException {
+        LatencyHistogram loaded = new LatencyHistogram();
+        LatencyHistogram cached = new LatencyHistogram();
+        // Warm up both paths, so that the first loading of the classes is not counted
+        for (int i = 0; i < 20; i++) {
+            open(ConnConfigDialog.load().getStage());
+        }
+
+        ConnConfigDialog dialog = ConnConfigDialog.load();
+        for (int i = 0; i < opens; i++) {
+            long start = System.nanoTime();
+            Stage stage = ConnConfigDialog.load().getStage();
+            open(stage);
+            loaded.record(System.nanoTime() - start);
+
+            start = System.nanoTime();
+            open(dialog.getStage());
+            cached.record(System.nanoTime() - start);
+        }
+        System.out.println(String.format("%d opens per variant", opens));
+        System.out.println(String.format("load every time: %s", loaded.summary()));
+        System.out.println(String.format("cached dialog:   %s", cached.summary()));
+    }
+
+    /**
+     * Shows the stage without waiting for the user, and hides it again.
+     */
+    private static void open(Stage stage) {
+        stage.show();
+        stage.hide();
+    }
+}
@@ -0,0 +1,108 @@
+package edu.ntnu.rtpcarcontroller.benchmark;
+
+import edu.ntnu.rtpcarcontroller.controller.DrivingController;
+import edu.ntnu.rtpcarcontroller.controller.connection.ConnController;
+import edu.ntnu.rtpcarcontroller.controller.connection.transport.DualPathTransport;
+import edu.ntnu.rtpcarcontroller.controller.connection.transport.TransportFactory;
+import edu.ntnu.rtpcarcontroller.controller.connection.transport.TransportType;
+import edu.ntnu.rtpcarcontroller.exception.NetworkConnectionException;
+import edu.ntnu.rtpcarcontroller.impairment.ImpairmentProfile;
+import edu.ntnu.rtpcarcontroller.impairment.ImpairmentProxy;
+import edu.ntnu.rtpcarcontroller.model.Car;
+import edu.ntnu.rtpcarcontroller.model.Throttle;
+import edu.ntnu.rtpcarcontroller.server.CarServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures the one-way latency of commands at the car over one jittery path, and over two paths with the
+ * DualPathTransport: two paths that jitter independently, and a jittery path next to a clean one.
+ *
+ * Every run drives a fresh reference CarServer on loopback; the jittery paths go through ImpairmentProxies with
+ * different seeds. With two paths, a frame is as late as the earlier of its copies, so the tail of the latency should
+ * approach that of the better path.
+ */
+public class DualPathBenchmark {
+
+    /**
+     * Runs the benchmark.
+     * @param args Optionally the latency and jitter of the jittery paths in milliseconds, the command rate in commands
+     *             per second and the duration of every run in seconds.
+     */
+    public static void main(String... args) throws IOException, InterruptedException {
+        long latency = args.length > 0 ? Long.parseLong(args[0]) : 5;
+        long jitter = args.length > 1 ? Long.parseLong(args[1]) : 30;
+        int commandRate = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        ImpairmentProfile profile = new ImpairmentProfile("jittery", latency, jitter, 0, 0, 0);
+
+        System.out.println(String.format("Jittery paths: %d ms (+%d ms jitter), %d commands/s, %d s per run",
+                latency, jitter, commandRate, seconds));
+        System.out.println("One jittery path:      " + run(profile, null, commandRate, seconds));
+        System.out.println("Two jittery paths:     " + run(profile, profile, commandRate, seconds));
+        System.out.println("Jittery + clean path:  " + run(profile, ImpairmentProfile.NONE, commandRate, seconds));
+    }
+
+    /**
+     * Drives a car over a primary jittery path and an optional secondary path.
+     * @return The summary of the one-way latency at the car.
+     */
+    private static String run(ImpairmentProfile primary, ImpairmentProfile secondary, int commandRate, int seconds)
+            throws IOException, InterruptedException {
+        CarServer server = new CarServer(0);
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "Car server");
+        serverThread.start();
+        InetSocketAddress upstream = new InetSocketAddress("127.0.0.1", server.getPort());
+        ImpairmentProxy primaryProxy = new ImpairmentProxy(0, upstream, primary, ImpairmentProfile.NONE, 1);
+        primaryProxy.start();
+        ImpairmentProxy secondaryProxy = null;
+        ConnController connController = ConnController.INSTANCE;
+        TransportFactory factory = TransportType.TCP;
+        if (secondary != null) {
+            secondaryProxy = new ImpairmentProxy(0, upstream, secondary, ImpairmentProfile.NONE, 2);
+            secondaryProxy.start();
+            factory = DualPathTransport.factory(TransportType.TCP, TransportType.TCP,
+                    new InetSocketAddress("127.0.0.1", secondaryProxy.getLocalPort()));
+        }
+        connController.setTransportFactory(factory);
+
+        Car car = new Car();
+        connController.setCar(car);
+        DrivingController.INSTANCE.setCar(car);
+        try {
+            connController.connect("127.0.0.1", String.valueOf(primaryProxy.getLocalPort()));
+        } catch (NetworkConnectionException e) {
+            throw new IOException(e);
+        }
+
+        long interval = TimeUnit.SECONDS.toNanos(1) / commandRate;
+        long start = System.nanoTime();
+        for (int i = 0; i < commandRate * seconds; i++) {
+            long due = start + i * interval;
+            while (System.nanoTime() < due) {
+                LockSupport.parkNanos(due - System.nanoTime());
+            }
+            DrivingController.INSTANCE.throttle(Throttle.FORWARD);
+            DrivingController.INSTANCE.steer(i % 181);
+        }
+        String summary = server.getEngine().getOneWayLatency().summary();
+
+        connController.disconnect();
+        primaryProxy.close();
+        if (secondaryProxy != null) {
+            secondaryProxy.close();
+        }
+        server.close();
+        serverThread.join();
+        return summary;
+    }
+}
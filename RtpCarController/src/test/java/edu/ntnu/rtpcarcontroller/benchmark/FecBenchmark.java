@@ -0,0 +1,136 @@
+package edu.ntnu.rtpcarcontroller.benchmark;
+
+import edu.ntnu.rtpcarcontroller.controller.connection.SocketProfile;
+import edu.ntnu.rtpcarcontroller.controller.connection.transport.UdpTransport;
+import edu.ntnu.rtpcarcontroller.model.Throttle;
+import edu.ntnu.rtpcarcontroller.util.Protocol;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures what repeating earlier frames in every datagram costs and gains on a lossy datagram link: the bytes sent
+ * per frame, and the share of frames that still do not reach the car.
+ *
+ * State frames are sent over a UdpTransport with a given redundancy to a UdpTransport on the loopback interface,
+ * through a forwarder that drops datagrams at random with a given probability.
+ */
+public class FecBenchmark {
+
+    /**
+     * Runs the benchmark.
+     * @param args Optionally the number of frames per run and the frame rate in frames per second.
+     */
+    public static void main(String... args) throws IOException, InterruptedException {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int rate = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+
+        System.out.println(String.format("%d state frames per run at %d/s", frames, rate));
+        System.out.println("loss  redundancy  bytes/frame  dropped  recovered  lost   residual loss");
+        for (double lossRate : new double[] { 0.01, 0.05, 0.10 }) {
+            for (int redundancy = 0; redundancy <= 3; redundancy++) {
+                run(lossRate, redundancy, frames, rate);
+            }
+        }
+    }
+
+    private static void run(double lossRate, int redundancy, int frames, int rate)
+            throws IOException, InterruptedException {
+        DatagramChannel receiverChannel = DatagramChannel.open();
+        receiverChannel.bind(new InetSocketAddress("127.0.0.1", 0));
+        DatagramChannel forwarderChannel = DatagramChannel.open();
+        forwarderChannel.bind(new InetSocketAddress("127.0.0.1", 0));
+        receiverChannel.connect(forwarderChannel.getLocalAddress());
+        UdpTransport receiver = new UdpTransport(receiverChannel);
+        LossyForwarder forwarder = new LossyForwarder(forwarderChannel, receiverChannel.getLocalAddress(), lossRate);
+        forwarder.start();
+
+        AtomicLong delivered = new AtomicLong();
+        Thread receiverThread = new Thread(() -> {
+            try {
+                while (receiver.receive() != null) {
+                    delivered.incrementAndGet();
+                }
+            } catch (IOException e) {
+                // The receiver is closed when the run ends
+            }
+        }, "Receiver");
+        receiverThread.start();
+
+        UdpTransport sender = new UdpTransport(SocketProfile.SYSTEM_DEFAULT, redundancy);
+        sender.connect(forwarderChannel.getLocalAddress());
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+            long due = start + i * interval;
+            while (System.nanoTime() < due) {
+                LockSupport.parkNanos(due - System.nanoTime());
+            }
+            sender.send(Protocol.getStateMessage(Throttle.FORWARD, i % 181));
+        }
+
+        Thread.sleep(200);
+        sender.close();
+        forwarder.close();
+        receiver.close();
+        receiverThread.join();
+        System.out.println(String.format("%3.0f%%  %10d  %11.1f  %7d  %9d  %5d  %12.2f%%", lossRate * 100, redundancy,
+                (double) sender.getBytesSent() / frames, forwarder.getDroppedCount(), receiver.getRecoveredCount(),
+                frames - delivered.get(), 100.0 * (frames - delivered.get()) / frames));
+    }
+
+    /**
+     * Forwards datagrams from one channel to an address, dropping each with a fixed probability.
+     */
+    private static class LossyForwarder extends Thread {
+        private final DatagramChannel channel;
+        private final SocketAddress target;
+        private final double lossRate;
+        private final Random random;
+        private long droppedCount;
+
+        LossyForwarder(DatagramChannel channel, SocketAddress target, double lossRate) {
+            super("Lossy forwarder");
+            this.channel = channel;
+            this.target = target;
+            this.lossRate = lossRate;
+            random = new Random(1);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            ByteBuffer buffer = ByteBuffer.allocate(512);
+            try {
+                while (true) {
+                    buffer.clear();
+                    channel.receive(buffer);
+                    buffer.flip();
+                    if (random.nextDouble() < lossRate) {
+                        droppedCount++;
+                        continue;
+                    }
+                    channel.send(buffer, target);
+                }
+            } catch (IOException e) {
+                // The channel is closed when the run ends
+            }
+        }
+
+        long getDroppedCount() throws InterruptedException {
+            join();
+            return droppedCount;
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+    }
+}
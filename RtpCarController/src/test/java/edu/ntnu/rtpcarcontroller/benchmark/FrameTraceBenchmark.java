@@ -0,0 +1,78 @@
+package edu.ntnu.rtpcarcontroller.benchmark;
+
+import edu.ntnu.rtpcarcontroller.controller.DrivingController;
+import edu.ntnu.rtpcarcontroller.controller.connection.ConnController;
+import edu.ntnu.rtpcarcontroller.exception.NetworkConnectionException;
+import edu.ntnu.rtpcarcontroller.model.Car;
+import edu.ntnu.rtpcarcontroller.model.Throttle;
+import edu.ntnu.rtpcarcontroller.util.FrameTracer;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Traces every frame from a simulated key press to the transport, once over a link that keeps up with the commands
+ * and once over a congested link, and prints the latency of every stage.
+ *
+ * On the congested link the sending thread spends most of its time in blocked writes while holding the monitor of
+ * ConnOutputController, so the time between car_handler and queued shows what the input thread pays for that
+ * monitor. The records of both runs are dumped to frame-trace.csv (or rtpcarcontroller.trace.file) on exit.
+ */
+public class FrameTraceBenchmark {
+    /**
+     * Runs the benchmark.
+     * @param args Optionally the congested link capacity in bytes per second, the command rate in commands per second
+     *             and the duration of each run in seconds.
+     */
+    public static void main(String... args) throws IOException {
+        int linkRate = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int commandRate = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        // Must be set before the tracer is first used
+        System.setProperty("rtpcarcontroller.trace", "true");
+
+        Car car = new Car();
+        ConnController.INSTANCE.setCar(car);
+        DrivingController.INSTANCE.setCar(car);
+
+        System.out.println(String.format("%d commands/s, %d s per run", commandRate, seconds));
+        run("idle link", 100 * linkRate, commandRate, seconds);
+        run(String.format("congested link (%d B/s)", linkRate), linkRate, commandRate, seconds);
+    }
+
+    private static void run(String name, int linkRate, int commandRate, int seconds) throws IOException {
+        FrameTracer tracer = FrameTracer.INSTANCE;
+        long[] commandTimes = new long[commandRate * seconds + 1];
+        ThrottledSink sink = new ThrottledSink(linkRate, commandTimes);
+        sink.start();
+
+        ConnController connController = ConnController.INSTANCE;
+        try {
+            connController.connect("127.0.0.1", String.valueOf(sink.getPort()));
+        } catch (NetworkConnectionException e) {
+            throw new IOException(e);
+        }
+        tracer.reset();
+
+        long interval = TimeUnit.SECONDS.toNanos(1) / commandRate;
+        long start = System.nanoTime();
+        for (int i = 0; i < commandTimes.length - 1 && connController.isConnectionActive(); i++) {
+            long due = start + i * interval;
+            while (System.nanoTime() < due) {
+                LockSupport.parkNanos(due - System.nanoTime());
+            }
+            int state = i % ThrottledSink.STATES;
+            commandTimes[i] = System.nanoTime();
+            // Every command is traced like a key press handled by the user interface
+            tracer.open();
+            DrivingController.INSTANCE.throttle(Throttle.values()[state / 181]);
+            DrivingController.INSTANCE.steer(state % 181);
+        }
+
+        connController.disconnect();
+        sink.close();
+        System.out.println(name);
+        System.out.println(tracer.summary());
+    }
+}
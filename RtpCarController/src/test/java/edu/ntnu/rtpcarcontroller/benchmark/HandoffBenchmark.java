@@ -0,0 +1,128 @@
+package edu.ntnu.rtpcarcontroller.benchmark;
+
+import edu.ntnu.rtpcarcontroller.controller.connection.CarConnection;
+import edu.ntnu.rtpcarcontroller.exception.NetworkConnectionException;
+import edu.ntnu.rtpcarcontroller.model.Car;
+import edu.ntnu.rtpcarcontroller.model.Throttle;
+import edu.ntnu.rtpcarcontroller.server.CarServer;
+import edu.ntnu.rtpcarcontroller.util.LatencyHistogram;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures how fast control of a car passes between two controllers connected to it at the same time: a student who
+ * keeps driving, and an instructor who takes over and hands back again and again.
+ *
+ * The student drives at priority 1, sweeping the steering at a fixed rate. The instructor, connected at priority 0,
+ * takes the car over by raising its priority above the student's, and hands it back by lowering it again. The
+ * takeover is timed from the call raising the priority to the compare-and-set on the reference CarServer, which the
+ * announcement and the instructor's state reach in one write; the handback waits for the student's next frame, so it
+ * takes up to one command interval.
+ */
+public class HandoffBenchmark {
+    private static final int STUDENT_PRIORITY = 1;
+    private static final int INSTRUCTOR_PRIORITY = 10;
+
+    /**
+     * Runs the benchmark.
+     * @param args Optionally the number of takeovers, the student's command rate in commands per second and the time
+     *             in milliseconds each controller drives before the next handoff.
+     */
+    public static void main(String... args) throws IOException, InterruptedException {
+        int handoffs = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int commandRate = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        long holdMillis = args.length > 2 ? Long.parseLong(args[2]) : 100;
+
+        CarServer server = new CarServer(0);
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "Car server");
+        serverThread.start();
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", server.getPort());
+
+        Car studentCar = new Car();
+        CarConnection student = connect(studentCar, STUDENT_PRIORITY, address);
+        Car instructorCar = new Car();
+        CarConnection instructor = connect(instructorCar, 0, address);
+        instructorCar.throttle(Throttle.REVERSE);
+
+        Thread driver = new Thread(() -> {
+            studentCar.throttle(Throttle.FORWARD);
+            long interval = TimeUnit.SECONDS.toNanos(1) / commandRate;
+            long start = System.nanoTime();
+            for (int i = 0; !Thread.currentThread().isInterrupted(); i++) {
+                long due = start + i * interval;
+                while (System.nanoTime() < due) {
+                    LockSupport.parkNanos(due - System.nanoTime());
+                }
+                studentCar.steer(i % 181);
+            }
+        }, "Student");
+        driver.setDaemon(true);
+        driver.start();
+
+        LatencyHistogram takeover = new LatencyHistogram();
+        LatencyHistogram handback = new LatencyHistogram();
+        int missed = 0;
+        for (int i = 0; i < handoffs; i++) {
+            Thread.sleep(holdMillis);
+            long takeovers = server.getTakeoverCount();
+            long start = System.nanoTime();
+            instructor.setPriority(INSTRUCTOR_PRIORITY);
+            instructorCar.steer(i % 2 == 0 ? 0 : 180);
+            missed += await(server, takeovers, takeover, start) ? 0 : 1;
+
+            Thread.sleep(holdMillis);
+            takeovers = server.getTakeoverCount();
+            start = System.nanoTime();
+            instructor.setPriority(0);
+            missed += await(server, takeovers, handback, start) ? 0 : 1;
+        }
+        driver.interrupt();
+
+        System.out.println(String.format("%d handoffs each way, student at %d commands/s", handoffs, commandRate));
+        System.out.println(String.format("Takeover by the instructor: %s", takeover.summary()));
+        System.out.println(String.format("Handback to the student:    %s", handback.summary()));
+        System.out.println(String.format("Handoffs not seen within a second: %d", missed));
+
+        student.disconnect();
+        instructor.disconnect();
+        server.close();
+        serverThread.join();
+    }
+
+    private static CarConnection connect(Car car, int priority, InetSocketAddress address) throws IOException {
+        CarConnection connection = new CarConnection();
+        connection.setCar(car);
+        connection.setPriority(priority);
+        try {
+            connection.connect(address);
+        } catch (NetworkConnectionException e) {
+            throw new IOException(e);
+        }
+        return connection;
+    }
+
+    /**
+     * Waits for the server to count another takeover, and records the time from the start to the takeover.
+     * @return Whether the takeover happened within a second.
+     */
+    private static boolean await(CarServer server, long takeovers, LatencyHistogram histogram, long start) {
+        long deadline = start + TimeUnit.SECONDS.toNanos(1);
+        while (server.getTakeoverCount() == takeovers) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.onSpinWait();
+        }
+        histogram.record(server.getLastTakeover() - start);
+        return true;
+    }
+}
@@ -0,0 +1,107 @@
+package edu.ntnu.rtpcarcontroller.benchmark;
+
+import edu.ntnu.rtpcarcontroller.util.AsyncLogHandler;
+import edu.ntnu.rtpcarcontroller.util.LatencyHistogram;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+import java.util.logging.StreamHandler;
+
+/**
+ * Measures how long a FINE log call holds up the calling thread, as when FINE logging is enabled during an incident
+ * while the car is driven: with FINE disabled, with a synchronous StreamHandler formatting and writing on the calling
+ * thread (like the ConsoleHandler), and with the AsyncLogHandler.
+ *
+ * Both handlers write to a slow console, simulated by a stream that takes a fixed time per write. Calls are made at a
+ * fixed rate, like the commands of a driver.
+ */
+public class LoggingBenchmark {
+    private static final Logger logger = Logger.getLogger(LoggingBenchmark.class.getName());
+
+    /**
+     * Runs the benchmark.
+     * @param args Optionally the number of log calls per run, the call rate in calls per second and the time the
+     *             console takes per write in microseconds.
+     */
+    public static void main(String... args) {
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int rate = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        long writeNanos = TimeUnit.MICROSECONDS.toNanos(args.length > 2 ? Long.parseLong(args[2]) : 50);
+
+        logger.setUseParentHandlers(false);
+        System.out.println(String.format("%d calls at %d/s, %d µs per console write", calls, rate,
+                TimeUnit.NANOSECONDS.toMicros(writeNanos)));
+
+        logger.setLevel(Level.INFO);
+        run("FINE disabled", calls, rate);
+
+        logger.setLevel(Level.FINE);
+        StreamHandler streamHandler = new StreamHandler(new SlowConsole(writeNanos), new SimpleFormatter()) {
+            @Override
+            public synchronized void publish(LogRecord record) {
+                // Flush every record, like the ConsoleHandler does
+                super.publish(record);
+                flush();
+            }
+        };
+        streamHandler.setLevel(Level.ALL);
+        measure("synchronous", streamHandler, calls, rate);
+
+        AsyncLogHandler asyncHandler = new AsyncLogHandler(new SlowConsole(writeNanos), 4096);
+        measure("asynchronous", asyncHandler, calls, rate);
+        System.out.println(String.format("%-15s dropped %d records", "", asyncHandler.getDroppedCount()));
+    }
+
+    private static void measure(String name, Handler handler, int calls, int rate) {
+        logger.addHandler(handler);
+        run(name, calls, rate);
+        logger.removeHandler(handler);
+        handler.close();
+    }
+
+    private static void run(String name, int calls, int rate) {
+        LatencyHistogram latency = new LatencyHistogram();
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            long due = start + i * interval;
+            while (System.nanoTime() < due) {
+                LockSupport.parkNanos(due - System.nanoTime());
+            }
+            long before = System.nanoTime();
+            logger.log(Level.FINE, "Steering to {0}", i % 181);
+            latency.record(System.nanoTime() - before);
+        }
+        System.out.println(String.format("%-15s call: %s", name, latency.summary()));
+    }
+
+    /**
+     * A console that takes a fixed time for every write, as a terminal does.
+     */
+    private static class SlowConsole extends OutputStream {
+        private final long writeNanos;
+
+        SlowConsole(long writeNanos) {
+            this.writeNanos = writeNanos;
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            long end = System.nanoTime() + writeNanos;
+            while (System.nanoTime() < end) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package edu.ntnu.rtpcarcontroller.benchmark;
+
+import edu.ntnu.rtpcarcontroller.controller.DrivingController;
+import edu.ntnu.rtpcarcontroller.controller.connection.ClockSync;
+import edu.ntnu.rtpcarcontroller.controller.connection.ConnController;
+import edu.ntnu.rtpcarcontroller.exception.NetworkConnectionException;
+import edu.ntnu.rtpcarcontroller.impairment.ImpairmentProfile;
+import edu.ntnu.rtpcarcontroller.impairment.ImpairmentProxy;
+import edu.ntnu.rtpcarcontroller.model.Car;
+import edu.ntnu.rtpcarcontroller.model.Throttle;
+import edu.ntnu.rtpcarcontroller.server.CarEngine;
+import edu.ntnu.rtpcarcontroller.server.CarServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures the one-way latency of commands, from the client to the car, over a link whose uplink jitters more than
+ * its downlink.
+ *
+ * The client drives the reference CarServer through an ImpairmentProxy. After the handshake it synchronises its clock
+ * with the car's, and tags every state frame with its send time, from which the car records the one-way latency.
+ * Since client and car run in the same process here, the true offset between their clocks is known, and the error
+ * of the estimated offset is reported too. Given different uplink and downlink latencies, the offset is off by half
+ * their difference, as with any synchronisation over the link itself.
+ */
+public class OneWayLatencyBenchmark {
+
+    /**
+     * Runs the benchmark.
+     * @param args Optionally the uplink and downlink latency in milliseconds, the command rate in commands per
+     *             second and the duration of the run in seconds.
+     */
+    public static void main(String... args) throws IOException, InterruptedException {
+        long uplinkLatency = args.length > 0 ? Long.parseLong(args[0]) : 20;
+        long downlinkLatency = args.length > 1 ? Long.parseLong(args[1]) : 20;
+        int commandRate = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        CarServer server = new CarServer(0);
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "Car server");
+        serverThread.start();
+        ImpairmentProfile uplink = new ImpairmentProfile("uplink", uplinkLatency, 10, 0, 0, 0);
+        ImpairmentProfile downlink = new ImpairmentProfile("downlink", downlinkLatency, 2, 0, 0, 0);
+        ImpairmentProxy proxy = new ImpairmentProxy(0, new InetSocketAddress("127.0.0.1", server.getPort()),
+                uplink, downlink, 1);
+        proxy.start();
+
+        Car car = new Car();
+        ConnController connController = ConnController.INSTANCE;
+        connController.setCar(car);
+        DrivingController.INSTANCE.setCar(car);
+        try {
+            connController.connect("127.0.0.1", String.valueOf(proxy.getLocalPort()));
+        } catch (NetworkConnectionException e) {
+            throw new IOException(e);
+        }
+
+        long interval = TimeUnit.SECONDS.toNanos(1) / commandRate;
+        long start = System.nanoTime();
+        for (int i = 0; i < commandRate * seconds; i++) {
+            long due = start + i * interval;
+            while (System.nanoTime() < due) {
+                LockSupport.parkNanos(due - System.nanoTime());
+            }
+            DrivingController.INSTANCE.throttle(Throttle.FORWARD);
+            DrivingController.INSTANCE.steer(i % 181);
+        }
+
+        ClockSync clockSync = connController.getConnection().getClockSync();
+        CarEngine engine = server.getEngine();
+        long trueOffset = engine.clockMicros() - ClockSync.localMicros();
+        System.out.println(String.format("Uplink %d ms (+10 ms jitter), downlink %d ms (+2 ms jitter), %d commands/s, "
+                + "%d s", uplinkLatency, downlinkLatency, commandRate, seconds));
+        System.out.println(String.format("Clock sync: %s", clockSync.summary()));
+        System.out.println(String.format("Offset error: %d us", clockSync.getOffset() - trueOffset));
+        System.out.println(String.format("One-way command latency at the car: %s",
+                engine.getOneWayLatency().summary()));
+
+        connController.disconnect();
+        proxy.close();
+        server.close();
+        serverThread.join();
+    }
+}
@@ -0,0 +1,78 @@
+package edu.ntnu.rtpcarcontroller.benchmark;
+
+import edu.ntnu.rtpcarcontroller.controller.DrivingController;
+import edu.ntnu.rtpcarcontroller.controller.connection.ConnController;
+import edu.ntnu.rtpcarcontroller.controller.connection.SocketProfile;
+import edu.ntnu.rtpcarcontroller.exception.NetworkConnectionException;
+import edu.ntnu.rtpcarcontroller.model.Car;
+import edu.ntnu.rtpcarcontroller.model.Throttle;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures how stale the states arriving at the car are when the link to the car is saturated, once with the
+ * operating system's default socket options and once with the low-latency SocketProfile.
+ *
+ * The car is simulated by a sink that drains its connection at a fixed number of bytes per second, while the client
+ * changes the steering angle at a rate whose frames exceed that capacity. For every frame that arrives, the sink
+ * records how long ago the state it carries was commanded.
+ */
+public class SocketProfileBenchmark {
+
+    /**
+     * Runs the benchmark.
+     * @param args Optionally the link capacity in bytes per second, the command rate in commands per second and the
+     *             duration of each run in seconds.
+     */
+    public static void main(String... args) throws IOException, InterruptedException {
+        int linkRate = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int commandRate = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+
+        Car car = new Car();
+        ConnController.INSTANCE.setCar(car);
+        DrivingController.INSTANCE.setCar(car);
+
+        System.out.println(String.format("Link %d B/s, %d commands/s, %d s per run", linkRate, commandRate, seconds));
+        // The write deadline is left out of the low-latency profile here, so that the run is not aborted
+        SocketProfile lowLatency = new SocketProfile(true, 4096, 4096, SocketProfile.DSCP_EXPEDITED_FORWARDING,
+                true, 0);
+        run("system default", SocketProfile.SYSTEM_DEFAULT, linkRate, commandRate, seconds);
+        run("low latency", lowLatency, linkRate, commandRate, seconds);
+    }
+
+    private static void run(String name, SocketProfile profile, int linkRate, int commandRate, int seconds)
+            throws IOException, InterruptedException {
+        long[] commandTimes = new long[commandRate * seconds + 1];
+        ThrottledSink sink = new ThrottledSink(linkRate, commandTimes);
+        sink.start();
+
+        ConnController connController = ConnController.INSTANCE;
+        connController.setSocketProfile(profile);
+        try {
+            connController.connect("127.0.0.1", String.valueOf(sink.getPort()));
+        } catch (NetworkConnectionException e) {
+            throw new IOException(e);
+        }
+
+        // Walk through all throttle and steering combinations, so that every command changes the state
+        long interval = TimeUnit.SECONDS.toNanos(1) / commandRate;
+        long start = System.nanoTime();
+        for (int i = 0; i < commandTimes.length - 1 && connController.isConnectionActive(); i++) {
+            long due = start + i * interval;
+            while (System.nanoTime() < due) {
+                LockSupport.parkNanos(due - System.nanoTime());
+            }
+            int state = i % ThrottledSink.STATES;
+            commandTimes[i] = System.nanoTime();
+            DrivingController.INSTANCE.throttle(Throttle.values()[state / 181]);
+            DrivingController.INSTANCE.steer(state % 181);
+        }
+
+        connController.disconnect();
+        sink.close();
+        System.out.println(String.format("%-15s staleness at the car: %s", name, sink.getStaleness().summary()));
+    }
+}
@@ -0,0 +1,77 @@
+package edu.ntnu.rtpcarcontroller.benchmark;
+
+import edu.ntnu.rtpcarcontroller.controller.DrivingController;
+import edu.ntnu.rtpcarcontroller.controller.connection.ConnController;
+import edu.ntnu.rtpcarcontroller.controller.connection.SocketProfile;
+import edu.ntnu.rtpcarcontroller.controller.connection.StateMailbox;
+import edu.ntnu.rtpcarcontroller.exception.NetworkConnectionException;
+import edu.ntnu.rtpcarcontroller.model.Car;
+import edu.ntnu.rtpcarcontroller.model.Throttle;
+import edu.ntnu.rtpcarcontroller.util.LatencyHistogram;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures how long the thread driving the car (the JavaFX thread in the application) is held up per command while
+ * the link to the car is all but stalled, and reports the depth and drops of the connection's StateMailbox.
+ *
+ * The car is simulated by a sink that drains its connection at a few bytes per second, so the sender soon blocks in a
+ * write; the commands must nevertheless return at once.
+ */
+public class StalledLinkBenchmark {
+
+    /**
+     * Runs the benchmark.
+     * @param args Optionally the link capacity in bytes per second, the command rate in commands per second and the
+     *             duration of the run in seconds.
+     */
+    public static void main(String... args) throws IOException {
+        int linkRate = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int commandRate = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        Car car = new Car();
+        ConnController connController = ConnController.INSTANCE;
+        connController.setCar(car);
+        DrivingController.INSTANCE.setCar(car);
+        // Small buffers fill up quickly; without a write deadline the sender stays blocked instead of giving up
+        connController.setSocketProfile(new SocketProfile(true, 4096, 4096, -1, false, 0));
+
+        long[] commandTimes = new long[commandRate * seconds + 1];
+        ThrottledSink sink = new ThrottledSink(linkRate, commandTimes);
+        sink.start();
+        try {
+            connController.connect("127.0.0.1", String.valueOf(sink.getPort()));
+        } catch (NetworkConnectionException e) {
+            throw new IOException(e);
+        }
+
+        LatencyHistogram commandLatency = new LatencyHistogram();
+        long interval = TimeUnit.SECONDS.toNanos(1) / commandRate;
+        long start = System.nanoTime();
+        for (int i = 0; i < commandTimes.length - 1; i++) {
+            long due = start + i * interval;
+            while (System.nanoTime() < due) {
+                LockSupport.parkNanos(due - System.nanoTime());
+            }
+            int state = i % ThrottledSink.STATES;
+            long commanded = System.nanoTime();
+            commandTimes[i] = commanded;
+            DrivingController.INSTANCE.throttle(Throttle.values()[state / 181]);
+            DrivingController.INSTANCE.steer(state % 181);
+            commandLatency.record(System.nanoTime() - commanded);
+        }
+
+        StateMailbox mailbox = connController.getConnection().getStateMailbox();
+        System.out.println(String.format("Link %d B/s, %d commands/s, %d s", linkRate, commandRate, seconds));
+        System.out.println(String.format("Command latency: %s", commandLatency.summary()));
+        System.out.println(String.format("Mailbox: offered=%d taken=%d dropped=%d depth=%d maxDepth=%d",
+                mailbox.getOfferedCount(), mailbox.getTakenCount(), mailbox.getDroppedCount(), mailbox.getDepth(),
+                mailbox.getMaxDepth()));
+
+        connController.disconnect();
+        sink.close();
+    }
+}
@@ -0,0 +1,92 @@
+package edu.ntnu.rtpcarcontroller.benchmark;
+
+import edu.ntnu.rtpcarcontroller.controller.DrivingController;
+import edu.ntnu.rtpcarcontroller.controller.connection.ConnController;
+import edu.ntnu.rtpcarcontroller.controller.connection.StandbyPool;
+import edu.ntnu.rtpcarcontroller.exception.NetworkConnectionException;
+import edu.ntnu.rtpcarcontroller.model.Car;
+import edu.ntnu.rtpcarcontroller.model.Throttle;
+import edu.ntnu.rtpcarcontroller.server.CarServer;
+import edu.ntnu.rtpcarcontroller.util.LatencyHistogram;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Measures how long switching between two cars takes, from the call to connect until the Car drives the other car:
+ * first with a connect and a handshake for every switch, then with a standby connection to the other car.
+ *
+ * Both cars are reference CarServers in the same process. The recently used cars are kept in a temporary file.
+ */
+public class StandbyBenchmark {
+    private static int switchCount;
+
+    /**
+     * Runs the benchmark.
+     * @param args Optionally the number of switches per run.
+     */
+    public static void main(String... args) throws IOException, InterruptedException {
+        int switches = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+
+        Path recentFile = Files.createTempFile("recent-cars", null);
+        System.setProperty("rtpcarcontroller.standby.file", recentFile.toString());
+        CarServer[] servers = { new CarServer(0), new CarServer(0) };
+        Thread[] serverThreads = new Thread[servers.length];
+        for (int i = 0; i < servers.length; i++) {
+            CarServer server = servers[i];
+            serverThreads[i] = new Thread(() -> {
+                try {
+                    server.serve();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }, "Car server " + i);
+            serverThreads[i].start();
+        }
+
+        Car car = new Car();
+        ConnController connController = ConnController.INSTANCE;
+        connController.setCar(car);
+        DrivingController.INSTANCE.setCar(car);
+        StandbyPool standbyPool = connController.getStandbyPool();
+
+        standbyPool.setCapacity(0);
+        LatencyHistogram cold = run(connController, servers, switches);
+        standbyPool.setCapacity(1);
+        // The first switch leaves a standby connection to the car switched from
+        run(connController, servers, 1);
+        LatencyHistogram warm = run(connController, servers, switches);
+
+        System.out.println(String.format("Connect and handshake: %s", cold.summary()));
+        System.out.println(String.format("Standby handoff:       %s", warm.summary()));
+        System.out.println(String.format("Recently used cars: %s", standbyPool.getRecent()));
+
+        connController.disconnect();
+        standbyPool.close();
+        for (int i = 0; i < servers.length; i++) {
+            servers[i].close();
+            serverThreads[i].join();
+        }
+        Files.delete(recentFile);
+    }
+
+    private static LatencyHistogram run(ConnController connController, CarServer[] servers, int switches)
+            throws IOException, InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < switches; i++) {
+            CarServer server = servers[switchCount++ % servers.length];
+            long start = System.nanoTime();
+            try {
+                connController.connect("127.0.0.1", String.valueOf(server.getPort()));
+            } catch (NetworkConnectionException e) {
+                throw new IOException(e);
+            }
+            histogram.record(System.nanoTime() - start);
+            DrivingController.INSTANCE.throttle(Throttle.FORWARD);
+            // Let the car drive, and the car switched from close the sessions it no longer needs
+            Thread.sleep(200);
+        }
+        return histogram;
+    }
+}
@@ -0,0 +1,148 @@
+package edu.ntnu.rtpcarcontroller.benchmark;
+
+import edu.ntnu.rtpcarcontroller.util.LatencyHistogram;
+import edu.ntnu.rtpcarcontroller.util.Protocol;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time from launching the client to the first state frame arriving at the car, for a headless launch
+ * (ScriptRunner) and a GUI launch (TestApp connecting at startup through rtpcarcontroller.connect).
+ *
+ * Every launch is a new JVM, started on the JDK running the benchmark and, if a runtime image built by the fast-start
+ * profile is given, on that image with and without its class-data-sharing archive. The car is simulated by a server in
+ * the benchmark's JVM, which takes the time when the first state frame arrives and then ends the launch.
+ */
+public class StartupBenchmark {
+    private static final String MODULE = "rtpcarcontroller";
+    private static final String HEADLESS_MAIN = "edu.ntnu.rtpcarcontroller.ScriptRunner";
+    private static final String GUI_MAIN = "edu.ntnu.rtpcarcontroller.TestApp";
+    private static final int LAUNCH_TIMEOUT = 30000;
+
+    /**
+     * Runs the benchmark.
+     * @param args Optionally the directory of the runtime image (target/image after mvn -P fast-start package) and
+     *             the number of launches per combination.
+     */
+    public static void main(String... args) throws IOException, InterruptedException {
+        Path image = args.length > 0 ? Paths.get(args[0]) : null;
+        int launches = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        List<String> jdk = Arrays.asList(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        run("jdk", jdk, launches, false);
+        run("jdk", jdk, launches, true);
+        if (image != null) {
+            if (!Files.isRegularFile(image.resolve(Paths.get("lib", "server", "classes.jsa")))) {
+                System.out.println(String.format("No class-data-sharing archive in %s", image));
+            }
+            String java = image.resolve(Paths.get("bin", "java")).toString();
+            for (boolean gui : new boolean[] { false, true }) {
+                run("image, no CDS", Arrays.asList(java, "-Xshare:off"), launches, gui);
+                run("image + CDS", Arrays.asList(java, "-Xshare:auto"), launches, gui);
+            }
+        }
+    }
+
+    private static void run(String name, List<String> java, int launches, boolean gui)
+            throws IOException, InterruptedException {
+        LatencyHistogram startup = new LatencyHistogram();
+        String failure = null;
+        for (int i = 0; i < launches && failure == null; i++) {
+            try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+                serverSocket.setSoTimeout(LAUNCH_TIMEOUT);
+                List<String> command = command(java, gui, serverSocket.getLocalPort());
+                if (command == null) {
+                    failure = "needs the benchmark to run from the module path";
+                    break;
+                }
+                long start = System.nanoTime();
+                Process process = new ProcessBuilder(command)
+                        .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                        .redirectError(ProcessBuilder.Redirect.DISCARD)
+                        .start();
+                try {
+                    long firstFrame = awaitFirstFrame(serverSocket);
+                    if (firstFrame < 0) {
+                        failure = String.format("no state frame (exit code %s)",
+                                process.isAlive() ? "none" : String.valueOf(process.exitValue()));
+                    } else {
+                        startup.record(firstFrame - start);
+                    }
+                } finally {
+                    process.destroy();
+                    process.waitFor(5, TimeUnit.SECONDS);
+                }
+            }
+        }
+        String launch = gui ? "GUI" : "headless";
+        if (failure != null) {
+            System.out.println(String.format("%-14s %-8s %s", name, launch, failure));
+        } else {
+            System.out.println(String.format("%-14s %-8s launch to first frame: %s", name, launch,
+                    startup.summary()));
+        }
+    }
+
+    /**
+     * Builds the command line of a launch, or returns null if the launch is not possible from this JVM: the GUI
+     * needs the JavaFX modules, so outside an image it needs the benchmark's own module path.
+     */
+    private static List<String> command(List<String> java, boolean gui, int port) {
+        List<String> command = new ArrayList<>(java);
+        boolean fromImage = java.size() > 1;
+        String modulePath = System.getProperty("jdk.module.path");
+        if (gui) {
+            command.add(String.format("-Drtpcarcontroller.connect=127.0.0.1:%d", port));
+        }
+        if (fromImage) {
+            command.add("-m");
+            command.add(MODULE + "/" + (gui ? GUI_MAIN : HEADLESS_MAIN));
+        } else if (modulePath != null) {
+            command.addAll(Arrays.asList("-p", modulePath, "-m", MODULE + "/" + (gui ? GUI_MAIN : HEADLESS_MAIN)));
+        } else if (!gui) {
+            command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), HEADLESS_MAIN));
+        } else {
+            return null;
+        }
+        if (!gui) {
+            command.addAll(Arrays.asList("sweep:10:1000", "127.0.0.1", String.valueOf(port)));
+        }
+        return command;
+    }
+
+    /**
+     * Accepts the client, answers its handshake and waits for its first state frame.
+     * @return The moment the first state frame arrived, or -1 if the client did not send one in time.
+     */
+    private static long awaitFirstFrame(ServerSocket serverSocket) throws IOException {
+        try (Socket socket = serverSocket.accept()) {
+            socket.setSoTimeout(LAUNCH_TIMEOUT);
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            PrintWriter writer = new PrintWriter(
+                    new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII), true);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (Protocol.isStateMessage(line)) {
+                    return System.nanoTime();
+                }
+                writer.println(line);
+            }
+            return -1;
+        } catch (SocketTimeoutException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package edu.ntnu.rtpcarcontroller.benchmark;
+
+import edu.ntnu.rtpcarcontroller.controller.connection.CarConnection;
+import edu.ntnu.rtpcarcontroller.controller.connection.ThreadMode;
+import edu.ntnu.rtpcarcontroller.controller.connection.transport.LoopbackTransport;
+import edu.ntnu.rtpcarcontroller.controller.connection.transport.TransportType;
+import edu.ntnu.rtpcarcontroller.exception.NetworkConnectionException;
+import edu.ntnu.rtpcarcontroller.model.Car;
+import edu.ntnu.rtpcarcontroller.util.Protocol;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the memory and the number of platform threads needed by 10, 1,000 and 10,000 simulated connections in the
+ * platform and virtual ThreadModes.
+ *
+ * Every connection runs the complete client (its input, heartbeats and sends) against an in-process car over the
+ * loopback transport, so no sockets are needed. Every combination runs in a JVM of its own, so that one run does not
+ * inherit the heap and threads of another.
+ */
+public class ThreadModeBenchmark {
+    private static final int[] CONNECTION_COUNTS = { 10, 1000, 10000 };
+
+    /**
+     * Runs the benchmark.
+     * @param args Nothing to run all combinations, or the mode and the number of connections of a single run.
+     */
+    public static void main(String... args) throws IOException, InterruptedException {
+        if (args.length >= 2) {
+            run(ThreadMode.forName(args[0]), Integer.parseInt(args[1]));
+            return;
+        }
+        System.out.println(String.format("%-8s %11s %16s %10s %10s %12s",
+                "mode", "connections", "platform threads", "heap MB", "RSS MB", "connect ms"));
+        for (ThreadMode mode : ThreadMode.values()) {
+            for (int connections : CONNECTION_COUNTS) {
+                fork(mode, connections);
+            }
+        }
+    }
+
+    /**
+     * Runs a single combination in a new JVM, and prints its result.
+     */
+    private static void fork(ThreadMode mode, int connections) throws IOException, InterruptedException {
+        Path java = Paths.get(System.getProperty("java.home"), "bin", "java");
+        Process process = new ProcessBuilder(java.toString(), "-cp", System.getProperty("java.class.path"),
+                "-Djava.util.logging.config.file=/dev/null", ThreadModeBenchmark.class.getName(),
+                mode.name(), String.valueOf(connections))
+                .redirectErrorStream(true)
+                .start();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                System.out.println(line);
+            }
+        }
+        process.waitFor();
+    }
+
+    private static void run(ThreadMode mode, int connections) throws IOException, InterruptedException {
+        if (!mode.isSupported()) {
+            System.out.println(String.format("%-8s %11d not supported on Java %s",
+                    mode, connections, System.getProperty("java.version")));
+            return;
+        }
+        LoopbackTransport.Acceptor acceptor = LoopbackTransport.listen(0);
+        List<LoopbackTransport> cars = new ArrayList<>();
+        Thread carThread = new Thread(() -> serve(acceptor, cars), "Simulated cars");
+        carThread.setDaemon(true);
+        carThread.start();
+
+        long heapBefore = usedHeap();
+        long rssBefore = residentSetSize();
+        int threadsBefore = Thread.getAllStackTraces().size();
+
+        List<CarConnection> connectionList = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < connections; i++) {
+            CarConnection connection = new CarConnection();
+            connection.setThreadMode(mode);
+            connection.setTransportFactory(TransportType.LOOPBACK);
+            connection.setCar(new Car());
+            try {
+                connection.connect(new InetSocketAddress("127.0.0.1", acceptor.getPort()));
+            } catch (NetworkConnectionException e) {
+                throw new IOException(e);
+            }
+            connectionList.add(connection);
+        }
+        long connectTime = System.nanoTime() - start;
+        // Let every connection send its first state and heartbeat
+        Thread.sleep(2 * Protocol.HEARTBEAT_PERIOD);
+
+        int threads = Thread.getAllStackTraces().size() - threadsBefore;
+        long heap = usedHeap() - heapBefore;
+        long rss = residentSetSize() - rssBefore;
+        System.out.println(String.format("%-8s %11d %16d %10.1f %10s %12d", mode, connections, threads,
+                heap / 1e6, rss < 0 || rssBefore < 0 ? "n/a" : String.format("%.1f", rss / 1e6),
+                TimeUnit.NANOSECONDS.toMillis(connectTime)));
+
+        for (CarConnection connection : connectionList) {
+            connection.disconnect();
+        }
+        acceptor.close();
+    }
+
+    /**
+     * Answers the handshake of every connection; afterwards the frames of the connections pile up unread, which is
+     * negligible for the duration of a run.
+     */
+    private static void serve(LoopbackTransport.Acceptor acceptor, List<LoopbackTransport> cars) {
+        try {
+            while (true) {
+                LoopbackTransport car = acceptor.accept();
+                if (Protocol.HANDSHAKE.equals(car.receive())) {
+                    car.send(Protocol.HANDSHAKE);
+                }
+                cars.add(car);
+            }
+        } catch (IOException e) {
+            // The benchmark is over
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * @return The resident set size of this process in bytes, or -1 if the platform does not report it.
+     */
+    private static long residentSetSize() {
+        Path status = Paths.get("/proc/self/status");
+        if (!Files.isReadable(status)) {
+            return -1;
+        }
+        try {
+            for (String line : Files.readAllLines(status)) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            return -1;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,103 @@
+package edu.ntnu.rtpcarcontroller.benchmark;
+
+import edu.ntnu.rtpcarcontroller.model.Throttle;
+import edu.ntnu.rtpcarcontroller.util.LatencyHistogram;
+import edu.ntnu.rtpcarcontroller.util.Protocol;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A single-connection car server that answers the handshake and then reads at a fixed number of bytes per second, like
+ * a congested link would, recording the staleness of every state frame.
+ *
+ * The benchmarks using it command state i % STATES (the throttle ordinal times 181 plus the steering angle) as their
+ * i-th command, so that the sink can tell which command a frame carries.
+ */
+class ThrottledSink extends Thread implements Closeable {
+    static final int STATES = Throttle.values().length * 181;
+
+    private final ServerSocket serverSocket;
+    private final int bytesPerSecond;
+    private final long[] commandTimes;
+    private final LatencyHistogram staleness;
+    private Socket socket;
+
+    /**
+     * Creates a new ThrottledSink listening on a free local port.
+     * @param bytesPerSecond The number of bytes per second to read.
+     * @param commandTimes The moment (in System.nanoTime() terms) each command was given, filled in by the client.
+     * @throws IOException If the server socket could not be opened.
+     */
+    ThrottledSink(int bytesPerSecond, long[] commandTimes) throws IOException {
+        serverSocket = new ServerSocket();
+        // A small receive buffer keeps the backlog on the sender's side, like a slow link would
+        serverSocket.setReceiveBufferSize(2048);
+        serverSocket.bind(new InetSocketAddress("127.0.0.1", 0));
+        this.bytesPerSecond = bytesPerSecond;
+        this.commandTimes = commandTimes;
+        staleness = new LatencyHistogram();
+        setDaemon(true);
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    synchronized LatencyHistogram getStaleness() {
+        return staleness;
+    }
+
+    @Override
+    public void run() {
+        try {
+            socket = serverSocket.accept();
+            InputStream in = socket.getInputStream();
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()), true);
+            StringBuilder line = new StringBuilder();
+            long nanosPerByte = TimeUnit.SECONDS.toNanos(1) / bytesPerSecond;
+            long next = System.nanoTime();
+            int lastCommand = 0;
+            int b;
+            while ((b = in.read()) >= 0) {
+                next += nanosPerByte;
+                LockSupport.parkNanos(next - System.nanoTime());
+                if (b != '\n') {
+                    line.append((char) b);
+                    continue;
+                }
+
+                String frame = line.toString();
+                line.setLength(0);
+                if (frame.equals(Protocol.HANDSHAKE)) {
+                    out.println(Protocol.HANDSHAKE);
+                } else if (Protocol.isStateMessage(frame)) {
+                    // Frames arrive in order, so the command is the first one at or after the previous command
+                    // that carries this state
+                    int state = Protocol.parseThrottle(frame).ordinal() * 181 + Protocol.parseSteer(frame);
+                    int command = lastCommand + Math.floorMod(state - lastCommand % STATES, STATES);
+                    if (command < commandTimes.length && commandTimes[command] != 0) {
+                        synchronized (this) {
+                            staleness.record(System.nanoTime() - commandTimes[command]);
+                        }
+                        lastCommand = command;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // The connection is closed when the run ends
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        if (socket != null) {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package edu.ntnu.rtpcarcontroller.benchmark;
+
+import edu.ntnu.rtpcarcontroller.util.LatencyHistogram;
+import edu.ntnu.rtpcarcontroller.util.Protocol;
+import edu.ntnu.rtpcarcontroller.util.Timeout;
+import edu.ntnu.rtpcarcontroller.util.TimerService;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the TimerService with the timers of a simulated fleet: every car has a heartbeat that reschedules itself
+ * every heartbeat period, and a write deadline that is scheduled and cancelled for every frame sent. It reports the
+ * cost of scheduling and cancelling, how late the heartbeats fire, and the number of threads used.
+ */
+public class TimerBenchmark {
+    /**
+     * Runs the benchmark.
+     * @param args Optionally the number of cars and the duration in seconds.
+     */
+    public static void main(String... args) throws InterruptedException {
+        int cars = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        TimerService timers = TimerService.INSTANCE;
+
+        // Write deadlines are almost always cancelled before they expire
+        int deadlines = 1_000_000;
+        Object owner = new Object();
+        long start = System.nanoTime();
+        for (int i = 0; i < deadlines; i++) {
+            Timeout deadline = timers.schedule(owner, 500, () -> { });
+            deadline.cancel();
+        }
+        long perDeadline = (System.nanoTime() - start) / deadlines;
+
+        LatencyHistogram lateness = new LatencyHistogram();
+        Heartbeat[] heartbeats = new Heartbeat[cars];
+        for (int i = 0; i < cars; i++) {
+            heartbeats[i] = new Heartbeat(lateness);
+            heartbeats[i].schedule();
+        }
+        TimeUnit.SECONDS.sleep(seconds);
+        for (Heartbeat heartbeat : heartbeats) {
+            heartbeat.stop();
+        }
+
+        System.out.println(String.format("%d cars, %d timer shards, %d live threads", cars, timers.getShardCount(),
+                Thread.activeCount()));
+        System.out.println(String.format("schedule + cancel: %d ns", perDeadline));
+        synchronized (lateness) {
+            System.out.println(String.format("heartbeat lateness: %s", lateness.summary()));
+        }
+    }
+
+    /**
+     * The heartbeat of one simulated car.
+     */
+    private static class Heartbeat {
+        private final LatencyHistogram lateness;
+        private volatile boolean active;
+        private long due;
+
+        Heartbeat(LatencyHistogram lateness) {
+            this.lateness = lateness;
+            active = true;
+        }
+
+        void schedule() {
+            due = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Protocol.HEARTBEAT_PERIOD);
+            TimerService.INSTANCE.schedule(this, Protocol.HEARTBEAT_PERIOD, this::fire);
+        }
+
+        private void fire() {
+            long late = System.nanoTime() - due;
+            synchronized (lateness) {
+                lateness.record(late);
+            }
+            if (active) {
+                schedule();
+            }
+        }
+
+        void stop() {
+            active = false;
+        }
+    }
+}
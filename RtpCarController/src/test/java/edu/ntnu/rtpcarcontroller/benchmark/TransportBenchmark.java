@@ -0,0 +1,154 @@
+package edu.ntnu.rtpcarcontroller.benchmark;
+
+import edu.ntnu.rtpcarcontroller.controller.DrivingController;
+import edu.ntnu.rtpcarcontroller.controller.connection.ConnController;
+import edu.ntnu.rtpcarcontroller.controller.connection.transport.LoopbackTransport;
+import edu.ntnu.rtpcarcontroller.controller.connection.transport.TcpTransport;
+import edu.ntnu.rtpcarcontroller.controller.connection.transport.Transport;
+import edu.ntnu.rtpcarcontroller.controller.connection.transport.TransportType;
+import edu.ntnu.rtpcarcontroller.exception.NetworkConnectionException;
+import edu.ntnu.rtpcarcontroller.model.Car;
+import edu.ntnu.rtpcarcontroller.model.CarStatePredictor;
+import edu.ntnu.rtpcarcontroller.util.LatencyHistogram;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * Measures the round trip of a steering command through the complete client (Car, ConnController and its input and
+ * output controllers) to an in-process echo car and back, once for every TransportType.
+ *
+ * Over the loopback transport no socket is involved, so its round trip is the cost of the client and protocol alone;
+ * the difference with the other transports is the cost of the operating system's network stack.
+ */
+public class TransportBenchmark {
+    /**
+     * Runs the benchmark.
+     * @param args Optionally the number of round trips per transport and the name of the only transport type to run.
+     */
+    public static void main(String... args) throws IOException {
+        int roundTrips = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+
+        Car car = new Car();
+        ConnController.INSTANCE.setCar(car);
+        DrivingController.INSTANCE.setCar(car);
+
+        System.out.println(String.format("%d round trips per transport", roundTrips));
+        TransportType[] types = args.length > 1
+                ? new TransportType[] { TransportType.forName(args[1]) }
+                : TransportType.values();
+        for (TransportType type : types) {
+            try (EchoCar echoCar = EchoCar.open(type)) {
+                LatencyHistogram histogram = run(type, echoCar.getPort(), car, roundTrips);
+                System.out.println(String.format("%-8s round trip: %s", type, histogram.summary()));
+            }
+        }
+    }
+
+    private static LatencyHistogram run(TransportType type, int port, Car car, int roundTrips) throws IOException {
+        ConnController connController = ConnController.INSTANCE;
+        connController.setTransportFactory(type);
+        try {
+            connController.connect("127.0.0.1", String.valueOf(port));
+        } catch (NetworkConnectionException e) {
+            throw new IOException(e);
+        }
+
+        CarStatePredictor predictor = car.getStatePredictor();
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < roundTrips; i++) {
+            // Alternate between two angles so that every command changes the state
+            int angle = i % 2 == 0 ? 80 : 100;
+            long start = System.nanoTime();
+            DrivingController.INSTANCE.steer(angle);
+            while (predictor.getAcknowledgedSteer() != angle) {
+                // Let the connection's threads run, which matters on a machine with few cores
+                Thread.yield();
+            }
+            histogram.record(System.nanoTime() - start);
+        }
+        connController.disconnect();
+        return histogram;
+    }
+
+    /**
+     * A car that answers every frame with the same frame, over the kind of channel a transport type connects to.
+     */
+    private static class EchoCar implements Closeable {
+        private final Closeable listener;
+        private final int port;
+
+        private EchoCar(Closeable listener, int port) {
+            this.listener = listener;
+            this.port = port;
+        }
+
+        static EchoCar open(TransportType type) throws IOException {
+            switch (type) {
+                case LOOPBACK: {
+                    LoopbackTransport.Acceptor acceptor = LoopbackTransport.listen(0);
+                    start(() -> echo(acceptor.accept()));
+                    return new EchoCar(acceptor, acceptor.getPort());
+                }
+                case UDP: {
+                    DatagramChannel channel = DatagramChannel.open();
+                    channel.bind(new InetSocketAddress("127.0.0.1", 0));
+                    start(() -> echo(channel));
+                    return new EchoCar(channel, ((InetSocketAddress) channel.getLocalAddress()).getPort());
+                }
+                default: {
+                    ServerSocket serverSocket = new ServerSocket(0);
+                    start(() -> echo(new TcpTransport(serverSocket.accept())));
+                    return new EchoCar(serverSocket, serverSocket.getLocalPort());
+                }
+            }
+        }
+
+        private static void start(EchoLoop loop) {
+            Thread thread = new Thread(() -> {
+                try {
+                    loop.run();
+                } catch (IOException e) {
+                    // The listener is closed when the run ends
+                }
+            }, "Echo car");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private static void echo(Transport transport) throws IOException {
+            String frame;
+            while ((frame = transport.receive()) != null) {
+                transport.send(frame);
+            }
+        }
+
+        private static void echo(DatagramChannel channel) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(512);
+            while (true) {
+                buffer.clear();
+                SocketAddress client = channel.receive(buffer);
+                buffer.flip();
+                channel.send(buffer, client);
+            }
+        }
+
+        int getPort() {
+            return port;
+        }
+
+        @Override
+        public void close() throws IOException {
+            listener.close();
+        }
+
+        private interface EchoLoop {
+            void run() throws IOException;
+        }
+    }
+}
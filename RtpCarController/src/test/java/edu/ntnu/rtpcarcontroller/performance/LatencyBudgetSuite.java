@@ -0,0 +1,270 @@
+package edu.ntnu.rtpcarcontroller.performance;
+
+import edu.ntnu.rtpcarcontroller.controller.DrivingController;
+import edu.ntnu.rtpcarcontroller.controller.connection.ConnController;
+import edu.ntnu.rtpcarcontroller.controller.connection.transport.TransportFactory;
+import edu.ntnu.rtpcarcontroller.controller.connection.transport.TransportType;
+import edu.ntnu.rtpcarcontroller.controller.script.CommandScript;
+import edu.ntnu.rtpcarcontroller.controller.script.ScriptPlayer;
+import edu.ntnu.rtpcarcontroller.exception.NetworkConnectionException;
+import edu.ntnu.rtpcarcontroller.model.Car;
+import edu.ntnu.rtpcarcontroller.server.CarServer;
+import edu.ntnu.rtpcarcontroller.util.LatencyHistogram;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The latency budgets of the control path, checked against the reference car server in process: the client is driven
+ * through ConnController and DrivingController by a CommandScript, as a driver would, and every figure is compared to
+ * its budget.
+ *
+ * <ul>
+ *     <li>key-to-wire: the 99th percentile of the time from a steering command to the return of the write that
+ *     carries it, in microseconds;</li>
+ *     <li>handshake: the 99th percentile of the time ConnController.connect takes, in milliseconds;</li>
+ *     <li>loss-detection: the time from the last frame of a car that goes silent until the connection is reported
+ *     lost, in milliseconds, with the silence timeout of rtpcarcontroller.silenceTimeout (2000 ms by default here);</li>
+ *     <li>allocation-rate: the bytes allocated per second by all threads while driving steadily, in KB/s, as counted by
+ *     the JFR event jdk.ThreadAllocationStatistics.</li>
+ * </ul>
+ *
+ * Every budget can be overridden with the system property rtpcarcontroller.budget.&lt;name&gt;. The results are written
+ * as JSON to the file given as the first argument (target/performance/latency-budget.json by default), and the suite
+ * exits with status 1 if any figure exceeds its budget, which fails the build of the performance profile.
+ */
+public class LatencyBudgetSuite {
+    private static final String SILENCE_TIMEOUT_PROPERTY = "rtpcarcontroller.silenceTimeout";
+    private static final String ALLOCATION_EVENT = "jdk.ThreadAllocationStatistics";
+    private static final int HANDSHAKES = 20;
+    private static final int COMMAND_RATE = 500;
+    private static final long DRIVE_MILLIS = 4000;
+    private static final long WARMUP_MILLIS = 2000;
+
+    private final List<String> results;
+    private boolean failed;
+
+    private LatencyBudgetSuite() {
+        results = new ArrayList<>();
+    }
+
+    /**
+     * Runs the suite.
+     * @param args Optionally the file to write the results to.
+     */
+    public static void main(String... args) throws Exception {
+        Path output = Paths.get(args.length > 0 ? args[0] : "target/performance/latency-budget.json");
+        if (System.getProperty(SILENCE_TIMEOUT_PROPERTY) == null) {
+            System.setProperty(SILENCE_TIMEOUT_PROPERTY, "2000");
+        }
+        long silenceTimeout = Long.getLong(SILENCE_TIMEOUT_PROPERTY);
+
+        LatencyBudgetSuite suite = new LatencyBudgetSuite();
+        CarServer server = new CarServer(0);
+        server.setMaxCommandAge(500);
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "Car server");
+        serverThread.start();
+        try {
+            suite.check("handshake", "ms", measureHandshake(server.getPort()), 100);
+            suite.check("key-to-wire", "us", measureKeyToWire(server.getPort()), 5000);
+            suite.check("allocation-rate", "KB/s", measureAllocationRate(server.getPort()), 512);
+        } finally {
+            ConnController.INSTANCE.setTransportFactory(TransportType.TCP);
+            server.close();
+            serverThread.join();
+        }
+        suite.check("loss-detection", "ms", measureLossDetection(silenceTimeout), silenceTimeout + 250);
+
+        suite.write(output);
+        System.out.println(String.format("Results written to %s", output));
+        System.exit(suite.failed ? 1 : 0);
+    }
+
+    /**
+     * Compares a figure to its budget, and records the result.
+     */
+    private void check(String name, String unit, long value, long defaultBudget) {
+        long budget = Long.getLong("rtpcarcontroller.budget." + name, defaultBudget);
+        boolean passed = value >= 0 && value <= budget;
+        failed |= !passed;
+        System.out.println(String.format("%-16s %8d %-4s (budget %d %s) %s", name, value, unit, budget, unit,
+                passed ? "passed" : "FAILED"));
+        results.add(String.format(Locale.ROOT,
+                "{\"name\":\"%s\",\"unit\":\"%s\",\"value\":%d,\"budget\":%d,\"passed\":%b}",
+                name, unit, value, budget, passed));
+    }
+
+    private void write(Path output) throws IOException {
+        String json = String.format("{\"suite\":\"latency-budget\",\"passed\":%b,\"results\":[%s]}%n", !failed,
+                String.join(",", results));
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+        Files.write(output, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Connects and disconnects repeatedly, after one connection to warm up.
+     * @return The 99th percentile of the connect time, in milliseconds.
+     */
+    private static long measureHandshake(int port) throws NetworkConnectionException {
+        ConnController connController = ConnController.INSTANCE;
+        connController.setCar(new Car());
+        LatencyHistogram handshake = new LatencyHistogram();
+        // The first connection loads the classes of the connection, which only a cold start pays for
+        connController.connect("127.0.0.1", String.valueOf(port));
+        connController.disconnect();
+        for (int i = 0; i < HANDSHAKES; i++) {
+            long start = System.nanoTime();
+            connController.connect("127.0.0.1", String.valueOf(port));
+            handshake.record(System.nanoTime() - start);
+            connController.disconnect();
+        }
+        return TimeUnit.NANOSECONDS.toMillis(handshake.getPercentile(99));
+    }
+
+    /**
+     * Sweeps the steering at a steady rate, and times every angle from the command to the return of its write.
+     * @return The 99th percentile of the key-to-wire time, in microseconds.
+     */
+    private static long measureKeyToWire(int port) throws NetworkConnectionException {
+        AtomicLongArray commanded = new AtomicLongArray(181);
+        LatencyHistogram keyToWire = new LatencyHistogram();
+        ConnController connController = ConnController.INSTANCE;
+        TransportFactory plain = connController.getTransportFactory();
+        connController.setTransportFactory(profile -> new WireProbe(plain.create(profile), commanded, keyToWire));
+
+        Car car = new Car();
+        // Registered before the connection's own handler, so the command is stamped before it is queued
+        car.addSteerChangeHandler(event -> commanded.set(car.getSteer(), System.nanoTime()));
+        try {
+            drive(car, port, DRIVE_MILLIS);
+        } finally {
+            connController.setTransportFactory(plain);
+        }
+        synchronized (keyToWire) {
+            return TimeUnit.NANOSECONDS.toMicros(keyToWire.getPercentile(99));
+        }
+    }
+
+    /**
+     * Sweeps the steering at a steady rate while JFR counts the bytes every thread allocates.
+     * @return The bytes allocated per second by all threads but those of JFR itself, in KB/s.
+     */
+    private static long measureAllocationRate(int port) throws NetworkConnectionException, IOException {
+        Car car = new Car();
+        drive(car, port, WARMUP_MILLIS);
+        Path file = Files.createTempFile("latency-budget", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(ALLOCATION_EVENT).with("period", "everyChunk");
+            recording.start();
+            long start = System.nanoTime();
+            drive(car, port, DRIVE_MILLIS);
+            long elapsed = System.nanoTime() - start;
+            recording.stop();
+            recording.dump(file);
+
+            // Per thread: the lowest and highest count, the number of samples and the time of the last sample
+            Map<Long, long[]> threads = new HashMap<>();
+            long first = Long.MAX_VALUE;
+            long last = Long.MIN_VALUE;
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                if (!event.getEventType().getName().equals(ALLOCATION_EVENT)) {
+                    continue;
+                }
+                RecordedThread thread = event.getThread("thread");
+                if (thread == null || String.valueOf(thread.getJavaName()).startsWith("JFR")) {
+                    continue;
+                }
+                long allocated = event.getLong("allocated");
+                Instant time = event.getStartTime();
+                long nanos = TimeUnit.SECONDS.toNanos(time.getEpochSecond()) + time.getNano();
+                first = Math.min(first, nanos);
+                last = Math.max(last, nanos);
+                long[] range = threads.computeIfAbsent(thread.getJavaThreadId(),
+                        id -> new long[] { Long.MAX_VALUE, 0, 0, 0 });
+                range[0] = Math.min(range[0], allocated);
+                range[1] = Math.max(range[1], allocated);
+                range[2]++;
+                range[3] = nanos;
+            }
+            long middle = first + (last - first) / 2;
+            long bytes = 0;
+            for (long[] range : threads.values()) {
+                if (range[2] > 1) {
+                    bytes += range[1] - range[0];
+                } else if (range[3] > middle) {
+                    // Sampled only when the recording ended: the thread started during it, and allocated all it had
+                    bytes += range[1];
+                }
+                // Sampled only when the recording began: the thread ended during it, after allocating an unknown
+                // part of its count before the recording, so none of it is charged
+            }
+            return bytes * TimeUnit.SECONDS.toNanos(1) / elapsed / 1024;
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Connects, plays a steering sweep at the command rate and disconnects.
+     */
+    private static void drive(Car car, int port, long millis) throws NetworkConnectionException {
+        ConnController connController = ConnController.INSTANCE;
+        connController.setCar(car);
+        DrivingController.INSTANCE.setCar(car);
+        connController.connect("127.0.0.1", String.valueOf(port));
+        try {
+            new ScriptPlayer(DrivingController.INSTANCE).play(CommandScript.steeringSweep(COMMAND_RATE, millis));
+        } finally {
+            connController.disconnect();
+        }
+    }
+
+    /**
+     * Connects to a car that echoes for a while and then goes silent.
+     * @return The time from the car's last echo until the connection was reported lost, in milliseconds, or -1 if
+     * it was not reported within three silence timeouts.
+     */
+    private static long measureLossDetection(long silenceTimeout) throws Exception {
+        CountDownLatch lost = new CountDownLatch(1);
+        long[] lostAt = new long[1];
+        ConnController connController = ConnController.INSTANCE;
+        connController.addConnectionLossHandler(event -> {
+            lostAt[0] = System.nanoTime();
+            lost.countDown();
+        });
+        connController.setCar(new Car());
+        try (SilentCar car = new SilentCar(1000)) {
+            car.start();
+            connController.connect("127.0.0.1", String.valueOf(car.getPort()));
+            if (!lost.await(3 * silenceTimeout + 1000, TimeUnit.MILLISECONDS)) {
+                connController.disconnect();
+                return -1;
+            }
+            return TimeUnit.NANOSECONDS.toMillis(lostAt[0] - car.getLastEcho());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package edu.ntnu.rtpcarcontroller.performance;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A car that accepts one client and echoes its lines for a while, handshake included, and then goes silent: it keeps
+ * reading, so the connection stays up, but answers nothing any more, as a car whose software hangs would.
+ */
+class SilentCar implements Closeable {
+    private final ServerSocket serverSocket;
+    private final long echoNanos;
+    private final Thread thread;
+    private volatile long lastEcho;
+
+    /**
+     * Creates a new SilentCar on any free port.
+     * @param echoMillis How long to echo after the client connected.
+     * @throws IOException If the server socket could not be created.
+     */
+    SilentCar(long echoMillis) throws IOException {
+        serverSocket = new ServerSocket(0);
+        echoNanos = TimeUnit.MILLISECONDS.toNanos(echoMillis);
+        thread = new Thread(this::run, "Silent car");
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     *
+     * @return The time of the last echo, in System.nanoTime() terms.
+     */
+    long getLastEcho() {
+        return lastEcho;
+    }
+
+    private void run() {
+        try (Socket socket = serverSocket.accept()) {
+            BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.US_ASCII));
+            OutputStream output = socket.getOutputStream();
+            long silentFrom = System.nanoTime() + echoNanos;
+            String line;
+            while ((line = input.readLine()) != null) {
+                if (System.nanoTime() < silentFrom) {
+                    output.write((line + "\n").getBytes(StandardCharsets.US_ASCII));
+                    output.flush();
+                    lastEcho = System.nanoTime();
+                }
+            }
+        } catch (IOException e) {
+            // Closed
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+}
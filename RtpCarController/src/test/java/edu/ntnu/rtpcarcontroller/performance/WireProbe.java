@@ -0,0 +1,83 @@
+package edu.ntnu.rtpcarcontroller.performance;
+
+import edu.ntnu.rtpcarcontroller.controller.connection.transport.Transport;
+import edu.ntnu.rtpcarcontroller.event.ConnectionLossEvent;
+import edu.ntnu.rtpcarcontroller.util.LatencyHistogram;
+import edu.ntnu.rtpcarcontroller.util.Protocol;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Transport that times the state frames written through another transport: when a write returns, every state frame
+ * in it whose steering angle was commanded and not yet written has the time since the command recorded. Repeated
+ * states, such as heartbeats, are not counted again.
+ */
+class WireProbe implements Transport {
+    private final Transport inner;
+    private final AtomicLongArray commanded;
+    private final LatencyHistogram keyToWire;
+
+    /**
+     * Creates a new WireProbe.
+     * @param inner The transport to write through.
+     * @param commanded The time every steering angle was last commanded, or 0 once it was written.
+     * @param keyToWire The histogram to record in, under its monitor.
+     */
+    WireProbe(Transport inner, AtomicLongArray commanded, LatencyHistogram keyToWire) {
+        this.inner = inner;
+        this.commanded = commanded;
+        this.keyToWire = keyToWire;
+    }
+
+    @Override
+    public void connect(SocketAddress address) throws IOException {
+        inner.connect(address);
+    }
+
+    @Override
+    public void send(String frame) throws IOException {
+        inner.send(frame);
+    }
+
+    @Override
+    public void send(ByteBuffer[] frames, int offset, int length) throws IOException {
+        int[] angles = new int[length];
+        for (int i = 0; i < length; i++) {
+            String message = Protocol.decodeFrame(frames[offset + i].duplicate());
+            angles[i] = Protocol.isStateMessage(message) ? Protocol.parseSteer(message) : -1;
+        }
+        inner.send(frames, offset, length);
+        long written = System.nanoTime();
+        for (int angle : angles) {
+            long command = angle >= 0 ? commanded.getAndSet(angle, 0) : 0;
+            if (command != 0) {
+                synchronized (keyToWire) {
+                    keyToWire.record(written - command);
+                }
+            }
+        }
+    }
+
+    @Override
+    public String receive() throws IOException {
+        return inner.receive();
+    }
+
+    @Override
+    public long getWriteCount() {
+        return inner.getWriteCount();
+    }
+
+    @Override
+    public void setLossHandler(ConnectionLossEvent.Handler handler) {
+        inner.setLossHandler(handler);
+    }
+
+    @Override
+    public void close() throws IOException {
+        inner.close();
+    }
+}
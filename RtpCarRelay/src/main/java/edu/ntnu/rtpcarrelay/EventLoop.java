@@ -0,0 +1,190 @@
+package edu.ntnu.rtpcarrelay;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A single-threaded event loop that owns a set of sessions and performs all I/O for them through one Selector.
+ *
+ * Other threads interact with a loop only by queueing new channels and sessions that need flushing; the selector is
+ * woken up at most once per loop iteration, no matter how many frames are handed over in the meantime.
+ */
+class EventLoop implements Runnable, Closeable {
+    private static final Logger logger = Logger.getLogger(EventLoop.class.getName());
+    private static final long IDLE_CHECK_INTERVAL = 250;
+    private static final long IDLE_TIMEOUT = 1100;
+
+    private final RelayServer server;
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<SocketChannel> newChannels;
+    private final Queue<Session> pendingFlushes;
+    private final AtomicBoolean wakeupPending;
+    private final List<Session> sessions;
+    private long lastIdleCheck;
+    private volatile boolean active;
+
+    /**
+     * Creates a new EventLoop.
+     * @param server The relay this loop belongs to.
+     * @param index The index of the loop, used to name its thread.
+     * @throws IOException If the selector could not be opened.
+     */
+    EventLoop(RelayServer server, int index) throws IOException {
+        this.server = server;
+        selector = Selector.open();
+        thread = new Thread(this, "Relay event loop " + index);
+        newChannels = new ConcurrentLinkedQueue<>();
+        pendingFlushes = new ConcurrentLinkedQueue<>();
+        wakeupPending = new AtomicBoolean();
+        sessions = new ArrayList<>();
+    }
+
+    /**
+     * Starts the thread of this loop.
+     */
+    void start() {
+        active = true;
+        thread.start();
+    }
+
+    /**
+     * Hands a newly accepted channel to this loop, which creates a session for it.
+     * @param channel The accepted channel.
+     */
+    void register(SocketChannel channel) {
+        newChannels.offer(channel);
+        wakeup();
+    }
+
+    /**
+     * Schedules a session of this loop to be flushed during the current or next iteration.
+     * @param session The session to flush.
+     */
+    void scheduleFlush(Session session) {
+        pendingFlushes.offer(session);
+        if (Thread.currentThread() != thread) {
+            wakeup();
+        }
+    }
+
+    /**
+     * Removes a closed session from this loop.
+     * @param session The session to remove.
+     */
+    void unregister(Session session) {
+        sessions.remove(session);
+    }
+
+    /**
+     *
+     * @return The number of sessions owned by this loop.
+     */
+    int getSessionCount() {
+        return sessions.size();
+    }
+
+    private void wakeup() {
+        if (wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (active) {
+            try {
+                selector.select(IDLE_CHECK_INTERVAL);
+                wakeupPending.set(false);
+
+                acceptNewChannels();
+                long now = System.currentTimeMillis();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Session session = (Session) key.attachment();
+                    if (key.isValid() && key.isReadable()) {
+                        session.onReadable(now);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        session.write();
+                    }
+                }
+
+                // Flush everything routed during this iteration, so that frames to the same session go out together
+                Session session;
+                while ((session = pendingFlushes.poll()) != null) {
+                    session.flush();
+                }
+
+                if (now - lastIdleCheck >= IDLE_CHECK_INTERVAL) {
+                    closeIdleSessions(now);
+                    lastIdleCheck = now;
+                }
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, e.getMessage(), e);
+            }
+        }
+        for (Session session : new ArrayList<>(sessions)) {
+            session.close();
+        }
+    }
+
+    /**
+     * Creates and registers a session for every channel handed to this loop.
+     * @throws IOException If a channel could not be registered.
+     */
+    private void acceptNewChannels() throws IOException {
+        SocketChannel channel;
+        while ((channel = newChannels.poll()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Session session = new Session(server, this, channel);
+            session.setKey(channel.register(selector, SelectionKey.OP_READ, session));
+            sessions.add(session);
+        }
+    }
+
+    /**
+     * Closes the sessions that have been silent for too long: controllers, which must send a heartbeat, and
+     * sessions that never sent their greeting.
+     * @param now The current time in milliseconds.
+     */
+    private void closeIdleSessions(long now) {
+        for (Session session : new ArrayList<>(sessions)) {
+            Role role = session.getRole();
+            if ((role == null || role == Role.CONTROLLER) && now - session.getLastRead() > IDLE_TIMEOUT) {
+                logger.log(Level.INFO, "Closing session that stopped sending heartbeats");
+                session.close();
+            }
+        }
+    }
+
+    /**
+     * Stops this loop, closing all of its sessions.
+     * @throws IOException If the selector could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        active = false;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        selector.close();
+    }
+}
@@ -0,0 +1,144 @@
+package edu.ntnu.rtpcarrelay;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A relay that lets many controllers drive many cars through a single, well-known port.
+ *
+ * Cars, controllers and observers all connect to the relay and announce their role and car in their first line (see
+ * the greetings in Protocol). The relay then forwards every frame a controller sends to the car and to the car's
+ * observers, and every frame the car sends to its controllers. Connections are spread over one event loop per
+ * available processor.
+ */
+public class RelayServer implements Closeable {
+    private static final Logger logger = Logger.getLogger(RelayServer.class.getName());
+    public static final int DEFAULT_PORT = 65432;
+
+    /**
+     * Starts a relay from the command line.
+     * @param args Optionally the port to listen on and the number of event loops.
+     * @throws IOException If the relay could not be started.
+     */
+    public static void main(String... args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int loops = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        RelayServer relay = new RelayServer(port, loops);
+        System.out.println(String.format("Relaying on port %d with %d event loops", relay.getLocalPort(), loops));
+        relay.active = true;
+        relay.acceptConnections();
+    }
+
+    private final ServerSocketChannel serverChannel;
+    private final EventLoop[] loops;
+    private final ConcurrentMap<String, Route> routes;
+    private final Thread acceptThread;
+    private int nextLoop;
+    private volatile boolean active;
+
+    /**
+     * Creates a new RelayServer.
+     * @param port The port to listen on, or 0 to pick a free port.
+     * @param loopCount The number of event loops to spread the connections over.
+     * @throws IOException If the listening socket or the event loops could not be created.
+     */
+    public RelayServer(int port, int loopCount) throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        loops = new EventLoop[loopCount];
+        for (int i = 0; i < loopCount; i++) {
+            loops[i] = new EventLoop(this, i);
+            loops[i].start();
+        }
+        routes = new ConcurrentHashMap<>();
+        acceptThread = new Thread(this::acceptConnections, "Relay acceptor");
+        acceptThread.setDaemon(true);
+    }
+
+    /**
+     *
+     * @return The port this relay listens on.
+     */
+    public int getLocalPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Starts accepting connections on a background thread.
+     */
+    public void start() {
+        active = true;
+        acceptThread.start();
+    }
+
+    /**
+     * Accepts connections and hands them to the event loops in turn.
+     */
+    private void acceptConnections() {
+        while (active) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                loops[nextLoop].register(channel);
+                nextLoop = (nextLoop + 1) % loops.length;
+            } catch (IOException e) {
+                if (active) {
+                    logger.log(Level.WARNING, e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Attaches a session to the route of the car with the given identifier, creating the route if it does not exist.
+     * @param carId The identifier of the car.
+     * @param session The session to attach.
+     * @param role The role of the session.
+     * @return The route of the car, or null if the session wanted to be the car, but another car is already attached.
+     */
+    Route attach(String carId, Session session, Role role) {
+        while (true) {
+            Route route = routes.computeIfAbsent(carId, Route::new);
+            synchronized (route) {
+                // A removed route has already left the map, so the next attempt finds or creates its successor
+                if (!route.isRemoved()) {
+                    return route.attach(session, role) ? route : null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Detaches a session from its route, and removes the route once no session is left on it, so that the routes of
+     * cars nobody uses do not pile up.
+     * @param route The route of the session.
+     * @param session The session to detach.
+     */
+    void detach(Route route, Session session) {
+        synchronized (route) {
+            if (route.detach(session)) {
+                routes.remove(route.getCarId(), route);
+            }
+        }
+    }
+
+    /**
+     * Stops accepting connections and closes all sessions.
+     * @throws IOException If the listening socket or an event loop could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        active = false;
+        serverChannel.close();
+        for (EventLoop loop : loops) {
+            loop.close();
+        }
+    }
+}
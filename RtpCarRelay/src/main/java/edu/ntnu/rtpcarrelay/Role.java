@@ -0,0 +1,9 @@
+package edu.ntnu.rtpcarrelay;
+
+/**
+ * The Role enumeration includes the roles a session to the relay can have: the CAR being driven, a CONTROLLER
+ * driving a car, and an OBSERVER receiving a read-only copy of the commands sent to a car.
+ */
+enum Role {
+    CAR, CONTROLLER, OBSERVER
+}
@@ -0,0 +1,104 @@
+package edu.ntnu.rtpcarrelay;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The set of sessions attached to one car: at most one car session, and any number of controller and observer
+ * sessions. Sessions may live on different event loops, so all members are safe for concurrent access; routing a
+ * frame only reads them. A route is removed from the relay when its last session detaches, and accepts no sessions
+ * after that.
+ */
+class Route {
+    private final String carId;
+    private final List<Session> controllers;
+    private final List<Session> observers;
+    private volatile Session car;
+    private boolean removed;
+
+    /**
+     * Creates a new, empty Route.
+     * @param carId The identifier of the car.
+     */
+    Route(String carId) {
+        this.carId = carId;
+        controllers = new CopyOnWriteArrayList<>();
+        observers = new CopyOnWriteArrayList<>();
+    }
+
+    String getCarId() {
+        return carId;
+    }
+
+    /**
+     * Attaches a session to this route in the given role.
+     * @param session The session to attach.
+     * @param role The role of the session.
+     * @return False if the session wanted to be the car, but another car is already attached.
+     */
+    synchronized boolean attach(Session session, Role role) {
+        switch (role) {
+            case CAR:
+                if (car != null) {
+                    return false;
+                }
+                car = session;
+                return true;
+            case CONTROLLER:
+                controllers.add(session);
+                return true;
+            default:
+                observers.add(session);
+                return true;
+        }
+    }
+
+    /**
+     *
+     * @return Whether the last session detached from this route, so that it is to be removed from the relay.
+     */
+    synchronized boolean isRemoved() {
+        return removed;
+    }
+
+    /**
+     * Detaches a session from this route.
+     * @param session The session to detach.
+     * @return Whether it was the last session, which marks this route as removed.
+     */
+    synchronized boolean detach(Session session) {
+        if (car == session) {
+            car = null;
+        }
+        controllers.remove(session);
+        observers.remove(session);
+        removed = car == null && controllers.isEmpty() && observers.isEmpty();
+        return removed;
+    }
+
+    /**
+     * Forwards a frame that a controller sent to the car and to every observer. Each destination gets its own view
+     * of the same read-only bytes; the frame itself is not copied.
+     * @param frame The frame to forward.
+     */
+    void fromController(ByteBuffer frame) {
+        Session destination = car;
+        if (destination != null) {
+            destination.deliver(frame.duplicate());
+        }
+        for (Session observer : observers) {
+            observer.deliver(frame.duplicate());
+        }
+    }
+
+    /**
+     * Forwards a frame that the car sent to every controller.
+     * @param frame The frame to forward.
+     */
+    void fromCar(ByteBuffer frame) {
+        for (Session controller : controllers) {
+            controller.deliver(frame.duplicate());
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package edu.ntnu.rtpcarrelay;
+
+import edu.ntnu.rtpcarcontroller.util.Protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * One connection to the relay, owned by a single EventLoop. All reading, writing and closing happens on the thread of
+ * that loop; other threads only hand over frames through deliver().
+ *
+ * The first line a session sends is its greeting, which determines its role and the car it belongs to. Every
+ * following line is a frame that is routed to the other sessions of that car.
+ */
+class Session {
+    private static final Logger logger = Logger.getLogger(Session.class.getName());
+    private static final int READ_BUFFER_SIZE = 4096;
+    private static final int GATHER_LIMIT = 64;
+    private static final int MAX_BACKLOG = 4096;
+    private static final int MAX_OBSERVER_BACKLOG = 8;
+    private static final ByteBuffer HANDSHAKE_FRAME = frameOf(Protocol.HANDSHAKE);
+    private static final ByteBuffer CLOSE_FRAME = frameOf(Protocol.CLOSE_CONNECTION);
+
+    /**
+     * Returns a read-only frame containing the given line.
+     * @param line The line to put in the frame.
+     * @return A read-only frame containing the line and a line separator.
+     */
+    static ByteBuffer frameOf(String line) {
+        return ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.US_ASCII)).asReadOnlyBuffer();
+    }
+
+    private final RelayServer server;
+    private final EventLoop loop;
+    private final SocketChannel channel;
+    private final ByteBuffer readBuffer;
+    private final Queue<ByteBuffer> inbox;
+    private final AtomicBoolean flushScheduled;
+    private final ArrayDeque<ByteBuffer> outbound;
+    private final ByteBuffer[] gather;
+    private SelectionKey key;
+    private Role role;
+    private Route route;
+    private long lastRead;
+    private long dropped;
+    private boolean closed;
+
+    /**
+     * Creates a new Session.
+     * @param server The relay the session belongs to.
+     * @param loop The event loop that owns the session.
+     * @param channel The channel of the session's connection.
+     */
+    Session(RelayServer server, EventLoop loop, SocketChannel channel) {
+        this.server = server;
+        this.loop = loop;
+        this.channel = channel;
+        readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        inbox = new ConcurrentLinkedQueue<>();
+        flushScheduled = new AtomicBoolean();
+        outbound = new ArrayDeque<>();
+        gather = new ByteBuffer[GATHER_LIMIT];
+        lastRead = System.currentTimeMillis();
+    }
+
+    void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    Role getRole() {
+        return role;
+    }
+
+    long getLastRead() {
+        return lastRead;
+    }
+
+    /**
+     *
+     * @return The number of frames this session skipped because it could not keep up.
+     */
+    long getDroppedCount() {
+        return dropped;
+    }
+
+    /**
+     * Reads whatever is available from the channel and routes every complete frame.
+     * @param now The current time in milliseconds.
+     */
+    void onReadable(long now) {
+        lastRead = now;
+        try {
+            if (channel.read(readBuffer) < 0) {
+                close();
+                return;
+            }
+        } catch (IOException e) {
+            logger.log(Level.FINE, e.getMessage(), e);
+            close();
+            return;
+        }
+
+        readBuffer.flip();
+        int start = readBuffer.position();
+        for (int i = start; i < readBuffer.limit() && !closed; i++) {
+            if (readBuffer.get(i) == '\n') {
+                onFrame(start, i + 1);
+                start = i + 1;
+            }
+        }
+        readBuffer.position(start);
+        readBuffer.compact();
+
+        if (!closed && !readBuffer.hasRemaining()) {
+            logger.log(Level.WARNING, "Frame exceeds the read buffer; closing session");
+            close();
+        }
+    }
+
+    /**
+     * Handles one complete frame in the read buffer.
+     * @param start The index of the first byte of the frame.
+     * @param end The index after the line separator that ends the frame.
+     */
+    private void onFrame(int start, int end) {
+        if (role == null) {
+            byte[] bytes = new byte[end - start];
+            readBuffer.duplicate().position(start).get(bytes);
+            greet(new String(bytes, StandardCharsets.US_ASCII).trim());
+            return;
+        }
+        if (role == Role.OBSERVER) {
+            return;
+        }
+
+        // Copy the frame out of the reusable read buffer once; every destination shares this copy read-only
+        ByteBuffer frame = ByteBuffer.allocate(end - start);
+        frame.put(readBuffer.duplicate().limit(end).position(start));
+        frame.flip();
+        ByteBuffer shared = frame.asReadOnlyBuffer();
+
+        if (role == Role.CONTROLLER) {
+            route.fromController(shared);
+        } else {
+            route.fromCar(shared);
+        }
+    }
+
+    /**
+     * Handles the greeting of this session, which attaches it to the route of a car.
+     * @param greeting The first line sent by the session.
+     */
+    private void greet(String greeting) {
+        String[] parts = greeting.split(" ");
+        Role requested = null;
+        String carId = null;
+        if (parts.length == 1 && parts[0].equals(Protocol.HANDSHAKE)) {
+            requested = Role.CONTROLLER;
+            carId = Protocol.DEFAULT_CAR;
+        } else if (parts.length == 2) {
+            carId = parts[1];
+            switch (parts[0]) {
+                case Protocol.CAR_GREETING:
+                    requested = Role.CAR;
+                    break;
+                case Protocol.CONTROL_GREETING:
+                    requested = Role.CONTROLLER;
+                    break;
+                case Protocol.OBSERVE_GREETING:
+                    requested = Role.OBSERVER;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        Route requestedRoute = requested == null ? null : server.attach(carId, this, requested);
+        if (requestedRoute == null) {
+            logger.log(Level.INFO, String.format("Rejecting session %s with greeting %s",
+                    remoteAddress(), greeting));
+            deliver(CLOSE_FRAME.duplicate());
+            flush();
+            close();
+            return;
+        }
+
+        role = requested;
+        route = requestedRoute;
+        logger.log(Level.INFO, String.format("Session %s attached to car %s as %s",
+                remoteAddress(), carId, role));
+        deliver(HANDSHAKE_FRAME.duplicate());
+    }
+
+    /**
+     * Hands a frame to this session to be sent. May be called from any thread; the frame is written by the owning
+     * event loop during its next iteration, together with all other frames delivered in the meantime.
+     * @param frame The frame to send, which must not be modified afterwards.
+     */
+    void deliver(ByteBuffer frame) {
+        inbox.offer(frame);
+        if (flushScheduled.compareAndSet(false, true)) {
+            loop.scheduleFlush(this);
+        }
+    }
+
+    /**
+     * Moves all delivered frames to the outbound queue and writes as much of it as the channel accepts. Observers
+     * that cannot keep up skip older frames in favour of newer ones; other sessions that fall too far behind are
+     * closed.
+     */
+    void flush() {
+        flushScheduled.set(false);
+        ByteBuffer frame;
+        while ((frame = inbox.poll()) != null) {
+            if (role == Role.OBSERVER && outbound.size() >= MAX_OBSERVER_BACKLOG) {
+                dropOldestPendingFrame();
+            }
+            outbound.add(frame);
+        }
+        if (outbound.size() > MAX_BACKLOG) {
+            logger.log(Level.WARNING, String.format("Session %s does not keep up; closing it", remoteAddress()));
+            close();
+            return;
+        }
+        write();
+    }
+
+    /**
+     * Drops the oldest outbound frame of which nothing has been written yet.
+     */
+    private void dropOldestPendingFrame() {
+        ByteBuffer head = outbound.pollFirst();
+        if (head != null && head.position() > 0) {
+            // The head is partially written and must be completed; drop the frame after it instead
+            outbound.pollFirst();
+            outbound.addFirst(head);
+        }
+        dropped++;
+    }
+
+    /**
+     * Writes outbound frames to the channel with a single gathering write, and registers interest in writability if
+     * not everything could be written.
+     */
+    void write() {
+        if (closed) {
+            return;
+        }
+        try {
+            while (!outbound.isEmpty()) {
+                int count = 0;
+                for (ByteBuffer frame : outbound) {
+                    if (count == GATHER_LIMIT) {
+                        break;
+                    }
+                    gather[count++] = frame;
+                }
+                channel.write(gather, 0, count);
+
+                while (!outbound.isEmpty() && !outbound.peekFirst().hasRemaining()) {
+                    outbound.pollFirst();
+                }
+                if (gather[count - 1].hasRemaining()) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.FINE, e.getMessage(), e);
+            close();
+            return;
+        }
+
+        if (key.isValid()) {
+            key.interestOps(outbound.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Closes the connection of this session and detaches it from its route.
+     */
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (route != null) {
+            server.detach(route, this);
+        }
+        loop.unregister(this);
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.log(Level.FINE, e.getMessage(), e);
+        }
+        logger.log(Level.INFO, String.format("Closed session %s", role == null ? "without role" : role));
+    }
+
+    private String remoteAddress() {
+        try {
+            return String.valueOf(channel.getRemoteAddress());
+        } catch (IOException e) {
+            return "(unknown)";
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package edu.ntnu.rtpcarrelay;
+
+import edu.ntnu.rtpcarcontroller.model.Throttle;
+import edu.ntnu.rtpcarcontroller.util.Protocol;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the throughput of an in-process RelayServer: a number of controllers each drive their own car as fast as
+ * the relay forwards, optionally watched by a number of observers per car.
+ */
+public class RelayBenchmark {
+    private static final int WINDOW = 256;
+    private static final int BATCH = 32;
+
+    /**
+     * Runs the benchmark.
+     * @param args Optionally the number of controller/car pairs, the number of event loops, the number of observers
+     *             per car and the duration in seconds.
+     */
+    public static void main(String... args) throws IOException, InterruptedException {
+        int pairs = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int loopCount = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int observersPerCar = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+        RelayServer relay = new RelayServer(0, loopCount);
+        relay.start();
+
+        AtomicLong carFrames = new AtomicLong();
+        AtomicLong observerFrames = new AtomicLong();
+        List<Socket> sockets = new ArrayList<>();
+        List<Thread> senders = new ArrayList<>();
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+
+        for (int i = 0; i < pairs; i++) {
+            String carId = "car-" + i;
+            AtomicLong received = new AtomicLong();
+            sockets.add(startReader(relay, Protocol.CAR_GREETING + " " + carId, received, carFrames));
+            for (int j = 0; j < observersPerCar; j++) {
+                sockets.add(startReader(relay, Protocol.OBSERVE_GREETING + " " + carId, new AtomicLong(),
+                        observerFrames));
+            }
+            Socket controller = connect(relay, Protocol.CONTROL_GREETING + " " + carId);
+            sockets.add(controller);
+            senders.add(startSender(controller, received, deadline));
+        }
+
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        System.out.println(String.format("%d pairs, %d event loops, %d observers per car, %d s", pairs, loopCount,
+                observersPerCar, seconds));
+        System.out.println(String.format("Frames to cars:      %,12d (%,.0f frames/s)", carFrames.get(),
+                carFrames.get() / elapsed));
+        System.out.println(String.format("Frames to observers: %,12d (%,.0f frames/s)", observerFrames.get(),
+                observerFrames.get() / elapsed));
+
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        relay.close();
+    }
+
+    /**
+     * Connects to the relay with the given greeting and waits for its handshake.
+     */
+    private static Socket connect(RelayServer relay, String greeting) throws IOException {
+        Socket socket = new Socket("127.0.0.1", relay.getLocalPort());
+        socket.setTcpNoDelay(true);
+        OutputStream out = socket.getOutputStream();
+        out.write((greeting + "\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        if (!Protocol.HANDSHAKE.equals(reader.readLine())) {
+            throw new IOException("Relay rejected " + greeting);
+        }
+        return socket;
+    }
+
+    /**
+     * Connects a session that counts the frames it receives.
+     */
+    private static Socket startReader(RelayServer relay, String greeting, AtomicLong received, AtomicLong total)
+            throws IOException {
+        Socket socket = connect(relay, greeting);
+        Thread reader = new Thread(() -> {
+            byte[] buffer = new byte[8192];
+            try {
+                InputStream in = socket.getInputStream();
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    int frames = 0;
+                    for (int i = 0; i < read; i++) {
+                        if (buffer[i] == '\n') {
+                            frames++;
+                        }
+                    }
+                    received.addAndGet(frames);
+                    total.addAndGet(frames);
+                }
+            } catch (IOException e) {
+                // The benchmark closes the socket when it is done
+            }
+        });
+        reader.setDaemon(true);
+        reader.start();
+        return socket;
+    }
+
+    /**
+     * Starts a controller that sends state frames in batches, keeping at most WINDOW frames in flight to its car.
+     */
+    private static Thread startSender(Socket socket, AtomicLong received, long deadline) {
+        Thread sender = new Thread(() -> {
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            for (int i = 0; i < BATCH; i++) {
+                String line = Protocol.getStateMessage(Throttle.FORWARD, i) + "\n";
+                byte[] frame = line.getBytes(StandardCharsets.US_ASCII);
+                encoded.write(frame, 0, frame.length);
+            }
+            byte[] batch = encoded.toByteArray();
+
+            long sent = 0;
+            try {
+                OutputStream out = socket.getOutputStream();
+                while (System.nanoTime() < deadline) {
+                    if (sent - received.get() > WINDOW) {
+                        Thread.onSpinWait();
+                        continue;
+                    }
+                    out.write(batch);
+                    sent += BATCH;
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        sender.start();
+        return sender;
+    }
+}